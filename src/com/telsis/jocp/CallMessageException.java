@@ -108,12 +108,39 @@ public class CallMessageException extends MessageException {
      */
     @Override
     public final LegacyOCPMessage getErrorMessage() {
+        return buildErrorMessage(destTID, origTID, getCommandCode(),
+                getReason(), getValue());
+    }
+
+    // CSOFF: HiddenField
+    /**
+     * Build a {@link CallCommandUnsupported} message without creating an
+     * exception. This message can be sent in response to a
+     * {@link com.telsis.jocp.messages.CallControlMessage Call message} that
+     * cannot be handled.
+     *
+     * @param destTID
+     *            The destination task ID of the original message.
+     * @param origTID
+     *            The origination task ID of the original message.
+     * @param commandCode
+     *            The command code of the message that cannot be handled
+     * @param reason
+     *            The reason that the message cannot be handled
+     * @param value
+     *            The additional information, if relevant
+     * @return a {@link CallCommandUnsupported} message containing the details
+     */
+    public static CallCommandUnsupported buildErrorMessage(final int destTID,
+            final int origTID, final short commandCode, final short reason,
+            final int value) {
         CallCommandUnsupported ccu = new CallCommandUnsupported();
         ccu.setDestTID(origTID);
         ccu.setOrigTID(destTID);
-        ccu.setNestedCommandCode(getCommandCode());
-        ccu.setReason(getReason());
-        ccu.setValue(getValue());
+        ccu.setNestedCommandCode(commandCode);
+        ccu.setReason(reason);
+        ccu.setValue(value);
         return ccu;
     }
+    // CSON: HiddenField
 }
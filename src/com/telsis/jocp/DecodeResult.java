@@ -0,0 +1,183 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+/**
+ * The result of decoding a binary OCP message with
+ * {@link LegacyOCPMessage#decodeBuffer(java.nio.ByteBuffer, DecodeResult)}.
+ * <p/>
+ * Decoding reports failures through the {@link Status} of the result rather
+ * than by throwing, so that a noisy link or an SCP that sends newer commands
+ * does not cause a storm of exceptions on the receive thread. A result is
+ * intended to be allocated once by the receiving thread and re-used for every
+ * message; it is not thread-safe.
+ *
+ * @author Telsis
+ */
+public final class DecodeResult {
+    /**
+     * The outcome of decoding a message.
+     */
+    public enum Status {
+        /** The message was decoded successfully. */
+        OK,
+        /**
+         * The message was framed correctly but is not supported, or its
+         * payload is invalid. An error reply has been built that should be
+         * sent back to the remote unit.
+         */
+        REJECTED,
+        /**
+         * The message could not be decoded and no reply can be built, for
+         * example because it is badly framed or its command type is not
+         * recognised.
+         */
+        INVALID
+    }
+
+    /** The outcome of the last decode. */
+    private Status           status = Status.INVALID;
+    /** The decoded message, if the status is OK. */
+    private LegacyOCPMessage message;
+    /** The error reply, if the status is REJECTED. */
+    private LegacyOCPMessage errorReply;
+    /** The command code of the last message, if it could be read. */
+    private short            commandCode;
+    /** A description of the failure, if the status is INVALID. */
+    private String           error;
+
+    /**
+     * Gets the outcome of the last decode.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the decoded message.
+     *
+     * @return the decoded message, or null if the status is not OK
+     */
+    public LegacyOCPMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the {@link com.telsis.jocp.messages.LinkCommandUnsupported} or
+     * {@link com.telsis.jocp.messages.CallCommandUnsupported} reply that
+     * should be sent in response to a rejected message.
+     *
+     * @return the error reply, or null if the status is not REJECTED
+     */
+    public LegacyOCPMessage getErrorReply() {
+        return errorReply;
+    }
+
+    /**
+     * Gets the command code of the last message.
+     *
+     * @return the command code, or 0 if the message was too short to contain
+     *         one
+     */
+    public short getCommandCode() {
+        return commandCode;
+    }
+
+    /**
+     * Gets a description of why the last message could not be decoded.
+     *
+     * @return the description, or null if the status is not INVALID
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Clear this result ready for the next decode.
+     *
+     * @param newCommandCode
+     *            the command code of the message being decoded
+     */
+    void reset(final short newCommandCode) {
+        status = Status.INVALID;
+        message = null;
+        errorReply = null;
+        commandCode = newCommandCode;
+        error = null;
+    }
+
+    /**
+     * Record a successfully decoded message.
+     *
+     * @param newMessage
+     *            the decoded message
+     * @return {@link Status#OK}
+     */
+    Status decoded(final LegacyOCPMessage newMessage) {
+        status = Status.OK;
+        message = newMessage;
+        return status;
+    }
+
+    /**
+     * Record a rejected message.
+     *
+     * @param reply
+     *            the error reply to send
+     * @return {@link Status#REJECTED}
+     */
+    Status rejected(final LegacyOCPMessage reply) {
+        status = Status.REJECTED;
+        errorReply = reply;
+        return status;
+    }
+
+    /**
+     * Record a message that could not be decoded.
+     *
+     * @param newError
+     *            a description of the failure
+     * @return {@link Status#INVALID}
+     */
+    Status invalid(final String newError) {
+        status = Status.INVALID;
+        error = newError;
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        switch (status) {
+        case OK:
+            return "OK: " + message;
+        case REJECTED:
+            return "REJECTED: " + errorReply;
+        default:
+            return "INVALID: command 0x"
+                    + Integer.toHexString(commandCode & 0xFFFF) // CSIGNORE: MagicNumber
+                    + ", " + error;
+        }
+    }
+}
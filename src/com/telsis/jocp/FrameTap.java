@@ -0,0 +1,64 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for observing the raw OCP frames passing over a link. A frame tap
+ * registered with an {@link OCPLinkManager} is passed every complete frame
+ * (header, payload and end-of-message marker) that is received from or
+ * transmitted to the remote unit.
+ * <p/>
+ * Taps are called directly from the link's receive and transmit threads, so
+ * implementations must be thread-safe, must not block and should do as little
+ * work as possible. The frame buffer is owned by the link: implementations
+ * must only use absolute reads, must not change its position, limit or
+ * contents, and must not retain a reference to it after returning.
+ *
+ * @author Telsis
+ */
+public interface FrameTap {
+    /**
+     * The direction of a frame relative to this unit.
+     */
+    enum Direction {
+        /** The frame was received from the remote unit. */
+        RX,
+        /** The frame was transmitted to the remote unit. */
+        TX
+    }
+
+    /**
+     * Observe a frame. The frame occupies the bytes between the buffer's
+     * position and limit.
+     *
+     * @param direction
+     *            Whether the frame was received or transmitted.
+     * @param linkIndex
+     *            The index of the link that carried the frame.
+     * @param frame
+     *            The buffer holding the frame. This must not be modified.
+     */
+    void frame(Direction direction, int linkIndex, ByteBuffer frame);
+}
@@ -22,16 +22,14 @@
  */
 package com.telsis.jocp;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 
-import com.telsis.jocp.messages.CallCommandUnsupported;
-import com.telsis.jocp.messages.LinkCommandUnsupported;
+import com.telsis.jocp.messages.*; // CSIGNORE: AvoidStarImport This uses almost everything there
 
 /**
  * Superclass of all legacy OCP messages.
@@ -166,6 +164,23 @@ public abstract class LegacyOCPMessage implements OCPMessage {
      */
     public static final short OCP_COMMAND_TYPE_CALL = (short) 0x1000;
 
+    /**
+     * Thrown by {@link #decodeBuffer(ByteBuffer)} if the buffer is too short
+     * to be a valid message. This is preallocated and stackless, as it is
+     * thrown for every runt frame on a noisy link.
+     */
+    private static final OCPException MESSAGE_TOO_SHORT =
+            new StacklessOCPException("Bad buffer length: expected at least "
+                    + OCP_MIN_LENGTH + " bytes");
+
+    /**
+     * Thrown by {@link #decodeBuffer(ByteBuffer)} if the command type is not
+     * recognised. {@link UnknownMessageTypeException}s are stackless, so this
+     * can be preallocated.
+     */
+    private static final UnknownMessageTypeException UNKNOWN_MESSAGE_TYPE =
+            new UnknownMessageTypeException();
+
     /**
      * A mapping of OCP command codes to OCPMessageType instances.
      */
@@ -197,6 +212,25 @@ public abstract class LegacyOCPMessage implements OCPMessage {
      * The origination task ID for this OCP message.
      */
     private int   origTID;
+    /**
+     * The pool that this message was acquired from, or null if the message is
+     * not pooled.
+     */
+    private OCPMessagePool<?> pool;
+    /**
+     * True if this message has been released to its pool.
+     */
+    private boolean released;
+    /**
+     * The future to complete when this message has been transmitted, or null
+     * if it was not sent with {@link OCPLinkManager#sendAsync(OCPMessage)}.
+     */
+    private SendFuture sendFuture;
+    /**
+     * The {@link System#nanoTime()} at which this message was last added to a
+     * transmit queue.
+     */
+    private long queuedAt;
 
     /**
      * Lookup the OCP Message Type for a specific command code.
@@ -231,6 +265,8 @@ public abstract class LegacyOCPMessage implements OCPMessage {
     //CSOFF: JavadocMethod
     /**
      * Decode a binary OCP message into an instance of the implementing class.
+     * If an {@link OCPMessagePool} has been enabled for the implementing class
+     * then a recycled instance is returned, and the caller becomes its owner.
      *
      * @param buffer
      *            an OCP message
@@ -248,15 +284,12 @@ public abstract class LegacyOCPMessage implements OCPMessage {
             throws OCPException {
         if (buffer.limit() < OCP_MIN_LENGTH) {
             // Too short to possibly be a valid message
-            throw new OCPException();
+            throw MESSAGE_TOO_SHORT;
         }
 
-        Class<? extends LegacyOCPMessage> implementation;
-        Constructor<? extends LegacyOCPMessage> constructor;
-
         short commandCode = buffer.getShort(OCP_CMD_CODE_OFFSET);
-        implementation = getOCPClass(commandCode);
-        if (implementation == null) {
+        LegacyOCPMessageTypes type = getOCPType(commandCode);
+        if (type == null) {
             // Unimplemented OCP message. Try and work out what sort it was.
             switch (commandCode & OCP_COMMAND_TYPE_MASK) {
             case OCP_COMMAND_TYPE_LINK:
@@ -271,30 +304,123 @@ public abstract class LegacyOCPMessage implements OCPMessage {
                         commandCode,
                         CallCommandUnsupported.REASON_COMMAND_CODE_UNSUPPORTED);
             default:
-                throw new UnknownMessageTypeException();
+                throw UNKNOWN_MESSAGE_TYPE;
             }
         }
 
         try {
-            constructor = implementation.getConstructor(ByteBuffer.class);
-            return constructor.newInstance(buffer);
-        } catch (InvocationTargetException e) {
-            // The constructor threw an exception
-            if (e.getTargetException() instanceof OCPException) {
-                // Propogate OCPExceptions.
-                throw (OCPException) e.getTargetException();
-            } else {
-                // Wrap non-OCPExceptions.
-                throw new OCPException(e.getTargetException());
-            }
-        } catch (Exception e) {
-            // Attempting to call the constructor failed. Wrap in an
-            // OCPException.
+            return newMessage(type, buffer);
+        } catch (RuntimeException e) {
+            // Wrap non-OCPExceptions.
             throw new OCPException(e);
         }
     }
     //CSON: JavadocMethod
 
+    /**
+     * Decode a binary OCP message into an instance of the implementing class,
+     * reporting the outcome in a {@link DecodeResult} instead of throwing an
+     * exception. This is intended for the receive path of a link:
+     * <ul>
+     * <li>If the message is decoded successfully, the result holds the
+     * message and the status is {@link DecodeResult.Status#OK OK}. If an
+     * {@link OCPMessagePool} has been enabled for the implementing class then
+     * a recycled instance is returned, and the caller becomes its owner.</li>
+     * <li>If the message has an unsupported command code or an invalid
+     * payload, the result holds the {@link LinkCommandUnsupported} or
+     * {@link CallCommandUnsupported} reply to send back, and the status is
+     * {@link DecodeResult.Status#REJECTED REJECTED}.</li>
+     * <li>Otherwise the status is {@link DecodeResult.Status#INVALID
+     * INVALID}.</li>
+     * </ul>
+     *
+     * @param buffer
+     *            an OCP message
+     * @param result
+     *            the result to store the outcome in
+     * @return the status of the result
+     */
+    public static DecodeResult.Status decodeBuffer(final ByteBuffer buffer,
+            final DecodeResult result) {
+        if (buffer.limit() < OCP_MIN_LENGTH) {
+            // Too short to possibly be a valid message
+            result.reset((short) 0);
+            return result.invalid("Bad buffer length: expected at least "
+                    + OCP_MIN_LENGTH + " bytes but got " + buffer.limit());
+        }
+
+        short commandCode = buffer.getShort(OCP_CMD_CODE_OFFSET);
+        result.reset(commandCode);
+
+        String error = checkFraming(buffer);
+        if (error != null) {
+            return result.invalid(error);
+        }
+
+        LegacyOCPMessageTypes type = getOCPType(commandCode);
+        if (type == null) {
+            // Unimplemented OCP message. Try and work out what sort it was.
+            switch (commandCode & OCP_COMMAND_TYPE_MASK) {
+            case OCP_COMMAND_TYPE_LINK:
+                return result.rejected(LinkMessageException.buildErrorMessage(
+                        commandCode,
+                        LinkCommandUnsupported.REASON_COMMAND_CODE_UNSUPPORTED,
+                        0));
+            case OCP_COMMAND_TYPE_CALL:
+                // Extract the task IDs from the original message
+                return result.rejected(CallMessageException.buildErrorMessage(
+                        buffer.getInt(LegacyOCPMessage.OCP_DEST_TID_OFFSET),
+                        buffer.getInt(LegacyOCPMessage.OCP_ORIG_TID_OFFSET),
+                        commandCode,
+                        CallCommandUnsupported.REASON_COMMAND_CODE_UNSUPPORTED,
+                        0));
+            default:
+                return result.invalid("Unknown command type");
+            }
+        }
+
+        try {
+            return result.decoded(newMessage(type, buffer));
+        } catch (MessageException e) {
+            // The payload was rejected by the message class. MessageExceptions
+            // are stackless, so this is cheap.
+            return result.rejected(e.getErrorMessage());
+        } catch (OCPException e) {
+            return result.invalid(e.getMessage());
+        } catch (RuntimeException e) {
+            return result.invalid(e.toString());
+        }
+    }
+
+    /**
+     * Instantiate the implementing class of a message type from a binary OCP
+     * message. An empty instance is created and then decoded, rather than
+     * calling the constructor that decodes by reflection, so that exceptions
+     * thrown while decoding are not wrapped.
+     *
+     * @param type
+     *            the message type
+     * @param buffer
+     *            an OCP message
+     * @return the decoded message
+     * @throws OCPException
+     *             if an error occurs while decoding the message
+     */
+    private static LegacyOCPMessage newMessage(final LegacyOCPMessageTypes type,
+            final ByteBuffer buffer) throws OCPException {
+        OCPMessagePool<? extends LegacyOCPMessage> pool =
+                OCPMessagePool.getPool(type.getImplementation());
+        if (pool != null) {
+            // Recycle a pooled instance instead of creating a new one
+            return pool.decode(buffer);
+        }
+
+        LegacyOCPMessage message = type.newInstance();
+        message.decode(buffer);
+        return message;
+    }
+
+
     /**
      * Encode an OCPMessage object into a binary OCP message.
      *
@@ -303,7 +429,33 @@ public abstract class LegacyOCPMessage implements OCPMessage {
      * @return a ByteBuffer containing the binary OCP message
      */
     public static ByteBuffer encodeMessage(final LegacyOCPMessage message) {
-        ByteBuffer buffer = ByteBuffer.allocate(OCP_MAX_LENGTH);
+        return encodeMessage(message, ByteBuffer.allocate(OCP_MAX_LENGTH));
+    }
+
+    /**
+     * Encode an OCPMessage object into a binary OCP message, using a buffer
+     * supplied by the caller. Any existing contents of the buffer are
+     * discarded. The buffer can be a direct buffer, so that a caller that
+     * encodes many messages can reuse one buffer and write it to a channel
+     * without it being copied.
+     *
+     * @param message
+     *            the object to encode
+     * @param buffer
+     *            the buffer to encode into, which must have a capacity of at
+     *            least {@link #OCP_MAX_LENGTH}
+     * @return the buffer, with its position and limit set around the binary
+     *         OCP message
+     */
+    public static ByteBuffer encodeMessage(final LegacyOCPMessage message,
+            final ByteBuffer buffer) {
+        assert !message.isReleased() : "Encoding a released message: "
+                + message;
+        if (buffer.capacity() < OCP_MAX_LENGTH) {
+            throw new IllegalArgumentException("The buffer must have a "
+                    + "capacity of at least " + OCP_MAX_LENGTH + " bytes");
+        }
+        buffer.clear();
         buffer.order(ByteOrder.BIG_ENDIAN); // Network order
         message.encode(buffer);
 
@@ -329,44 +481,218 @@ public abstract class LegacyOCPMessage implements OCPMessage {
      *             if the message could not be decoded
      */
     protected LegacyOCPMessage(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+    }
+
+    /**
+     * Create a new OCPMessage instance with the specified command code. Child
+     * classes must call this method in their own implementation.
+     *
+     * @param newCommandCode
+     *            the command code to use
+     */
+    protected LegacyOCPMessage(final short newCommandCode) {
+        this.commandCode = newCommandCode;
+    }
+
+    /**
+     * Validate the framing of a binary OCP message and decode its header into
+     * this instance. This is called by
+     * {@link #LegacyOCPMessage(ByteBuffer)}, and by child classes that
+     * implement {@link #decode(ByteBuffer)}.
+     *
+     * @param buffer
+     *            the buffer to decode
+     * @throws OCPException
+     *             if the message could not be decoded
+     */
+    protected final void decodeHeader(final ByteBuffer buffer)
+            throws OCPException {
         if (buffer.limit() < OCP_MIN_LENGTH) {
             // Too short to be a valid message.
             throw new OCPException("Bad buffer length: expected at least "
                     + OCP_MIN_LENGTH + " bytes but got " + buffer.limit());
         }
 
-        if (buffer.get(buffer.limit() - 2) != OCP_EOM_FIRST_BYTE) {
-            throw new OCPException("First EOM byte is missing: expected "
-                    + OCP_EOM_FIRST_BYTE + " but got "
-                    + buffer.get(buffer.limit() - 2));
-        }
-        if (buffer.get(buffer.limit() - 1) != OCP_EOM_SECOND_BYTE) {
-            throw new OCPException("second EOM byte is missing: expected "
-                    + OCP_EOM_SECOND_BYTE + " but got "
-                    + buffer.get(buffer.limit() - 1));
+        String error = checkFraming(buffer);
+        if (error != null) {
+            throw new OCPException(error);
         }
 
         commandCode = buffer.getShort(0);
         destTID = buffer.getInt(OCP_DEST_TID_OFFSET);
         origTID = buffer.getInt(OCP_ORIG_TID_OFFSET);
+    }
 
+    /**
+     * Check the end-of-message terminator and length field of a binary OCP
+     * message. The buffer must be at least {@link #OCP_MIN_LENGTH} bytes long.
+     *
+     * @param buffer
+     *            the buffer to check
+     * @return null if the message is framed correctly, otherwise a description
+     *         of the error
+     */
+    private static String checkFraming(final ByteBuffer buffer) {
+        if (buffer.get(buffer.limit() - 2) != OCP_EOM_FIRST_BYTE) {
+            return "First EOM byte is missing: expected "
+                    + OCP_EOM_FIRST_BYTE + " but got "
+                    + buffer.get(buffer.limit() - 2);
+        }
+        if (buffer.get(buffer.limit() - 1) != OCP_EOM_SECOND_BYTE) {
+            return "second EOM byte is missing: expected "
+                    + OCP_EOM_SECOND_BYTE + " but got "
+                    + buffer.get(buffer.limit() - 1);
+        }
         if (buffer.getShort(OCP_LEN_LENGTH) + OCP_HEADER_LENGTH
                 != buffer.limit()) {
-            throw new OCPException("Bad length in header: expected "
+            return "Bad length in header: expected "
                     + (buffer.limit() - OCP_HEADER_LENGTH) + " but got "
-                    + buffer.getShort(OCP_LEN_LENGTH));
+                    + buffer.getShort(OCP_LEN_LENGTH);
         }
+        return null;
     }
 
     /**
-     * Create a new OCPMessage instance with the specified command code. Child
-     * classes must call this method in their own implementation.
+     * Decode a binary OCP message into this instance, replacing its current
+     * contents, as the constructor that takes a buffer does. This is used to
+     * recycle {@link OCPMessagePool pooled} messages on the receive path.
+     * Implementations must call {@link #decodeHeader(ByteBuffer)} before
+     * decoding their payload.
      *
-     * @param newCommandCode
-     *            the command code to use
+     * @param buffer
+     *            the buffer to decode
+     * @throws OCPException
+     *             if the message could not be decoded
      */
-    protected LegacyOCPMessage(final short newCommandCode) {
-        this.commandCode = newCommandCode;
+    protected abstract void decode(ByteBuffer buffer) throws OCPException;
+
+    /**
+     * Reset this message to the state of a newly created instance. This is
+     * called when a {@link OCPMessagePool pooled} message is released. Child
+     * classes that can be pooled must override this to clear their own fields
+     * and must call this method in their own implementation.
+     */
+    protected void reset() { // CSIGNORE: DesignForExtension
+        destTID = 0;
+        origTID = 0;
+    }
+
+    /**
+     * Helper function for {@link #reset()} implementations to clear a
+     * fixed-length byte array field. The existing array is zeroed in place if
+     * it has the expected length, to avoid allocating a new one.
+     *
+     * @param field
+     *            the current value of the field
+     * @param length
+     *            the expected length of the field
+     * @return the cleared field
+     */
+    protected static byte[] clearBytes(final byte[] field, final int length) {
+        if (field == null || field.length != length) {
+            return new byte[length];
+        }
+        Arrays.fill(field, (byte) 0);
+        return field;
+    }
+
+    /**
+     * Release this message back to the {@link OCPMessagePool} that it was
+     * acquired from. The message must not be used by the caller after it has
+     * been released. This has no effect on messages that were not acquired
+     * from a pool, so it is always safe to call once the caller has finished
+     * with a message that it owns.
+     * <p/>
+     * Note that passing a message to {@link OCPMessageHandler#queueMessage}
+     * transfers ownership, so the caller must not release a message after
+     * queueing it.
+     */
+    public final void release() {
+        OCPMessagePool<?> owner = pool;
+        if (owner != null) {
+            owner.recycle(this);
+        }
+    }
+
+    /**
+     * Checks whether this message has been released to its pool. This is only
+     * used for the lifecycle assertions that are enabled in debug builds.
+     *
+     * @return true if this message has been released and not yet re-acquired
+     */
+    final boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Mark this message as owned by the given pool, and not released.
+     *
+     * @param owner
+     *            the pool that the message has been acquired from
+     */
+    final void attach(final OCPMessagePool<?> owner) {
+        pool = owner;
+        released = false;
+        sendFuture = null;
+    }
+
+    /**
+     * Mark this message as released to its pool.
+     */
+    final void markReleased() {
+        released = true;
+    }
+
+    /**
+     * Record when this message was added to a transmit queue.
+     *
+     * @param time
+     *            the {@link System#nanoTime()} at which it was queued
+     */
+    final void setQueuedAt(final long time) {
+        queuedAt = time;
+    }
+
+    /**
+     * Gets when this message was added to a transmit queue.
+     *
+     * @return the {@link System#nanoTime()} at which it was queued
+     */
+    final long getQueuedAt() {
+        return queuedAt;
+    }
+
+    /**
+     * Attach the future to complete when this message has been transmitted.
+     *
+     * @param future
+     *            the future
+     */
+    final void attachSendFuture(final SendFuture future) {
+        sendFuture = future;
+    }
+
+    /**
+     * Checks whether a send future is attached to this message.
+     *
+     * @return true if this message was sent with
+     *         {@link OCPLinkManager#sendAsync(OCPMessage)}
+     */
+    final boolean hasSendFuture() {
+        return sendFuture != null;
+    }
+
+    /**
+     * Detach the send future from this message. This must be called before
+     * the message is released.
+     *
+     * @return the future, or null if none was attached
+     */
+    final SendFuture takeSendFuture() {
+        SendFuture future = sendFuture;
+        sendFuture = null;
+        return future;
     }
 
     /**
@@ -433,4 +759,28 @@ public abstract class LegacyOCPMessage implements OCPMessage {
     public final void setOrigTID(final int newOrigTID) {
         this.origTID = newOrigTID;
     }
+
+    /**
+     * An OCPException that does not capture a stack trace, so that it can be
+     * preallocated and thrown repeatedly.
+     */
+    private static final class StacklessOCPException extends OCPException {
+        /** The serial number. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Create a new StacklessOCPException with the specified message.
+         *
+         * @param message
+         *            a description for this exception
+         */
+        StacklessOCPException(final String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
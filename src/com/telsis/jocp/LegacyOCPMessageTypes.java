@@ -22,6 +22,8 @@
  */
 package com.telsis.jocp;
 
+import java.lang.reflect.Constructor;
+
 import com.telsis.jocp.messages.*; // CSIGNORE: AvoidStarImport This uses almost everything there
 
 /**
@@ -340,6 +342,10 @@ public enum LegacyOCPMessageTypes {
      * subclass of {@link LegacyOCPMessage}.
      */
     private Class<? extends LegacyOCPMessage> implementation;
+    /**
+     * The public no-argument constructor of the implementing class.
+     */
+    private Constructor<? extends LegacyOCPMessage> constructor;
     /**
      * The {@link OCPMessageTypes} of this OCP message.
      */
@@ -369,6 +375,12 @@ public enum LegacyOCPMessageTypes {
             final boolean newSupportRx, final boolean newSupportTx) {
         this.commandCode = newCommandCode;
         this.implementation = newImplementation;
+        try {
+            this.constructor = newImplementation.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(newImplementation.getSimpleName()
+                    + " does not have a public no-argument constructor", e);
+        }
         this.baseMessageType = newBaseMessageType;
         this.supportRx = newSupportRx;
         this.supportTx = newSupportTx;
@@ -392,6 +404,21 @@ public enum LegacyOCPMessageTypes {
         return implementation;
     }
 
+    /**
+     * Creates an empty instance of the class that implements this message
+     * type, ready to be {@link LegacyOCPMessage#decode decoded} into.
+     *
+     * @return the new instance
+     */
+    LegacyOCPMessage newInstance() {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create "
+                    + implementation.getSimpleName(), e);
+        }
+    }
+
     /**
      * Gets the {@link OCPMessageTypes} of this OCP message.
      *
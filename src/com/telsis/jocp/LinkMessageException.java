@@ -73,10 +73,29 @@ public class LinkMessageException extends MessageException {
      */
     @Override
     public final LegacyOCPMessage getErrorMessage() {
+        return buildErrorMessage(getCommandCode(), getReason(), getValue());
+    }
+
+    /**
+     * Build a {@link LinkCommandUnsupported} message without creating an
+     * exception. This message can be sent in response to a
+     * {@link com.telsis.jocp.messages.LinkMessage Link message} that cannot be
+     * handled.
+     *
+     * @param commandCode
+     *            The command code of the message that cannot be handled
+     * @param reason
+     *            The reason that the message cannot be handled
+     * @param value
+     *            The additional information, if relevant
+     * @return a {@link LinkCommandUnsupported} message containing the details
+     */
+    public static LinkCommandUnsupported buildErrorMessage(
+            final short commandCode, final short reason, final int value) {
         LinkCommandUnsupported lcu = new LinkCommandUnsupported();
-        lcu.setNestedCommandCode(getCommandCode());
-        lcu.setReason(getReason());
-        lcu.setValue(getValue());
+        lcu.setNestedCommandCode(commandCode);
+        lcu.setReason(reason);
+        lcu.setValue(value);
         return lcu;
     }
 }
@@ -25,6 +25,10 @@ package com.telsis.jocp;
 /**
  * Signals that an error was detected while decoding
  * an {@link LegacyOCPMessage}.
+ * <p/>
+ * MessageExceptions describe a protocol error in a received message, and all
+ * of the useful information is held in their fields. They therefore do not
+ * capture a stack trace, which keeps them cheap to create on a noisy link.
  *
  * @author Telsis
  */
@@ -94,6 +98,11 @@ public abstract class MessageException extends OCPException {
      */
    public abstract LegacyOCPMessage getErrorMessage();
 
+   @Override
+   public final synchronized Throwable fillInStackTrace() {
+       return this;
+   }
+
    @Override
    public final String toString() {
        LegacyOCPMessageTypes type = LegacyOCPMessage.getOCPType(commandCode);
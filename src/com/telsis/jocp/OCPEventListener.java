@@ -0,0 +1,119 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import com.telsis.jocp.OCPLinkManager.LinkStates;
+import com.telsis.jocp.OCPSystemManager.SystemState;
+
+/**
+ * Interface for instrumenting the OCP stack. A listener set on an
+ * {@link OCPLinkManager} or {@link OCPSystemManager} is told about the frames
+ * each link carries, how long each received message took to despatch, link
+ * state and call gapping changes, link selection and master promotions. An
+ * implementation might forward these to a profiler or event recorder so that
+ * it can be seen where call setup time is spent.
+ * <p/>
+ * Events carry only primitive values and enum constants: nothing is allocated
+ * and no stack trace is captured to report them, and when no listener is set
+ * the cost on the hot paths is a single volatile read. Listeners are called
+ * directly from the receive, transmit and system threads and from callers of
+ * {@link OCPSystemManager#getLink(java.util.List)}, so implementations must be
+ * thread-safe, must not block and should do as little work as possible. A
+ * listener that throws is logged and otherwise ignored.
+ *
+ * @author Telsis
+ */
+public interface OCPEventListener {
+    /**
+     * A frame was received from or transmitted to the remote unit.
+     *
+     * @param direction
+     *            Whether the frame was received or transmitted.
+     * @param linkIndex
+     *            The index of the link that carried the frame.
+     * @param commandCode
+     *            The command code from the frame header.
+     * @param size
+     *            The size of the whole frame in bytes.
+     */
+    void frame(FrameTap.Direction direction, int linkIndex, short commandCode,
+            int size);
+
+    /**
+     * A received message was despatched, taking at least the link's despatch
+     * event threshold. The time covers handing the message to its task ID
+     * handler, or handling it on the link if it is a link message.
+     *
+     * @param linkIndex
+     *            The index of the link that received the message.
+     * @param commandCode
+     *            The command code of the message.
+     * @param nanos
+     *            The time taken to despatch the message, in nanoseconds.
+     */
+    void messageDespatched(int linkIndex, short commandCode, long nanos);
+
+    /**
+     * The state of a link changed.
+     *
+     * @param linkIndex
+     *            The index of the link.
+     * @param oldState
+     *            The state that the link has left.
+     * @param newState
+     *            The state that the link has entered.
+     */
+    void linkStateChanged(int linkIndex, LinkStates oldState,
+            LinkStates newState);
+
+    /**
+     * A call gap was received from the remote unit.
+     *
+     * @param linkIndex
+     *            The index of the link that received the call gap.
+     * @param duration
+     *            The call gapping duration, as in
+     *            {@link OCPLinkManager.OCPLinkStateHandler#receivedCallGap(short)}.
+     */
+    void callGapReceived(int linkIndex, short duration);
+
+    /**
+     * The system manager chose a link for a new call.
+     *
+     * @param state
+     *            The state of the system manager when the link was chosen.
+     * @param triedLinks
+     *            The number of links that the caller had already tried.
+     * @param linkIndex
+     *            The index of the chosen link, or -1 if no link was available.
+     */
+    void linkSelected(SystemState state, int triedLinks, int linkIndex);
+
+    /**
+     * The system manager asked a slave unit to become master.
+     *
+     * @param linkIndex
+     *            The index of the link to the unit being promoted.
+     */
+    void promotionSent(int linkIndex);
+}
@@ -25,25 +25,27 @@ package com.telsis.jocp;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.SocketChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import com.telsis.jocp.context.CallContextStore;
 import com.telsis.jocp.messages.Abort;
+import com.telsis.jocp.messages.AreYouMasterReply;
 import com.telsis.jocp.messages.CallControlMessage;
 import com.telsis.jocp.messages.CallGap;
 import com.telsis.jocp.messages.Heartbeat;
@@ -52,10 +54,19 @@ import com.telsis.jocp.messages.LinkMessage;
 import com.telsis.jocp.messages.PreferredUnit;
 import com.telsis.jocp.messages.StatusRequest;
 import com.telsis.jocp.messages.StatusResponse;
+import com.telsis.jocp.messages.TaskActive;
+import com.telsis.jocp.messages.TaskActiveResult;
+import com.telsis.jocp.metrics.LatencyHistogram;
+import com.telsis.jocp.transport.TcpTransport;
+import com.telsis.jocp.transport.Transport;
+import com.telsis.jocp.transport.TransportFactory;
 import com.telsis.jutils.UtilitiesFactory;
+import com.telsis.jutils.clock.Clock;
 import com.telsis.jutils.interfaces.StatsInterface;
 import com.telsis.jutils.watchdog.GenericWatchdog;
 import com.telsis.jutils.watchdog.NullGenericWatchdog;
+import com.telsis.jutils.watchdog.StallListener;
+import com.telsis.jutils.watchdog.ThreadWatchdog;
 
 /**
  * This class manages a single OCP link.
@@ -125,6 +136,71 @@ import com.telsis.jutils.watchdog.NullGenericWatchdog;
  * <td>0-65535</td>
  * </tr>
  * <tr>
+ * <td>ocpLink&lt;index&gt;SetupLaneWeight</td>
+ * <td>When both new call setups and other call control messages are waiting
+ * to be sent, the number of setups to send for each other message. See
+ * {@link TransmitLane}.</td>
+ * <td>Number</td>
+ * <td>4</td>
+ * <td>1-1000</td>
+ * </tr>
+ * <tr>
+ * <td>ocpLink&lt;index&gt;TaskActiveResponder</td>
+ * <td>If 1, {@link TaskActive} audits are answered by the link from its task
+ * ID registry (see {@link TaskActivity}). If 0, they are passed to the
+ * management task ID handler as before.</td>
+ * <td>Number</td>
+ * <td>1</td>
+ * <td>0-1</td>
+ * </tr>
+ * <tr>
+ * <td>ocpLink&lt;index&gt;TaskSweepInterval</td>
+ * <td>If non-zero, the interval at which the registered task ID handlers that
+ * implement {@link TaskActivity} are checked, and those whose calls have ended
+ * are deregistered.</td>
+ * <td>Number (seconds)</td>
+ * <td>0 (disabled)</td>
+ * <td>0-3600</td>
+ * </tr>
+ * <tr>
+ * <td>ocpLink&lt;index&gt;ReleasedTidWindow</td>
+ * <td>Task IDs are remembered for between one and two of these windows after
+ * their handlers are deregistered, and late call control messages for them
+ * are dropped silently instead of being answered with an {@link Abort}. If
+ * zero, every message for an unregistered task ID is treated as unknown.</td>
+ * <td>Number (seconds)</td>
+ * <td>10</td>
+ * <td>0-3600</td>
+ * </tr>
+ * <tr>
+ * <td>ocpLink&lt;index&gt;AbortRateLimit</td>
+ * <td>The most {@link Abort} messages sent (and warnings logged) per second
+ * for call control messages received for unknown task IDs. Any others are
+ * counted and dropped.</td>
+ * <td>Number (per second)</td>
+ * <td>100</td>
+ * <td>1-10000</td>
+ * </tr>
+ * <tr>
+ * <td>ocpLink&lt;index&gt;DespatchEventThreshold</td>
+ * <td>If an {@link OCPEventListener} is set, only received messages that take
+ * at least this long to despatch are reported to it. If zero, every message
+ * is reported.</td>
+ * <td>Number (microseconds)</td>
+ * <td>0</td>
+ * <td>0-60000000</td>
+ * </tr>
+ * <tr>
+ * <td>ocpLink&lt;index&gt;WatchdogReset</td>
+ * <td>If 1 and the link is connected with a {@link ThreadWatchdog}, the link
+ * is reset when its receive or transmit thread stalls. The stalled thread is
+ * interrupted and the transport closed, so that a blocked call fails, and the
+ * receive thread then reconnects. If 0, stalls are only logged.</td>
+ * <td>Number</td>
+ * <td>0</td>
+ * <td>0-1</td>
+ * </tr>
+ * <tr>
  * <td>ocpUnitName</td>
  * <td>The name to report in OCP {@link StatusResponse} messages. If blank, this
  * will be our FQDN. This property is truncated to 31 characters.</td>
@@ -254,7 +330,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     }
 
     // Internal constants
-    /** The length of the transmit queue. */
+    /** The length of the transmit queue, shared by its setup and call lanes. */
     private static final int    TX_QUEUE_LENGTH               = 100;
     /** Conversion between seconds and milliseconds. */
     private static final int    MILLISECONDS                  = 1000;
@@ -309,6 +385,62 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     private static final int    CONFIG_LOCAL_PORT_MIN         = 0;
     /** The maximum value for the local port. */
     private static final int    CONFIG_LOCAL_PORT_MAX         = 65535;
+    /** The setup lane weight. */
+    private static final String CONFIG_SETUP_WEIGHT           = "SetupLaneWeight";
+    /** The default value for the setup lane weight. */
+    private static final String CONFIG_SETUP_WEIGHT_DEF       = "4";
+    /** The minimum value for the setup lane weight. */
+    private static final int    CONFIG_SETUP_WEIGHT_MIN       = 1;
+    /** The maximum value for the setup lane weight. */
+    private static final int    CONFIG_SETUP_WEIGHT_MAX       = 1000;
+    /** The task active responder. */
+    private static final String CONFIG_TASK_RESPONDER         = "TaskActiveResponder";
+    /** The default value for the task active responder (enabled). */
+    private static final String CONFIG_TASK_RESPONDER_DEF     = "1";
+    /** The minimum value for the task active responder. */
+    private static final int    CONFIG_TASK_RESPONDER_MIN     = 0;
+    /** The maximum value for the task active responder. */
+    private static final int    CONFIG_TASK_RESPONDER_MAX     = 1;
+    /** The task sweep interval. */
+    private static final String CONFIG_TASK_SWEEP             = "TaskSweepInterval";
+    /** The default value for the task sweep interval (disabled). */
+    private static final String CONFIG_TASK_SWEEP_DEF         = "0";
+    /** The minimum value for the task sweep interval. */
+    private static final int    CONFIG_TASK_SWEEP_MIN         = 0;
+    /** The maximum value for the task sweep interval. */
+    private static final int    CONFIG_TASK_SWEEP_MAX         = 3600;
+    /** The released task ID window. */
+    private static final String CONFIG_RELEASED_WINDOW        = "ReleasedTidWindow";
+    /** The default value for the released task ID window. */
+    private static final String CONFIG_RELEASED_WINDOW_DEF    = "10";
+    /** The minimum value for the released task ID window. */
+    private static final int    CONFIG_RELEASED_WINDOW_MIN    = 0;
+    /** The maximum value for the released task ID window. */
+    private static final int    CONFIG_RELEASED_WINDOW_MAX    = 3600;
+    /** The abort rate limit. */
+    private static final String CONFIG_ABORT_RATE             = "AbortRateLimit";
+    /** The default value for the abort rate limit. */
+    private static final String CONFIG_ABORT_RATE_DEF         = "100";
+    /** The minimum value for the abort rate limit. */
+    private static final int    CONFIG_ABORT_RATE_MIN         = 1;
+    /** The maximum value for the abort rate limit. */
+    private static final int    CONFIG_ABORT_RATE_MAX         = 10000;
+    /** The despatch event threshold. */
+    private static final String CONFIG_DESPATCH_THRESHOLD     = "DespatchEventThreshold";
+    /** The default value for the despatch event threshold (all messages). */
+    private static final String CONFIG_DESPATCH_THRESHOLD_DEF = "0";
+    /** The minimum value for the despatch event threshold. */
+    private static final int    CONFIG_DESPATCH_THRESHOLD_MIN = 0;
+    /** The maximum value for the despatch event threshold. */
+    private static final int    CONFIG_DESPATCH_THRESHOLD_MAX = 60000000;
+    /** The watchdog reset setting. */
+    private static final String CONFIG_WATCHDOG_RESET         = "WatchdogReset";
+    /** The default value for the watchdog reset setting (log only). */
+    private static final String CONFIG_WATCHDOG_RESET_DEF     = "0";
+    /** The minimum value for the watchdog reset setting. */
+    private static final int    CONFIG_WATCHDOG_RESET_MIN     = 0;
+    /** The maximum value for the watchdog reset setting. */
+    private static final int    CONFIG_WATCHDOG_RESET_MAX     = 1;
     /** The unit name. */
     private static final String CONFIG_UNIT_NAME              = "ocpSystemUnitName";
     /** The maximum value for the unit name. */
@@ -336,6 +468,18 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     private static final String STAT_MESSAGE_TX_BASE = "MessageTx";
     /** Statistic name for transmission queue length. */
     private static final String STAT_QUEUE = "TxQueueLength";
+    /** Statistic keyword for task active audits answered by the link. */
+    private static final String STAT_TASK_ACTIVE_ANSWERED = "TaskActiveAnswered";
+    /** Statistic keyword for task IDs released by the task sweep. */
+    private static final String STAT_TASK_SWEPT = "TaskSwept";
+    /** Statistic keyword for late messages to released task IDs. */
+    private static final String STAT_LATE_DROPPED = "LateMessageDropped";
+    /** Statistic keyword for Aborts sent for unknown task IDs. */
+    private static final String STAT_ABORT_SENT = "UnknownTaskAbortSent";
+    /** Statistic keyword for Aborts suppressed by the rate limit. */
+    private static final String STAT_ABORT_SUPPRESSED = "UnknownTaskAbortSuppressed";
+    /** Statistic keyword for link threads reported stalled by the watchdog. */
+    private static final String STAT_WATCHDOG_STALL = "WatchdogStall";
 
     // Configuration
     /** The properties object. */
@@ -358,36 +502,85 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     private int         localPort;
     /** The unit name to report. */
     private String      unitName;
+    /** The number of setup messages to send for each other call message. */
+    private int         setupLaneWeight;
+    /** True if task active audits are answered by the link. */
+    private volatile boolean taskActiveResponder;
+    /** The task sweep interval in milliseconds, or 0 if disabled. */
+    private volatile int taskSweepInterval;
+    /**
+     * The filter of recently released task IDs, or null if late messages are
+     * not filtered.
+     */
+    private volatile ReleasedTidFilter releasedTids;
+    /** The released task ID window in seconds. */
+    private int          releasedTidWindow;
+    /** The most Aborts sent per second for unknown task IDs. */
+    private volatile int abortRateLimit;
+    /** The Aborts that may still be sent. Only used by the receive thread. */
+    private int          abortAllowance;
+    /** The time the Abort allowance was refilled. Only used by the receive thread. */
+    private long         abortRefilled;
+    /** The shortest despatch reported to the event listener, in nanoseconds. */
+    private volatile long despatchThreshold;
+    /** True if the link is reset when one of its threads stalls. */
+    private volatile boolean watchdogReset;
 
     /** The current state of the link. */
-    private LinkStates linkState;
+    private volatile LinkStates linkState;
     /** The unit ID reported by the remote unit. */
     private int        unitID;
     /** The unit enabled state reported by the remote unit. */
     private boolean    unitEnabled;
     /** The cluster ID reported by the remote unit. */
     private int        clusterID;
+    /** The timestamp of the last Are You Master Reply, or 0 if none. */
+    private volatile long lastMasterReply;
 
     /** The transmit thread. */
     private TxThread                            txThread;
     /** The receive thread. */
     private RxThread                            rxThread;
-    /** The link's socket. */
-    private Socket                              socket;
-    /** The link's socket channel. */
-    private SocketChannel                       channel;
+    /** The factory for the link's transport. */
+    private volatile TransportFactory           transportFactory =
+            TcpTransport.FACTORY;
+    /** The clock used for timeouts and heartbeat intervals. */
+    private volatile Clock                      clock =
+            UtilitiesFactory.getClock();
+    /**
+     * The link's transport, or null if not connected. Volatile as a stalled
+     * link's transport is closed by the watchdog thread.
+     */
+    private volatile Transport                  transport;
     /** The transmit queue. */
-    private ArrayBlockingQueue<LegacyOCPMessage>      txMessages;
+    private TransmitQueue                       txMessages;
     /** All registered link state handlers. */
     private HashSet<OCPLinkStateHandler>        linkStateHandlers;
     /** Mapping between task IDs and registered message handlers. */
     private HashMap<Integer, OCPMessageHandler> tidHandlers;
+    /**
+     * The time from queueing each message to finishing writing it to the
+     * transport.
+     */
+    private final LatencyHistogram              sendLatency =
+            new LatencyHistogram();
+    /**
+     * The store of per-call state, allocated and released with the task ID
+     * handlers, or null if none has been set.
+     */
+    private volatile CallContextStore           callContexts;
     /** The management task ID handler. */
     private OCPMessageHandler managementTidHandler;
     /** The watchdog to use. */
     private GenericWatchdog watchdog;
+    /** Reports stalls of this link's threads, if the watchdog detects them. */
+    private final StallListener stallListener = new LinkStallListener();
     /** Whether or not this link has been cleaned up. */
     private volatile boolean cleanedUp = false;
+    /** The registered frame taps. Replaced, never modified, on change. */
+    private volatile FrameTap[] frameTaps = new FrameTap[0];
+    /** The instrumentation event listener, or null if none is set. */
+    private volatile OCPEventListener eventListener;
 
     /** The logger for this class. */
     private static Logger log = Logger.getLogger("ocpLinkManager");
@@ -421,6 +614,12 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         stats.registerStat(statPrefix + STAT_CONNECTION_FAIL, true);
         stats.registerStat(statPrefix + STAT_MASTER_SLAVE_SWAP, true);
         stats.registerStat(statPrefix + STAT_QUEUE, false);
+        stats.registerStat(statPrefix + STAT_TASK_ACTIVE_ANSWERED, true);
+        stats.registerStat(statPrefix + STAT_TASK_SWEPT, true);
+        stats.registerStat(statPrefix + STAT_LATE_DROPPED, true);
+        stats.registerStat(statPrefix + STAT_ABORT_SENT, true);
+        stats.registerStat(statPrefix + STAT_ABORT_SUPPRESSED, true);
+        stats.registerStat(statPrefix + STAT_WATCHDOG_STALL, true);
 
         EnumSet<LegacyOCPMessageTypes> typeSet =
                 EnumSet.allOf(LegacyOCPMessageTypes.class);
@@ -440,11 +639,13 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         linkStateHandlers = new HashSet<OCPLinkStateHandler>();
         tidHandlers = new HashMap<Integer, OCPMessageHandler>();
         managementTidHandler = null;
-        txMessages = new ArrayBlockingQueue<LegacyOCPMessage>(TX_QUEUE_LENGTH);
+        txMessages = new TransmitQueue(TX_QUEUE_LENGTH, setupLaneWeight);
     }
 
     /**
-     * Loads the configuration.
+     * Loads the configuration. The remote and local addresses and ports are
+     * only set by the first load; a later change to them is reported but not
+     * applied, so a link keeps its endpoint until it is replaced.
      * @param properties The properties object to use
      * @return <code>true</code> if the configuration has changed
      *          enough to require a link restart.
@@ -453,6 +654,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
 
         log.warn("loadConfig link " + linkIndex);
         boolean significantChange = false;
+        final boolean initial = remoteAddress == null;
         InetAddress tempAddress;
         int tempPort;
         this.prop = properties;
@@ -488,9 +690,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             throw new IllegalArgumentException(
                     "The remote address is not valid", e);
         }
-        if (!tempAddress.equals(remoteAddress)) {
-            // Remote address has changed. Restart required.
+        if (initial) {
             remoteAddress = tempAddress;
+        } else if (!tempAddress.equals(remoteAddress)) {
+            // Remote address has changed. Restart required.
             significantChange = true;
         }
 
@@ -500,9 +703,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                 || tempPort > CONFIG_REMOTE_PORT_MAX) {
             throw new IllegalArgumentException("The remote port is not valid.");
         }
-        if (tempPort != remotePort) {
-            // Remote port has changed. Restart required.
+        if (initial) {
             remotePort = tempPort;
+        } else if (tempPort != remotePort) {
+            // Remote port has changed. Restart required.
             significantChange = true;
         }
 
@@ -522,9 +726,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             throw new IllegalArgumentException(
                     "The local address is not valid", e);
         }
-        if (!tempAddress.equals(localAddress)) {
-            // Local address has changed. Restart required.
+        if (initial) {
             localAddress = tempAddress;
+        } else if (!tempAddress.equals(localAddress)) {
+            // Local address has changed. Restart required.
             significantChange = true;
         }
 
@@ -534,12 +739,94 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                 || tempPort > CONFIG_LOCAL_PORT_MAX) {
             throw new IllegalArgumentException("The local port is not valid.");
         }
-        if (tempPort != localPort) {
-            // Local port has changed. Restart required.
+        if (initial) {
             localPort = tempPort;
+        } else if (tempPort != localPort) {
+            // Local port has changed. Restart required.
             significantChange = true;
         }
 
+        setupLaneWeight = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_SETUP_WEIGHT, CONFIG_SETUP_WEIGHT_DEF));
+        if (setupLaneWeight < CONFIG_SETUP_WEIGHT_MIN
+                || setupLaneWeight > CONFIG_SETUP_WEIGHT_MAX) {
+            throw new IllegalArgumentException(
+                    "The setup lane weight is outside the valid range of "
+                    + CONFIG_SETUP_WEIGHT_MIN + " to "
+                    + CONFIG_SETUP_WEIGHT_MAX);
+        }
+        if (txMessages != null) {
+            txMessages.setSetupWeight(setupLaneWeight);
+        }
+
+        int responder = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_TASK_RESPONDER, CONFIG_TASK_RESPONDER_DEF));
+        if (responder < CONFIG_TASK_RESPONDER_MIN
+                || responder > CONFIG_TASK_RESPONDER_MAX) {
+            throw new IllegalArgumentException(
+                    "The task active responder setting is outside the valid "
+                    + "range of " + CONFIG_TASK_RESPONDER_MIN + " to "
+                    + CONFIG_TASK_RESPONDER_MAX);
+        }
+        taskActiveResponder = responder != 0;
+
+        int sweep = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_TASK_SWEEP, CONFIG_TASK_SWEEP_DEF));
+        if (sweep < CONFIG_TASK_SWEEP_MIN || sweep > CONFIG_TASK_SWEEP_MAX) {
+            throw new IllegalArgumentException(
+                    "The task sweep interval is outside the valid range of "
+                    + CONFIG_TASK_SWEEP_MIN + " to " + CONFIG_TASK_SWEEP_MAX);
+        }
+        taskSweepInterval = sweep * MILLISECONDS;
+
+        int window = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_RELEASED_WINDOW, CONFIG_RELEASED_WINDOW_DEF));
+        if (window < CONFIG_RELEASED_WINDOW_MIN
+                || window > CONFIG_RELEASED_WINDOW_MAX) {
+            throw new IllegalArgumentException(
+                    "The released task ID window is outside the valid range "
+                    + "of " + CONFIG_RELEASED_WINDOW_MIN + " to "
+                    + CONFIG_RELEASED_WINDOW_MAX);
+        }
+        if (window == 0) {
+            releasedTids = null;
+        } else if (window != releasedTidWindow) {
+            releasedTids = new ReleasedTidFilter(window * MILLISECONDS,
+                    clock.millis());
+        }
+        releasedTidWindow = window;
+
+        abortRateLimit = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_ABORT_RATE, CONFIG_ABORT_RATE_DEF));
+        if (abortRateLimit < CONFIG_ABORT_RATE_MIN
+                || abortRateLimit > CONFIG_ABORT_RATE_MAX) {
+            throw new IllegalArgumentException(
+                    "The abort rate limit is outside the valid range of "
+                    + CONFIG_ABORT_RATE_MIN + " to " + CONFIG_ABORT_RATE_MAX);
+        }
+
+        int threshold = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_DESPATCH_THRESHOLD, CONFIG_DESPATCH_THRESHOLD_DEF));
+        if (threshold < CONFIG_DESPATCH_THRESHOLD_MIN
+                || threshold > CONFIG_DESPATCH_THRESHOLD_MAX) {
+            throw new IllegalArgumentException(
+                    "The despatch event threshold is outside the valid range "
+                    + "of " + CONFIG_DESPATCH_THRESHOLD_MIN + " to "
+                    + CONFIG_DESPATCH_THRESHOLD_MAX);
+        }
+        despatchThreshold = TimeUnit.MICROSECONDS.toNanos(threshold);
+
+        int reset = Integer.parseInt(prop.getProperty(prefix
+                + CONFIG_WATCHDOG_RESET, CONFIG_WATCHDOG_RESET_DEF));
+        if (reset < CONFIG_WATCHDOG_RESET_MIN
+                || reset > CONFIG_WATCHDOG_RESET_MAX) {
+            throw new IllegalArgumentException(
+                    "The watchdog reset setting is outside the valid range of "
+                    + CONFIG_WATCHDOG_RESET_MIN + " to "
+                    + CONFIG_WATCHDOG_RESET_MAX);
+        }
+        watchdogReset = reset != 0;
+
         String localFQDN;
         try {
             localFQDN = InetAddress.getLocalHost().getCanonicalHostName();
@@ -565,7 +852,8 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
      *            The properties object to use
      * @return true, if the configuration has changed enough to require a link
      *         restart to fully apply (note that the link will not have been
-     *         restarted by this method)
+     *         restarted by this method, and keeps its current addresses and
+     *         ports; a new link must be created to use the new ones)
      */
     public final boolean reloadConfig(final Properties properties) {
         log.warn("reloadConfig Link " + linkIndex + " From " + properties);
@@ -592,6 +880,12 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         stats.unregisterStat(statPrefix + STAT_CONNECTION_SUCCESS);
         stats.unregisterStat(statPrefix + STAT_CONNECTION_FAIL);
         stats.unregisterStat(statPrefix + STAT_MASTER_SLAVE_SWAP);
+        stats.unregisterStat(statPrefix + STAT_TASK_ACTIVE_ANSWERED);
+        stats.unregisterStat(statPrefix + STAT_TASK_SWEPT);
+        stats.unregisterStat(statPrefix + STAT_LATE_DROPPED);
+        stats.unregisterStat(statPrefix + STAT_ABORT_SENT);
+        stats.unregisterStat(statPrefix + STAT_ABORT_SUPPRESSED);
+        stats.unregisterStat(statPrefix + STAT_WATCHDOG_STALL);
 
         EnumSet<LegacyOCPMessageTypes> typeSet =
                 EnumSet.allOf(LegacyOCPMessageTypes.class);
@@ -606,7 +900,12 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                         + type.getImplementation().getSimpleName());
             }
         }
-        tidHandlers.clear();
+        synchronized (tidHandlers) {
+            for (Integer tid : tidHandlers.keySet()) {
+                releaseContext(tid);
+            }
+            tidHandlers.clear();
+        }
         linkStateHandlers.clear();
         cleanedUp = true;
     }
@@ -618,20 +917,29 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
 
     /**
      * Inspect the message type and destination task ID, and despatch it to the
-     * appropriate handler.
+     * appropriate handler. Ownership of call control messages passes to the
+     * handler; all other messages are released once they have been handled.
      *
      * @param message
      *            the OCP message to despatch
-     * @throws LinkMessageException
-     *             if the message is an unrecognised Link message
      */
-    private void despatchMessage(final LegacyOCPMessage message)
-            throws LinkMessageException {
+    private void despatchMessage(final LegacyOCPMessage message) {
         OCPMessageHandler handler = null;
 
         if (message instanceof LinkMessage) {
             // Link message, handle it internally
-            handleMessage(message);
+            try {
+                handleMessage(message);
+            } finally {
+                message.release();
+            }
+        } else if (message instanceof TaskActive && taskActiveResponder) {
+            // Task audit, answered from the task ID registry
+            try {
+                answerTaskActive((TaskActive) message);
+            } finally {
+                message.release();
+            }
         } else if (message instanceof CallControlMessage) {
             // Call control message
             int taskID = message.getDestTID();
@@ -655,7 +963,17 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                     log.warn("Exception occurred in management handler "
                             + managementTidHandler, e);
                 }
-            } else {
+            } else if (isRecentlyReleased(taskID)) {
+                // A late message for a call that has already been released,
+                // so drop it silently
+                stats.incrementStat(statPrefix + STAT_LATE_DROPPED);
+                if (log.isDebugEnabled()) {
+                    log.debug("Dropped late message for released task: "
+                            + "command " + message.getCommandCode()
+                            + ", destination " + taskID);
+                }
+                message.release();
+            } else if (allowAbort()) {
                 // We don't know about this task ID. Reject the message.
                 log.warn("Message received for unregistered task: command "
                         + message.getCommandCode() + ", destination " + taskID);
@@ -664,13 +982,174 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                     abort.setDestTID(message.getOrigTID());
                     abort.setOrigTID(message.getDestTID());
                     abort.setInvalidLegID(Abort.TASK_NOT_RUNNING);
+                    stats.incrementStat(statPrefix + STAT_ABORT_SENT);
                     this.queueMessage(abort, null);
                 }
+                message.release();
+            } else {
+                // Unknown task ID, but too many have been rejected recently
+                stats.incrementStat(statPrefix + STAT_ABORT_SUPPRESSED);
+                message.release();
             }
         } else {
             // Unknown message type (but one that OCPMessage knows about!)
             log.warn("Received an OCP message with an unexpected command type");
+            message.release();
+        }
+    }
+
+    /**
+     * Check whether a task ID's handler has been deregistered recently.
+     *
+     * @param tid
+     *            the task ID
+     * @return true if the task ID was probably released recently
+     */
+    private boolean isRecentlyReleased(final int tid) {
+        ReleasedTidFilter filter = releasedTids;
+        return filter != null && filter.mightContain(tid, clock.millis());
+    }
+
+    /**
+     * Record that a task ID's handler has been deregistered, so that late
+     * messages for it are dropped.
+     *
+     * @param tid
+     *            the task ID
+     */
+    private void recordReleased(final int tid) {
+        ReleasedTidFilter filter = releasedTids;
+        if (filter != null) {
+            filter.add(tid, clock.millis());
+        }
+    }
+
+    /**
+     * Release the call context of a task ID whose handler has been removed.
+     *
+     * @param tid
+     *            the task ID
+     */
+    private void releaseContext(final int tid) {
+        CallContextStore store = callContexts;
+        if (store != null) {
+            store.release(tid);
+        }
+    }
+
+    /**
+     * Check whether another message for an unknown task ID may be rejected
+     * with an Abort, within the configured rate limit. The allowance is
+     * refilled in full each second. Only called by the receive thread.
+     *
+     * @return true if an Abort may be sent
+     */
+    private boolean allowAbort() {
+        long now = clock.millis();
+        if (now - abortRefilled >= MILLISECONDS) {
+            abortRefilled = now;
+            abortAllowance = abortRateLimit;
+        }
+        if (abortAllowance > 0) {
+            abortAllowance--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Answer a {@link TaskActive} audit with a {@link TaskActiveResult}. The
+     * task is active if a handler is registered for it and, if the handler
+     * implements {@link TaskActivity}, the handler reports that its call is
+     * still running.
+     *
+     * @param audit
+     *            the audit to answer
+     */
+    private void answerTaskActive(final TaskActive audit) {
+        int tid = audit.getTaskIDToCheck();
+        OCPMessageHandler handler;
+        synchronized (tidHandlers) {
+            handler = tidHandlers.get(tid);
+        }
+        boolean active = handler != null;
+        if (handler instanceof TaskActivity) {
+            try {
+                active = ((TaskActivity) handler).isTaskActive(tid);
+            } catch (Exception e) {
+                log.warn("Exception occurred in handler " + handler, e);
+            }
+        }
+
+        OCPMessagePool<TaskActiveResult> pool =
+                OCPMessagePool.getPool(TaskActiveResult.class);
+        TaskActiveResult result;
+        if (pool != null) {
+            result = pool.acquire();
+        } else {
+            result = new TaskActiveResult();
+        }
+        result.setDestTID(OCPMessage.MANAGEMENT_TASK_ID);
+        result.setOrigTID(tid);
+        result.setTaskID(audit.getAssociatedTaskID());
+        result.setResult(active ? TaskActiveResult.RESULT_ACTIVE
+                : TaskActiveResult.RESULT_NOT_ACTIVE);
+        stats.incrementStat(statPrefix + STAT_TASK_ACTIVE_ANSWERED);
+        queueMessage(result, null);
+    }
+
+    /**
+     * Check every registered task ID handler that implements
+     * {@link TaskActivity}, and deregister those whose calls have ended. This
+     * is called periodically by the receive thread if a task sweep interval is
+     * configured, but may also be called directly.
+     *
+     * @return the number of task IDs deregistered
+     */
+    public final int sweepTidHandlers() {
+        List<Map.Entry<Integer, OCPMessageHandler>> candidates =
+                new ArrayList<Map.Entry<Integer, OCPMessageHandler>>();
+        synchronized (tidHandlers) {
+            for (Map.Entry<Integer, OCPMessageHandler> entry
+                    : tidHandlers.entrySet()) {
+                if (entry.getValue() instanceof TaskActivity) {
+                    candidates.add(new AbstractMap.SimpleImmutableEntry<
+                            Integer, OCPMessageHandler>(entry));
+                }
+            }
+        }
+
+        int swept = 0;
+        for (Map.Entry<Integer, OCPMessageHandler> entry : candidates) {
+            boolean active;
+            try {
+                active = ((TaskActivity) entry.getValue()).isTaskActive(
+                        entry.getKey());
+            } catch (Exception e) {
+                log.warn("Exception occurred in handler " + entry.getValue(),
+                        e);
+                continue;
+            }
+            if (active) {
+                continue;
+            }
+            synchronized (tidHandlers) {
+                // Only remove the handler if it has not been replaced
+                if (tidHandlers.get(entry.getKey()) != entry.getValue()) {
+                    continue;
+                }
+                tidHandlers.remove(entry.getKey());
+            }
+            recordReleased(entry.getKey());
+            releaseContext(entry.getKey());
+            swept++;
+            stats.incrementStat(statPrefix + STAT_TASK_SWEPT);
+        }
+        if (swept > 0) {
+            log.info("Link " + linkIndex + ": released " + swept
+                    + " task IDs whose calls have ended");
         }
+        return swept;
     }
 
     /**
@@ -695,6 +1174,13 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
      * task ID handlers).</td>
      * </tr>
      * <tr>
+     * <td>{@link AreYouMasterReply}</td>
+     * <td>The time of the reply is recorded and, if the remote unit is running
+     * in master/slave mode, the link status is updated according to the master
+     * flag. All registered {@link OCPLinkStateHandler} instances are notified
+     * of any changes.</td>
+     * </tr>
+     * <tr>
      * <td>{@link LinkCommandUnsupported}</td>
      * <td>The message details are logged.</td>
      * </tr>
@@ -710,16 +1196,13 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
      * </tr>
      * </table>
      * <p/>
-     * Any unsupported messages results in an
-     * {@link UnknownLinkMessageException} being thrown.
+     * Any unsupported messages are rejected with a
+     * {@link LinkCommandUnsupported} reply.
      *
      * @param message
      *            the OCP message to handle
-     * @throws UnknownLinkMessageException
-     *             if the command code is not recognised
      */
-    private void handleMessage(final LegacyOCPMessage message)
-            throws LinkMessageException {
+    private void handleMessage(final LegacyOCPMessage message) {
         log.debug("Received " + message.getClass().getName() + ": " + message);
 
         if (message instanceof Heartbeat) { // CSIGNORE: EmptyBlock
@@ -740,30 +1223,22 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
 
             if (clusterID == StatusRequest.CLUSTERID_MASTERSLAVE) {
                 // Running in master/slave mode
-                if ((sr.getFlags() & StatusRequest.FLAG_MASTER)
-                        == StatusRequest.FLAG_MASTER) {
-                    if (linkState != LinkStates.MASTER) {
-                        // Have moved into the master state
-                        if (linkState == LinkStates.SLAVE) {
-                            stats.incrementStat(
-                                    statPrefix + STAT_MASTER_SLAVE_SWAP);
-                        }
-                        changeLinkState(LinkStates.MASTER);
-                    }
-                } else if (linkState != LinkStates.SLAVE) {
-                    // Have moved into the slave state
-                    if (linkState == LinkStates.MASTER) {
-                        stats.incrementStat(
-                                statPrefix + STAT_MASTER_SLAVE_SWAP);
-                    }
-                    changeLinkState(LinkStates.SLAVE);
-                }
+                changeMasterSlaveState((sr.getFlags()
+                        & StatusRequest.FLAG_MASTER)
+                        == StatusRequest.FLAG_MASTER);
             } else if (linkState != LinkStates.LOADSHARE) {
                 // Have moved into the loadsharing state
                 changeLinkState(LinkStates.LOADSHARE);
             }
 
-            StatusResponse response = new StatusResponse();
+            OCPMessagePool<StatusResponse> pool =
+                    OCPMessagePool.getPool(StatusResponse.class);
+            StatusResponse response;
+            if (pool != null) {
+                response = pool.acquire();
+            } else {
+                response = new StatusResponse();
+            }
             response.setUnitName(unitName);
             // Each TID mapping is a call, so the number if active calls is
             // the number of TID mappings.
@@ -771,6 +1246,13 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                 response.setActiveCalls((short) tidHandlers.size());
             }
             queueMessage(response, null);
+        } else if (message instanceof AreYouMasterReply) {
+            AreYouMasterReply reply = (AreYouMasterReply) message;
+            lastMasterReply = clock.millis();
+            if (clusterID == StatusRequest.CLUSTERID_MASTERSLAVE) {
+                changeMasterSlaveState(reply.getMasterFlag()
+                        == AreYouMasterReply.MASTER_FLAG_MASTER);
+            }
         } else if (message instanceof LinkCommandUnsupported) {
             LinkCommandUnsupported lcu = (LinkCommandUnsupported) message;
             log.warn("Received LinkCommandUnsupported: commandCode "
@@ -796,8 +1278,36 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             }
         } else {
             // It's not a Link message we recognise, so send a LCU
-            throw new LinkMessageException(message.getCommandCode(),
-                    LinkCommandUnsupported.REASON_COMMAND_CODE_UNSUPPORTED);
+            stats.incrementStat(statPrefix + STAT_BAD_MESSAGE);
+            queueMessage(LinkMessageException.buildErrorMessage(
+                    message.getCommandCode(),
+                    LinkCommandUnsupported.REASON_COMMAND_CODE_UNSUPPORTED, 0),
+                    null);
+        }
+    }
+
+    /**
+     * Move the link into the master or slave state, as reported by a remote
+     * unit running in master/slave mode.
+     *
+     * @param master
+     *            true if the remote unit is master, false if it is a slave
+     */
+    private void changeMasterSlaveState(final boolean master) {
+        if (master) {
+            if (linkState != LinkStates.MASTER) {
+                // Have moved into the master state
+                if (linkState == LinkStates.SLAVE) {
+                    stats.incrementStat(statPrefix + STAT_MASTER_SLAVE_SWAP);
+                }
+                changeLinkState(LinkStates.MASTER);
+            }
+        } else if (linkState != LinkStates.SLAVE) {
+            // Have moved into the slave state
+            if (linkState == LinkStates.MASTER) {
+                stats.incrementStat(statPrefix + STAT_MASTER_SLAVE_SWAP);
+            }
+            changeLinkState(LinkStates.SLAVE);
         }
     }
 
@@ -813,8 +1323,18 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
         log.info("changeLinkState: changed from " + linkState + " to "
                 + newState);
+        LinkStates oldState = linkState;
         linkState = newState;
 
+        OCPEventListener listener = eventListener;
+        if (listener != null) {
+            try {
+                listener.linkStateChanged(linkIndex, oldState, newState);
+            } catch (RuntimeException e) {
+                eventListenerFailed(listener, e);
+            }
+        }
+
         synchronized (linkStateHandlers) {
             Iterator<OCPLinkStateHandler> it = linkStateHandlers.iterator();
             while (it.hasNext()) {
@@ -874,6 +1394,15 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
      *            the new call gapping duration
      */
     private void changeCallGap(final short duration) {
+        OCPEventListener listener = eventListener;
+        if (listener != null) {
+            try {
+                listener.callGapReceived(linkIndex, duration);
+            } catch (RuntimeException e) {
+                eventListenerFailed(listener, e);
+            }
+        }
+
         synchronized (linkStateHandlers) {
             Iterator<OCPLinkStateHandler> it = linkStateHandlers.iterator();
             while (it.hasNext()) {
@@ -890,7 +1419,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     }
 
     /**
-     * Connect to the remote unit. This method returns asynchronously.
+     * Connect to the remote unit. This method returns asynchronously. If the
+     * watchdog is a {@link ThreadWatchdog}, a stall of the receive or transmit
+     * thread is logged with the thread's stack and state, counted, and if the
+     * WatchdogReset setting is enabled causes the link to be reset.
      *
      * @param watchdog
      *            the watchdog to use
@@ -901,6 +1433,9 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
 
         this.watchdog = watchdog;
+        if (watchdog instanceof ThreadWatchdog) {
+            ((ThreadWatchdog) watchdog).addStallListener(stallListener);
+        }
 
         changeLinkState(LinkStates.CONNECTING);
 
@@ -925,6 +1460,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
         // RxThread manages the TxThread for us, so no need to stop it here
 
+        if (watchdog instanceof ThreadWatchdog) {
+            ((ThreadWatchdog) watchdog).removeStallListener(stallListener);
+        }
+
         changeLinkState(LinkStates.DISCONNECTED);
     }
 
@@ -964,6 +1503,76 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
     }
 
+    /**
+     * Add a frame tap. The tap will be passed every frame received or
+     * transmitted on this link; see {@link FrameTap} for the constraints on
+     * implementations.
+     *
+     * @param tap
+     *            The frame tap to add.
+     */
+    public final synchronized void addFrameTap(final FrameTap tap) {
+        FrameTap[] newTaps = new FrameTap[frameTaps.length + 1];
+        System.arraycopy(frameTaps, 0, newTaps, 0, frameTaps.length);
+        newTaps[frameTaps.length] = tap;
+        frameTaps = newTaps;
+    }
+
+    /**
+     * Remove a frame tap. Frames already being passed to the tap on another
+     * thread may still be delivered after this method returns.
+     *
+     * @param tap
+     *            The frame tap to remove.
+     */
+    public final synchronized void removeFrameTap(final FrameTap tap) {
+        for (int i = 0; i < frameTaps.length; i++) {
+            if (frameTaps[i] == tap) {
+                FrameTap[] newTaps = new FrameTap[frameTaps.length - 1];
+                System.arraycopy(frameTaps, 0, newTaps, 0, i);
+                System.arraycopy(frameTaps, i + 1, newTaps, i,
+                        newTaps.length - i);
+                frameTaps = newTaps;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pass a frame to all registered frame taps and report it to the event
+     * listener. A tap that throws is logged and otherwise ignored so that it
+     * cannot disrupt the link.
+     *
+     * @param direction
+     *            Whether the frame was received or transmitted.
+     * @param frame
+     *            The buffer holding the frame between its position and limit.
+     */
+    private void tapFrame(final FrameTap.Direction direction,
+            final ByteBuffer frame) {
+        FrameTap[] taps = frameTaps;
+        for (int i = 0; i < taps.length; i++) {
+            try {
+                taps[i].frame(direction, linkIndex, frame);
+            } catch (RuntimeException e) {
+                log.warn("Link " + linkIndex + ": frame tap " + taps[i]
+                        + " failed", e);
+            }
+        }
+
+        OCPEventListener listener = eventListener;
+        if (listener != null) {
+            try {
+                listener.frame(direction, linkIndex,
+                        frame.getShort(frame.position()
+                                + LegacyOCPMessage.OCP_CMD_CODE_OFFSET),
+                        frame.remaining());
+            } catch (RuntimeException e) {
+                eventListenerFailed(listener, e);
+            }
+        }
+    }
+
     /**
      * Register a handler for a local task ID. This handler will receive all OCP
      * call control messages for the registered task ID. Only one handler can be
@@ -984,6 +1593,12 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         synchronized (tidHandlers) {
             tidHandlers.put(tid, handler);
         }
+        CallContextStore store = callContexts;
+        if (store != null
+                && store.allocate(tid) == CallContextStore.NO_CONTEXT) {
+            log.warn("Link " + linkIndex + ": no call context available for "
+                    + "task " + tid + "; the store is full");
+        }
     }
 
     /**
@@ -995,8 +1610,44 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
      */
     @Override
     public final void deregisterTidHandler(final int tid) {
+        OCPMessageHandler removed;
+        synchronized (tidHandlers) {
+            removed = tidHandlers.remove(tid);
+        }
+        if (removed != null) {
+            recordReleased(tid);
+            releaseContext(tid);
+        }
+    }
+
+    /**
+     * Remove the handler for a local task ID because its call has moved to
+     * another link. Unlike {@link #deregisterTidHandler(int)}, the call's
+     * context is kept.
+     *
+     * @param tid
+     *            The task ID to remove the handler for.
+     */
+    final void detachTidHandler(final int tid) {
+        OCPMessageHandler removed;
+        synchronized (tidHandlers) {
+            removed = tidHandlers.remove(tid);
+        }
+        if (removed != null) {
+            recordReleased(tid);
+        }
+    }
+
+    /**
+     * Get the handler registered for a local task ID.
+     *
+     * @param tid
+     *            The task ID
+     * @return the registered handler, or null if there is none
+     */
+    final OCPMessageHandler getTidHandler(final int tid) {
         synchronized (tidHandlers) {
-            tidHandlers.remove(tid);
+            return tidHandlers.get(tid);
         }
     }
 
@@ -1027,7 +1678,9 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     }
 
     /**
-     * Queue an OCP message for transmitting to the remote unit.
+     * Queue an OCP message for transmitting to the remote unit. Ownership of
+     * the message passes to the link, which {@link LegacyOCPMessage#release()
+     * releases} it once it has been transmitted.
      *
      * @param message
      *            The OCP message to be processed by the implementation.
@@ -1037,12 +1690,172 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
     @Override
     public final void queueMessage(final OCPMessage message,
             final OCPLink callingLink) {
+        assert !((LegacyOCPMessage) message).isReleased()
+                : "Queueing a released message: " + message;
+
         // no need to synchronise as BlockingQueues are thread-safe
         try {
             stats.incrementStat(statPrefix + STAT_QUEUE);
             txMessages.put((LegacyOCPMessage) message);
-        } catch (InterruptedException e) { // CSIGNORE: EmptyBlock
+        } catch (InterruptedException e) {
+            // The message is dropped; keep the interrupt for the caller
+            stats.decrementStat(statPrefix + STAT_QUEUE);
+            ((LegacyOCPMessage) message).release();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue an OCP message for transmitting to the remote unit, returning a
+     * future that completes once the message has been written to the socket.
+     * Ownership of the message passes to the link, as for
+     * {@link #queueMessage(OCPMessage, OCPLink)}. This method never blocks.
+     * <p/>
+     * The future fails immediately if the link is not connected or the
+     * transmit queue is full, and fails as soon as the link is reset or
+     * disconnected if the message has not been completely written by then.
+     * Failed messages are removed from the transmit queue, so the caller may
+     * safely retry on another link.
+     *
+     * @param message
+     *            The OCP message to transmit.
+     * @return the future for the send
+     */
+    public final SendFuture sendAsync(final OCPMessage message) {
+        LegacyOCPMessage legacyMessage = (LegacyOCPMessage) message;
+        SendFuture future = new SendFuture(System.nanoTime());
+        if (!isConnected()) {
+            legacyMessage.release();
+            future.fail(new OCPException(this + " is not connected"));
+            return future;
+        }
+        legacyMessage.attachSendFuture(future);
+        if (!offerMessage(message)) {
+            legacyMessage.takeSendFuture();
+            legacyMessage.release();
+            future.fail(new OCPException("The transmit queue of " + this
+                    + " is full"));
+            return future;
+        }
+        if (!isConnected()) {
+            // The link was reset while the message was being queued, possibly
+            // after the reset failed the queued sends
+            failQueuedSends(this + " is not connected");
+        }
+        return future;
+    }
+
+    /**
+     * Checks whether the link is connected to the remote unit.
+     *
+     * @return true if the link is in the master, slave or loadshare state
+     */
+    private boolean isConnected() {
+        LinkStates state = linkState;
+        return state == LinkStates.MASTER || state == LinkStates.SLAVE
+                || state == LinkStates.LOADSHARE;
+    }
+
+    /**
+     * Fail every queued message that was sent with {@link #sendAsync}, removing
+     * it from the transmit queue. Messages queued without a future are left
+     * to be sent once the link reconnects.
+     *
+     * @param reason
+     *            a description of why the sends failed
+     */
+    private void failQueuedSends(final String reason) {
+        OCPException failure = null;
+        for (LegacyOCPMessage message : txMessages.removeAsyncSends()) {
+            stats.decrementStat(statPrefix + STAT_QUEUE);
+            if (failure == null) {
+                failure = new OCPException(reason);
+            }
+            SendFuture future = message.takeSendFuture();
+            message.release();
+            future.fail(failure);
+        }
+    }
+
+    /**
+     * Remove every queued setup or call message sent from one of the given
+     * task IDs, so that the calls can be moved to another link. Ownership of
+     * the removed messages passes to the caller.
+     *
+     * @param tids
+     *            the originating task IDs of the calls to remove
+     * @return the removed messages, each call's in the order they were queued
+     */
+    final List<LegacyOCPMessage> removeQueuedCalls(final Set<Integer> tids) {
+        List<LegacyOCPMessage> removed = txMessages.removeCalls(tids);
+        for (int i = 0; i < removed.size(); i++) {
+            stats.decrementStat(statPrefix + STAT_QUEUE);
+        }
+        return removed;
+    }
+
+    /**
+     * Queue an OCP message for transmitting to the remote unit without
+     * blocking. This is the same as {@link #queueMessage(OCPMessage, OCPLink)}
+     * except that if the transmit queue is full the message is not queued and
+     * ownership stays with the caller.
+     *
+     * @param message
+     *            The OCP message to transmit.
+     * @return true if the message was queued, false if the queue was full
+     */
+    public final boolean offerMessage(final OCPMessage message) {
+        assert !((LegacyOCPMessage) message).isReleased()
+                : "Queueing a released message: " + message;
+
+        if (!txMessages.offer((LegacyOCPMessage) message)) {
+            return false;
         }
+        stats.incrementStat(statPrefix + STAT_QUEUE);
+        return true;
+    }
+
+    /**
+     * Gets the number of call messages that can currently be queued for
+     * transmission without blocking. The setup and call lanes share one
+     * capacity; link control and management messages are never held back by
+     * it.
+     *
+     * @return the free space in the transmit queue
+     */
+    public final int getTransmitQueueRemainingCapacity() {
+        return txMessages.remainingCapacity();
+    }
+
+    /**
+     * Gets the depth and wait-time statistics for a transmit lane.
+     *
+     * @param lane
+     *            The lane.
+     * @return a snapshot of the lane's statistics
+     */
+    public final TransmitLaneStats getTransmitLaneStats(
+            final TransmitLane lane) {
+        return txMessages.getStats(lane);
+    }
+
+    /**
+     * Gets the histogram of the time messages spent in the transmit queue.
+     *
+     * @return the histogram
+     */
+    public final LatencyHistogram getQueueWaitHistogram() {
+        return txMessages.getWaitHistogram();
+    }
+
+    /**
+     * Gets the histogram of the time from queueing each message to finishing
+     * writing it to the transport. Heartbeats are not included.
+     *
+     * @return the histogram
+     */
+    public final LatencyHistogram getSendLatencyHistogram() {
+        return sendLatency;
     }
 
     /**
@@ -1129,6 +1942,18 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         return unitID;
     }
 
+    /**
+     * Gets the timestamp of the last {@link AreYouMasterReply} received on
+     * this link.
+     *
+     * @return the timestamp of the last reply, as returned by the
+     *         {@link #getClock() clock}'s {@link Clock#millis()}, or 0 if no
+     *         reply has been received
+     */
+    public final long lastMasterReply() {
+        return lastMasterReply;
+    }
+
     /**
      * Get the enabled status of the remote unit. A disabled unit cannot handle
      * new calls, but may be able to process OCP messages for existing calls.
@@ -1166,6 +1991,115 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         return localPort;
     }
 
+    /**
+     * Gets the factory used to create the link's transport.
+     *
+     * @return the transport factory
+     */
+    public final TransportFactory getTransportFactory() {
+        return transportFactory;
+    }
+
+    /**
+     * Sets the factory used to create the link's transport. By default links
+     * run over {@link TcpTransport TCP/IP}. The new factory is used from the
+     * next connection attempt, so this should normally be called before
+     * {@link #connect()}.
+     *
+     * @param factory
+     *            The transport factory.
+     */
+    public final void setTransportFactory(final TransportFactory factory) {
+        transportFactory = factory;
+    }
+
+    /**
+     * Gets the clock used to measure timeouts and heartbeat intervals.
+     *
+     * @return the clock
+     */
+    public final Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock used to measure timeouts and heartbeat intervals. By
+     * default this is the clock returned by {@link UtilitiesFactory#getClock()}
+     * when the link was created. The clock should only be changed while the
+     * link is disconnected. The link's threads still wait for work in real
+     * time, for up to a second, so a timeout that expires because the clock
+     * has been advanced is noticed when they next wake.
+     *
+     * @param newClock
+     *            The clock.
+     */
+    public final void setClock(final Clock newClock) {
+        if (newClock == null) {
+            throw new IllegalArgumentException("The clock cannot be null");
+        }
+        clock = newClock;
+    }
+
+    /**
+     * Gets the store of per-call state used by this link.
+     *
+     * @return the store, or null if none has been set
+     */
+    public final CallContextStore getCallContextStore() {
+        return callContexts;
+    }
+
+    /**
+     * Sets the store of per-call state. A context is allocated in the store
+     * for each task ID handler registered after this is called, and released
+     * when the handler is deregistered, swept or discarded when the link is
+     * cleaned up. The same store can be shared by several links.
+     *
+     * @param store
+     *            the store, or null to stop allocating contexts
+     */
+    public final void setCallContextStore(final CallContextStore store) {
+        callContexts = store;
+    }
+
+    /**
+     * Gets the instrumentation event listener.
+     *
+     * @return the listener, or null if none has been set
+     */
+    public final OCPEventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     * Sets the instrumentation event listener. The listener is told about the
+     * frames carried by this link, slow despatches (see the
+     * DespatchEventThreshold setting), link state changes and received call
+     * gaps; see {@link OCPEventListener} for the constraints on
+     * implementations.
+     *
+     * @param listener
+     *            the listener, or null to stop reporting events
+     */
+    public final void setEventListener(final OCPEventListener listener) {
+        eventListener = listener;
+    }
+
+    /**
+     * Log a failure of the event listener. The failure is otherwise ignored so
+     * that the listener cannot disrupt the link.
+     *
+     * @param listener
+     *            the listener that failed
+     * @param e
+     *            the exception that it threw
+     */
+    private void eventListenerFailed(final OCPEventListener listener,
+            final RuntimeException e) {
+        log.warn("Link " + linkIndex + ": event listener " + listener
+                + " failed", e);
+    }
+
     /**
      * Gets the name that will be reported to the remote unit.
      *
@@ -1184,6 +2118,15 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         return clusterID;
     }
 
+    /**
+     * Gets the index of this link.
+     *
+     * @return the link index
+     */
+    public final int getLinkIndex() {
+        return linkIndex;
+    }
+
     /**
      * Gets the number of calls in progress on this link. This is determined by
      * counting the number of registered task ID handlers.
@@ -1201,8 +2144,9 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
      * and socket events are considered for this - outgoing messages do not
      * update this timestamp.
      *
-     * @return the timestamp of the last activity, as returned by
-     *         {@link System#currentTimeMillis}
+     * @return the timestamp of the last activity, as returned by the
+     *         {@link #getClock() clock}'s {@link Clock#millis()}, or 0 if the
+     *         link is not running
      */
     public final long lastActivity() {
         if (rxThread != null) {
@@ -1217,6 +2161,84 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         return "OCPLinkManager(" + remoteAddress + ":" + remotePort + ")";
     }
 
+    /**
+     * Reports stalls of the receive and transmit threads detected by a
+     * {@link ThreadWatchdog}, and resets the link if configured to. Stalls of
+     * other threads sharing the watchdog are ignored.
+     *
+     * @author Telsis
+     */
+    private class LinkStallListener implements StallListener {
+        @Override
+        public void threadStalled(final Thread thread,
+                final long stalledMillis, final StackTraceElement[] stack) {
+            RxThread rx = rxThread;
+            TxThread tx = txThread;
+            String state;
+            if (rx != null && rx.myThread == thread) {
+                state = "RxThread in state " + rx.currentState;
+            } else if (tx != null && tx.myThread == thread) {
+                state = "TxThread in state " + tx.currentState;
+            } else {
+                return;
+            }
+
+            stats.incrementStat(statPrefix + STAT_WATCHDOG_STALL);
+            StringBuilder sb = new StringBuilder();
+            sb.append("Link ").append(linkIndex).append(": ").append(state)
+                    .append(" has not patted the watchdog for ")
+                    .append(stalledMillis).append("ms");
+            for (StackTraceElement element : stack) {
+                sb.append("\n\tat ").append(element);
+            }
+            log.error(sb);
+
+            if (watchdogReset && rx != null) {
+                log.warn("Link " + linkIndex + ": resetting the stalled link");
+                resetStalled(thread, rx);
+            }
+        }
+
+        /**
+         * Reset a link whose receive or transmit thread has stalled. Setting
+         * the reset flag alone would wait for the receive thread to next run,
+         * so the stalled thread is interrupted and the transport closed to
+         * make a blocked call fail. The flag is set last so that the receive
+         * thread clears the interrupt when it acts on it.
+         *
+         * @param thread
+         *            the stalled thread
+         * @param rx
+         *            the link's receive thread
+         */
+        private void resetStalled(final Thread thread, final RxThread rx) {
+            thread.interrupt();
+            Transport stalled = transport;
+            if (stalled != null) {
+                try {
+                    stalled.close();
+                } catch (IOException e) {
+                    log.debug("Link " + linkIndex + ": exception caught "
+                            + "while closing " + stalled, e);
+                }
+            }
+            rx.resetNeeded = true;
+        }
+
+        @Override
+        public void threadRecovered(final Thread thread,
+                final long stalledMillis) {
+            RxThread rx = rxThread;
+            TxThread tx = txThread;
+            if ((rx != null && rx.myThread == thread)
+                    || (tx != null && tx.myThread == thread)) {
+                log.warn("Link " + linkIndex + ": " + thread.getName()
+                        + " recovered after stalling for " + stalledMillis
+                        + "ms");
+            }
+        }
+    }
+
     /**
      * Receive thread for the OCP link. This thread manages the connection and
      * decodes incoming OCP messages.
@@ -1237,22 +2259,33 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          */
         private Thread         myThread;
         /**
-         * The selector for the link.
+         * The receive buffer. This is a direct buffer, so that reads from the
+         * transport are not copied through a temporary buffer.
          */
-        private Selector       socketSelector;
+        private ByteBuffer     buffer;
         /**
-         * The receive buffer.
+         * The buffer used to read single bytes while resynchronising.
          */
-        private ByteBuffer     buffer;
+        private final ByteBuffer singleByte = ByteBuffer.allocateDirect(1);
         /**
          * The timestamp of the last activity.
          */
         private long           lastActivity;
+        /**
+         * The timestamp of the last task sweep.
+         */
+        private long           lastSweep;
         /**
          * Used by TxThread to signal this thread to go directly to the RESET
-         * state (due to a connection failure).
+         * state (due to a connection failure), and by the watchdog when one of
+         * the link's threads has stalled.
          */
-        private boolean        resetNeeded;
+        private volatile boolean resetNeeded;
+        /**
+         * The result of decoding the last received message. This is re-used
+         * for every message.
+         */
+        private final DecodeResult decodeResult = new DecodeResult();
 
         /**
          * Create a new stopped RxThread.
@@ -1263,8 +2296,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             currentState = RxThreadStates.UNINITIALISED;
             shutdownThread = false;
             myThread = null;
-            socketSelector = null;
-            lastActivity = System.currentTimeMillis();
+            lastActivity = clock.millis();
             resetNeeded = false;
         }
 
@@ -1274,9 +2306,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             watchdog.start();
             myThread = Thread.currentThread();
             boolean moreToDo = false;
-            lastActivity = System.currentTimeMillis();
+            lastActivity = clock.millis();
 
-            buffer = ByteBuffer.allocate(LegacyOCPMessage.OCP_MAX_LENGTH);
+            buffer = ByteBuffer.allocateDirect(
+                    LegacyOCPMessage.OCP_MAX_LENGTH);
             buffer.order(ByteOrder.BIG_ENDIAN); // network order
 
             while (true) {
@@ -1284,21 +2317,34 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                 if (resetNeeded) {
                     log.info("RxThread: socket shutdown detected");
                     currentState = RxThreadStates.RESET;
+                    // A stall reset may have interrupted this thread
+                    Thread.interrupted();
                 }
                 moreToDo = internalRun();
 
                 if (!moreToDo) {
                     try {
-                        socketSelector.select(1 * MILLISECONDS);
-                        socketSelector.selectedKeys().clear();
+                        if (transport != null) {
+                            transport.awaitReadable(1 * MILLISECONDS);
+                        } else {
+                            Thread.sleep(1 * MILLISECONDS);
+                        }
                     } catch (IOException e) {
                         log.error("RxThread: exception while waiting on "
-                                + "selector", e);
+                                + "transport", e);
                         currentState = RxThreadStates.RESET;
+                    } catch (InterruptedException e) { // CSIGNORE: EmptyBlock
                     }
                 }
 
-                if (System.currentTimeMillis() - lastActivity > timeout) {
+                long now = clock.millis();
+                int sweepInterval = taskSweepInterval;
+                if (sweepInterval > 0 && now - lastSweep >= sweepInterval) {
+                    lastSweep = now;
+                    sweepTidHandlers();
+                }
+
+                if (now - lastActivity > timeout) {
                     // Timeout: reset state machine and try again
                     log.warn("RxThread: timeout detected while in state "
                             + currentState.name());
@@ -1335,7 +2381,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          *
          * @return true if there is more work to be done, otherwise false if the
          *         caller should sleep until activity is detected on the
-         *         socketSelector.
+         *         transport.
          */
         private boolean internalRun() {
             log.debug("RxThread: entering internalRun() in state "
@@ -1386,7 +2432,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          * @return true
          */
         private boolean handleReset() {
-            lastActivity = System.currentTimeMillis();
+            lastActivity = clock.millis();
 
             cleanup();
             buffer.clear();
@@ -1396,36 +2442,21 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
 
         /**
-         * Handle the UNCONNECTED state. This creates an outgoing TCP/IP
-         * connection.
+         * Handle the UNCONNECTED state. This creates a new transport and
+         * starts connecting it.
          *
-         * @return true if the socket is being connected, false if the
+         * @return true if the transport is being connected, false if the
          *         connection attempt failed
          */
         private boolean handleUnconnected() {
-            lastActivity = System.currentTimeMillis();
+            lastActivity = clock.millis();
 
             try {
-                channel = SocketChannel.open();
-                socket = channel.socket();
-                socket.bind(new InetSocketAddress(localAddress, localPort));
-                socket.setSoTimeout(timeout);
-                channel.configureBlocking(false);
-                while (socketSelector == null) {
-                    // Workaround for Java bug 6427854: "(se)
-                    // NullPointerException in Selector.open()" (fixed in
-                    // 7 b08).
-                    // http://bugs.sun.com/view_bug.do?bug_id=6427854
-                    try {
-                        socketSelector = Selector.open();
-                    } catch (NullPointerException e) {
-                        log.debug("RxThread: Java bug 6427854 seen");
-                    }
-                }
-                channel.register(socketSelector, SelectionKey.OP_CONNECT);
-
-                if (channel.connect(new InetSocketAddress(remoteAddress,
-                        remotePort))) {
+                transport = transportFactory.createTransport(
+                        new InetSocketAddress(localAddress, localPort),
+                        new InetSocketAddress(remoteAddress, remotePort),
+                        timeout);
+                if (transport.connect()) {
                     currentState = RxThreadStates.CONNECTED;
                 } else {
                     // Connection attempt blocked, wait for it to complete.
@@ -1454,7 +2485,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          */
         private boolean handleConnecting() {
             try {
-                if (channel.finishConnect()) {
+                if (transport.finishConnect()) {
                     currentState = RxThreadStates.CONNECTED;
                 } else {
                     // Not yet connected
@@ -1474,31 +2505,15 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
 
         /**
-         * Handle the CONNECTED state. This prepares the connected socket for
-         * reading and writing, and starts the transmit thread.
+         * Handle the CONNECTED state. This starts the transmit thread.
          *
          * @return true
          */
         private boolean handleConnected() {
-            lastActivity = System.currentTimeMillis();
-
-            try {
-                // Change our selector to watch for reads
-                socketSelector.close();
-                socketSelector = Selector.open();
-                channel.register(socketSelector, SelectionKey.OP_READ);
-            } catch (IOException e) {
-                // Couldn't change the selector. Kill the connection and try
-                // again
-                stats.incrementStat(statPrefix + STAT_CONNECTION_FAIL);
-                log.debug("RxThread: exception caught while trying to "
-                        + "connect to server", e);
-                currentState = RxThreadStates.RESET;
-                return true;
-            }
+            lastActivity = clock.millis();
 
             // Start up TX thread
-            txThread = new TxThread();
+            txThread = new TxThread(transport);
             new Thread(txThread, OCPLinkManager.this + ".TxThread").start();
 
             stats.incrementStat(statPrefix + STAT_CONNECTION_SUCCESS);
@@ -1591,8 +2606,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                     buffer.limit(buffer.position());
                     buffer.position(i - (LegacyOCPMessage.OCP_CMD_CODE_LENGTH));
                     buffer.compact();
-                    buffer.limit(len + LegacyOCPMessage.OCP_CMD_CODE_LENGTH
-                            + LegacyOCPMessage.OCP_LEN_LENGTH);
+                    buffer.flip();
                     currentState = RxThreadStates.PROCESS_MESSAGE;
                     return true;
                 }
@@ -1618,7 +2632,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             final int bytesRead;
             try {
                 expectedBytes = buffer.remaining();
-                bytesRead = channel.read(buffer);
+                bytesRead = transport.read(buffer);
                 if (bytesRead == -1) { // EOF
                     currentState = RxThreadStates.RESET;
                     return true;
@@ -1664,7 +2678,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             final int bytesRead;
             try {
                 expectedBytes = buffer.remaining();
-                bytesRead = channel.read(buffer);
+                bytesRead = transport.read(buffer);
                 if (bytesRead == -1) { // EOF
                     currentState = RxThreadStates.RESET;
                     return true;
@@ -1709,20 +2723,48 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         private boolean handleProcessMessage() {
             LegacyOCPMessage message;
 
-            lastActivity = System.currentTimeMillis();
+            lastActivity = clock.millis();
 
-            try {
-                message = LegacyOCPMessage.decodeBuffer(buffer);
+            // Decoding consumes the buffer, so tap the frame first
+            tapFrame(FrameTap.Direction.RX, buffer);
+
+            switch (LegacyOCPMessage.decodeBuffer(buffer, decodeResult)) {
+            case OK:
+                message = decodeResult.getMessage();
                 stats.incrementStat(statPrefix + STAT_MESSAGE_RX_BASE
                         + message.getClass().getSimpleName());
+                OCPEventListener listener = eventListener;
+                if (listener == null) {
+                    despatchMessage(message);
+                    break;
+                }
+                // The message may be released by despatching it
+                short commandCode = message.getCommandCode();
+                long start = System.nanoTime();
                 despatchMessage(message);
-            } catch (MessageException e) {
+                long elapsed = System.nanoTime() - start;
+                if (elapsed >= despatchThreshold) {
+                    try {
+                        listener.messageDespatched(linkIndex, commandCode,
+                                elapsed);
+                    } catch (RuntimeException e) {
+                        eventListenerFailed(listener, e);
+                    }
+                }
+                break;
+
+            case REJECTED:
                 stats.incrementStat(statPrefix + STAT_BAD_MESSAGE);
-                queueMessage(e.getErrorMessage(), null);
-            } catch (OCPException e) {
+                queueMessage(decodeResult.getErrorReply(), null);
+                break;
+
+            default:
                 stats.incrementStat(statPrefix + STAT_BAD_MESSAGE);
-                log.debug("RxThread: unexpected exception when decoding "
-                        + "message", e);
+                if (log.isDebugEnabled()) {
+                    log.debug("RxThread: unable to decode message: "
+                            + decodeResult);
+                }
+                break;
             }
 
             // Empty the buffer and set the write limit to the header length.
@@ -1733,7 +2775,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
         }
 
         /**
-         * Stop the transmit thread and close all sockets.
+         * Stop the transmit thread and close the transport.
          */
         private void cleanup() {
             // Stop TX thread if it's running
@@ -1742,39 +2784,20 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                 txThread = null;
                 resetNeeded = false;
             }
+            failQueuedSends(OCPLinkManager.this
+                    + " reset before message was sent");
 
-            // Close down socket
-            if (socketSelector != null) {
+            // Close down transport
+            if (transport != null) {
                 try {
-                    socketSelector.close();
+                    transport.close();
                 } catch (IOException e) {
                     // Treat this as a success, as we're trying to close the
-                    // socket
+                    // transport
                     log.debug("RxThread: exception caught while closing "
-                            + "selector", e);
-                }
-                socketSelector = null;
-            }
-            if (channel != null) {
-                try {
-                    channel.close();
-                } catch (IOException e) {
-                    // Treat this as a success, as we're trying to close the
-                    // socket
-                    log.debug("RxThread: exception caught while closing "
-                            + "channel", e);
-                }
-                channel = null;
-            }
-            if (socket != null) {
-                try {
-                    socket.close();
-                } catch (IOException e) {
-                    // Treat this as a success, as we're trying to close the
-                    // socket
-                    log.debug("RxThread: exception caught while closing "
-                            + "socket", e);
+                            + transport, e);
                 }
+                transport = null;
             }
         }
 
@@ -1786,8 +2809,8 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          *             if an I/O error occurs.
          */
         private int readByte() throws IOException {
-            ByteBuffer singleByte = ByteBuffer.allocate(1);
-            if (channel.read(singleByte) == 0) {
+            singleByte.clear();
+            if (transport.read(singleByte) == 0) {
                 return 0;
             } else {
                 if (!buffer.hasRemaining()) {
@@ -1823,13 +2846,19 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          */
         private Thread         myThread;
         /**
-         * The write selector for the socket.
+         * The transport to write to.
          */
-        private Selector       socketSelector;
+        private final Transport txTransport;
         /**
-         * The transmit buffer.
+         * The transmit buffer, or null if no message is being sent.
          */
         private ByteBuffer     txBuffer;
+        /**
+         * The direct buffer that messages are encoded into. Each message is
+         * written before the next is encoded, so one buffer is enough.
+         */
+        private final ByteBuffer encodeBuffer =
+                ByteBuffer.allocateDirect(LegacyOCPMessage.OCP_MAX_LENGTH);
         /**
          * A flag to detect when a heartbeat should be sent.
          */
@@ -1842,13 +2871,26 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
          * The timestamp of the last heartbeat transmitted.
          */
         private long           lastHeartbeat;
+        /**
+         * The future for the message being transmitted, if any.
+         */
+        private SendFuture     sendFuture;
+        /**
+         * The time the message being transmitted was queued, or 0 for a
+         * heartbeat.
+         */
+        private long           txQueuedAt;
 
         /**
          * Creates a new stopped TxThread.
+         *
+         * @param connectedTransport
+         *            the connected transport to write to
          */
-        public TxThread() {
+        public TxThread(final Transport connectedTransport) {
             super();
 
+            txTransport = connectedTransport;
             shutdownThread = false;
             myThread = null;
         }
@@ -1860,12 +2902,10 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             myThread = Thread.currentThread();
             boolean moreToDo = false;
 
-            lastActivity = System.currentTimeMillis();
+            lastActivity = clock.millis();
             lastHeartbeat = lastActivity;
 
             try {
-                socketSelector = Selector.open();
-                channel.register(socketSelector, SelectionKey.OP_WRITE);
                 currentState = TxThreadStates.UNINITIALISED;
 
                 while (true) {
@@ -1876,7 +2916,7 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                         break;
                     }
 
-                    long now = System.currentTimeMillis();
+                    long now = clock.millis();
                     if (now - lastActivity > inactiveHeartbeatInterval
                             || now - lastHeartbeat > fixedHeartbeatInterval) {
                         needHeartbeat = true;
@@ -1884,25 +2924,20 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                     }
 
                     if (!moreToDo) {
-                        socketSelector.select(1 * MILLISECONDS);
-                        socketSelector.selectedKeys().clear();
+                        txTransport.awaitWritable(1 * MILLISECONDS);
                     }
                 }
             } catch (IOException e) {
                 log.error("TxThread: exception in thread", e);
-            } finally {
-                try {
-                    socketSelector.close();
-                } catch (IOException e) { // CSIGNORE: EmptyBlock
-                    // The thread is exiting anyway, so no need to do anything
-                }
+                rxThread.resetNeeded = true;
             }
             watchdog.stop();
             log.debug("TxThread: thread exiting");
         }
 
         /**
-         * Shut down this thread.
+         * Shut down this thread. If a message sent with {@link #sendAsync}
+         * was being written, its future is failed.
          */
         public void shutdownThread() {
             shutdownThread = true;
@@ -1914,13 +2949,18 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                     }
                 }
             }
+            if (sendFuture != null) {
+                sendFuture.fail(new OCPException(OCPLinkManager.this
+                        + " reset while writing message"));
+                sendFuture = null;
+            }
         }
 
         /**
          * Internal state machine.
          *
          * @return true if there is more work to do, otherwise false if the
-         *         caller should sleep on the socketSelector.
+         *         caller should wait on the transport.
          */
         private boolean internalRun() {
             log.debug("TxThread: entering internalRun() in state "
@@ -1929,9 +2969,9 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
             switch (currentState) {
             case SENDING_MESSAGE:
                 // Transmit the current message
-                lastActivity = System.currentTimeMillis();
+                lastActivity = clock.millis();
                 try {
-                    channel.write(txBuffer);
+                    txTransport.write(txBuffer);
                 } catch (IOException e) {
                     // The most likely cause is connection failure, so shutdown
                     // this thread and tell RxThread to reconnect.
@@ -1949,6 +2989,13 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
                 } else {
                     // We've sent the message, so go and get the next one
                     txBuffer = null;
+                    if (txQueuedAt != 0) {
+                        sendLatency.record(System.nanoTime() - txQueuedAt);
+                    }
+                    if (sendFuture != null) {
+                        sendFuture.complete(System.nanoTime());
+                        sendFuture = null;
+                    }
                     currentState = TxThreadStates.GET_NEXT_MESSAGE;
                     return true;
                 }
@@ -1978,17 +3025,34 @@ public class OCPLinkManager implements OCPMessageHandler, OCPLink {
 
                 log.debug("Transmitting " + message.getClass().getName() + ": "
                         + message);
-                txBuffer = LegacyOCPMessage.encodeMessage(message);
+                txBuffer = LegacyOCPMessage.encodeMessage(message,
+                        encodeBuffer);
+                txQueuedAt = message.getQueuedAt();
+                sendFuture = message.takeSendFuture();
+                message.release();
+                tapFrame(FrameTap.Direction.TX, txBuffer);
                 currentState = TxThreadStates.SENDING_MESSAGE;
                 return true;
 
             case GENERATE_HEARTBEAT:
                 // Preempt the transmit queue with a heartbeat message
-                lastHeartbeat = System.currentTimeMillis();
+                lastHeartbeat = clock.millis();
                 lastActivity = lastHeartbeat;
                 needHeartbeat = false;
                 stats.incrementStat(statPrefix + STAT_OUTGOING_HEARTBEAT);
-                txBuffer = LegacyOCPMessage.encodeMessage(new Heartbeat());
+                OCPMessagePool<Heartbeat> pool =
+                        OCPMessagePool.getPool(Heartbeat.class);
+                Heartbeat heartbeat;
+                if (pool != null) {
+                    heartbeat = pool.acquire();
+                } else {
+                    heartbeat = new Heartbeat();
+                }
+                txBuffer = LegacyOCPMessage.encodeMessage(heartbeat,
+                        encodeBuffer);
+                txQueuedAt = 0;
+                heartbeat.release();
+                tapFrame(FrameTap.Direction.TX, txBuffer);
                 currentState = TxThreadStates.SENDING_MESSAGE;
                 return true;
 
@@ -38,6 +38,10 @@ public interface OCPMessageHandler {
      * reference to itself as an {@link OCPLink} as the callingLink parameter.
      * <p/>
      * Implementations may block if congested.
+     * <p/>
+     * Ownership of the message passes to the implementation. If the message
+     * was acquired from an {@link OCPMessagePool}, the implementation should
+     * call {@link LegacyOCPMessage#release()} once it has finished with it.
      *
      * @param message
      *            The OCP message to be processed by the implementation.
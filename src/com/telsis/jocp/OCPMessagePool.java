@@ -0,0 +1,265 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of recyclable OCP messages of a single type.
+ * <p/>
+ * Pooling is opt-in, and is only supported for the high-volume message types
+ * {@link com.telsis.jocp.messages.InitialDP InitialDP},
+ * {@link com.telsis.jocp.messages.DeliverTo DeliverTo},
+ * {@link com.telsis.jocp.messages.AnswerCall AnswerCall},
+ * {@link com.telsis.jocp.messages.CallCleardown CallCleardown},
+ * {@link com.telsis.jocp.messages.TelsisHandler TelsisHandler},
+ * {@link com.telsis.jocp.messages.TelsisHandlerResult TelsisHandlerResult},
+ * {@link com.telsis.jocp.messages.TaskActive TaskActive},
+ * {@link com.telsis.jocp.messages.TaskActiveResult TaskActiveResult},
+ * {@link com.telsis.jocp.messages.Heartbeat Heartbeat} and
+ * {@link com.telsis.jocp.messages.StatusResponse StatusResponse}. Once a pool
+ * has been {@link #enable enabled} for a type:
+ * <ul>
+ * <li>Messages of that type received from a link are decoded into recycled
+ * instances. The handler that the message is passed to becomes its owner, and
+ * should call {@link LegacyOCPMessage#release()} once it has finished with
+ * it.</li>
+ * <li>Messages of that type can be obtained for sending with
+ * {@link #acquire()}. Passing the message to
+ * {@link OCPMessageHandler#queueMessage} transfers ownership to the link,
+ * which releases it once it has been encoded.</li>
+ * </ul>
+ * A message that is never released simply becomes garbage, so handlers that
+ * are not pool-aware continue to work unchanged. If the pool is empty, a new
+ * instance is created; if the pool is full, released instances are
+ * discarded.
+ * <p/>
+ * When assertions are enabled, releasing a message twice, or encoding or
+ * queueing a message after it has been released, results in an
+ * {@link AssertionError}.
+ *
+ * @param <T>
+ *            the message class held in this pool
+ * @author Telsis
+ */
+public final class OCPMessagePool<T extends LegacyOCPMessage> {
+    /** The message types that support pooling. */
+    private static final EnumSet<LegacyOCPMessageTypes> POOLABLE_TYPES =
+            EnumSet.of(LegacyOCPMessageTypes.INITIAL_DP,
+                    LegacyOCPMessageTypes.DELIVER_TO,
+                    LegacyOCPMessageTypes.ANSWER_CALL,
+                    LegacyOCPMessageTypes.CALL_CLEARDOWN,
+                    LegacyOCPMessageTypes.TELSIS_HANDLER,
+                    LegacyOCPMessageTypes.TELSIS_HANDLER_RESULT,
+                    LegacyOCPMessageTypes.TASK_ACTIVE,
+                    LegacyOCPMessageTypes.TASK_ACTIVE_RESULT,
+                    LegacyOCPMessageTypes.HEARTBEAT,
+                    LegacyOCPMessageTypes.STATUS_RESPONSE);
+
+    /** All enabled pools, keyed by message class. */
+    private static final ConcurrentHashMap<Class<?>, OCPMessagePool<?>> POOLS =
+            new ConcurrentHashMap<Class<?>, OCPMessagePool<?>>();
+
+    /** The constructor used to create new instances. */
+    private final Constructor<T> constructor;
+    /** The released instances that are available for re-use. */
+    private final ArrayBlockingQueue<T> available;
+    /** The maximum number of released instances held by this pool. */
+    private final int capacity;
+
+    /**
+     * Create a new pool.
+     *
+     * @param implementation
+     *            the message class held in this pool
+     * @param newCapacity
+     *            the maximum number of released instances to hold
+     */
+    private OCPMessagePool(final Class<T> implementation,
+            final int newCapacity) {
+        try {
+            this.constructor = implementation.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(implementation.getSimpleName()
+                    + " does not have a public no-argument constructor", e);
+        }
+        this.capacity = newCapacity;
+        this.available = new ArrayBlockingQueue<T>(newCapacity);
+    }
+
+    /**
+     * Enable pooling for a message type. If pooling is already enabled for the
+     * type then the existing pool is returned.
+     *
+     * @param <T>
+     *            the message class
+     * @param implementation
+     *            the message class to pool
+     * @param capacity
+     *            the maximum number of released instances to hold
+     * @return the pool for the message class
+     * @throws IllegalArgumentException
+     *             if the message class does not support pooling, or the
+     *             capacity is less than 1
+     */
+    public static <T extends LegacyOCPMessage> OCPMessagePool<T> enable(
+            final Class<T> implementation, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The pool capacity must be at "
+                    + "least 1");
+        }
+
+        boolean poolable = false;
+        for (LegacyOCPMessageTypes type : POOLABLE_TYPES) {
+            if (type.getImplementation() == implementation) {
+                poolable = true;
+                break;
+            }
+        }
+        if (!poolable) {
+            throw new IllegalArgumentException(implementation.getSimpleName()
+                    + " does not support pooling");
+        }
+
+        POOLS.putIfAbsent(implementation,
+                new OCPMessagePool<T>(implementation, capacity));
+        return getPool(implementation);
+    }
+
+    /**
+     * Disable pooling for a message type. Messages that have already been
+     * acquired from the pool may still be released safely.
+     *
+     * @param implementation
+     *            the message class
+     */
+    public static void disable(
+            final Class<? extends LegacyOCPMessage> implementation) {
+        POOLS.remove(implementation);
+    }
+
+    /**
+     * Gets the pool for a message type.
+     *
+     * @param <T>
+     *            the message class
+     * @param implementation
+     *            the message class
+     * @return the pool, or null if pooling is not enabled for the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends LegacyOCPMessage> OCPMessagePool<T> getPool(
+            final Class<T> implementation) {
+        return (OCPMessagePool<T>) POOLS.get(implementation);
+    }
+
+    /**
+     * Acquire a message from this pool. The message is in the same state as a
+     * newly created instance, and the caller becomes its owner.
+     *
+     * @return the message
+     */
+    public T acquire() {
+        T message = available.poll();
+        if (message == null) {
+            message = create();
+        }
+        message.attach(this);
+        return message;
+    }
+
+    /**
+     * Decode a binary OCP message into a message acquired from this pool.
+     *
+     * @param buffer
+     *            the buffer to decode
+     * @return the decoded message
+     * @throws OCPException
+     *             if the message could not be decoded
+     */
+    T decode(final ByteBuffer buffer) throws OCPException {
+        T message = acquire();
+        try {
+            message.decode(buffer);
+            return message;
+        } catch (OCPException e) {
+            recycle(message);
+            throw e;
+        } catch (RuntimeException e) {
+            recycle(message);
+            throw new OCPException(e);
+        }
+    }
+
+    /**
+     * Return a message to this pool. This is called by
+     * {@link LegacyOCPMessage#release()}.
+     *
+     * @param message
+     *            the message to return
+     */
+    @SuppressWarnings("unchecked")
+    void recycle(final LegacyOCPMessage message) {
+        assert !message.isReleased() : "Message released twice: " + message;
+
+        message.reset();
+        message.markReleased();
+        available.offer((T) message); // Discarded if the pool is full
+    }
+
+    /**
+     * Gets the maximum number of released instances held by this pool.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of released instances currently available for re-use.
+     *
+     * @return the number of available instances
+     */
+    public int getAvailable() {
+        return available.size();
+    }
+
+    /**
+     * Create a new instance of the pooled message class.
+     *
+     * @return the new instance
+     */
+    private T create() {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create "
+                    + constructor.getDeclaringClass().getSimpleName(), e);
+        }
+    }
+}
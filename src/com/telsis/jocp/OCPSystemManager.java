@@ -22,31 +22,51 @@
  */
 package com.telsis.jocp;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import com.telsis.jocp.OCPLinkManager.LinkStates;
 import com.telsis.jocp.OCPLinkManager.OCPLinkStateHandler;
+import com.telsis.jocp.context.CallContextStore;
+import com.telsis.jocp.messages.AreYouMaster;
 import com.telsis.jocp.messages.BecomeMaster;
 import com.telsis.jocp.messages.CallGap;
+import com.telsis.jocp.messages.InitialDP;
+import com.telsis.jocp.metrics.MetricsExporter;
+import com.telsis.jocp.recorder.FlightRecorder;
+import com.telsis.jocp.recorder.TrafficCapture;
 import com.telsis.jutils.UtilitiesFactory;
+import com.telsis.jutils.clock.Clock;
 import com.telsis.jutils.enums.ActiveStates;
 import com.telsis.jutils.enums.CongestionType;
 import com.telsis.jutils.interfaces.AlarmInterface;
 import com.telsis.jutils.interfaces.ServerEventNotifier;
 import com.telsis.jutils.watchdog.GenericWatchdog;
 import com.telsis.jutils.watchdog.NullGenericWatchdog;
+import com.telsis.jutils.watchdog.StallListener;
+import com.telsis.jutils.watchdog.ThreadWatchdog;
 
 /**
  * This class manages a set of OCP links.
@@ -75,6 +95,56 @@ import com.telsis.jutils.watchdog.NullGenericWatchdog;
  * <td>1-43200</td>
  * </tr>
  * <tr>
+ * <td>ocpSystemMasterProbeInterval</td>
+ * <td>If non-zero, active failover is enabled for master/slave systems: an
+ * {@link AreYouMaster} probe is sent on every master/slave link at this
+ * interval, and a master that stops answering is replaced by promoting a slave
+ * within about a second rather than after the master/slave swap timeout.</td>
+ * <td>Number (milliseconds)</td>
+ * <td>0 (disabled)</td>
+ * <td>0-10000</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemMasterProbeFailures</td>
+ * <td>The number of consecutive unanswered probes after which a link is
+ * treated as failed when active failover is enabled.</td>
+ * <td>Number</td>
+ * <td>3</td>
+ * <td>1-100</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemSetupReplayLimit</td>
+ * <td>If non-zero, call setups ({@link InitialDP} and
+ * {@link com.telsis.jocp.messages.InitialDPServiceKey InitialDPServiceKey})
+ * that have not been answered when their link fails are sent again on another
+ * link, followed by any later messages for the call still waiting to be
+ * sent. This is the most setups that will be replayed for each link failure;
+ * any others are left to the application's own timers.</td>
+ * <td>Number</td>
+ * <td>0 (disabled)</td>
+ * <td>0-10000</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemSetupReplayMaxAge</td>
+ * <td>Unanswered call setups older than this are not replayed when their link
+ * fails.</td>
+ * <td>Number (milliseconds)</td>
+ * <td>4000</td>
+ * <td>100-60000</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemReconfigureDrainTimeout</td>
+ * <td>If non-zero, a link whose address or port is changed by a configuration
+ * reload is not restarted. Instead a replacement link is brought up alongside
+ * it, new calls move to the replacement once it is in service, and the old
+ * link is closed when its last call ends or this timeout expires, whichever is
+ * sooner. Links removed from the configuration are drained the same way. If
+ * zero, such links are restarted immediately and their calls are lost.</td>
+ * <td>Number (seconds)</td>
+ * <td>0 (disabled)</td>
+ * <td>0-3600</td>
+ * </tr>
+ * <tr>
  * <td>ocpSystemSuspectTimeout</td>
  * <td>If no data is received from the remote unit for this period, then the
  * link is considered to be suspect and will have a lower priority for
@@ -84,12 +154,66 @@ import com.telsis.jutils.watchdog.NullGenericWatchdog;
  * <td>1-43200</td>
  * </tr>
  * <tr>
+ * <td>ocpSystemWatchdogTimeout</td>
+ * <td>If non-zero and {@link #connect()} is called without a watchdog, the
+ * system and link threads are watched by a {@link ThreadWatchdog}. A thread
+ * that goes this long without patting it has its stack logged and raises the
+ * OCPThreadStalled alarm until it recovers. The threads wait up to a second
+ * for work between pats, so this should be several seconds. Takes effect on
+ * the next connect. 0 disables the watchdog.</td>
+ * <td>Number (seconds)</td>
+ * <td>0</td>
+ * <td>0-3600</td>
+ * </tr>
+ * <tr>
  * <td>ocpSystemLoggingLevel</td>
  * <td>The level of detail that is to be included in logs.</td>
  * <td>Log4j constant</td>
  * <td>WARN</td>
  * <td>&nbsp;</td>
  * </tr>
+ * <tr>
+ * <td>ocpSystemFlightRecorderFile</td>
+ * <td>If set, every frame sent or received on any link is recorded to a
+ * memory-mapped ring in this file. See
+ * {@link com.telsis.jocp.recorder.FlightRecorder}.</td>
+ * <td>File name</td>
+ * <td>(disabled)</td>
+ * <td>&nbsp;</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemFlightRecorderSize</td>
+ * <td>The size of the flight recorder ring.</td>
+ * <td>Number (kilobytes)</td>
+ * <td>4096</td>
+ * <td>64-1048576</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemTrafficCaptureFile</td>
+ * <td>If set, every frame sent or received on any link is appended, with its
+ * timing, to this file for later replay. The file is truncated when capture
+ * starts. See {@link com.telsis.jocp.recorder.TrafficCapture}.</td>
+ * <td>File name</td>
+ * <td>(disabled)</td>
+ * <td>&nbsp;</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemMetricsPort</td>
+ * <td>If non-zero, the state of the system, its links and alarms and all
+ * statistics are served on this TCP port in the OpenMetrics text format. See
+ * {@link MetricsExporter}.</td>
+ * <td>Number</td>
+ * <td>0 (disabled)</td>
+ * <td>0-65535</td>
+ * </tr>
+ * <tr>
+ * <td>ocpSystemMetricsInterval</td>
+ * <td>How often the metrics page is rendered. Scrapes are answered with the
+ * most recently rendered page.</td>
+ * <td>Number (milliseconds)</td>
+ * <td>1000</td>
+ * <td>100-60000</td>
+ * </tr>
  * </table>
  *
  * @see OCPLinkManager
@@ -155,6 +279,11 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     // Internal constants
     /** Conversion between seconds and milliseconds. */
     private static final int    MILLISECONDS                 = 1000;
+    /**
+     * The longest time in milliseconds that the system thread waits for an
+     * event before patting the watchdog.
+     */
+    private static final int    MAX_EVENT_WAIT               = 1000;
 
     // Configuration defaults
     /** The number of links. */
@@ -175,6 +304,51 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     private static final int    CONFIG_MASTER_SLAVE_SWAP_MIN = 1;
     /** The maximum value for master/slave swap timeout. */
     private static final int    CONFIG_MASTER_SLAVE_SWAP_MAX = 43200;
+    /** The master probe interval. */
+    private static final String CONFIG_PROBE_INTERVAL
+            = "ocpSystemMasterProbeInterval";
+    /** The default value for the master probe interval (disabled). */
+    private static final String CONFIG_PROBE_INTERVAL_DEF    = "0";
+    /** The minimum value for the master probe interval. */
+    private static final int    CONFIG_PROBE_INTERVAL_MIN    = 0;
+    /** The maximum value for the master probe interval. */
+    private static final int    CONFIG_PROBE_INTERVAL_MAX    = 10000;
+    /** The number of unanswered probes before a link is failed. */
+    private static final String CONFIG_PROBE_FAILURES
+            = "ocpSystemMasterProbeFailures";
+    /** The default value for the number of unanswered probes. */
+    private static final String CONFIG_PROBE_FAILURES_DEF    = "3";
+    /** The minimum value for the number of unanswered probes. */
+    private static final int    CONFIG_PROBE_FAILURES_MIN    = 1;
+    /** The maximum value for the number of unanswered probes. */
+    private static final int    CONFIG_PROBE_FAILURES_MAX    = 100;
+    /** The number of call setups replayed per link failure. */
+    private static final String CONFIG_REPLAY_LIMIT
+            = "ocpSystemSetupReplayLimit";
+    /** The default value for the replay limit (disabled). */
+    private static final String CONFIG_REPLAY_LIMIT_DEF      = "0";
+    /** The minimum value for the replay limit. */
+    private static final int    CONFIG_REPLAY_LIMIT_MIN      = 0;
+    /** The maximum value for the replay limit. */
+    private static final int    CONFIG_REPLAY_LIMIT_MAX      = 10000;
+    /** The age of the oldest call setup that is replayed. */
+    private static final String CONFIG_REPLAY_MAX_AGE
+            = "ocpSystemSetupReplayMaxAge";
+    /** The default value for the maximum replay age. */
+    private static final String CONFIG_REPLAY_MAX_AGE_DEF    = "4000";
+    /** The minimum value for the maximum replay age. */
+    private static final int    CONFIG_REPLAY_MAX_AGE_MIN    = 100;
+    /** The maximum value for the maximum replay age. */
+    private static final int    CONFIG_REPLAY_MAX_AGE_MAX    = 60000;
+    /** The reconfiguration drain timeout. */
+    private static final String CONFIG_DRAIN_TIMEOUT
+            = "ocpSystemReconfigureDrainTimeout";
+    /** The default value for the drain timeout (disabled). */
+    private static final String CONFIG_DRAIN_TIMEOUT_DEF     = "0";
+    /** The minimum value for the drain timeout. */
+    private static final int    CONFIG_DRAIN_TIMEOUT_MIN     = 0;
+    /** The maximum value for the drain timeout. */
+    private static final int    CONFIG_DRAIN_TIMEOUT_MAX     = 3600;
     /** The suspect link timeout. */
     private static final String CONFIG_SUSPECT_TIMEOUT
             = "ocpSystemSuspectTimeout";
@@ -184,11 +358,59 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     private static final int    CONFIG_SUSPECT_TIMEOUT_MIN   = 1;
     /** The maximum value for suspect link timeout. */
     private static final int    CONFIG_SUSPECT_TIMEOUT_MAX   = 3600;
+    /** The watchdog timeout. */
+    private static final String CONFIG_WATCHDOG_TIMEOUT
+            = "ocpSystemWatchdogTimeout";
+    /** The default value for the watchdog timeout. */
+    private static final String CONFIG_WATCHDOG_TIMEOUT_DEF  = "0";
+    /** The minimum value for the watchdog timeout. */
+    private static final int    CONFIG_WATCHDOG_TIMEOUT_MIN  = 0;
+    /** The maximum value for the watchdog timeout. */
+    private static final int    CONFIG_WATCHDOG_TIMEOUT_MAX  = 3600;
     /** The logging level. */
     private static final String CONFIG_LOGGING_LEVEL
             = "ocpSystemLoggingLevel";
     /** The default value for the logging level. */
     private static final String CONFIG_LOGGING_LEVEL_DEF     = "WARN";
+    /** The flight recorder file. */
+    private static final String CONFIG_RECORDER_FILE
+            = "ocpSystemFlightRecorderFile";
+    /** The default value for the flight recorder file (disabled). */
+    private static final String CONFIG_RECORDER_FILE_DEF     = "";
+    /** The flight recorder ring size in kilobytes. */
+    private static final String CONFIG_RECORDER_SIZE
+            = "ocpSystemFlightRecorderSize";
+    /** The default value for the flight recorder ring size. */
+    private static final String CONFIG_RECORDER_SIZE_DEF     = "4096";
+    /** The minimum value for the flight recorder ring size. */
+    private static final int    CONFIG_RECORDER_SIZE_MIN     = 64;
+    /** The maximum value for the flight recorder ring size. */
+    private static final int    CONFIG_RECORDER_SIZE_MAX     = 1048576;
+    /** The traffic capture file. */
+    private static final String CONFIG_CAPTURE_FILE
+            = "ocpSystemTrafficCaptureFile";
+    /** The default value for the traffic capture file (disabled). */
+    private static final String CONFIG_CAPTURE_FILE_DEF      = "";
+    /** The metrics port. */
+    private static final String CONFIG_METRICS_PORT
+            = "ocpSystemMetricsPort";
+    /** The default value for the metrics port (disabled). */
+    private static final String CONFIG_METRICS_PORT_DEF      = "0";
+    /** The minimum value for the metrics port. */
+    private static final int    CONFIG_METRICS_PORT_MIN      = 0;
+    /** The maximum value for the metrics port. */
+    private static final int    CONFIG_METRICS_PORT_MAX      = 65535;
+    /** The metrics render interval. */
+    private static final String CONFIG_METRICS_INTERVAL
+            = "ocpSystemMetricsInterval";
+    /** The default value for the metrics render interval. */
+    private static final String CONFIG_METRICS_INTERVAL_DEF  = "1000";
+    /** The minimum value for the metrics render interval. */
+    private static final int    CONFIG_METRICS_INTERVAL_MIN  = 100;
+    /** The maximum value for the metrics render interval. */
+    private static final int    CONFIG_METRICS_INTERVAL_MAX  = 60000;
+    /** Conversion between kilobytes and bytes. */
+    private static final int    KILOBYTES                    = 1024;
     /** Base alarm code for OCP client alarms. */
     private static final int    ALARM_ID_BASE = 200;
     /** The name of alarm "Configured OCP link not available". */
@@ -203,6 +425,12 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     private static final int    ALARM_CANNOT_TAKE_CALLS_ID = ALARM_ID_BASE + 1;
     /** Alarm severity for "OCP Module cannot take calls". */
     private static final int    ALARM_CANNOT_TAKE_CALLS_SEV = 3;
+    /** The name of alarm "OCP thread stalled". */
+    private static final String ALARM_THREAD_STALLED = "OCPThreadStalled";
+    /** Alarm ID for "OCP thread stalled". */
+    private static final int    ALARM_THREAD_STALLED_ID = ALARM_ID_BASE + 2;
+    /** Alarm severity for "OCP thread stalled". */
+    private static final int    ALARM_THREAD_STALLED_SEV = 2;
 
     // Configuration
     /** The properties object. */
@@ -211,21 +439,78 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     private int        masterSlaveSwapTimeout;
     /** The link suspect timeout in milliseconds. */
     private int        linkSuspectTimeout;
+    /** The watchdog timeout in seconds, or 0 if disabled. */
+    private int        watchdogTimeout;
+    /**
+     * The master probe interval in milliseconds, or 0 if active failover is
+     * disabled.
+     */
+    private int        probeInterval;
+    /** The number of unanswered probes before a link is failed. */
+    private int        probeFailures;
+    /**
+     * The number of call setups replayed per link failure, or 0 if call setups
+     * are not tracked.
+     */
+    private volatile int setupReplayLimit;
+    /** The age in milliseconds of the oldest call setup that is replayed. */
+    private int        setupReplayMaxAge;
+    /**
+     * The reconfiguration drain timeout in milliseconds, or 0 if reconfigured
+     * links are restarted immediately.
+     */
+    private int        drainTimeout;
 
     /** An array of the links. */
     private CopyOnWriteArrayList<Link> links;
-    /** The system state. */
+    /**
+     * Links that have been replaced or removed by a reconfiguration, and that
+     * are kept open until their remaining calls end.
+     */
+    private final CopyOnWriteArrayList<Link> drainingLinks =
+            new CopyOnWriteArrayList<Link>();
+    /** The system state. Only used by the system thread. */
     private SystemState     state = SystemState.STOPPED;
-    /** The preferred link. */
+    /** The preferred link. Only used by the system thread. */
     private Link            preferredLink;
     /** The system thread. */
     private SystemThread    sysThread;
+    /** The last snapshot published by the system thread. */
+    private volatile Snapshot snapshot = new Snapshot(SystemState.STOPPED,
+            null, Collections.<LinkStatus>emptyList());
+    /**
+     * The links that replayed call setups were moved to, by task ID. Messages
+     * and deregistrations for these task IDs are redirected to the new link.
+     */
+    private final ConcurrentHashMap<Integer, Link> replayedCalls =
+            new ConcurrentHashMap<Integer, Link>();
+    /** Link events waiting to be applied by the system thread. */
+    private final LinkedBlockingQueue<SystemEvent> events =
+            new LinkedBlockingQueue<SystemEvent>();
+    /** The clock used for gapping windows and timeouts. */
+    private volatile Clock  clock = UtilitiesFactory.getClock();
+    /** The store of per-call state shared by all links, or null if none. */
+    private volatile CallContextStore callContexts;
+    /** The instrumentation event listener, or null if none is set. */
+    private volatile OCPEventListener eventListener;
     /** The timestamp of when the MISSING_MASTER state was entered. */
     private long            missingMasterStart;
+    /** The timestamp of the last promotion made by active failover. */
+    private long            promotionSent;
     /** True if the gapping alarm is currently active. */
     private boolean         gappingAlarmActive = false;
     /** The watchdog to use. */
     private GenericWatchdog watchdog;
+    /** The watchdog created by {@link #connect()}, or null. */
+    private ThreadWatchdog  ownWatchdog;
+    /** Raises and clears the stall alarm for threads the watchdog reports. */
+    private final StallListener stallListener = new SystemStallListener();
+    /** The flight recorder shared by all links, or null if disabled. */
+    private FlightRecorder  flightRecorder;
+    /** The traffic capture shared by all links, or null if disabled. */
+    private TrafficCapture  trafficCapture;
+    /** The metrics exporter, or null if disabled. */
+    private MetricsExporter metricsExporter;
 
     /** The logger for this class. */
     private static Logger log = Logger.getLogger("ocpSystemManager");
@@ -239,6 +524,8 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
                 ALARM_LINK_NOT_AVAILABLE_ID, ALARM_LINK_NOT_AVAILABLE_SEV);
         alarms.registerAlarm(ALARM_CANNOT_TAKE_CALLS, OCPSystemManager.class,
                 ALARM_CANNOT_TAKE_CALLS_ID, ALARM_CANNOT_TAKE_CALLS_SEV);
+        alarms.registerAlarm(ALARM_THREAD_STALLED, OCPSystemManager.class,
+                ALARM_THREAD_STALLED_ID, ALARM_THREAD_STALLED_SEV);
     }
 
     /**
@@ -316,6 +603,57 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         }
         masterSlaveSwapTimeout *= MILLISECONDS;
 
+        probeInterval = Integer.parseInt(prop.getProperty(
+                CONFIG_PROBE_INTERVAL, CONFIG_PROBE_INTERVAL_DEF));
+        if (probeInterval < CONFIG_PROBE_INTERVAL_MIN
+                || probeInterval > CONFIG_PROBE_INTERVAL_MAX) {
+            throw new IllegalArgumentException(
+                    "The master probe interval is outside the valid range "
+                    + "of " + CONFIG_PROBE_INTERVAL_MIN + " to "
+                    + CONFIG_PROBE_INTERVAL_MAX);
+        }
+
+        setupReplayLimit = Integer.parseInt(prop.getProperty(
+                CONFIG_REPLAY_LIMIT, CONFIG_REPLAY_LIMIT_DEF));
+        if (setupReplayLimit < CONFIG_REPLAY_LIMIT_MIN
+                || setupReplayLimit > CONFIG_REPLAY_LIMIT_MAX) {
+            throw new IllegalArgumentException(
+                    "The setup replay limit is outside the valid range of "
+                    + CONFIG_REPLAY_LIMIT_MIN + " to "
+                    + CONFIG_REPLAY_LIMIT_MAX);
+        }
+
+        setupReplayMaxAge = Integer.parseInt(prop.getProperty(
+                CONFIG_REPLAY_MAX_AGE, CONFIG_REPLAY_MAX_AGE_DEF));
+        if (setupReplayMaxAge < CONFIG_REPLAY_MAX_AGE_MIN
+                || setupReplayMaxAge > CONFIG_REPLAY_MAX_AGE_MAX) {
+            throw new IllegalArgumentException(
+                    "The setup replay maximum age is outside the valid range "
+                    + "of " + CONFIG_REPLAY_MAX_AGE_MIN + " to "
+                    + CONFIG_REPLAY_MAX_AGE_MAX);
+        }
+
+        probeFailures = Integer.parseInt(prop.getProperty(
+                CONFIG_PROBE_FAILURES, CONFIG_PROBE_FAILURES_DEF));
+        if (probeFailures < CONFIG_PROBE_FAILURES_MIN
+                || probeFailures > CONFIG_PROBE_FAILURES_MAX) {
+            throw new IllegalArgumentException(
+                    "The number of master probe failures is outside the valid "
+                    + "range of " + CONFIG_PROBE_FAILURES_MIN + " to "
+                    + CONFIG_PROBE_FAILURES_MAX);
+        }
+
+        drainTimeout = Integer.parseInt(prop.getProperty(
+                CONFIG_DRAIN_TIMEOUT, CONFIG_DRAIN_TIMEOUT_DEF));
+        if (drainTimeout < CONFIG_DRAIN_TIMEOUT_MIN
+                || drainTimeout > CONFIG_DRAIN_TIMEOUT_MAX) {
+            throw new IllegalArgumentException(
+                    "The reconfiguration drain timeout is outside the valid "
+                    + "range of " + CONFIG_DRAIN_TIMEOUT_MIN + " to "
+                    + CONFIG_DRAIN_TIMEOUT_MAX);
+        }
+        drainTimeout *= MILLISECONDS;
+
         linkSuspectTimeout = Integer.parseInt(prop.getProperty(
                 CONFIG_SUSPECT_TIMEOUT, CONFIG_SUSPECT_TIMEOUT_DEF));
         if (linkSuspectTimeout < CONFIG_SUSPECT_TIMEOUT_MIN
@@ -327,14 +665,36 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         }
         linkSuspectTimeout *= MILLISECONDS;
 
+        watchdogTimeout = Integer.parseInt(prop.getProperty(
+                CONFIG_WATCHDOG_TIMEOUT, CONFIG_WATCHDOG_TIMEOUT_DEF));
+        if (watchdogTimeout < CONFIG_WATCHDOG_TIMEOUT_MIN
+                || watchdogTimeout > CONFIG_WATCHDOG_TIMEOUT_MAX) {
+            throw new IllegalArgumentException(
+                    "The watchdog timeout is outside the valid range of "
+                    + CONFIG_WATCHDOG_TIMEOUT_MIN + " to "
+                    + CONFIG_WATCHDOG_TIMEOUT_MAX);
+        }
+
         log.setLevel(Level.toLevel(prop.getProperty(
                 CONFIG_LOGGING_LEVEL,
                 CONFIG_LOGGING_LEVEL_DEF)));
 
+        configureFlightRecorder();
+        configureTrafficCapture();
+        configureMetrics();
+
+        boolean drain = drainTimeout > 0
+                && snapshot.state != SystemState.STOPPED;
+
         // If the new configuration has fewer links, remove the old ones
         for (int i = links.size() - 1; i >= numLinks; i--) {
             Link link = links.remove(i);
-            link.cleanup();
+            link.discardReplacement();
+            if (drain) {
+                startDraining(link);
+            } else {
+                link.cleanup();
+            }
         }
 
         // Update any links present in both old and new configuration
@@ -342,27 +702,300 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
             Link link = links.get(i);
             if (link.reloadConfiguration(prop)) {
                 // Significant configuration change (i.e. IP address or
-                // similar), so drop and recreate link
-                link.cleanup();
-
-                link = new Link(prop, i);
-                if (state != SystemState.STOPPED) {
-                    link.linkManager.connect(watchdog);
+                // similar), so replace the link. The old link keeps its
+                // endpoint, so compare with any replacement already coming up.
+                if (link.replacement != null
+                        && !link.replacement.reloadConfiguration(prop)) {
+                    continue;
+                }
+                link.discardReplacement();
+                Link replacement = new Link(prop, i);
+                if (snapshot.state != SystemState.STOPPED) {
+                    replacement.linkManager.connect(watchdog);
+                }
+                if (drain) {
+                    // Keep the old link in service until the replacement is
+                    // ready; see completeReconfiguration()
+                    link.replacement = replacement;
+                } else {
+                    link.cleanup();
+                    links.set(i, replacement);
                 }
-                links.set(i, link);
+            } else if (link.replacement != null) {
+                // Changed back, so the old link no longer needs replacing
+                link.discardReplacement();
             }
         }
 
         // If the new configuration has more links, add the new ones
         for (int i = links.size(); i < numLinks; i++) {
             Link link = new Link(prop, i);
-            if (state != SystemState.STOPPED) {
+            if (snapshot.state != SystemState.STOPPED) {
                 link.linkManager.connect(watchdog);
             }
             links.add(link);
         }
 
-        state = recalcMode();
+        update();
+    }
+
+    /**
+     * Bring the system state up to date. If the system thread is running then
+     * it is woken to do this; otherwise any queued link events are applied
+     * and a new snapshot is published immediately.
+     */
+    private void update() {
+        synchronized (sysThread) {
+            if (sysThread.myThread != null) {
+                events.add(SystemEvent.WAKEUP);
+            } else {
+                sysThread.applyQueuedEvents();
+                sysThread.refresh();
+            }
+        }
+    }
+
+    /**
+     * Get every link that this system manager has open: the configured links,
+     * any replacements that are being brought up for them, and any links that
+     * are being drained.
+     *
+     * @return a new list of the links
+     */
+    private List<Link> allLinks() {
+        List<Link> all = new ArrayList<Link>(links);
+        for (Link link : links) {
+            Link replacement = link.replacement;
+            if (replacement != null) {
+                all.add(replacement);
+            }
+        }
+        all.addAll(drainingLinks);
+        return all;
+    }
+
+    /**
+     * Take a link out of service and keep it open until its remaining calls
+     * have ended or the drain timeout expires. The link must already have been
+     * removed from the configured links.
+     *
+     * @param link
+     *            the link to drain
+     */
+    private void startDraining(final Link link) {
+        link.drainDeadline = clock.millis() + drainTimeout;
+        drainingLinks.add(link);
+        log.info(link + " draining " + link.linkManager.getNumCalls()
+                + " calls");
+    }
+
+    /**
+     * Complete any reconfiguration in progress. Each configured link whose
+     * replacement has come into service is swapped for the replacement and
+     * drained, and each draining link that has no calls left, or whose drain
+     * timeout has expired, is closed. This is called regularly by the system
+     * thread, which must not hold its own lock.
+     */
+    private void completeReconfiguration() {
+        List<Link> closed = new ArrayList<Link>();
+
+        synchronized (this) {
+            boolean swapped = false;
+            for (int i = 0; i < links.size(); i++) {
+                Link link = links.get(i);
+                Link replacement = link.replacement;
+                if (replacement != null && replacement.isInService()) {
+                    link.replacement = null;
+                    links.set(i, replacement);
+                    startDraining(link);
+                    log.info(replacement + " replaced " + link);
+                    swapped = true;
+                }
+            }
+
+            long now = clock.millis();
+            for (Link link : drainingLinks) {
+                int calls = link.linkManager.getNumCalls();
+                if (calls == 0 || now >= link.drainDeadline) {
+                    drainingLinks.remove(link);
+                    closed.add(link);
+                    if (calls != 0) {
+                        log.warn(link + " closed with " + calls
+                                + " calls remaining");
+                    }
+                }
+            }
+
+            if (swapped) {
+                events.add(SystemEvent.WAKEUP);
+            }
+        }
+
+        // Close the drained links without holding the lock, as this waits for
+        // their threads to finish
+        for (Link link : closed) {
+            link.cleanup();
+        }
+    }
+
+    /**
+     * Read the flight recorder configuration and open, replace or close the
+     * flight recorder to match it. The recorder is only replaced if the file
+     * or size has changed, so reloading an unrelated setting does not lose
+     * the recording. Failure to open the recorder is logged but is not fatal.
+     */
+    private void configureFlightRecorder() {
+        String fileName = prop.getProperty(CONFIG_RECORDER_FILE,
+                CONFIG_RECORDER_FILE_DEF).trim();
+        int size = Integer.parseInt(prop.getProperty(CONFIG_RECORDER_SIZE,
+                CONFIG_RECORDER_SIZE_DEF));
+        if (size < CONFIG_RECORDER_SIZE_MIN
+                || size > CONFIG_RECORDER_SIZE_MAX) {
+            throw new IllegalArgumentException(
+                    "The flight recorder size is outside the valid range of "
+                    + CONFIG_RECORDER_SIZE_MIN + " to "
+                    + CONFIG_RECORDER_SIZE_MAX);
+        }
+        size *= KILOBYTES;
+
+        if (flightRecorder != null) {
+            if (flightRecorder.getFile().getPath().equals(fileName)
+                    && flightRecorder.getCapacity() == size) {
+                return;
+            }
+            closeFlightRecorder();
+        }
+
+        if (fileName.length() == 0) {
+            return;
+        }
+        try {
+            flightRecorder = new FlightRecorder(new File(fileName), size);
+            log.info("Recording OCP frames to " + flightRecorder);
+        } catch (IOException e) {
+            log.error("Unable to open flight recorder file " + fileName, e);
+            return;
+        }
+        for (Link link : allLinks()) {
+            link.linkManager.addFrameTap(flightRecorder);
+        }
+    }
+
+    /**
+     * Detach the flight recorder from all links and close it.
+     */
+    private void closeFlightRecorder() {
+        if (flightRecorder == null) {
+            return;
+        }
+        for (Link link : allLinks()) {
+            link.linkManager.removeFrameTap(flightRecorder);
+        }
+        flightRecorder.close();
+        flightRecorder = null;
+    }
+
+    /**
+     * Read the traffic capture configuration and start, restart or stop the
+     * capture to match it. A running capture is left alone if the file has
+     * not changed. Failure to start the capture is logged but is not fatal.
+     */
+    private void configureTrafficCapture() {
+        String fileName = prop.getProperty(CONFIG_CAPTURE_FILE,
+                CONFIG_CAPTURE_FILE_DEF).trim();
+
+        if (trafficCapture != null) {
+            if (trafficCapture.getFile().getPath().equals(fileName)) {
+                return;
+            }
+            closeTrafficCapture();
+        }
+
+        if (fileName.length() == 0) {
+            return;
+        }
+        try {
+            trafficCapture = new TrafficCapture(new File(fileName));
+            log.info("Capturing OCP traffic to " + trafficCapture);
+        } catch (IOException e) {
+            log.error("Unable to open traffic capture file " + fileName, e);
+            return;
+        }
+        for (Link link : allLinks()) {
+            link.linkManager.addFrameTap(trafficCapture);
+        }
+    }
+
+    /**
+     * Detach the traffic capture from all links and close it.
+     */
+    private void closeTrafficCapture() {
+        if (trafficCapture == null) {
+            return;
+        }
+        for (Link link : allLinks()) {
+            link.linkManager.removeFrameTap(trafficCapture);
+        }
+        trafficCapture.close();
+        trafficCapture = null;
+    }
+
+    /**
+     * Read the metrics configuration and start, restart or stop the metrics
+     * exporter to match it. A running exporter is left alone if the port and
+     * interval have not changed. Failure to start the exporter is logged but
+     * is not fatal.
+     */
+    private void configureMetrics() {
+        int port = Integer.parseInt(prop.getProperty(CONFIG_METRICS_PORT,
+                CONFIG_METRICS_PORT_DEF));
+        if (port < CONFIG_METRICS_PORT_MIN || port > CONFIG_METRICS_PORT_MAX) {
+            throw new IllegalArgumentException(
+                    "The metrics port is outside the valid range of "
+                    + CONFIG_METRICS_PORT_MIN + " to "
+                    + CONFIG_METRICS_PORT_MAX);
+        }
+        int interval = Integer.parseInt(prop.getProperty(
+                CONFIG_METRICS_INTERVAL, CONFIG_METRICS_INTERVAL_DEF));
+        if (interval < CONFIG_METRICS_INTERVAL_MIN
+                || interval > CONFIG_METRICS_INTERVAL_MAX) {
+            throw new IllegalArgumentException(
+                    "The metrics interval is outside the valid range of "
+                    + CONFIG_METRICS_INTERVAL_MIN + " to "
+                    + CONFIG_METRICS_INTERVAL_MAX);
+        }
+
+        if (metricsExporter != null) {
+            if (metricsExporter.getAddress().getPort() == port
+                    && metricsExporter.getInterval() == interval) {
+                return;
+            }
+            closeMetrics();
+        }
+
+        if (port == 0) {
+            return;
+        }
+        try {
+            metricsExporter = new MetricsExporter(this,
+                    new InetSocketAddress(port), interval,
+                    TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            log.error("Unable to serve metrics on port " + port, e);
+            return;
+        }
+        metricsExporter.start();
+    }
+
+    /**
+     * Stop the metrics exporter.
+     */
+    private void closeMetrics() {
+        if (metricsExporter == null) {
+            return;
+        }
+        metricsExporter.close();
+        metricsExporter = null;
     }
 
     /**
@@ -373,10 +1006,14 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     private void cleanup() {
         disconnect();
 
-        for (Link link : links) {
+        closeFlightRecorder();
+        closeTrafficCapture();
+        closeMetrics();
+        for (Link link : allLinks()) {
             link.cleanup();
         }
         links.clear();
+        drainingLinks.clear();
         alarms.clearAllAlarms(this);
     }
 
@@ -385,20 +1022,46 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         cleanup();
     }
 
+    /**
+     * Connect to the remote units. If the ocpSystemWatchdogTimeout setting is
+     * non-zero, the system and link threads are watched by a
+     * {@link ThreadWatchdog} that is closed on disconnect.
+     */
     @Override
     public final synchronized void connect() {
-        connect(new NullGenericWatchdog());
+        if (snapshot.state != SystemState.STOPPED) {
+            return; // Already connected
+        }
+
+        if (watchdogTimeout == 0) {
+            connect(new NullGenericWatchdog());
+            return;
+        }
+        ownWatchdog = new ThreadWatchdog("OCPSystemManager", watchdogTimeout,
+                TimeUnit.SECONDS);
+        connect(ownWatchdog);
     }
 
+    /**
+     * Connect to the remote units, watching the system and link threads with
+     * the given watchdog. If it is a {@link ThreadWatchdog}, a stalled thread
+     * raises the OCPThreadStalled alarm until it recovers.
+     *
+     * @param watchdog
+     *            the watchdog to use
+     */
     @Override
     // CSOFF: HiddenField
     public final synchronized void connect(final GenericWatchdog watchdog) {
         // CSON: HiddenField
-        if (state != SystemState.STOPPED) {
+        if (snapshot.state != SystemState.STOPPED) {
             return; // Already connected
         }
 
         this.watchdog = watchdog;
+        if (watchdog instanceof ThreadWatchdog) {
+            ((ThreadWatchdog) watchdog).addStallListener(stallListener);
+        }
         new Thread(sysThread, "OCPSystemManager.SystemThread").start();
     }
 
@@ -408,17 +1071,26 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
      */
     @Override
     public final synchronized void disconnect() {
-        if (state == SystemState.STOPPED) {
+        if (snapshot.state == SystemState.STOPPED) {
             return; // Already stopped
         }
 
         sysThread.shutdownThread();
-        state = recalcMode();
+        update();
+
+        if (watchdog instanceof ThreadWatchdog) {
+            ((ThreadWatchdog) watchdog).removeStallListener(stallListener);
+        }
+        if (ownWatchdog != null) {
+            ownWatchdog.close();
+            ownWatchdog = null;
+        }
     }
 
     /**
-     * Reload the properties from the default file jOCP.properties. This will
-     * result in all OCP links being temporarily lost.
+     * Reload the properties from the default file jOCP.properties. Any link
+     * whose address or port has changed is restarted, losing its calls, unless
+     * a reconfiguration drain timeout is configured.
      */
     public final void reloadProperties() {
         FileInputStream in = null;
@@ -446,8 +1118,9 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     }
 
     /**
-     * Reload the properties using the specified Properties object. This will
-     * result in all OCP links being temporarily lost.
+     * Reload the properties using the specified Properties object. Any link
+     * whose address or port has changed is restarted, losing its calls, unless
+     * a reconfiguration drain timeout is configured.
      *
      * @param properties
      *            The Properties object to use
@@ -467,7 +1140,8 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
      * <li>If the OCP System Manager is not running, then the system state is
      * set to STOPPED.</li>
      * <li>If all links are inactive (i.e. in the CONNECTING or DISCONNECTED
-     * states), then the system state is set to CONNECTING.</li>
+     * states, or failed by active failover probing), then the system state is
+     * set to CONNECTING.</li>
      * <li>If all active links are in the SLAVE state, then the system state is
      * set to MISSING_MASTER.</li>
      * <li>If exactly one link is in the MASTER state and all other active links
@@ -499,6 +1173,12 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
                 newState = SystemState.NO_LINKS;
             }
             for (Link link : links) {
+                if (link.probeFailed) {
+                    // Treat a link that has stopped answering probes as
+                    // inactive, whatever state it last reported
+                    link.raiseLinkAlarm();
+                    continue;
+                }
                 switch (link.linkState) {
                 case CONNECTING:
                 case DISCONNECTED:
@@ -592,7 +1272,7 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
 
             case MISSING_MASTER:
                 raiseCannotTakeCalls(newState);
-                missingMasterStart = System.currentTimeMillis();
+                missingMasterStart = clock.millis();
                 break;
 
             case MASTER_SLAVE:
@@ -707,7 +1387,7 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
 
         case MASTER_SLAVE:
             for (Link link : links) {
-                if (link.linkState == LinkStates.MASTER) {
+                if (link.linkState == LinkStates.MASTER && !link.probeFailed) {
                     newPreferred = link;
                 }
             }
@@ -750,24 +1430,54 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
      */
     @Override
     public final OCPLink getLink(final List<OCPLink> triedLinks) {
+        Snapshot snap = snapshot;
+        Link link = selectLink(snap, triedLinks);
+
+        OCPEventListener listener = eventListener;
+        if (listener != null) {
+            try {
+                listener.linkSelected(snap.state,
+                        triedLinks == null ? 0 : triedLinks.size(),
+                        link == null ? -1 : link.linkManager.getLinkIndex());
+            } catch (RuntimeException e) {
+                log.warn("Event listener " + listener + " failed", e);
+            }
+        }
+        return link;
+    }
+
+    /**
+     * Select an OCP link to use for a new call, as described by
+     * {@link #getLink(List)}.
+     *
+     * @param snap
+     *            The snapshot of the link states to select from.
+     * @param triedLinks
+     *            A list of links that have already been tried and so may not be
+     *            returned by this function.
+     * @return The OCP link to try next, or null if there are no more
+     *         available links.
+     */
+    private Link selectLink(final Snapshot snap,
+            final List<OCPLink> triedLinks) {
         Link current = null;
-        ArrayList<Link> sortedLinks;
+        ArrayList<LinkStatus> sortedLinks;
 
-        if (state == SystemState.MASTER_SLAVE) {
-            if (preferredLink != null && preferredLink.isUnitActive()) {
+        if (snap.state == SystemState.MASTER_SLAVE) {
+            if (snap.preferred != null && snap.preferred.active) {
                 log.debug("getLink: Master/slave, selecting preferred "
-                        + preferredLink);
-                current = preferredLink;
+                        + snap.preferred.link);
+                current = snap.preferred.link;
             } else {
                 // The master can't take calls (or doesn't exist).
                 log.debug("getLink: Master/slave, returning no link");
                 return null;
             }
-        } else if (state == SystemState.LOADSHARING) {
-            if (preferredLink != null && preferredLink.isUnitActive()) {
+        } else if (snap.state == SystemState.LOADSHARING) {
+            if (snap.preferred != null && snap.preferred.active) {
                 log.debug("getLink: Loadsharing, selecting preferred "
-                        + preferredLink);
-                current = preferredLink;
+                        + snap.preferred.link);
+                current = snap.preferred.link;
             } else {
                 // Either we don't have a preferred link or it can't take
                 // calls.
@@ -778,7 +1488,7 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
             // We're not in a state where we can take calls, therefore there
             // are no available links.
             log.debug("getLink: Other, returning no link. State:"
-                    + state.toString());
+                    + snap.state.toString());
             return null;
         }
 
@@ -792,28 +1502,31 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
 
         // Either we don't have a preferred link, or the caller has tried it
         // and it didn't work. Find an alternate link.
-        if (state == SystemState.MASTER_SLAVE) {
+        if (snap.state == SystemState.MASTER_SLAVE) {
             log.debug("getLink: Master/slave, returning no fallback link");
             return null;
         }
 
-        // Create a local shallow copy, and sort it by calls in progress. Since
-        // the master list isn't being modified we don't need to synchronise on
-        // it.
-        sortedLinks = new ArrayList<Link>(links);
+        // Create a local copy of the untried links, and sort it by calls in
+        // progress. The snapshot is immutable so needs no synchronisation.
+        sortedLinks = new ArrayList<LinkStatus>(snap.links.size());
+        for (LinkStatus status : snap.links) {
+            if (triedLinks == null || !triedLinks.contains(status.link)) {
+                sortedLinks.add(status);
+            }
+        }
         if (triedLinks != null) {
-            log.debug("getLink: Loadsharing, removing " + triedLinks.size()
-                    + " link(s)");
-            sortedLinks.removeAll(triedLinks);
+            log.debug("getLink: Loadsharing, removed "
+                    + (snap.links.size() - sortedLinks.size()) + " link(s)");
         }
-        Collections.sort(sortedLinks, Collections.<Link>reverseOrder());
+        Collections.sort(sortedLinks, Collections.<LinkStatus>reverseOrder());
 
         // Find the first available unit
-        for (Link link : sortedLinks) {
-            if (link.isUnitActive()) {
+        for (LinkStatus status : sortedLinks) {
+            if (status.active) {
                 log.debug("getLink: Loadsharing, returning fallback "
-                        + link);
-                return link;
+                        + status.link);
+                return status.link;
             }
         }
 
@@ -827,7 +1540,24 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
      * @return the state
      */
     public final SystemState getState() {
-        return state;
+        return snapshot.state;
+    }
+
+    /**
+     * Gets the link managers of every link that this system manager has open,
+     * including replacement and draining links.
+     *
+     * @return a new list of the link managers
+     */
+    public final List<OCPLinkManager> getLinkManagers() {
+        List<OCPLinkManager> managers = new ArrayList<OCPLinkManager>();
+        if (links == null) {
+            return managers;
+        }
+        for (Link link : allLinks()) {
+            managers.add(link.linkManager);
+        }
+        return managers;
     }
 
     /**
@@ -836,66 +1566,195 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
      * @return the preferred link
      */
     public final Link getPreferredLink() {
-        return preferredLink;
+        LinkStatus preferred = snapshot.preferred;
+        if (preferred != null) {
+            return preferred.link;
+        } else {
+            return null;
+        }
     }
 
     /**
-     * Register a handler for the management task ID on all links.
+     * Ask the system thread to check its timers now. The system thread
+     * normally notices that a gapping window, suspect timeout or master/slave
+     * swap timeout has expired by itself; this is only needed when the
+     * {@link #getClock() clock} is advanced artificially, for example a
+     * {@link com.telsis.jutils.clock.VirtualClock} in a test, and the effect
+     * is wanted straight away.
+     */
+    public final void checkTimers() {
+        events.add(SystemEvent.WAKEUP);
+    }
+
+    /**
+     * Gets the clock used to measure gapping windows and timeouts.
      *
-     * @param handler the handler to register
+     * @return the clock
      */
-    @Override
-    public final void registerManagementTidHandler(
-            final OCPMessageHandler handler) {
-        for (Link link : links) {
-            link.registerManagementTidHandler(handler);
-        }
+    public final Clock getClock() {
+        return clock;
     }
 
     /**
-     * Remove the handler for the management task ID from all links.
+     * Sets the clock used to measure gapping windows and timeouts, on this
+     * manager and on all of its links. By default this is the clock returned
+     * by {@link UtilitiesFactory#getClock()} when the manager was created. The
+     * clock should only be changed while the manager is disconnected.
+     *
+     * @param newClock
+     *            The clock.
      */
-    @Override
-    public final void deregisterManagementTidHandler() {
+    public final synchronized void setClock(final Clock newClock) {
+        if (newClock == null) {
+            throw new IllegalArgumentException("The clock cannot be null");
+        }
+        clock = newClock;
         for (Link link : links) {
-            link.deregisterManagementTidHandler();
+            link.linkManager.setClock(newClock);
         }
     }
 
-    @Override
-    public void congestionEvent(
-            final EnumMap<CongestionType, Integer> congestionList) {
-        // Not used, but required by ServerEventNotifier
+    /**
+     * Gets the store of per-call state shared by all links.
+     *
+     * @return the store, or null if none has been set
+     */
+    public final CallContextStore getCallContextStore() {
+        return callContexts;
     }
 
-    @Override
-    public void reloadConfiguration() {
-        // Not used, but required by ServerEventNotifier
+    /**
+     * Sets the store of per-call state on all links, including any that are
+     * added later. A context is allocated in the store when a task ID handler
+     * is registered and released when it is deregistered; a call that is
+     * moved to another link by a setup replay keeps its context.
+     *
+     * @param store
+     *            the store, or null to stop allocating contexts
+     * @see OCPLinkManager#setCallContextStore(CallContextStore)
+     */
+    public final synchronized void setCallContextStore(
+            final CallContextStore store) {
+        callContexts = store;
+        for (Link link : allLinks()) {
+            link.linkManager.setCallContextStore(store);
+        }
     }
 
-    @Override
-    public void stateEvent(final ActiveStates activeState) {
-        // Not used, but required by ServerEventNotifier
+    /**
+     * Gets the instrumentation event listener.
+     *
+     * @return the listener, or null if none has been set
+     */
+    public final OCPEventListener getEventListener() {
+        return eventListener;
     }
 
     /**
-     * Internal structure for managing a single OCP Link. This structure is
-     * sorted by the number of active calls on the link.
-     * <p/>
-     * Note: this class has a natural ordering that is inconsistent with equals.
+     * Sets the instrumentation event listener on this system manager and on
+     * all links, including any that are added later. The system manager
+     * reports link selection and master promotions to it; see
+     * {@link OCPLinkManager#setEventListener(OCPEventListener)} for the events
+     * reported by the links.
      *
-     * @author Telsis
+     * @param listener
+     *            the listener, or null to stop reporting events
      */
-    private class Link implements OCPLinkStateHandler, Comparable<Link>,
-            OCPMessageHandler, OCPLink, ServerEventNotifier {
-        /** The link manager. */
-        private OCPLinkManager linkManager;
-        /** The cached unit enabled status. */
-        private boolean        unitEnabled;
+    public final synchronized void setEventListener(
+            final OCPEventListener listener) {
+        eventListener = listener;
+        for (Link link : allLinks()) {
+            link.linkManager.setEventListener(listener);
+        }
+    }
+
+    /**
+     * Ask a slave unit to become master, and report the promotion to the
+     * event listener.
+     *
+     * @param link
+     *            the link to the unit to promote
+     */
+    private void sendPromotion(final Link link) {
+        link.queueMessage(new BecomeMaster(), null);
+
+        OCPEventListener listener = eventListener;
+        if (listener != null) {
+            try {
+                listener.promotionSent(link.linkManager.getLinkIndex());
+            } catch (RuntimeException e) {
+                log.warn("Event listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Register a handler for the management task ID on all links.
+     *
+     * @param handler the handler to register
+     */
+    @Override
+    public final void registerManagementTidHandler(
+            final OCPMessageHandler handler) {
+        for (Link link : links) {
+            link.registerManagementTidHandler(handler);
+        }
+    }
+
+    /**
+     * Remove the handler for the management task ID from all links.
+     */
+    @Override
+    public final void deregisterManagementTidHandler() {
+        for (Link link : links) {
+            link.deregisterManagementTidHandler();
+        }
+    }
+
+    @Override
+    public void congestionEvent(
+            final EnumMap<CongestionType, Integer> congestionList) {
+        // Not used, but required by ServerEventNotifier
+    }
+
+    @Override
+    public void reloadConfiguration() {
+        // Not used, but required by ServerEventNotifier
+    }
+
+    @Override
+    public void stateEvent(final ActiveStates activeState) {
+        // Not used, but required by ServerEventNotifier
+    }
+
+    /**
+     * Internal structure for managing a single OCP Link. Notifications from
+     * the link manager are queued as {@link SystemEvent events} for the system
+     * thread, and the cached fields below are only updated by applying those
+     * events.
+     *
+     * @author Telsis
+     */
+    private class Link implements OCPLinkStateHandler, OCPMessageHandler,
+            OCPLink, ServerEventNotifier, FrameTap {
+        /** The link manager. */
+        private OCPLinkManager linkManager;
+        /** The cached unit enabled status. */
+        private boolean        unitEnabled;
         /** A flag to indicate if gapping is currently active. */
         private boolean        gappingActive;
         /** A flag to indicate if this link is suspect. */
-        private boolean        linkSuspect;
+        private volatile boolean linkSuspect;
+        /**
+         * True if an activity event has been queued for this suspect link and
+         * not yet applied.
+         */
+        private final AtomicBoolean activityPending = new AtomicBoolean();
+        /** The unanswered call setups sent on this link, by task ID. */
+        private final ConcurrentHashMap<Integer, PendingSetup> pendingSetups =
+                new ConcurrentHashMap<Integer, PendingSetup>();
+        /** True if this link has failed with call setups outstanding. */
+        private boolean        replayNeeded;
         /** The cached link state. */
         private LinkStates     linkState;
         /** The cached preferred SCP. */
@@ -906,6 +1765,21 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         private long           gappingStart;
         /** The timestamp of when gapping should end. */
         private long           gappingEnd;
+        /** The timestamp of the last master probe sent, or 0 if none. */
+        private long           probeSent;
+        /** The number of consecutive unanswered master probes. */
+        private int            probeMisses;
+        /** True once the remote unit has answered a master probe. */
+        private boolean        probeAnswered;
+        /** True if the link has failed active failover probing. */
+        private boolean        probeFailed;
+        /**
+         * The link that is being brought up to replace this one after a
+         * reconfiguration, or null if none.
+         */
+        private volatile Link  replacement;
+        /** The time at which this link is closed if it is still draining. */
+        private long           drainDeadline;
         /** The index of this link. */
         private int            linkID;
         /** Whether or not this link has been cleaned up. */
@@ -925,7 +1799,17 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
             log.info(this + " changed from null to DISCONNECTED");
             linkState = LinkStates.DISCONNECTED;
             linkManager = new OCPLinkManager(properties, index);
+            linkManager.setClock(clock);
+            linkManager.setCallContextStore(callContexts);
+            linkManager.setEventListener(eventListener);
             linkManager.registerLinkStatusHandler(this);
+            linkManager.addFrameTap(this);
+            if (flightRecorder != null) {
+                linkManager.addFrameTap(flightRecorder);
+            }
+            if (trafficCapture != null) {
+                linkManager.addFrameTap(trafficCapture);
+            }
             linkID = index;
         }
 
@@ -943,16 +1827,35 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
                 /*
                  * Synchronize here and in raiseLinkAlarm() to ensure that the
                  * alarm will not be raised when this method returns. Don't
-                 * synchronize on the entire method to avoid a deadlock between
-                 * linkStateChanged() (called from linkManager.cleanup above,
-                 * holding this object and locking sysThread) and
-                 * raiseLinkAlarm() (called from recalcMode() in sysThread,
-                 * holding sysThread and locking this object).
+                 * synchronize on the entire method, as there is no need to
+                 * hold the lock while the link manager shuts down.
                  */
                 alarms.clearAlarm(ALARM_LINK_NOT_AVAILABLE, this);
             }
         }
 
+        /**
+         * Close the replacement for this link, if there is one.
+         */
+        private void discardReplacement() {
+            Link old = replacement;
+            if (old != null) {
+                replacement = null;
+                old.cleanup();
+            }
+        }
+
+        /**
+         * Checks if the link is in service, meaning that it is connected and
+         * the connected SCP is enabled. Only used by the system thread.
+         *
+         * @return true if the link is in service
+         */
+        private boolean isInService() {
+            return unitEnabled && linkState != LinkStates.CONNECTING
+                    && linkState != LinkStates.DISCONNECTED;
+        }
+
         /**
          * Checks if the link is active. A link is active if the connected SCP
          * is enabled and not gapped.
@@ -973,29 +1876,37 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         }
 
         /**
-         * Receive notification that the link state has changed. If the new
-         * state is different to the cached value, then the cached link state is
-         * updated and the system thread is notified.
+         * Receive notification that the link state has changed. An event is
+         * queued for the system thread.
          *
          * @param newState
          *            The new state of the link
          */
         @Override
         public void linkStateChanged(final LinkStates newState) {
-            if (this.linkState != newState) {
-                log.debug(this + " changed from "
-                        + linkState + " to " + newState);
-                this.linkState = newState;
-                synchronized (sysThread) {
-                    sysThread.notify();
-                }
-            }
+            events.add(SystemEvent.linkState(this, newState));
         }
 
         /**
          * Receive notification that a {@link CallGap} message has been
-         * received. The gapping start, end and duration values are updated and
-         * the system thread is notified.
+         * received. An event is queued for the system thread.
+         *
+         * @param duration
+         *            The duration in seconds for which call gapping is active,
+         *            or one of {@link CallGap#DURATION_NETWORK_SPECIFIC},
+         *            {@link CallGap#DURATION_INDEFINITE} or
+         *            {@link CallGap#DURATION_DISABLED}.
+         * @see #applyCallGap(short)
+         */
+        @Override
+        public void receivedCallGap(final short duration) {
+            events.add(SystemEvent.callGap(this, duration));
+        }
+
+        /**
+         * Apply a received {@link CallGap}. The gapping start, end and
+         * duration values are updated. This is only called by the system
+         * thread.
          * <p/>
          * Note: {@link CallGap#DURATION_NETWORK_SPECIFIC} is not currently
          * supported, and will result in no change to the current gapping state.
@@ -1006,15 +1917,14 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
          *            {@link CallGap#DURATION_INDEFINITE} or
          *            {@link CallGap#DURATION_DISABLED}.
          */
-        @Override
-        public void receivedCallGap(final short duration) {
+        private void applyCallGap(final short duration) {
             switch (duration) {
             case CallGap.DURATION_NETWORK_SPECIFIC:
                 // not supported here
                 break;
 
             case CallGap.DURATION_INDEFINITE:
-                this.gappingStart = System.currentTimeMillis();
+                this.gappingStart = clock.millis();
                 this.gappingEnd = Long.MAX_VALUE;
                 this.gappingActive = true;
                 break;
@@ -1027,7 +1937,7 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
 
             default:
                 // gap calls for duration seconds
-                this.gappingStart = System.currentTimeMillis();
+                this.gappingStart = clock.millis();
                 this.gappingEnd = this.gappingStart + duration * MILLISECONDS;
                 this.gappingActive = true;
                 break;
@@ -1036,16 +1946,12 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
                     + " gappingStart " + this.gappingStart
                     + " gappingEnd " + this.gappingEnd
                     + " gappingActive " + this.gappingActive);
-            synchronized (sysThread) {
-                sysThread.notify();
-            }
         }
 
         /**
          * Receive notification that a
          * {@link com.telsis.jocp.messages.PreferredUnit} message has been
-         * received. The cached values are updated and the system thread is
-         * notified.
+         * received. An event is queued for the system thread.
          *
          * @param newPreferredSCP
          *            The address of the preferred SCP
@@ -1055,56 +1961,119 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         @Override
         public void receivedPreferredUnit(final InetAddress newPreferredSCP,
                 final InetAddress newSecondarySCP) {
-            this.preferredSCP = newPreferredSCP;
-            this.secondarySCP = newSecondarySCP;
-            synchronized (sysThread) {
-                sysThread.notify();
-            }
+            events.add(SystemEvent.preferredUnit(this, newPreferredSCP,
+                    newSecondarySCP));
         }
 
         /**
-         * Receive notification that the unit enabled state has changed. The
-         * cached flag is updated and the system thread is notified.
+         * Receive notification that the unit enabled state has changed. An
+         * event is queued for the system thread.
          *
          * @param enabled
          *            The new enabled state of the unit
          */
         @Override
         public void unitEnabledChanged(final boolean enabled) {
-            unitEnabled = enabled;
-            synchronized (sysThread) {
-                sysThread.notify();
-            }
+            events.add(SystemEvent.unitEnabled(this, enabled));
         }
 
         /**
-         * Compares this instance with the specified Link. Links are ordered by
-         * the link suspect flag, then by the number of active calls.
+         * Receive notification of a frame on the link. If the link is suspect
+         * then a received frame means that it may have recovered, so an
+         * activity event is queued for the system thread. Only one such event
+         * is queued at a time.
+         * <p/>
+         * When call setups are being tracked, a received call message answers
+         * any setup sent from its destination task ID, and a copy of each
+         * transmitted setup is kept in case it needs to be replayed.
          *
-         * @param other
-         *            the Link to compare this instance to
+         * @param direction
+         *            whether the frame was received or sent
+         * @param linkIndex
+         *            the index of the link
+         * @param frame
+         *            the frame
          */
         @Override
-        public int compareTo(final Link other) {
-            if (this.linkSuspect && !other.linkSuspect) {
-                return -1;
-            } else if (!this.linkSuspect && other.linkSuspect) {
-                return 1;
+        public void frame(final FrameTap.Direction direction,
+                final int linkIndex, final ByteBuffer frame) {
+            if (direction == FrameTap.Direction.RX && linkSuspect
+                    && activityPending.compareAndSet(false, true)) {
+                events.add(SystemEvent.activity(this));
+            }
+
+            int start = frame.position();
+            if (pendingSetups.isEmpty()
+                    || frame.remaining() < LegacyOCPMessage.OCP_PAYLOAD_OFFSET
+                    || (frame.getShort(start)
+                    & LegacyOCPMessage.OCP_COMMAND_TYPE_MASK)
+                    != LegacyOCPMessage.OCP_COMMAND_TYPE_CALL) {
+                return;
+            }
+            if (direction == FrameTap.Direction.RX) {
+                pendingSetups.remove(frame.getInt(start
+                        + LegacyOCPMessage.OCP_DEST_TID_OFFSET));
             } else {
-                return other.linkManager.getNumCalls()
-                        - this.linkManager.getNumCalls();
+                PendingSetup setup = pendingSetups.get(frame.getInt(start
+                        + LegacyOCPMessage.OCP_ORIG_TID_OFFSET));
+                if (setup != null && setup.frame == null) {
+                    byte[] copy = new byte[frame.remaining()];
+                    for (int i = 0; i < copy.length; i++) {
+                        copy[i] = frame.get(start + i);
+                    }
+                    setup.frame = copy;
+                }
             }
         }
 
+        /**
+         * Queue a message for transmission on this link. If the call has been
+         * moved to another link by a setup replay, the message is sent there
+         * instead. If call setups are being tracked, an {@link InitialDP}
+         * starts tracking its originating task ID. Later call messages from
+         * the task ID do not stop it, so that any still queued are replayed
+         * with the setup; only the remote unit's answer does.
+         *
+         * @param message
+         *            the message to send
+         * @param callingLink
+         *            not used
+         */
         @Override
         public void queueMessage(final OCPMessage message,
                 final OCPLink callingLink) {
+            if (!replayedCalls.isEmpty()) {
+                Link moved = replayedCalls.get(message.getOrigTID());
+                if (moved != null && moved != this) {
+                    moved.queueMessage(message, callingLink);
+                    return;
+                }
+            }
+            if (setupReplayLimit > 0 && message instanceof InitialDP) {
+                pendingSetups.put(message.getOrigTID(), new PendingSetup(
+                        message.getOrigTID(), clock.millis(), null));
+            }
             linkManager.queueMessage(message, callingLink);
         }
 
+        /**
+         * Deregister a handler for a local task ID. If the call has been moved
+         * to another link by a setup replay, the handler is deregistered there
+         * too.
+         *
+         * @param tid
+         *            the task ID to remove the handler for
+         */
         @Override
         public void deregisterTidHandler(final int tid) {
+            pendingSetups.remove(tid);
             linkManager.deregisterTidHandler(tid);
+            if (!replayedCalls.isEmpty()) {
+                Link moved = replayedCalls.remove(tid);
+                if (moved != null && moved != this) {
+                    moved.deregisterTidHandler(tid);
+                }
+            }
         }
 
         @Override
@@ -1172,8 +2141,337 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
     }
 
     /**
-     * Management thread for the OCP system manager. This thread periodically
-     * manages the following:
+     * A call setup that has been sent on a link but not yet answered.
+     *
+     * @author Telsis
+     */
+    private static final class PendingSetup {
+        /** Orders setups from oldest to newest. */
+        private static final Comparator<PendingSetup> OLDEST_FIRST =
+                new Comparator<PendingSetup>() {
+                    @Override
+                    public int compare(final PendingSetup a,
+                            final PendingSetup b) {
+                        if (a.sentAt < b.sentAt) {
+                            return -1;
+                        } else if (a.sentAt > b.sentAt) {
+                            return 1;
+                        } else {
+                            return 0;
+                        }
+                    }
+                };
+
+        /** The originating task ID of the call. */
+        private final int          tid;
+        /** The time the setup was first sent. */
+        private final long         sentAt;
+        /** The links that the setup has already been sent on, or null. */
+        private final List<OCPLink> triedLinks;
+        /**
+         * A copy of the transmitted frame, or null if the setup has not been
+         * transmitted yet.
+         */
+        private volatile byte[]    frame;
+
+        /**
+         * Create a new pending setup.
+         *
+         * @param tid
+         *            the originating task ID of the call
+         * @param sentAt
+         *            the time the setup was first sent
+         * @param triedLinks
+         *            the links that the setup has already been sent on, or
+         *            null if none
+         */
+        // CSOFF: HiddenField
+        private PendingSetup(final int tid, final long sentAt,
+                final List<OCPLink> triedLinks) {
+            // CSON: HiddenField
+            this.tid = tid;
+            this.sentAt = sentAt;
+            this.triedLinks = triedLinks;
+        }
+    }
+
+    /**
+     * An immutable view of the system, published by the system thread each
+     * time it recalculates. The call-setup path reads the latest snapshot
+     * without taking any locks.
+     *
+     * @author Telsis
+     */
+    private static final class Snapshot {
+        /** The system state. */
+        private final SystemState      state;
+        /** The preferred link, or null if there is none. */
+        private final LinkStatus       preferred;
+        /** The status of every link, in link order. */
+        private final List<LinkStatus> links;
+
+        /**
+         * Create a new snapshot.
+         *
+         * @param state
+         *            the system state
+         * @param preferred
+         *            the preferred link, or null if there is none
+         * @param links
+         *            the status of every link; this list must not be
+         *            modified afterwards
+         */
+        // CSOFF: HiddenField
+        private Snapshot(final SystemState state, final LinkStatus preferred,
+                final List<LinkStatus> links) {
+            // CSON: HiddenField
+            this.state = state;
+            this.preferred = preferred;
+            this.links = links;
+        }
+    }
+
+    /**
+     * The status of a single link at the time a {@link Snapshot} was taken.
+     * Statuses are ordered by the link suspect flag, then by the number of
+     * calls currently active on the link.
+     * <p/>
+     * Note: this class has a natural ordering that is inconsistent with equals.
+     *
+     * @author Telsis
+     */
+    private static final class LinkStatus implements Comparable<LinkStatus> {
+        /** The link. */
+        private final Link    link;
+        /** True if the link was able to take calls. */
+        private final boolean active;
+        /** True if the link was suspect. */
+        private final boolean suspect;
+
+        /**
+         * Capture the current status of a link.
+         *
+         * @param link
+         *            the link
+         */
+        // CSOFF: HiddenField
+        private LinkStatus(final Link link) {
+            // CSON: HiddenField
+            this.link = link;
+            this.active = link.isUnitActive();
+            this.suspect = link.linkSuspect;
+        }
+
+        /**
+         * Compares this instance with the specified status. Suspect links are
+         * ordered first, then links with more active calls.
+         *
+         * @param other
+         *            the status to compare this instance to
+         */
+        @Override
+        public int compareTo(final LinkStatus other) {
+            if (this.suspect && !other.suspect) {
+                return -1;
+            } else if (!this.suspect && other.suspect) {
+                return 1;
+            } else {
+                return other.link.linkManager.getNumCalls()
+                        - this.link.linkManager.getNumCalls();
+            }
+        }
+    }
+
+    /**
+     * A change reported by a link, queued for the system thread to apply.
+     *
+     * @author Telsis
+     */
+    private static final class SystemEvent {
+        /** The types of event. */
+        private enum Type {
+            /** The link state changed. */
+            LINK_STATE,
+            /** The unit enabled flag changed. */
+            UNIT_ENABLED,
+            /** A CallGap was received. */
+            CALL_GAP,
+            /** A PreferredUnit was received. */
+            PREFERRED_UNIT,
+            /** A frame was received on a suspect link. */
+            ACTIVITY,
+            /** Nothing changed, but the system state should be rechecked. */
+            WAKEUP
+        }
+
+        /** The event used to wake the system thread. */
+        private static final SystemEvent WAKEUP = new SystemEvent(Type.WAKEUP,
+                null, null, false, (short) 0, null, null);
+
+        /** The type of event. */
+        private final Type        type;
+        /** The link that the event applies to. */
+        private final Link        link;
+        /** The new link state, for {@link Type#LINK_STATE}. */
+        private final LinkStates  linkState;
+        /** The new enabled flag, for {@link Type#UNIT_ENABLED}. */
+        private final boolean     enabled;
+        /** The gapping duration, for {@link Type#CALL_GAP}. */
+        private final short       duration;
+        /** The preferred SCP, for {@link Type#PREFERRED_UNIT}. */
+        private final InetAddress preferredSCP;
+        /** The secondary SCP, for {@link Type#PREFERRED_UNIT}. */
+        private final InetAddress secondarySCP;
+
+        /**
+         * Create a new event.
+         *
+         * @param type
+         *            the type of event
+         * @param link
+         *            the link that the event applies to
+         * @param linkState
+         *            the new link state
+         * @param enabled
+         *            the new enabled flag
+         * @param duration
+         *            the gapping duration
+         * @param preferredSCP
+         *            the preferred SCP
+         * @param secondarySCP
+         *            the secondary SCP
+         */
+        // CSOFF: HiddenField
+        private SystemEvent(final Type type, final Link link,
+                final LinkStates linkState, final boolean enabled,
+                final short duration, final InetAddress preferredSCP,
+                final InetAddress secondarySCP) {
+            // CSON: HiddenField
+            this.type = type;
+            this.link = link;
+            this.linkState = linkState;
+            this.enabled = enabled;
+            this.duration = duration;
+            this.preferredSCP = preferredSCP;
+            this.secondarySCP = secondarySCP;
+        }
+
+        /**
+         * Create a link state event.
+         *
+         * @param link
+         *            the link
+         * @param linkState
+         *            the new link state
+         * @return the event
+         */
+        private static SystemEvent linkState(final Link link,
+                final LinkStates linkState) {
+            return new SystemEvent(Type.LINK_STATE, link, linkState, false,
+                    (short) 0, null, null);
+        }
+
+        /**
+         * Create a unit enabled event.
+         *
+         * @param link
+         *            the link
+         * @param enabled
+         *            the new enabled flag
+         * @return the event
+         */
+        private static SystemEvent unitEnabled(final Link link,
+                final boolean enabled) {
+            return new SystemEvent(Type.UNIT_ENABLED, link, null, enabled,
+                    (short) 0, null, null);
+        }
+
+        /**
+         * Create a call gap event.
+         *
+         * @param link
+         *            the link
+         * @param duration
+         *            the gapping duration
+         * @return the event
+         */
+        private static SystemEvent callGap(final Link link,
+                final short duration) {
+            return new SystemEvent(Type.CALL_GAP, link, null, false, duration,
+                    null, null);
+        }
+
+        /**
+         * Create a preferred unit event.
+         *
+         * @param link
+         *            the link
+         * @param preferredSCP
+         *            the preferred SCP
+         * @param secondarySCP
+         *            the secondary SCP
+         * @return the event
+         */
+        private static SystemEvent preferredUnit(final Link link,
+                final InetAddress preferredSCP,
+                final InetAddress secondarySCP) {
+            return new SystemEvent(Type.PREFERRED_UNIT, link, null, false,
+                    (short) 0, preferredSCP, secondarySCP);
+        }
+
+        /**
+         * Create an activity event.
+         *
+         * @param link
+         *            the link
+         * @return the event
+         */
+        private static SystemEvent activity(final Link link) {
+            return new SystemEvent(Type.ACTIVITY, link, null, false,
+                    (short) 0, null, null);
+        }
+    }
+
+    /**
+     * Raises the OCPThreadStalled alarm for each thread that the watchdog
+     * reports as stalled, and clears it when the thread recovers. The stack
+     * of a stalled system thread is logged here; the link managers log the
+     * stacks of their own threads.
+     *
+     * @author Telsis
+     */
+    private class SystemStallListener implements StallListener {
+        @Override
+        public void threadStalled(final Thread thread,
+                final long stalledMillis, final StackTraceElement[] stack) {
+            alarms.raiseAlarm(ALARM_THREAD_STALLED, thread, -1,
+                    new String[] {thread.getName()});
+            if (thread != sysThread.myThread) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("SystemThread has not patted the watchdog for ")
+                    .append(stalledMillis).append("ms");
+            for (StackTraceElement element : stack) {
+                sb.append("\n\tat ").append(element);
+            }
+            log.error(sb);
+        }
+
+        @Override
+        public void threadRecovered(final Thread thread,
+                final long stalledMillis) {
+            alarms.clearAlarm(ALARM_THREAD_STALLED, thread);
+            if (thread == sysThread.myThread) {
+                log.warn("SystemThread recovered after stalling for "
+                        + stalledMillis + "ms");
+            }
+        }
+    }
+
+    /**
+     * Management thread for the OCP system manager. This thread applies the
+     * events queued by the links and manages the following:
      * <ul>
      * <li>Promotion of slave links.</li>
      * <li>Gapping updates.</li>
@@ -1181,14 +2479,19 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
      * <li>Preferred unit selection.</li>
      * <li>System state.</li>
      * </ul>
+     * The system is only recalculated when an event arrives or one of the
+     * timers (gapping expiry, suspect timeout or master/slave swap timeout)
+     * expires. Each recalculation publishes a new {@link Snapshot}.
      *
      * @author Telsis
      */
     private class SystemThread implements Runnable {
         /** The thread that this object is running in. */
-        private Thread  myThread;
+        private Thread           myThread;
         /** A flag to detect when this thread should be shut down. */
-        private boolean shutdownThread;
+        private volatile boolean shutdownThread;
+        /** The time at which the next timer expires. */
+        private long             nextDeadline = Long.MAX_VALUE;
 
         /**
          * Create a new stopped SystemThread.
@@ -1203,44 +2506,62 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         /**
          * Entry point for the thread. This function should not be called
          * directly. On start-up, the thread brings up the OCP links and then
-         * loops updating the system status at regular intervals. When a
-         * shut down request is detected, the OCP links are disconnected and the
-         * thread terminates.
+         * waits for events, updating the system status whenever one arrives or
+         * a timer expires. When a shut down request is detected, the OCP links
+         * are disconnected and the thread terminates.
          */
         @Override
         public void run() {
-            myThread = Thread.currentThread();
             log.debug("SystemThread: thread starting");
             watchdog.start();
 
             synchronized (this) {
-                state = recalcMode();
+                myThread = Thread.currentThread();
+                applyQueuedEvents();
+                refresh();
 
                 // Bring up the OCP Links
-                for (Link link : links) {
+                for (Link link : allLinks()) {
                     link.linkManager.connect(watchdog);
                 }
+            }
 
-                while (true) {
-                    watchdog.pat();
-                    internalRun();
+            while (true) {
+                watchdog.pat();
 
-                    if (shutdownThread) {
-                        break;
-                    }
+                SystemEvent event;
+                try {
+                    event = events.poll(timeToNextDeadline(),
+                            TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    event = null;
+                }
 
-                    try {
-                        this.wait(1 * MILLISECONDS);
-                    } catch (InterruptedException e) { // CSIGNORE: EmptyBlock
+                if (shutdownThread) {
+                    break;
+                }
+
+                if (event != null || clock.millis() >= nextDeadline) {
+                    synchronized (this) {
+                        if (event != null) {
+                            apply(event);
+                        }
+                        applyQueuedEvents();
+                        refresh();
+                        replaySetups();
                     }
                 }
 
-                log.debug("SystemThread: shutting down");
-                // Shutdown the OCP links
-                for (Link link : links) {
-                    link.linkManager.disconnect();
+                if (!drainingLinks.isEmpty() || replacementPending()) {
+                    completeReconfiguration();
                 }
             }
+
+            log.debug("SystemThread: shutting down");
+            // Shutdown the OCP links
+            for (Link link : allLinks()) {
+                link.linkManager.disconnect();
+            }
             watchdog.stop();
             log.debug("SystemThread: thread exiting");
         }
@@ -1253,44 +2574,153 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
         public void shutdownThread() {
             log.debug("SystemThread: requesting shutdown");
 
+            shutdownThread = true;
+            events.add(SystemEvent.WAKEUP);
+
+            Thread thread;
             synchronized (this) {
-                shutdownThread = true;
-                this.notify();
+                thread = myThread;
             }
-
-            if (myThread != null) {
-                while (myThread.isAlive()) {
+            if (thread != null) {
+                while (thread.isAlive()) {
                     try {
-                        myThread.join();
+                        thread.join();
                     } catch (InterruptedException e) { // CSIGNORE: EmptyBlock
                     }
                 }
             }
-            myThread = null;
+            synchronized (this) {
+                myThread = null;
+                shutdownThread = false;
+            }
+        }
+
+        /**
+         * Check whether any configured link has a replacement being brought
+         * up.
+         *
+         * @return true if a replacement is pending
+         */
+        private boolean replacementPending() {
+            for (Link link : links) {
+                if (link.replacement != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get the time to wait for the next event. This is the time until the
+         * next timer expires, but no longer than {@link #MAX_EVENT_WAIT} so
+         * that the watchdog is patted.
+         *
+         * @return the time to wait, in milliseconds
+         */
+        private long timeToNextDeadline() {
+            long wait = nextDeadline - clock.millis();
+            if (wait > MAX_EVENT_WAIT) {
+                wait = MAX_EVENT_WAIT;
+            } else if (wait < 1) {
+                wait = 1;
+            }
+            return wait;
+        }
+
+        /**
+         * Apply all events that are currently queued. The caller must hold
+         * this object's lock.
+         */
+        private void applyQueuedEvents() {
+            SystemEvent event = events.poll();
+            while (event != null) {
+                apply(event);
+                event = events.poll();
+            }
+        }
+
+        /**
+         * Apply a single event to the cached link details. The caller must
+         * hold this object's lock.
+         *
+         * @param event
+         *            the event to apply
+         */
+        private void apply(final SystemEvent event) {
+            Link link = event.link;
+
+            switch (event.type) {
+            case LINK_STATE:
+                if (link.linkState != event.linkState) {
+                    log.debug(link + " changed from "
+                            + link.linkState + " to " + event.linkState);
+                    if ((event.linkState == LinkStates.CONNECTING
+                            || event.linkState == LinkStates.DISCONNECTED)
+                            && link.linkState != LinkStates.CONNECTING
+                            && link.linkState != LinkStates.DISCONNECTED
+                            && !link.pendingSetups.isEmpty()) {
+                        link.replayNeeded = true;
+                    }
+                    link.linkState = event.linkState;
+                }
+                break;
+
+            case UNIT_ENABLED:
+                link.unitEnabled = event.enabled;
+                break;
+
+            case CALL_GAP:
+                link.applyCallGap(event.duration);
+                break;
+
+            case PREFERRED_UNIT:
+                link.preferredSCP = event.preferredSCP;
+                link.secondarySCP = event.secondarySCP;
+                break;
+
+            case ACTIVITY:
+                // The suspect flag itself is recalculated by refresh()
+                link.activityPending.set(false);
+                break;
+
+            case WAKEUP:
+                break;
+
+            default:
+                log.debug("Unexpected event type " + event.type);
+                break;
+            }
         }
 
         /**
-         * Main loop procedure for the thread.
+         * Recalculate the system and publish a new snapshot. The caller must
+         * hold this object's lock.
          * <p/>
-         * This method is called every polling interval and carries out the
-         * following actions:
+         * This method carries out the following actions:
          * <ol>
          * <li>Each gapped link is checked to see if the gapping duration has
          * elapsed, and if so gapping is disabled on that link.</li>
          * <li>The last activity timestamp is checked on each link, and any
          * links that have been inactive for more than the configured duration
          * are marked as suspect.</li>
+         * <li>If active failover is enabled, master probes are sent and
+         * checked (see {@link #probeLinks(long)}).</li>
          * <li>The system state is recalculated.</li>
          * <li>The preferred unit is recalculated.</li>
+         * <li>If the system state is MISSING_MASTER, active failover is enabled
+         * and a probe interval has elapsed, then a slave is promoted if it is
+         * safe to do so (see {@link #promoteProbedSlave(long)}).</li>
          * <li>If the system state is MISSING_MASTER and the configured timeout
          * has elapsed, then the unit with the highest ID is sent a
-         * {@link BecomeMaster} request and the timeout is reset.
+         * {@link BecomeMaster} request and the timeout is reset.</li>
+         * <li>The time at which the next timer expires is calculated.</li>
+         * <li>A new {@link Snapshot} is published.</li>
          * </ol>
          */
-        private void internalRun() {
+        private void refresh() {
             SystemState newState;
 
-            long now = System.currentTimeMillis();
+            long now = clock.millis();
             // Update per-link details
             for (Link link : links) {
                 // Check gapping
@@ -1308,12 +2738,22 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
                 }
             }
 
+            probeLinks(now);
+
             newState = recalcMode();
             recalcPreferredUnit(newState);
             state = newState;
 
+            // Check if we can promote a slave straight away
+            boolean promoted = false;
+            if (state == SystemState.MISSING_MASTER && probeInterval > 0
+                    && now - missingMasterStart > probeInterval
+                    && now - promotionSent > probeInterval * probeFailures) {
+                promoted = promoteProbedSlave(now);
+            }
+
             // Check if we need to promote a slave
-            if (state == SystemState.MISSING_MASTER
+            if (!promoted && state == SystemState.MISSING_MASTER
                     && now - missingMasterStart > masterSlaveSwapTimeout) {
                 // Select the unit with the highest unit ID, and promote it
                 Link chosenUnit = null;
@@ -1336,8 +2776,356 @@ public class OCPSystemManager implements ServerEventNotifier, OCPClient {
                 if (chosenUnit != null
                         && chosenUnit.linkState == LinkStates.SLAVE) {
                     missingMasterStart = now; // Avoid spamming a unit
-                    chosenUnit.queueMessage(new BecomeMaster(), null);
+                    sendPromotion(chosenUnit);
+                }
+            }
+
+            // Work out when we next need to look at the timers
+            long deadline = Long.MAX_VALUE;
+            for (Link link : links) {
+                if (link.gappingActive && link.gappingEnd != Long.MAX_VALUE) {
+                    deadline = Math.min(deadline, link.gappingEnd + 1);
+                }
+                if (!link.linkSuspect) {
+                    deadline = Math.min(deadline,
+                            link.linkManager.lastActivity()
+                            + linkSuspectTimeout + 1);
+                }
+                if (link.probeSent != 0) {
+                    deadline = Math.min(deadline,
+                            link.probeSent + probeInterval);
+                }
+            }
+            if (state == SystemState.MISSING_MASTER) {
+                deadline = Math.min(deadline,
+                        missingMasterStart + masterSlaveSwapTimeout + 1);
+                if (probeInterval > 0) {
+                    deadline = Math.min(deadline, Math.max(
+                            missingMasterStart + probeInterval,
+                            promotionSent + probeInterval * probeFailures)
+                            + 1);
+                }
+            }
+            nextDeadline = deadline;
+
+            // Publish the result
+            List<LinkStatus> statuses = new ArrayList<LinkStatus>(links.size());
+            LinkStatus preferred = null;
+            for (Link link : links) {
+                LinkStatus status = new LinkStatus(link);
+                statuses.add(status);
+                if (link == preferredLink) {
+                    preferred = status;
+                }
+            }
+            if (preferred == null && preferredLink != null) {
+                preferred = new LinkStatus(preferredLink);
+            }
+            snapshot = new Snapshot(state, preferred,
+                    Collections.unmodifiableList(statuses));
+        }
+
+        /**
+         * Send master probes and check the replies, if active failover is
+         * enabled. The caller must hold this object's lock.
+         * <p/>
+         * Each link in the MASTER or SLAVE state is sent an
+         * {@link AreYouMaster} probe every probe interval. When the interval
+         * has elapsed the probe is checked against the time of the last reply
+         * on the link: an unanswered probe counts as a miss, and a link that
+         * misses the configured number of consecutive probes is treated as
+         * failed until it answers again. A link is never failed if the remote
+         * unit has not yet answered any probe, so that units which do not
+         * support probing fall back to the timeout-based behaviour.
+         *
+         * @param now
+         *            the current time
+         */
+        private void probeLinks(final long now) {
+            for (Link link : links) {
+                if (probeInterval == 0
+                        || (link.linkState != LinkStates.MASTER
+                        && link.linkState != LinkStates.SLAVE)) {
+                    link.probeSent = 0;
+                    link.probeMisses = 0;
+                    link.probeAnswered = false;
+                    link.probeFailed = false;
+                    continue;
+                }
+
+                if (link.probeSent != 0) {
+                    if (now - link.probeSent < probeInterval) {
+                        continue; // Still waiting for the reply
+                    }
+
+                    if (link.linkManager.lastMasterReply() >= link.probeSent) {
+                        if (link.probeFailed) {
+                            log.warn(link + " is answering master probes "
+                                    + "again");
+                        }
+                        link.probeAnswered = true;
+                        link.probeMisses = 0;
+                        link.probeFailed = false;
+                    } else if (link.probeAnswered) {
+                        link.probeMisses++;
+                        if (!link.probeFailed
+                                && link.probeMisses >= probeFailures) {
+                            log.warn(link + " failed: " + link.probeMisses
+                                    + " master probes unanswered");
+                            link.probeFailed = true;
+                        }
+                    }
+                }
+
+                link.probeSent = now;
+                link.queueMessage(new AreYouMaster(), null);
+            }
+        }
+
+        /**
+         * Promote a slave as soon as the master has been lost, using the
+         * results of the master probes. The caller must hold this object's
+         * lock.
+         * <p/>
+         * A slave is only promoted if it is safe to do so:
+         * <ul>
+         * <li>The slave must be enabled and have answered its last probe.</li>
+         * <li>No link that is answering probes may still report itself as
+         * master.</li>
+         * <li>At least half of the links must have answered their last probe,
+         * so that a client which has lost contact with most of the system does
+         * not promote a unit on its own.</li>
+         * </ul>
+         * Of the eligible slaves, the one with the highest unit ID is chosen.
+         *
+         * @param now
+         *            the current time
+         * @return true if a {@link BecomeMaster} request was sent
+         */
+        private boolean promoteProbedSlave(final long now) {
+            Link chosenUnit = null;
+            int answering = 0;
+
+            for (Link link : links) {
+                if (!link.probeAnswered || link.probeMisses != 0
+                        || link.probeFailed) {
+                    continue;
+                }
+                answering++;
+
+                if (link.linkState == LinkStates.MASTER) {
+                    log.debug("Not promoting: " + link + " is master");
+                    return false;
+                }
+                if (link.linkState == LinkStates.SLAVE && link.unitEnabled
+                        && (chosenUnit == null
+                        || link.linkManager.getUnitID()
+                        > chosenUnit.linkManager.getUnitID())) {
+                    chosenUnit = link;
+                }
+            }
+
+            if (chosenUnit == null || answering * 2 < links.size()) {
+                log.debug("Not promoting: chosenUnit " + chosenUnit
+                        + " answering " + answering + " of " + links.size());
+                return false;
+            }
+
+            log.info("Promoting unit " + chosenUnit + " after losing the "
+                    + "master");
+            promotionSent = now;
+            sendPromotion(chosenUnit);
+            return true;
+        }
+
+        /**
+         * Replay the unanswered call setups of every link that has failed
+         * since this was last called, and discard any tracked setups that are
+         * too old to be replayed. The caller must hold this object's lock.
+         */
+        private void replaySetups() {
+            long now = clock.millis();
+            for (Link link : links) {
+                if (link.replayNeeded) {
+                    link.replayNeeded = false;
+                    replaySetups(link, now);
+                }
+                if (!link.pendingSetups.isEmpty()) {
+                    for (PendingSetup setup : link.pendingSetups.values()) {
+                        if (now - setup.sentAt > setupReplayMaxAge) {
+                            link.pendingSetups.remove(setup.tid, setup);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Replay the unanswered call setups of a failed link. The caller must
+         * hold this object's lock.
+         * <p/>
+         * The oldest setups are replayed first, up to the configured limit,
+         * and setups older than the configured maximum age are skipped. A
+         * setup that is still waiting in the failed link's transmit queue is
+         * moved as it is; otherwise the copy of the transmitted frame is sent
+         * again. Any later messages for the call still waiting in the queue
+         * are moved after it, in order. Each setup is sent on the link that
+         * {@link #getLink(List)} would return, excluding every link it has
+         * already been sent on, and the call's task ID handler is moved with
+         * it. If no other link can take the call, or the setup was neither
+         * queued nor captured, the call is left to the application's own
+         * timers.
+         *
+         * @param link
+         *            the failed link
+         * @param now
+         *            the current time
+         */
+        private void replaySetups(final Link link, final long now) {
+            List<PendingSetup> setups =
+                    new ArrayList<PendingSetup>(link.pendingSetups.values());
+            for (PendingSetup setup : setups) {
+                link.pendingSetups.remove(setup.tid, setup);
+            }
+            Collections.sort(setups, PendingSetup.OLDEST_FIRST);
+
+            // Choose the setups to replay, and collect their queued messages
+            List<PendingSetup> chosen = new ArrayList<PendingSetup>();
+            Set<Integer> chosenTids = new HashSet<Integer>();
+            for (PendingSetup setup : setups) {
+                if (chosen.size() < setupReplayLimit
+                        && now - setup.sentAt <= setupReplayMaxAge) {
+                    chosen.add(setup);
+                    chosenTids.add(setup.tid);
+                }
+            }
+            HashMap<Integer, List<LegacyOCPMessage>> queued =
+                    new HashMap<Integer, List<LegacyOCPMessage>>();
+            if (!chosenTids.isEmpty()) {
+                for (LegacyOCPMessage message
+                        : link.linkManager.removeQueuedCalls(chosenTids)) {
+                    List<LegacyOCPMessage> messages =
+                            queued.get(message.getOrigTID());
+                    if (messages == null) {
+                        messages = new ArrayList<LegacyOCPMessage>();
+                        queued.put(message.getOrigTID(), messages);
+                    }
+                    messages.add(message);
+                }
+            }
+
+            int replayed = 0;
+            int lost = 0;
+            for (PendingSetup setup : chosen) {
+                List<LegacyOCPMessage> messages = queued.remove(setup.tid);
+                if (messages == null) {
+                    messages = new ArrayList<LegacyOCPMessage>();
+                }
+                if (setup.frame != null) {
+                    try {
+                        messages.add(0, LegacyOCPMessage.decodeBuffer(
+                                ByteBuffer.wrap(setup.frame)));
+                    } catch (OCPException e) {
+                        log.warn("Could not decode the call setup for task "
+                                + setup.tid + " on " + link, e);
+                    }
+                }
+                if (messages.isEmpty()
+                        || !(messages.get(0) instanceof InitialDP)) {
+                    // Neither queued nor captured, so nothing to replay
+                    log.debug("No call setup to replay for task " + setup.tid
+                            + " on " + link);
+                    discard(messages, link);
+                    lost++;
+                } else if (replaySetup(link, setup, messages)) {
+                    replayed++;
+                }
+            }
+
+            log.info("Replayed " + replayed + " of " + setups.size()
+                    + " unanswered call setups from " + link);
+            if (lost > 0) {
+                log.warn(lost + " unanswered call setups from " + link
+                        + " could not be replayed as they were neither "
+                        + "queued nor captured");
+            }
+        }
+
+        /**
+         * Send a single call setup from a failed link, and any later messages
+         * for the call, on another link.
+         *
+         * @param link
+         *            the failed link
+         * @param setup
+         *            the setup
+         * @param messages
+         *            the setup message followed by the call's later messages,
+         *            which this method takes ownership of
+         * @return true if the setup was sent on another link
+         */
+        private boolean replaySetup(final Link link, final PendingSetup setup,
+                final List<LegacyOCPMessage> messages) {
+            OCPMessageHandler handler =
+                    link.linkManager.getTidHandler(setup.tid);
+            List<OCPLink> tried = new ArrayList<OCPLink>();
+            if (setup.triedLinks != null) {
+                tried.addAll(setup.triedLinks);
+            }
+            tried.add(link);
+
+            Link target = null;
+            if (handler != null) {
+                // Not getLink, as the application did not ask for a link
+                target = selectLink(snapshot, tried);
+            }
+            if (target == null) {
+                discard(messages, link);
+                return false;
+            }
+
+            // Detach rather than deregister, so the call keeps its context
+            link.linkManager.detachTidHandler(setup.tid);
+            target.linkManager.registerTidHandler(handler, setup.tid);
+            replayedCalls.put(setup.tid, target);
+            target.pendingSetups.put(setup.tid,
+                    new PendingSetup(setup.tid, setup.sentAt, tried));
+            for (int i = 0; i < messages.size(); i++) {
+                if (!target.linkManager.offerMessage(messages.get(i))) {
+                    log.warn("Could not replay the call " + (i == 0
+                            ? "setup" : "messages") + " for task "
+                            + setup.tid + ": " + target + " is congested");
+                    if (i == 0) {
+                        target.pendingSetups.remove(setup.tid);
+                    }
+                    discard(messages.subList(i, messages.size()), target);
+                    return i > 0;
+                }
+            }
+            log.debug("Replayed the call setup for task " + setup.tid
+                    + " from " + link + " on " + target + " with "
+                    + (messages.size() - 1) + " later messages");
+            return true;
+        }
+
+        /**
+         * Release messages that could not be replayed, failing any that were
+         * sent with {@link OCPLinkManager#sendAsync}.
+         *
+         * @param messages
+         *            the messages, which this method takes ownership of
+         * @param link
+         *            the link the messages were to be sent on
+         */
+        private void discard(final List<LegacyOCPMessage> messages,
+                final Link link) {
+            for (LegacyOCPMessage message : messages) {
+                if (message.hasSendFuture()) {
+                    message.takeSendFuture().fail(new OCPException(
+                            "Could not replay the call for task "
+                            + message.getOrigTID() + " from " + link));
                 }
+                message.release();
             }
         }
     }
@@ -24,6 +24,8 @@ package com.telsis.jocp;
 
 import java.util.Arrays;
 
+import com.telsis.jutils.signalling.PackedTelno;
+
 /**
  * Utility class for handling OCP-format telnos.
  * <p/>
@@ -75,6 +77,17 @@ public class OCPTelno {
         setTelno(outDigits, packedTelno);
     }
 
+    /**
+     * Instantiates a new OCP telno from a packed telno.
+     *
+     * @param telno the packed telno
+     */
+    public OCPTelno(final PackedTelno telno) {
+        this.mTypePlan = telno.getTypePlan();
+        mTelno[1] = (byte) telno.getLength();
+        telno.getPackedDigits(mTelno, 2);
+    }
+
     /**
      * Decode an existing OCP telno. The telno does not have to be 18 bytes
      * long - telnos of other lengths can be decoded.
@@ -161,18 +174,23 @@ public class OCPTelno {
      */
     public final byte[] getUnpackedDigits() {
         byte[] unpacked = new byte[getLength()];
-        for (int i = 0; i < getLength(); i++) {
-            //CSOFF: MagicNumber Some bit twiddling here
-            if ((i % 2) == 0) {
-                unpacked[i] = (byte) ((mTelno[(i / 2) + 2] >> 4) & 0x0F);
-            } else {
-                unpacked[i] = (byte) (mTelno[(i / 2) + 2] & 0x0F);
-            }
-            //CSON: MagicNumber
-        }
+        PackedTelno.unpack(mTelno, 2, unpacked, 0, unpacked.length);
         return unpacked;
     }
 
+    /**
+     * Converts this telno into a packed telno.
+     *
+     * @return the packed telno
+     * @throws IllegalArgumentException
+     *             if the telno has more than
+     *             {@value com.telsis.jutils.signalling.PackedTelno#MAX_DIGITS}
+     *             digits
+     */
+    public final PackedTelno toPackedTelno() {
+        return PackedTelno.valueOfPacked(mTypePlan, getLength(), mTelno, 2);
+    }
+
     @Override
     public final int hashCode() {
         // Auto-generated by Eclipse
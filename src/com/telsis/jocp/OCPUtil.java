@@ -23,6 +23,7 @@
 package com.telsis.jocp;
 
 import com.telsis.jutils.signalling.GenericTelno;
+import com.telsis.jutils.signalling.PackedTelno;
 import com.telsis.jutils.signalling.SignallingUtil;
 import com.telsis.jutils.signalling.TelnoType;
 
@@ -65,8 +66,15 @@ public final class OCPUtil {
     public static OCPTelno convertStringToOCPTelno(final String digits,
             final TelnoType typePlan, final boolean permitStarHash)
             throws IllegalArgumentException { // CSIGNORE: RedundantThrows
-        return convertGenericTelnoToOCPTelno(SignallingUtil
-                .convertStringToGenericTelno(digits, typePlan, permitStarHash));
+        PackedTelno telno;
+        try {
+            telno = SignallingUtil.convertStringToPackedTelno(digits, typePlan,
+                    permitStarHash);
+        } catch (IllegalArgumentException e) {
+            // Too many digits for an OCP telno
+            telno = PackedTelno.EMPTY;
+        }
+        return new OCPTelno(telno);
     }
 
     /**
@@ -86,15 +94,8 @@ public final class OCPUtil {
                     SignallingUtil.convertTelnoTypeToQ931(TelnoType.UNKNOWN),
                     (byte) 0, packedTelno);
         }
-        int outIndex = 0;
-        for (int i = 0; i < unpackedTelno.length; i++) {
-            packedTelno[outIndex] |= unpackedTelno[i];
-            if (i % 2 != 0) {
-                outIndex++;
-            } else {
-                packedTelno[outIndex] <<= 4;    // CSIGNORE: MagicNumber
-            }
-        }
+        PackedTelno.pack(unpackedTelno, 0, packedTelno, 0,
+                unpackedTelno.length);
 
         return new OCPTelno(
                 SignallingUtil.convertTelnoTypeToQ931(telno.getType()),
@@ -115,8 +116,9 @@ public final class OCPUtil {
      */
     public static String convertOCPTelnoToString(final OCPTelno ocpTelno,
             final boolean permitStarHash) {
-        return SignallingUtil.convertGenericTelnoToString(
-                convertOCPTelnoToGenericTelno(ocpTelno), permitStarHash);
+        byte[] digits = ocpTelno.getUnpackedDigits();
+        return SignallingUtil.formatDigits(digits, 0, digits.length,
+                permitStarHash, new StringBuilder(digits.length)).toString();
     }
 
     /**
@@ -134,4 +136,32 @@ public final class OCPUtil {
                 ocpTelno.getTypePlan()));
         return telno;
     }
+
+    /**
+     * Converts an OCP telno into a {@link PackedTelno}.
+     *
+     * @param ocpTelno
+     *            The telno to convert
+     * @return the corresponding packed telno
+     * @throws IllegalArgumentException
+     *             if the telno has more than
+     *             {@value com.telsis.jutils.signalling.PackedTelno#MAX_DIGITS}
+     *             digits
+     */
+    public static PackedTelno convertOCPTelnoToPackedTelno(
+            final OCPTelno ocpTelno) {
+        return ocpTelno.toPackedTelno();
+    }
+
+    /**
+     * Converts a {@link PackedTelno} into an OCP telno.
+     *
+     * @param telno
+     *            The packed telno to convert
+     * @return the corresponding OCP telno
+     */
+    public static OCPTelno convertPackedTelnoToOCPTelno(
+            final PackedTelno telno) {
+        return new OCPTelno(telno);
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import java.util.Arrays;
+
+/**
+ * A compact filter of recently released task IDs, used by
+ * {@link OCPLinkManager} to recognise late messages for calls that have
+ * already been cleared down.
+ * <p/>
+ * The filter is a time-decaying Bloom filter made up of two generations of
+ * bits. Released task IDs are added to the current generation, and lookups
+ * check both generations. Once per window the previous generation is cleared
+ * and the generations are swapped, so a task ID is remembered for between one
+ * and two windows. Like any Bloom filter it can report a task ID that was
+ * never released, with a probability that rises with the number of releases
+ * per window; with the default size this is about one in a thousand at 10,000
+ * releases per window.
+ * <p/>
+ * This class is thread-safe.
+ *
+ * @author Telsis
+ */
+final class ReleasedTidFilter {
+    /** The number of bits in each generation (a power of 2). */
+    private static final int  BITS        = 1 << 18;
+    /** The mask that reduces a hash to a bit index. */
+    private static final int  BIT_MASK    = BITS - 1;
+    /** The number of bits set for each task ID. */
+    private static final int  HASHES      = 3;
+    /** The number of bits in a long. */
+    private static final int  LONG_SHIFT  = 6;
+
+    /** The generation that released task IDs are added to. */
+    private long[] current  = new long[BITS >>> LONG_SHIFT];
+    /** The previous generation. */
+    private long[] previous = new long[BITS >>> LONG_SHIFT];
+    /** The length of a window, in milliseconds. */
+    private final long window;
+    /** The time at which the current generation was started. */
+    private long   started;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param newWindow
+     *            the length of a window in milliseconds; task IDs are
+     *            remembered for between one and two windows
+     * @param now
+     *            the current time
+     */
+    ReleasedTidFilter(final long newWindow, final long now) {
+        this.window = newWindow;
+        this.started = now;
+    }
+
+    /**
+     * Record that a task ID has been released.
+     *
+     * @param tid
+     *            the task ID
+     * @param now
+     *            the current time
+     */
+    synchronized void add(final int tid, final long now) {
+        rotate(now);
+        int hash = mix(tid);
+        int step = mix(hash) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = hash & BIT_MASK;
+            current[bit >>> LONG_SHIFT] |= 1L << bit;
+            hash += step;
+        }
+    }
+
+    /**
+     * Check whether a task ID may have been released recently.
+     *
+     * @param tid
+     *            the task ID
+     * @param now
+     *            the current time
+     * @return true if the task ID was probably released in the last one to two
+     *         windows; false if it definitely was not
+     */
+    synchronized boolean mightContain(final int tid, final long now) {
+        rotate(now);
+        return contains(current, tid) || contains(previous, tid);
+    }
+
+    /**
+     * Check whether all of the bits for a task ID are set in a generation.
+     *
+     * @param bits
+     *            the generation
+     * @param tid
+     *            the task ID
+     * @return true if all of the bits are set
+     */
+    private static boolean contains(final long[] bits, final int tid) {
+        int hash = mix(tid);
+        int step = mix(hash) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = hash & BIT_MASK;
+            if ((bits[bit >>> LONG_SHIFT] & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+
+    /**
+     * Start a new generation if the current window has ended. If more than
+     * one window has passed, both generations are cleared.
+     *
+     * @param now
+     *            the current time
+     */
+    private void rotate(final long now) {
+        long elapsed = now - started;
+        if (elapsed < window) {
+            return;
+        }
+        long[] spare = previous;
+        Arrays.fill(spare, 0L);
+        if (elapsed >= 2 * window) {
+            Arrays.fill(current, 0L);
+        }
+        previous = current;
+        current = spare;
+        started = now;
+    }
+
+    /**
+     * Spread the bits of a value, as task IDs are often allocated
+     * sequentially. The bits for a task ID are found by double hashing: the
+     * first bit is at the mixed task ID, and each further bit is a fixed odd
+     * step (the mixed first hash) along from the last.
+     *
+     * @param value
+     *            the value to mix
+     * @return the mixed hash
+     */
+    private static int mix(final int value) {
+        // CSOFF: MagicNumber The MurmurHash3 finaliser
+        int h = value;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+        // CSON: MagicNumber
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The pending result of sending a message with
+ * {@link OCPLinkManager#sendAsync(OCPMessage)}. The future completes
+ * successfully once the whole message has been written to the socket, or
+ * fails with an {@link OCPException} if the link is reset or disconnected
+ * while the message is still queued or partly written.
+ * <p/>
+ * Both the time at which the message was queued and the time at which it was
+ * written are recorded, in {@link System#nanoTime()} units. Note that a
+ * successful write only means that the message has been handed to the
+ * operating system; it does not mean that the remote unit has received it.
+ * <p/>
+ * Sends cannot be cancelled once queued, so {@link #cancel(boolean)} always
+ * returns false.
+ *
+ * @author Telsis
+ */
+public final class SendFuture implements Future<Void> {
+    /**
+     * Interface for being told when a send completes.
+     */
+    public interface Listener {
+        /**
+         * Called once the send has completed or failed. This is called from
+         * the link's transmit or receive thread, so implementations must not
+         * block.
+         *
+         * @param future
+         *            the completed future
+         */
+        void sendComplete(SendFuture future);
+    }
+
+    /** The time at which the message was queued. */
+    private final long     enqueueTime;
+    /** The time at which the message was written, or 0 if not written. */
+    private long           wireTime;
+    /** The reason the send failed, or null. */
+    private OCPException   cause;
+    /** Whether or not the send has completed or failed. */
+    private boolean        done;
+    /** Listeners to call on completion, or null if there are none. */
+    private List<Listener> listeners;
+
+    /** The logger for this class. */
+    private static Logger log = Logger.getLogger("ocpLinkManager");
+
+    /**
+     * Creates a pending send.
+     *
+     * @param enqueueTime
+     *            the {@link System#nanoTime()} at which the message was queued
+     */
+    SendFuture(final long enqueueTime) { // CSIGNORE: HiddenField
+        this.enqueueTime = enqueueTime;
+    }
+
+    /**
+     * Gets the time at which the message was queued.
+     *
+     * @return the time, in {@link System#nanoTime()} units
+     */
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    /**
+     * Gets the time at which the last byte of the message was written to the
+     * socket.
+     *
+     * @return the time, in {@link System#nanoTime()} units, or 0 if the
+     *         message has not been written
+     */
+    public synchronized long getWireTime() {
+        return wireTime;
+    }
+
+    /**
+     * Checks whether the message was written successfully.
+     *
+     * @return true if the send has completed successfully
+     */
+    public synchronized boolean isSuccess() {
+        return done && cause == null;
+    }
+
+    /**
+     * Gets the reason the send failed.
+     *
+     * @return the failure, or null if the send has not failed
+     */
+    public synchronized OCPException getCause() {
+        return cause;
+    }
+
+    /**
+     * Add a listener to be called when the send completes. If the send has
+     * already completed then the listener is called immediately from the
+     * calling thread.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addListener(final Listener listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<Listener>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        callListener(listener);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized Void get() throws InterruptedException,
+            ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized Void get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        while (!done) {
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return result();
+    }
+
+    /**
+     * Gets the result of a completed send.
+     *
+     * @return null
+     * @throws ExecutionException
+     *             if the send failed
+     */
+    private Void result() throws ExecutionException {
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return null;
+    }
+
+    /**
+     * Mark the send as successful.
+     *
+     * @param time
+     *            the {@link System#nanoTime()} at which the write completed
+     */
+    void complete(final long time) {
+        List<Listener> toNotify;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            wireTime = time;
+            done = true;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        callListeners(toNotify);
+    }
+
+    /**
+     * Mark the send as failed.
+     *
+     * @param failure
+     *            the reason the send failed
+     */
+    void fail(final OCPException failure) {
+        List<Listener> toNotify;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            cause = failure;
+            done = true;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        callListeners(toNotify);
+    }
+
+    /**
+     * Call each listener in a list.
+     *
+     * @param toNotify
+     *            the listeners, or null
+     */
+    private void callListeners(final List<Listener> toNotify) {
+        if (toNotify != null) {
+            for (Listener listener : toNotify) {
+                callListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Call a listener, logging any exception it throws.
+     *
+     * @param listener
+     *            the listener
+     */
+    private void callListener(final Listener listener) {
+        try {
+            listener.sendComplete(this);
+        } catch (RuntimeException e) {
+            log.warn("Exception occurred in send listener " + listener, e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!done) {
+            return "SendFuture(pending)";
+        } else if (cause != null) {
+            return "SendFuture(failed: " + cause.getMessage() + ")";
+        } else {
+            return "SendFuture(written after "
+                    + (wireTime - enqueueTime) + "ns)";
+        }
+    }
+}
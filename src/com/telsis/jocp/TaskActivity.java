@@ -0,0 +1,49 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+/**
+ * Optional interface for {@link OCPMessageHandler task ID handlers} that know
+ * whether their calls are still running. The link manager uses it to answer
+ * {@link com.telsis.jocp.messages.TaskActive TaskActive} audits more accurately
+ * than registration alone allows, and to find and release task IDs whose calls
+ * have ended without being deregistered.
+ * <p/>
+ * Handlers that do not implement this interface are treated as active for as
+ * long as they are registered.
+ *
+ * @see OCPLinkManager
+ * @author Telsis
+ */
+public interface TaskActivity {
+    /**
+     * Check whether the call using a task ID is still running. This is called
+     * from the link's receive thread, so implementations must be thread-safe,
+     * must not block and must not call back into the link.
+     *
+     * @param tid
+     *            the task ID that this handler is registered for
+     * @return true if the call is still running
+     */
+    boolean isTaskActive(int tid);
+}
@@ -0,0 +1,73 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import com.telsis.jocp.messages.InitialDP;
+import com.telsis.jocp.messages.LinkMessage;
+
+/**
+ * The transmit lanes of an {@link OCPLinkManager}. Each lane has its own
+ * queue; the transmit thread always serves {@link #LINK} and then
+ * {@link #MANAGEMENT} first, and shares the remaining bandwidth between
+ * {@link #SETUP} and {@link #CALL} by weight. Only {@link #SETUP} and
+ * {@link #CALL} count towards the queue's capacity, so that a backlog of call
+ * traffic can never delay the link control messages that keep the link
+ * alive.
+ *
+ * @author Telsis
+ */
+public enum TransmitLane {
+    /** Link control messages, such as status responses and heartbeats. */
+    LINK,
+    /** Call control messages to or from the management task ID. */
+    MANAGEMENT,
+    /** Messages that start a new call. */
+    SETUP,
+    /** All other call control messages: in-call results and acknowledgements. */
+    CALL;
+
+    /**
+     * Gets the lane that a message belongs to, from the message alone. The
+     * {@link TransmitQueue} may still carry a {@link #CALL} message on the
+     * {@link #SETUP} lane to keep it behind its call's queued setup.
+     *
+     * @param message
+     *            the message
+     * @return the lane
+     */
+    public static TransmitLane forMessage(final OCPMessage message) {
+        if (message instanceof LinkMessage) {
+            return LINK;
+        }
+        LegacyOCPMessage legacyMessage = (LegacyOCPMessage) message;
+        if (legacyMessage.getDestTID() == OCPMessage.MANAGEMENT_TASK_ID
+                || legacyMessage.getOrigTID()
+                == OCPMessage.MANAGEMENT_TASK_ID) {
+            return MANAGEMENT;
+        }
+        if (message instanceof InitialDP) {
+            return SETUP;
+        }
+        return CALL;
+    }
+}
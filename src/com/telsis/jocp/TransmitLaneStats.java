@@ -0,0 +1,128 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+/**
+ * A snapshot of the statistics for one {@link TransmitLane} of a link.
+ *
+ * @author Telsis
+ */
+public final class TransmitLaneStats {
+    /** The lane. */
+    private final TransmitLane lane;
+    /** The number of messages currently queued. */
+    private final int          depth;
+    /** The number of messages taken from the lane for transmission. */
+    private final long         dequeued;
+    /** The total time that dequeued messages spent queued. */
+    private final long         totalWait;
+    /** The longest time that a dequeued message spent queued. */
+    private final long         maxWait;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param lane
+     *            the lane
+     * @param depth
+     *            the number of messages currently queued
+     * @param dequeued
+     *            the number of messages taken from the lane
+     * @param totalWait
+     *            the total time dequeued messages spent queued, in nanoseconds
+     * @param maxWait
+     *            the longest time a dequeued message spent queued, in
+     *            nanoseconds
+     */
+    TransmitLaneStats(final TransmitLane lane, final int depth, // CSIGNORE: HiddenField
+            final long dequeued, final long totalWait, // CSIGNORE: HiddenField
+            final long maxWait) { // CSIGNORE: HiddenField
+        this.lane = lane;
+        this.depth = depth;
+        this.dequeued = dequeued;
+        this.totalWait = totalWait;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Gets the lane.
+     *
+     * @return the lane
+     */
+    public TransmitLane getLane() {
+        return lane;
+    }
+
+    /**
+     * Gets the number of messages queued when the snapshot was taken.
+     *
+     * @return the queue depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the number of messages taken from the lane for transmission since
+     * the link was created.
+     *
+     * @return the number of messages
+     */
+    public long getDequeued() {
+        return dequeued;
+    }
+
+    /**
+     * Gets the total time that dequeued messages spent queued.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalWait() {
+        return totalWait;
+    }
+
+    /**
+     * Gets the longest time that a dequeued message spent queued.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Gets the average time that dequeued messages spent queued.
+     *
+     * @return the time in nanoseconds, or 0 if no messages have been dequeued
+     */
+    public long getMeanWait() {
+        return dequeued == 0 ? 0 : totalWait / dequeued;
+    }
+
+    @Override
+    public String toString() {
+        return lane + ": depth " + depth + ", dequeued " + dequeued
+                + ", mean wait " + getMeanWait() + "ns, max wait " + maxWait
+                + "ns";
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.telsis.jocp.messages.InitialDP;
+import com.telsis.jocp.metrics.LatencyHistogram;
+
+/**
+ * The transmit queue of an {@link OCPLinkManager}, made up of one FIFO per
+ * {@link TransmitLane}. The {@link TransmitLane#SETUP} and
+ * {@link TransmitLane#CALL} lanes share a single capacity. The
+ * {@link TransmitLane#LINK} and {@link TransmitLane#MANAGEMENT} lanes are not
+ * limited, so that their low volume of replies and heartbeats is never held
+ * up by a full queue of call traffic. Messages are taken
+ * in strict priority order from the {@link TransmitLane#LINK} and
+ * {@link TransmitLane#MANAGEMENT} lanes. When both the {@link TransmitLane#SETUP}
+ * and {@link TransmitLane#CALL} lanes have messages waiting, up to <i>setup
+ * weight</i> setup messages are taken for each call message, so that neither
+ * can starve the other.
+ * <p/>
+ * Messages for one call are never reordered. A call message whose originating
+ * task ID still has a message waiting in the setup lane joins the setup lane
+ * behind it instead of the call lane. Otherwise a cleardown could overtake the
+ * call's own InitialDP.
+ * <p/>
+ * The queue records, for each lane, how many messages have been taken and how
+ * long they waited. It is thread-safe.
+ *
+ * @author Telsis
+ */
+final class TransmitQueue {
+    /** All lanes, in priority order. */
+    private static final TransmitLane[] LANES = TransmitLane.values();
+
+    /** The number of messages that the setup and call lanes can hold. */
+    private final int                               capacity;
+    /** The lock guarding all state. */
+    private final ReentrantLock                     lock = new ReentrantLock();
+    /** Signalled when a message is added to any lane. */
+    private final Condition                         notEmpty = lock.newCondition();
+    /** Signalled when a message is removed from any lane. */
+    private final Condition                         notFull = lock.newCondition();
+    /** The queue for each lane. */
+    private final List<ArrayDeque<LegacyOCPMessage>> queues;
+    /** The number of messages in the setup and call lanes. */
+    private int                                     size;
+    /**
+     * The number of messages waiting in the setup lane for each originating
+     * task ID.
+     */
+    private final HashMap<Integer, Integer>         setupLaneTids =
+            new HashMap<Integer, Integer>();
+    /** The number of messages taken from each lane. */
+    private final long[]                            dequeued;
+    /** The total wait of messages taken from each lane, in nanoseconds. */
+    private final long[]                            totalWait;
+    /** The longest wait of a message taken from each lane, in nanoseconds. */
+    private final long[]                            maxWait;
+    /** The waits of messages taken from any lane. */
+    private final LatencyHistogram                  waits =
+            new LatencyHistogram();
+    /** The number of setup messages to take for each call message. */
+    private int                                     setupWeight;
+    /** The number of setup messages that may be taken before a call message. */
+    private int                                     setupCredit;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity
+     *            the number of messages that the setup and call lanes can hold
+     * @param setupWeight
+     *            the number of setup messages to take for each call message
+     */
+    TransmitQueue(final int capacity, final int setupWeight) { // CSIGNORE: HiddenField
+        this.capacity = capacity;
+        this.setupWeight = setupWeight;
+        this.setupCredit = setupWeight;
+        queues = new ArrayList<ArrayDeque<LegacyOCPMessage>>(LANES.length);
+        for (int i = 0; i < LANES.length; i++) {
+            queues.add(new ArrayDeque<LegacyOCPMessage>());
+        }
+        dequeued = new long[LANES.length];
+        totalWait = new long[LANES.length];
+        maxWait = new long[LANES.length];
+    }
+
+    /**
+     * Change the number of setup messages to take for each call message.
+     *
+     * @param newWeight
+     *            the new weight
+     */
+    void setSetupWeight(final int newWeight) {
+        lock.lock();
+        try {
+            setupWeight = newWeight;
+            setupCredit = Math.min(setupCredit, newWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a message to the tail of its lane, waiting if it is a setup or call
+     * message and the queue is full.
+     *
+     * @param message
+     *            the message
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    void put(final LegacyOCPMessage message) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (isLimited(message) && size == capacity) {
+                notFull.await();
+            }
+            enqueue(message);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a message to the tail of its lane if there is space.
+     *
+     * @param message
+     *            the message
+     * @return true if the message was added, false if the queue was full
+     */
+    boolean offer(final LegacyOCPMessage message) {
+        lock.lock();
+        try {
+            if (isLimited(message) && size == capacity) {
+                return false;
+            }
+            enqueue(message);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a message counts towards the capacity of the queue.
+     *
+     * @param message
+     *            the message
+     * @return true if the message belongs to the setup or call lane
+     */
+    private static boolean isLimited(final LegacyOCPMessage message) {
+        TransmitLane lane = TransmitLane.forMessage(message);
+        return lane == TransmitLane.SETUP || lane == TransmitLane.CALL;
+    }
+
+    /**
+     * Checks whether a lane counts towards the capacity of the queue.
+     *
+     * @param lane
+     *            the index of the lane
+     * @return true if the lane is the setup or call lane
+     */
+    private static boolean isLimited(final int lane) {
+        return lane == TransmitLane.SETUP.ordinal()
+                || lane == TransmitLane.CALL.ordinal();
+    }
+
+    /**
+     * Add a message to its lane when the queue is known to have space. Must
+     * be called with the lock held.
+     *
+     * @param message
+     *            the message
+     */
+    private void enqueue(final LegacyOCPMessage message) {
+        TransmitLane lane = TransmitLane.forMessage(message);
+        if (lane == TransmitLane.CALL
+                && setupLaneTids.containsKey(message.getOrigTID())) {
+            // Keep the call's messages behind its queued setup
+            lane = TransmitLane.SETUP;
+        }
+        if (lane == TransmitLane.SETUP) {
+            Integer count = setupLaneTids.get(message.getOrigTID());
+            setupLaneTids.put(message.getOrigTID(),
+                    count == null ? 1 : count + 1);
+        }
+        message.setQueuedAt(System.nanoTime());
+        queues.get(lane.ordinal()).add(message);
+        if (isLimited(lane.ordinal())) {
+            size++;
+        }
+        notEmpty.signal();
+    }
+
+    /**
+     * Account for a message that has left a lane. Must be called with the
+     * lock held.
+     *
+     * @param message
+     *            the message
+     * @param lane
+     *            the index of the lane it was in
+     */
+    private void dequeued(final LegacyOCPMessage message, final int lane) {
+        if (isLimited(lane)) {
+            size--;
+        }
+        if (lane == TransmitLane.SETUP.ordinal()) {
+            int count = setupLaneTids.get(message.getOrigTID());
+            if (count == 1) {
+                setupLaneTids.remove(message.getOrigTID());
+            } else {
+                setupLaneTids.put(message.getOrigTID(), count - 1);
+            }
+        }
+    }
+
+    /**
+     * Take the next message to transmit, waiting up to the given time for one
+     * to become available.
+     *
+     * @param timeout
+     *            how long to wait
+     * @param unit
+     *            the unit of the timeout
+     * @return the message, or null if none became available
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    LegacyOCPMessage poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            int lane;
+            while ((lane = nextLane()) < 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            LegacyOCPMessage message = queues.get(lane).poll();
+            dequeued(message, lane);
+            long wait = System.nanoTime() - message.getQueuedAt();
+            dequeued[lane]++;
+            totalWait[lane] += wait;
+            if (wait > maxWait[lane]) {
+                maxWait[lane] = wait;
+            }
+            waits.record(wait);
+            if (isLimited(lane)) {
+                notFull.signal();
+            }
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Choose the lane to take the next message from. Must be called with the
+     * lock held.
+     *
+     * @return the index of the lane, or -1 if all lanes are empty
+     */
+    private int nextLane() {
+        final int link = TransmitLane.LINK.ordinal();
+        final int management = TransmitLane.MANAGEMENT.ordinal();
+        final int setup = TransmitLane.SETUP.ordinal();
+        final int call = TransmitLane.CALL.ordinal();
+
+        if (!queues.get(link).isEmpty()) {
+            return link;
+        }
+        if (!queues.get(management).isEmpty()) {
+            return management;
+        }
+        boolean haveSetup = !queues.get(setup).isEmpty();
+        boolean haveCall = !queues.get(call).isEmpty();
+        if (haveSetup && (!haveCall || setupCredit > 0)) {
+            if (haveCall) {
+                setupCredit--;
+            }
+            return setup;
+        }
+        if (haveCall) {
+            setupCredit = setupWeight;
+            return call;
+        }
+        return -1;
+    }
+
+    /**
+     * Remove and return every queued message that has a
+     * {@link SendFuture} attached.
+     *
+     * @return the removed messages, in no particular order
+     */
+    List<LegacyOCPMessage> removeAsyncSends() {
+        List<LegacyOCPMessage> removed = new ArrayList<LegacyOCPMessage>();
+        lock.lock();
+        try {
+            for (int lane = 0; lane < LANES.length; lane++) {
+                Iterator<LegacyOCPMessage> it = queues.get(lane).iterator();
+                while (it.hasNext()) {
+                    LegacyOCPMessage message = it.next();
+                    if (message.hasSendFuture()) {
+                        it.remove();
+                        dequeued(message, lane);
+                        removed.add(message);
+                    }
+                }
+            }
+            if (!removed.isEmpty()) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every queued setup or call message sent from one of the given
+     * task IDs. A call's messages are all in the setup lane while its
+     * {@link InitialDP} is queued, and all in the call lane once it has been
+     * sent, so taking the setup lane first keeps each call's messages in the
+     * order they were queued.
+     *
+     * @param tids
+     *            the originating task IDs of the calls to remove
+     * @return the removed messages, in queue order
+     */
+    List<LegacyOCPMessage> removeCalls(final Set<Integer> tids) {
+        List<LegacyOCPMessage> removed = new ArrayList<LegacyOCPMessage>();
+        final int[] lanes = {TransmitLane.SETUP.ordinal(),
+                TransmitLane.CALL.ordinal() };
+        lock.lock();
+        try {
+            for (int lane : lanes) {
+                Iterator<LegacyOCPMessage> it = queues.get(lane).iterator();
+                while (it.hasNext()) {
+                    LegacyOCPMessage message = it.next();
+                    if (tids.contains(message.getOrigTID())) {
+                        it.remove();
+                        dequeued(message, lane);
+                        removed.add(message);
+                    }
+                }
+            }
+            if (!removed.isEmpty()) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the free space in the queue, which is shared by the setup and call
+     * lanes.
+     *
+     * @return the number of setup or call messages that can be added without
+     *         waiting
+     */
+    int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the histogram of the time messages taken from any lane spent
+     * queued.
+     *
+     * @return the histogram
+     */
+    LatencyHistogram getWaitHistogram() {
+        return waits;
+    }
+
+    /**
+     * Take a snapshot of the statistics for a lane.
+     *
+     * @param lane
+     *            the lane
+     * @return the statistics
+     */
+    TransmitLaneStats getStats(final TransmitLane lane) {
+        final int i = lane.ordinal();
+        lock.lock();
+        try {
+            return new TransmitLaneStats(lane, queues.get(i).size(),
+                    dequeued[i], totalWait[i], maxWait[i]);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -24,6 +24,9 @@ package com.telsis.jocp;
 
 /**
  * Signals that an OCP message of an unknown type has been received.
+ * <p/>
+ * This exception does not capture a stack trace, so a single instance can be
+ * thrown for every unknown message.
  *
  * @author Telsis
  */
@@ -32,4 +35,9 @@ public class UnknownMessageTypeException extends OCPException {
      * The serial number.
      */
     private static final long serialVersionUID = 1L;
+
+    @Override
+    public final synchronized Throwable fillInStackTrace() {
+        return this;
+    }
 }
@@ -0,0 +1,650 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.telsis.jocp.messages.telsishandler.NumberPortabilityPayload;
+import com.telsis.jutils.UtilitiesFactory;
+import com.telsis.jutils.clock.Clock;
+import com.telsis.jutils.signalling.PackedTelno;
+
+/**
+ * A client-side cache of number portability results, keyed by the dialled
+ * number. Applications that look up the same ported numbers repeatedly with
+ * the {@link com.telsis.jocp.messages.telsishandler.TelsisHandlerNumber#GET_NP_PARAMETERS
+ * GET_NP_PARAMETERS} Telsis handler can consult the cache first and only send
+ * the handler on a miss, storing the {@link NumberPortabilityPayload} that is
+ * returned.
+ * <p/>
+ * Each result is held for a fixed time to live, and the number of results is
+ * bounded. The cache is split into independently locked segments, each of
+ * which uses a segmented LRU policy: new results enter a probationary segment
+ * and are promoted to a protected segment when they are hit again, so a burst
+ * of numbers that are only looked up once cannot flush out the numbers that
+ * are looked up repeatedly. Results are stored in their encoded form, so a
+ * cached result costs about 100 bytes plus the map overhead.
+ * <p/>
+ * The cache can be saved to and loaded from a memory-mapped snapshot file so
+ * that it is warm after a restart. Expiry times are saved as wall-clock times,
+ * so results that expired while the application was stopped are not loaded.
+ * <p/>
+ * This class is thread-safe.
+ *
+ * @author Telsis
+ */
+public final class NumberPortabilityCache {
+    /** The file magic ("OCNP"). */
+    static final int  FILE_MAGIC          = 0x4F434E50;
+    /** The file format version. */
+    static final int  FILE_VERSION        = 1;
+    /** The offset of the file magic in the header. */
+    static final int  HDR_MAGIC_OFFSET    = 0;
+    /** The offset of the format version in the header. */
+    static final int  HDR_VERSION_OFFSET  = 4;
+    /** The offset of the entry count in the header. */
+    static final int  HDR_COUNT_OFFSET    = 8;
+    /** The offset of the entry length in the header. */
+    static final int  HDR_ENTRY_OFFSET    = 12;
+    /** The offset of the time the snapshot was saved in the header. */
+    static final int  HDR_SAVED_OFFSET    = 16;
+    /** The length of the file header. */
+    static final int  HEADER_LENGTH       = 32;
+    /** The offset of the high digits within an entry. */
+    static final int  ENT_HIGH_OFFSET     = 0;
+    /** The offset of the low digits within an entry. */
+    static final int  ENT_LOW_OFFSET      = 8;
+    /** The offset of the expiry time within an entry. */
+    static final int  ENT_EXPIRES_OFFSET  = 16;
+    /** The offset of the type and plan within an entry. */
+    static final int  ENT_TYPE_OFFSET     = 24;
+    /** The offset of the number of digits within an entry. */
+    static final int  ENT_LENGTH_OFFSET   = 25;
+    /** The offset of the encoded result within an entry. */
+    static final int  ENT_PAYLOAD_OFFSET  = 26;
+
+    /** The number of independently locked segments. */
+    private static final int SEGMENTS = 16;
+    /** The percentage of each segment reserved for protected results. */
+    private static final int PROTECTED_PERCENT = 80;
+    /** Conversion between percentages and fractions. */
+    private static final int PERCENT = 100;
+
+    /** The segments, selected by the hash of the dialled number. */
+    private final Segment[]  segments;
+    /** The most results held. */
+    private final int        maxEntries;
+    /** The time to live of each result, in milliseconds. */
+    private final long       ttl;
+    /** The length of an encoded result. */
+    private final int        payloadLength;
+    /** The clock used to expire results. */
+    private volatile Clock   clock = UtilitiesFactory.getClock();
+
+    /** The number of lookups that found a result. */
+    private final AtomicLong hits        = new AtomicLong();
+    /** The number of lookups that did not find a result. */
+    private final AtomicLong misses      = new AtomicLong();
+    /** The number of results evicted to make room for others. */
+    private final AtomicLong evictions   = new AtomicLong();
+    /** The number of results discarded because they had expired. */
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries
+     *            the most results to hold, which must be at least
+     *            {@value #SEGMENTS}
+     * @param ttl
+     *            the time to live of each result
+     * @param unit
+     *            the unit of the time to live
+     */
+    // CSOFF: HiddenField
+    public NumberPortabilityCache(final int maxEntries, final long ttl,
+            final TimeUnit unit) {
+        // CSON: HiddenField
+        if (maxEntries < SEGMENTS) {
+            throw new IllegalArgumentException("The cache must hold at least "
+                    + SEGMENTS + " results");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException(
+                    "The time to live must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttl = unit.toMillis(ttl);
+        this.payloadLength = new NumberPortabilityPayload().getLength();
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            int capacity = maxEntries / SEGMENTS
+                    + (i < maxEntries % SEGMENTS ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Gets the clock used to expire results.
+     *
+     * @return the clock
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock used to expire results. This is intended for testing
+     * with a {@link com.telsis.jutils.clock.VirtualClock}.
+     *
+     * @param newClock
+     *            the clock to use
+     */
+    public void setClock(final Clock newClock) {
+        if (newClock == null) {
+            throw new IllegalArgumentException("The clock must not be null");
+        }
+        this.clock = newClock;
+    }
+
+    /**
+     * Look up the result for a dialled number, decoding it into an existing
+     * payload so that the payload can be re-used for every lookup.
+     *
+     * @param number
+     *            the dialled number
+     * @param result
+     *            the payload to decode the cached result into
+     * @return true if a result was found; false if not, in which case the
+     *         payload is unchanged
+     */
+    public boolean get(final PackedTelno number,
+            final NumberPortabilityPayload result) {
+        byte[] encoded = segmentFor(number).get(number, clock.millis());
+        if (encoded == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        result.decode(ByteBuffer.wrap(encoded));
+        return true;
+    }
+
+    /**
+     * Look up the result for a dialled number.
+     *
+     * @param number
+     *            the dialled number
+     * @return a new payload holding the cached result, or null if there is no
+     *         result for the number
+     */
+    public NumberPortabilityPayload get(final PackedTelno number) {
+        NumberPortabilityPayload result = new NumberPortabilityPayload();
+        return get(number, result) ? result : null;
+    }
+
+    /**
+     * Store the result for a dialled number, replacing any existing result.
+     * The payload is copied, so it may be re-used by the caller.
+     *
+     * @param number
+     *            the dialled number
+     * @param result
+     *            the result
+     */
+    public void put(final PackedTelno number,
+            final NumberPortabilityPayload result) {
+        byte[] encoded = new byte[payloadLength];
+        result.encode(ByteBuffer.wrap(encoded));
+        segmentFor(number).put(number, encoded, clock.millis() + ttl);
+    }
+
+    /**
+     * Discard the result for a dialled number, if there is one.
+     *
+     * @param number
+     *            the dialled number
+     */
+    public void invalidate(final PackedTelno number) {
+        segmentFor(number).remove(number);
+    }
+
+    /**
+     * Discard all results.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets the number of results held, including any that have expired but
+     * have not yet been discarded.
+     *
+     * @return the number of results
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the most results that the cache holds.
+     *
+     * @return the maximum number of results
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Gets the number of lookups that found a result.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups that did not find a result.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of results evicted to make room for others.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of results discarded because they had expired.
+     *
+     * @return the number of expirations
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * Save the results that have not expired to a snapshot file, replacing
+     * the file if it exists.
+     *
+     * @param file
+     *            the file to save to
+     * @return the number of results saved
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public int save(final File file) throws IOException {
+        long now = clock.millis();
+        List<Map.Entry<PackedTelno, Result>> saved =
+                new ArrayList<Map.Entry<PackedTelno, Result>>();
+        for (Segment segment : segments) {
+            segment.collect(saved, now);
+        }
+
+        int entryLength = ENT_PAYLOAD_OFFSET + payloadLength;
+        long fileLength = HEADER_LENGTH + (long) saved.size() * entryLength;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(fileLength);
+            MappedByteBuffer map = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, fileLength);
+            map.putInt(HDR_MAGIC_OFFSET, FILE_MAGIC);
+            map.putInt(HDR_VERSION_OFFSET, FILE_VERSION);
+            map.putInt(HDR_COUNT_OFFSET, saved.size());
+            map.putInt(HDR_ENTRY_OFFSET, entryLength);
+            map.putLong(HDR_SAVED_OFFSET, now);
+
+            int base = HEADER_LENGTH;
+            for (Map.Entry<PackedTelno, Result> entry : saved) {
+                PackedTelno number = entry.getKey();
+                map.putLong(base + ENT_HIGH_OFFSET, number.getHigh());
+                map.putLong(base + ENT_LOW_OFFSET, number.getLow());
+                map.putLong(base + ENT_EXPIRES_OFFSET,
+                        entry.getValue().expiresAt);
+                map.put(base + ENT_TYPE_OFFSET, number.getTypePlan());
+                map.put(base + ENT_LENGTH_OFFSET, (byte) number.getLength());
+                map.position(base + ENT_PAYLOAD_OFFSET);
+                map.put(entry.getValue().encoded);
+                base += entryLength;
+            }
+            map.force();
+        } finally {
+            raf.close();
+        }
+        return saved.size();
+    }
+
+    /**
+     * Load the results that have not expired from a snapshot file written by
+     * {@link #save(File)}. Loaded results replace any held for the same
+     * numbers, and keep their original expiry times.
+     *
+     * @param file
+     *            the file to load from
+     * @return the number of results loaded
+     * @throws IOException
+     *             if the file cannot be read or is not a snapshot file
+     */
+    public int load(final File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long fileLength = raf.length();
+            if (fileLength < HEADER_LENGTH) {
+                throw new IOException(file + " is not a number portability "
+                        + "cache file");
+            }
+            MappedByteBuffer map = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            if (map.getInt(HDR_MAGIC_OFFSET) != FILE_MAGIC) {
+                throw new IOException(file + " is not a number portability "
+                        + "cache file");
+            }
+            if (map.getInt(HDR_VERSION_OFFSET) != FILE_VERSION) {
+                throw new IOException(file + " has unsupported version "
+                        + map.getInt(HDR_VERSION_OFFSET));
+            }
+            int count = map.getInt(HDR_COUNT_OFFSET);
+            int entryLength = map.getInt(HDR_ENTRY_OFFSET);
+            if (entryLength != ENT_PAYLOAD_OFFSET + payloadLength || count < 0
+                    || fileLength < HEADER_LENGTH + (long) count * entryLength) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            long now = clock.millis();
+            int loaded = 0;
+            int base = HEADER_LENGTH;
+            for (int i = 0; i < count; i++, base += entryLength) {
+                long expiresAt = map.getLong(base + ENT_EXPIRES_OFFSET);
+                if (expiresAt <= now) {
+                    continue;
+                }
+                PackedTelno number = PackedTelno.valueOf(
+                        map.get(base + ENT_TYPE_OFFSET),
+                        map.get(base + ENT_LENGTH_OFFSET),
+                        map.getLong(base + ENT_HIGH_OFFSET),
+                        map.getLong(base + ENT_LOW_OFFSET));
+                byte[] encoded = new byte[payloadLength];
+                map.position(base + ENT_PAYLOAD_OFFSET);
+                map.get(encoded);
+                segmentFor(number).put(number, encoded, expiresAt);
+                loaded++;
+            }
+            return loaded;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NumberPortabilityCache[size=" + size() + ", max=" + maxEntries
+                + ", hits=" + hits + ", misses=" + misses + ", evictions="
+                + evictions + ", expirations=" + expirations + "]";
+    }
+
+    /**
+     * Get the segment that holds the result for a dialled number.
+     *
+     * @param number
+     *            the dialled number
+     * @return the segment
+     */
+    private Segment segmentFor(final PackedTelno number) {
+        int hash = number.hashCode();
+        hash ^= hash >>> 16; // CSIGNORE: MagicNumber
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    /**
+     * A cached result.
+     *
+     * @author Telsis
+     */
+    private static final class Result {
+        /** The encoded {@link NumberPortabilityPayload}. */
+        private final byte[] encoded;
+        /** The time at which the result expires. */
+        private final long   expiresAt;
+
+        /**
+         * Creates a cached result.
+         *
+         * @param newEncoded
+         *            the encoded payload
+         * @param newExpiresAt
+         *            the time at which the result expires
+         */
+        private Result(final byte[] newEncoded, final long newExpiresAt) {
+            this.encoded = newEncoded;
+            this.expiresAt = newExpiresAt;
+        }
+    }
+
+    /**
+     * One independently locked part of the cache, using a segmented LRU
+     * policy. Results enter the probationary map and move to the protected map
+     * when they are hit. When the protected map is full its least recently
+     * used result is moved back to the probationary map, and when the segment
+     * is full the least recently used probationary result is evicted.
+     *
+     * @author Telsis
+     */
+    private final class Segment {
+        /** Results that have not been hit since they were stored. */
+        private final LinkedHashMap<PackedTelno, Result> probation;
+        /** Results that have been hit at least once. */
+        private final LinkedHashMap<PackedTelno, Result> protect;
+        /** The most results held by this segment. */
+        private final int capacity;
+        /** The most results held by the protected map. */
+        private final int protectedCapacity;
+
+        /**
+         * Creates an empty segment.
+         *
+         * @param newCapacity
+         *            the most results to hold
+         */
+        private Segment(final int newCapacity) {
+            this.capacity = newCapacity;
+            this.protectedCapacity = Math.max(1,
+                    newCapacity * PROTECTED_PERCENT / PERCENT);
+            probation = new LinkedHashMap<PackedTelno, Result>(16, 0.75f, true); // CSIGNORE: MagicNumber
+            protect = new LinkedHashMap<PackedTelno, Result>(16, 0.75f, true); // CSIGNORE: MagicNumber
+        }
+
+        /**
+         * Look up a result, promoting it if it is hit while on probation and
+         * discarding it if it has expired.
+         *
+         * @param number
+         *            the dialled number
+         * @param now
+         *            the current time
+         * @return the encoded result, or null if there is none
+         */
+        private synchronized byte[] get(final PackedTelno number,
+                final long now) {
+            Result result = protect.get(number);
+            if (result == null) {
+                result = probation.remove(number);
+                if (result == null) {
+                    return null;
+                }
+                if (result.expiresAt > now) {
+                    protect.put(number, result);
+                    demote();
+                }
+            }
+            if (result.expiresAt <= now) {
+                protect.remove(number);
+                expirations.incrementAndGet();
+                return null;
+            }
+            return result.encoded;
+        }
+
+        /**
+         * Store a result, replacing any existing result for the number.
+         *
+         * @param number
+         *            the dialled number
+         * @param encoded
+         *            the encoded result
+         * @param expiresAt
+         *            the time at which the result expires
+         */
+        private synchronized void put(final PackedTelno number,
+                final byte[] encoded, final long expiresAt) {
+            Result result = new Result(encoded, expiresAt);
+            if (protect.containsKey(number)) {
+                protect.put(number, result);
+                return;
+            }
+            probation.put(number, result);
+            while (probation.size() + protect.size() > capacity) {
+                Iterator<Result> eldest = probation.isEmpty()
+                        ? protect.values().iterator()
+                        : probation.values().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        /**
+         * Move results from the protected map back to the probationary map
+         * until the protected map is within its capacity.
+         */
+        private void demote() {
+            while (protect.size() > protectedCapacity) {
+                Iterator<Map.Entry<PackedTelno, Result>> eldest =
+                        protect.entrySet().iterator();
+                Map.Entry<PackedTelno, Result> entry = eldest.next();
+                eldest.remove();
+                probation.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        /**
+         * Discard the result for a number.
+         *
+         * @param number
+         *            the dialled number
+         */
+        private synchronized void remove(final PackedTelno number) {
+            if (protect.remove(number) == null) {
+                probation.remove(number);
+            }
+        }
+
+        /**
+         * Discard all results.
+         */
+        private synchronized void clear() {
+            probation.clear();
+            protect.clear();
+        }
+
+        /**
+         * Gets the number of results held.
+         *
+         * @return the number of results
+         */
+        private synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        /**
+         * Copy the results that have not expired into a list, discarding any
+         * that have.
+         *
+         * @param dest
+         *            the list to add the results to
+         * @param now
+         *            the current time
+         */
+        private synchronized void collect(
+                final List<Map.Entry<PackedTelno, Result>> dest,
+                final long now) {
+            collect(protect, dest, now);
+            collect(probation, dest, now);
+        }
+
+        /**
+         * Copy the results that have not expired from one map into a list,
+         * discarding any that have.
+         *
+         * @param map
+         *            the map to copy from
+         * @param dest
+         *            the list to add the results to
+         * @param now
+         *            the current time
+         */
+        private void collect(final LinkedHashMap<PackedTelno, Result> map,
+                final List<Map.Entry<PackedTelno, Result>> dest,
+                final long now) {
+            Iterator<Map.Entry<PackedTelno, Result>> it =
+                    map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<PackedTelno, Result> entry = it.next();
+                if (entry.getValue().expiresAt <= now) {
+                    it.remove();
+                    expirations.incrementAndGet();
+                } else {
+                    dest.add(new AbstractMap.SimpleImmutableEntry<
+                            PackedTelno, Result>(entry));
+                }
+            }
+        }
+    }
+}
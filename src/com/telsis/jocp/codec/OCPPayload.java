@@ -0,0 +1,69 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a message class whose payload has a fixed layout described by
+ * {@link OCPField} annotations on its fields. For a class called
+ * <code>Name</code>, the {@link PayloadCodecProcessor} generates a
+ * package-private class called <code>NameCodec</code> in the same package
+ * with the following static members:
+ * <table>
+ * <tr>
+ * <th>Member</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td><code>LENGTH</code></td>
+ * <td>The exact length of the payload.</td>
+ * </tr>
+ * <tr>
+ * <td><code>decode(Name, ByteBuffer)</code></td>
+ * <td>Checks the payload length of a binary OCP message once and decodes the
+ * fields with absolute reads. The buffer is not modified. Call this after
+ * <code>decodeHeader</code>, in place of <code>advance</code>.</td>
+ * </tr>
+ * <tr>
+ * <td><code>encode(Name, ByteBuffer)</code></td>
+ * <td>Encodes the fields at the buffer's position, clearing any bytes that
+ * are not covered by a field, and advances the position past the payload.
+ * Byte array fields are padded with zeroes or truncated to their length.</td>
+ * </tr>
+ * </table>
+ *
+ * @author Telsis
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface OCPPayload {
+    /**
+     * The length of the payload. If zero, the payload ends with the last
+     * field.
+     */
+    int length() default 0;
+}
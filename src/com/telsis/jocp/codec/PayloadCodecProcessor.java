@@ -0,0 +1,526 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.codec;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the payload codecs of message classes annotated with
+ * {@link OCPPayload}. See {@link OCPPayload} for the members of the generated
+ * codec.
+ * <p/>
+ * The generated decoder checks the payload length once and then reads each
+ * field at a constant offset from the start of the payload, and the generated
+ * encoder writes each field at a constant offset from the buffer's position,
+ * so neither depends on the buffer being a heap buffer or on its position
+ * moving field by field.
+ *
+ * @author Telsis
+ */
+@SupportedAnnotationTypes({"com.telsis.jocp.codec.OCPPayload",
+        "com.telsis.jocp.codec.OCPField" })
+public final class PayloadCodecProcessor extends AbstractProcessor {
+    /** The suffix added to the message class name to name its codec. */
+    static final String CODEC_SUFFIX = "Codec";
+
+    /** The base class of call control messages. */
+    private static final String CALL_CONTROL_MESSAGE =
+            "com.telsis.jocp.messages.CallControlMessage";
+    /** The base class of link messages. */
+    private static final String LINK_MESSAGE =
+            "com.telsis.jocp.messages.LinkMessage";
+
+    /**
+     * A field of a payload.
+     */
+    private static final class Field {
+        /** The name of the field. */
+        private final String   name;
+        /** The type of the field. */
+        private final TypeKind kind;
+        /** The offset of the field in the payload. */
+        private final int      offset;
+        /** The length of the field. */
+        private final int      length;
+
+        /**
+         * Instantiates a new field.
+         *
+         * @param name
+         *            the name of the field
+         * @param kind
+         *            the type of the field, or {@link TypeKind#ARRAY} for a
+         *            byte array
+         * @param offset
+         *            the offset of the field in the payload
+         * @param length
+         *            the length of the field
+         */
+        // CSOFF: HiddenField
+        private Field(final String name, final TypeKind kind,
+                final int offset, final int length) {
+            // CSON: HiddenField
+            this.name = name;
+            this.kind = kind;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations,
+            final RoundEnvironment roundEnv) {
+        for (Element element
+                : roundEnv.getElementsAnnotatedWith(OCPPayload.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@OCPPayload can only be used on a class");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (type.getNestingKind() != NestingKind.TOP_LEVEL) {
+                error(type, "@OCPPayload can only be used on a top level "
+                        + "class");
+                continue;
+            }
+            String exception = exceptionFor(type);
+            if (exception == null) {
+                error(type, "An @OCPPayload class must extend "
+                        + CALL_CONTROL_MESSAGE + " or " + LINK_MESSAGE);
+                continue;
+            }
+            List<Field> fields = collectFields(type);
+            if (fields == null) {
+                continue;
+            }
+            int length = payloadLength(type, fields);
+            if (length < 0) {
+                continue;
+            }
+            try {
+                generate(type, fields, length, exception);
+            } catch (IOException e) {
+                error(type, "Could not write the codec: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decides which exception reports a bad payload length for a message
+     * class.
+     *
+     * @param type
+     *            the message class
+     * @return {@link #CALL_CONTROL_MESSAGE} or {@link #LINK_MESSAGE}, or null
+     *         if the class extends neither
+     */
+    private String exceptionFor(final TypeElement type) {
+        for (String base : new String[] {CALL_CONTROL_MESSAGE, LINK_MESSAGE}) {
+            TypeElement baseType =
+                    processingEnv.getElementUtils().getTypeElement(base);
+            if (baseType != null && processingEnv.getTypeUtils().isSubtype(
+                    type.asType(), baseType.asType())) {
+                return base;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collects and checks the annotated fields of a message class.
+     *
+     * @param type
+     *            the message class
+     * @return the fields in the order they are declared, or null if any of
+     *         them is invalid
+     */
+    private List<Field> collectFields(final TypeElement type) {
+        List<Field> fields = new ArrayList<Field>();
+        boolean valid = true;
+        for (VariableElement variable
+                : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            OCPField annotation = variable.getAnnotation(OCPField.class);
+            if (annotation == null) {
+                continue;
+            }
+            Set<Modifier> modifiers = variable.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)
+                    || modifiers.contains(Modifier.STATIC)
+                    || modifiers.contains(Modifier.FINAL)) {
+                error(variable, "An @OCPField cannot be private, static or "
+                        + "final");
+                valid = false;
+                continue;
+            }
+            TypeMirror fieldType = variable.asType();
+            int length;
+            switch (fieldType.getKind()) {
+            case BYTE:
+                length = 1;
+                break;
+            case SHORT:
+                length = 2; // CSIGNORE: MagicNumber
+                break;
+            case INT:
+                length = 4; // CSIGNORE: MagicNumber
+                break;
+            case LONG:
+                length = 8; // CSIGNORE: MagicNumber
+                break;
+            case ARRAY:
+                if (((ArrayType) fieldType).getComponentType().getKind()
+                        != TypeKind.BYTE) {
+                    length = -1;
+                } else {
+                    length = annotation.length();
+                    if (length <= 0) {
+                        error(variable, "A byte[] @OCPField needs a length");
+                        valid = false;
+                        continue;
+                    }
+                }
+                break;
+            default:
+                length = -1;
+                break;
+            }
+            if (length < 0) {
+                error(variable, "An @OCPField must be a byte, short, int, "
+                        + "long or byte[]");
+                valid = false;
+                continue;
+            }
+            if (annotation.offset() < 0) {
+                error(variable, "An @OCPField cannot have a negative offset");
+                valid = false;
+                continue;
+            }
+            Field field = new Field(variable.getSimpleName().toString(),
+                    fieldType.getKind(), annotation.offset(), length);
+            for (Field other : fields) {
+                if (field.offset < other.offset + other.length
+                        && other.offset < field.offset + field.length) {
+                    error(variable, "@OCPField " + field.name
+                            + " overlaps " + other.name);
+                    valid = false;
+                }
+            }
+            fields.add(field);
+        }
+        if (fields.isEmpty() && valid) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.WARNING, "@OCPPayload class has no "
+                            + "@OCPField fields", type);
+        }
+        return valid ? fields : null;
+    }
+
+    /**
+     * Works out the length of a payload.
+     *
+     * @param type
+     *            the message class
+     * @param fields
+     *            the fields of the payload
+     * @return the length, or -1 if the declared length is too short
+     */
+    private int payloadLength(final TypeElement type,
+            final List<Field> fields) {
+        int end = 0;
+        for (Field field : fields) {
+            end = Math.max(end, field.offset + field.length);
+        }
+        int declared = type.getAnnotation(OCPPayload.class).length();
+        if (declared == 0) {
+            return end;
+        }
+        if (declared < end) {
+            error(type, "The @OCPPayload length " + declared
+                    + " is shorter than its fields (" + end + " bytes)");
+            return -1;
+        }
+        return declared;
+    }
+
+    /**
+     * Writes the codec of a message class.
+     *
+     * @param type
+     *            the message class
+     * @param fields
+     *            the fields of the payload
+     * @param length
+     *            the length of the payload
+     * @param base
+     *            the base class that decides the exception thrown for a bad
+     *            payload length
+     * @throws IOException
+     *             if the source file could not be written
+     */
+    private void generate(final TypeElement type, final List<Field> fields,
+            final int length, final String base) throws IOException {
+        String pkg = ((PackageElement) type.getEnclosingElement())
+                .getQualifiedName().toString();
+        String name = type.getSimpleName().toString();
+        String codec = name + CODEC_SUFFIX;
+        PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(pkg + "." + codec, type).openWriter());
+        try {
+            out.println("// Generated by " + getClass().getName() + " from "
+                    + name + ". Do not edit.");
+            out.println("package " + pkg + ";");
+            out.println();
+            out.println("import java.nio.BufferOverflowException;");
+            out.println("import java.nio.ByteBuffer;");
+            out.println();
+            out.println("import com.telsis.jocp.LegacyOCPMessage;");
+            out.println("import com.telsis.jocp.OCPException;");
+            out.println();
+            out.println("/**");
+            out.println(" * The payload codec for {@link " + name + "}.");
+            out.println(" */");
+            out.println("final class " + codec + " {");
+            out.println("    /** The length of the payload. */");
+            out.println("    static final int LENGTH = " + length + ";");
+            out.println();
+            out.println("    /** Not instantiated. */");
+            out.println("    private " + codec + "() {");
+            out.println("    }");
+            out.println();
+            generateDecode(out, name, fields, base);
+            out.println();
+            generateEncode(out, name, fields, length);
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the decode method of a codec.
+     *
+     * @param out
+     *            the codec source
+     * @param name
+     *            the name of the message class
+     * @param fields
+     *            the fields of the payload
+     * @param base
+     *            the base class that decides the exception thrown for a bad
+     *            payload length
+     */
+    private static void generateDecode(final PrintWriter out,
+            final String name, final List<Field> fields, final String base) {
+        out.println("    /**");
+        out.println("     * Decodes the payload of a binary OCP message.");
+        out.println("     *");
+        out.println("     * @param message the message to decode into");
+        out.println("     * @param buffer the binary OCP message");
+        out.println("     * @throws OCPException if the payload has the "
+                + "wrong length");
+        out.println("     */");
+        out.println("    static void decode(final " + name
+                + " message, final ByteBuffer buffer)");
+        out.println("            throws OCPException {");
+        out.println("        final int length = buffer.limit()");
+        out.println("                - LegacyOCPMessage.OCP_PAYLOAD_OFFSET");
+        out.println("                - LegacyOCPMessage.OCP_EOM_LENGTH;");
+        out.println("        if (length != LENGTH) {");
+        if (CALL_CONTROL_MESSAGE.equals(base)) {
+            out.println("            throw new com.telsis.jocp"
+                    + ".CallMessageException(");
+            out.println("                    message.getDestTID(),");
+            out.println("                    message.getOrigTID(),");
+            out.println("                    message.getCommandCode(),");
+            out.println("                    com.telsis.jocp.messages"
+                    + ".CallCommandUnsupported");
+        } else {
+            out.println("            throw new com.telsis.jocp"
+                    + ".LinkMessageException(");
+            out.println("                    message.getCommandCode(),");
+            out.println("                    com.telsis.jocp.messages"
+                    + ".LinkCommandUnsupported");
+        }
+        out.println("                            .REASON_LENGTH_UNSUPPORTED,");
+        out.println("                    (short) length);");
+        out.println("        }");
+        out.println("        final int base = "
+                + "LegacyOCPMessage.OCP_PAYLOAD_OFFSET;");
+        for (Field field : fields) {
+            String at = "base + " + field.offset;
+            switch (field.kind) {
+            case BYTE:
+                out.println("        message." + field.name
+                        + " = buffer.get(" + at + ");");
+                break;
+            case SHORT:
+                out.println("        message." + field.name
+                        + " = buffer.getShort(" + at + ");");
+                break;
+            case INT:
+                out.println("        message." + field.name
+                        + " = buffer.getInt(" + at + ");");
+                break;
+            case LONG:
+                out.println("        message." + field.name
+                        + " = buffer.getLong(" + at + ");");
+                break;
+            default:
+                out.println("        if (message." + field.name
+                        + " == null || message." + field.name
+                        + ".length != " + field.length + ") {");
+                out.println("            message." + field.name
+                        + " = new byte[" + field.length + "];");
+                out.println("        }");
+                out.println("        for (int i = 0; i < " + field.length
+                        + "; i++) {");
+                out.println("            message." + field.name
+                        + "[i] = buffer.get(" + at + " + i);");
+                out.println("        }");
+                break;
+            }
+        }
+        out.println("    }");
+    }
+
+    /**
+     * Writes the encode method of a codec.
+     *
+     * @param out
+     *            the codec source
+     * @param name
+     *            the name of the message class
+     * @param fields
+     *            the fields of the payload
+     * @param length
+     *            the length of the payload
+     */
+    private static void generateEncode(final PrintWriter out,
+            final String name, final List<Field> fields, final int length) {
+        out.println("    /**");
+        out.println("     * Encodes the payload of a message at the buffer's "
+                + "position, and");
+        out.println("     * advances the position past it.");
+        out.println("     *");
+        out.println("     * @param message the message to encode");
+        out.println("     * @param buffer the buffer to encode into");
+        out.println("     */");
+        out.println("    static void encode(final " + name
+                + " message, final ByteBuffer buffer) {");
+        out.println("        final int base = buffer.position();");
+        out.println("        if (buffer.remaining() < LENGTH) {");
+        out.println("            throw new BufferOverflowException();");
+        out.println("        }");
+
+        // Clear any reserved bytes that no field covers
+        boolean[] covered = new boolean[length];
+        for (Field field : fields) {
+            for (int i = 0; i < field.length; i++) {
+                covered[field.offset + i] = true;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (!covered[i]) {
+                out.println("        buffer.put(base + " + i
+                        + ", (byte) 0);");
+            }
+        }
+
+        for (Field field : fields) {
+            String at = "base + " + field.offset;
+            switch (field.kind) {
+            case BYTE:
+                out.println("        buffer.put(" + at + ", message."
+                        + field.name + ");");
+                break;
+            case SHORT:
+                out.println("        buffer.putShort(" + at + ", message."
+                        + field.name + ");");
+                break;
+            case INT:
+                out.println("        buffer.putInt(" + at + ", message."
+                        + field.name + ");");
+                break;
+            case LONG:
+                out.println("        buffer.putLong(" + at + ", message."
+                        + field.name + ");");
+                break;
+            default:
+                out.println("        final byte[] " + field.name
+                        + " = message." + field.name + ";");
+                out.println("        final int " + field.name
+                        + "Length = " + field.name + " == null ? 0");
+                out.println("                : Math.min(" + field.name
+                        + ".length, " + field.length + ");");
+                out.println("        for (int i = 0; i < " + field.length
+                        + "; i++) {");
+                out.println("            buffer.put(" + at + " + i, i < "
+                        + field.name + "Length ? " + field.name
+                        + "[i] : 0);");
+                out.println("        }");
+                break;
+            }
+        }
+        out.println("        buffer.position(base + LENGTH);");
+        out.println("    }");
+    }
+
+    /**
+     * Reports an error against an element.
+     *
+     * @param element
+     *            the element
+     * @param message
+     *            the error
+     */
+    private void error(final Element element, final String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                message, element);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+
+/**
+ * Package to hold the annotations that describe the wire layout of fixed
+ * length OCP message payloads, and the annotation processor that generates
+ * their codecs at compile time.
+ * <p/>
+ * The processor must be compiled before the rest of the library, which is
+ * done by a separate compile step in the Maven and Ant builds. The classes in
+ * this package must therefore not depend on any other part of the library.
+ */
+package com.telsis.jocp.codec;
@@ -0,0 +1,155 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.context;
+
+/**
+ * A field in a {@link CallContextSchema}. Fields are created by the schema,
+ * which assigns each one a fixed offset within the call context, and are then
+ * passed to the {@link CallContextStore} accessors to read and write that
+ * field of a call's context.
+ *
+ * @author Telsis
+ */
+public final class CallContextField {
+    /**
+     * The types of field.
+     */
+    public enum Type {
+        /** A 32-bit integer. */
+        INT(4),
+        /** A 64-bit integer. */
+        LONG(8),
+        /** A fixed-length byte array. */
+        BYTES(0);
+
+        /** The length of the type in bytes, or 0 if it is variable. */
+        private final int length;
+
+        /**
+         * Instantiates a new type.
+         *
+         * @param length
+         *            the length of the type in bytes, or 0 if it is variable
+         */
+        // CSOFF: HiddenField
+        private Type(final int length) {
+            // CSON: HiddenField
+            this.length = length;
+        }
+
+        /**
+         * Gets the length of the type.
+         *
+         * @return the length in bytes, or 0 if it is variable
+         */
+        int getLength() {
+            return length;
+        }
+    }
+
+    /** The schema that the field belongs to. */
+    private final CallContextSchema schema;
+    /** The name of the field. */
+    private final String            name;
+    /** The type of the field. */
+    private final Type              type;
+    /** The offset of the field within the call context. */
+    private final int               offset;
+    /** The length of the field in bytes. */
+    private final int               length;
+
+    /**
+     * Instantiates a new field.
+     *
+     * @param schema
+     *            the schema that the field belongs to
+     * @param name
+     *            the name of the field
+     * @param type
+     *            the type of the field
+     * @param offset
+     *            the offset of the field within the call context
+     * @param length
+     *            the length of the field in bytes
+     */
+    // CSOFF: HiddenField
+    CallContextField(final CallContextSchema schema, final String name,
+            final Type type, final int offset, final int length) {
+        // CSON: HiddenField
+        this.schema = schema;
+        this.name = name;
+        this.type = type;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Gets the schema that the field belongs to.
+     *
+     * @return the schema
+     */
+    CallContextSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the name of the field.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the type of the field.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the offset of the field within the call context.
+     *
+     * @return the offset in bytes
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the length of the field.
+     *
+     * @return the length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + type + ", " + length + " bytes at " + offset + ")";
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The layout of the per-call state held in a {@link CallContextStore}. A
+ * schema is a list of fixed-length {@link CallContextField fields}, each at a
+ * fixed offset, so every call's context is the same length and can be held in
+ * a fixed-size slot.
+ * <p/>
+ * Applications usually start from {@link #standard()}, which holds the fields
+ * that most call control applications need (see the constants below), and add
+ * their own fields to it:
+ *
+ * <pre>
+ * CallContextSchema schema = CallContextSchema.standard();
+ * CallContextField cdrReference = schema.addBytes(&quot;cdrReference&quot;, 32);
+ * CallContextStore store = new CallContextStore(schema, 200000);
+ * </pre>
+ *
+ * Fields cannot be added once the schema is used by a store.
+ *
+ * @author Telsis
+ */
+public final class CallContextSchema {
+    /** The alignment of the context length. */
+    private static final int ALIGNMENT = 8;
+
+    /** The schema that holds the standard fields. */
+    private static final CallContextSchema STANDARD = new CallContextSchema();
+
+    /** The state of the call, as defined by the application. */
+    public static final CallContextField STATE =
+            STANDARD.addInt("state");
+    /** The remote task ID. */
+    public static final CallContextField REMOTE_TID =
+            STANDARD.addInt("remoteTID");
+    /** The originating leg ID. */
+    public static final CallContextField ORIGINATING_LEG =
+            STANDARD.addInt("originatingLeg");
+    /** The terminating leg ID. */
+    public static final CallContextField TERMINATING_LEG =
+            STANDARD.addInt("terminatingLeg");
+    /** The number portability flags of the dialled number. */
+    public static final CallContextField NP_FLAGS =
+            STANDARD.addInt("npFlags");
+    /** The release cause, once the call has been released. */
+    public static final CallContextField RELEASE_CAUSE =
+            STANDARD.addInt("releaseCause");
+    /** The time the call was set up, in milliseconds. */
+    public static final CallContextField SETUP_TIME =
+            STANDARD.addLong("setupTime");
+    /** The time the call was answered, in milliseconds. */
+    public static final CallContextField ANSWER_TIME =
+            STANDARD.addLong("answerTime");
+    /** The time the call's next timer expires, in milliseconds. */
+    public static final CallContextField TIMER_DEADLINE =
+            STANDARD.addLong("timerDeadline");
+    /** The routing number (for example, a ported number) in packed form. */
+    public static final CallContextField ROUTING_NUMBER =
+            STANDARD.addBytes("routingNumber", 16); // CSIGNORE: MagicNumber
+
+    static {
+        STANDARD.freeze();
+    }
+
+    /** The schema whose fields this schema starts with, if any. */
+    private final CallContextSchema   base;
+    /** The fields of this schema, including those of the base schema. */
+    private final List<CallContextField> fields =
+            new ArrayList<CallContextField>();
+    /** The length of a call context. */
+    private int                       length;
+    /** Whether fields can no longer be added. */
+    private volatile boolean          frozen;
+
+    /**
+     * Creates an empty schema.
+     */
+    public CallContextSchema() {
+        base = null;
+    }
+
+    /**
+     * Creates a schema that starts with the fields of another.
+     *
+     * @param base
+     *            the schema to start with
+     */
+    // CSOFF: HiddenField
+    private CallContextSchema(final CallContextSchema base) {
+        // CSON: HiddenField
+        this.base = base;
+        fields.addAll(base.fields);
+        length = base.length;
+    }
+
+    /**
+     * Creates a schema that starts with the standard fields defined by this
+     * class. Further fields can be added to it.
+     *
+     * @return a new schema
+     */
+    public static CallContextSchema standard() {
+        return new CallContextSchema(STANDARD);
+    }
+
+    /**
+     * Adds a 32-bit integer field.
+     *
+     * @param name
+     *            the name of the field
+     * @return the field
+     */
+    public CallContextField addInt(final String name) {
+        return add(name, CallContextField.Type.INT,
+                CallContextField.Type.INT.getLength());
+    }
+
+    /**
+     * Adds a 64-bit integer field.
+     *
+     * @param name
+     *            the name of the field
+     * @return the field
+     */
+    public CallContextField addLong(final String name) {
+        return add(name, CallContextField.Type.LONG,
+                CallContextField.Type.LONG.getLength());
+    }
+
+    /**
+     * Adds a fixed-length byte array field.
+     *
+     * @param name
+     *            the name of the field
+     * @param fieldLength
+     *            the length of the field in bytes
+     * @return the field
+     */
+    public CallContextField addBytes(final String name,
+            final int fieldLength) {
+        if (fieldLength <= 0) {
+            throw new IllegalArgumentException(
+                    "The field length must be positive");
+        }
+        return add(name, CallContextField.Type.BYTES, fieldLength);
+    }
+
+    /**
+     * Adds a field, aligning numeric fields to their own length.
+     *
+     * @param name
+     *            the name of the field
+     * @param type
+     *            the type of the field
+     * @param fieldLength
+     *            the length of the field in bytes
+     * @return the field
+     */
+    private synchronized CallContextField add(final String name,
+            final CallContextField.Type type, final int fieldLength) {
+        if (frozen) {
+            throw new IllegalStateException(
+                    "Fields cannot be added to a schema that is in use");
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("The field name cannot be null");
+        }
+        for (CallContextField field : fields) {
+            if (field.getName().equals(name)) {
+                throw new IllegalArgumentException("The schema already has a "
+                        + "field called " + name);
+            }
+        }
+        int offset = length;
+        if (type != CallContextField.Type.BYTES) {
+            offset = (offset + fieldLength - 1) & -fieldLength;
+        }
+        CallContextField field =
+                new CallContextField(this, name, type, offset, fieldLength);
+        fields.add(field);
+        length = offset + fieldLength;
+        return field;
+    }
+
+    /**
+     * Prevents any further fields being added. This is called by the store
+     * that uses the schema.
+     */
+    synchronized void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Checks whether a field belongs to this schema.
+     *
+     * @param field
+     *            the field
+     * @return true if the field can be used with this schema
+     */
+    boolean owns(final CallContextField field) {
+        return field.getSchema() == this
+                || (base != null && base.owns(field));
+    }
+
+    /**
+     * Gets the fields of this schema, in the order they were added.
+     *
+     * @return an unmodifiable list of the fields
+     */
+    public synchronized List<CallContextField> getFields() {
+        return Collections.unmodifiableList(
+                new ArrayList<CallContextField>(fields));
+    }
+
+    /**
+     * Gets the length of a call context, rounded up so that the numeric fields
+     * of consecutive contexts stay aligned.
+     *
+     * @return the length in bytes
+     */
+    public synchronized int getLength() {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.context;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A store of per-call state, keyed by local task ID, held outside the Java
+ * heap. Applications that handle hundreds of thousands of concurrent calls
+ * can keep each call's legs, timers, CDR fields and similar state here rather
+ * than in heap maps, so that it does not add to the old generation or to the
+ * time taken by garbage collection.
+ * <p/>
+ * The store holds a fixed number of slots in a single direct buffer, each
+ * long enough for one context laid out by a {@link CallContextSchema}. The
+ * index from task ID to slot is an open-addressed hash table in a second
+ * direct buffer, and free slots are chained through their own headers, so the
+ * store does not allocate once it is created.
+ * <p/>
+ * A context is allocated with {@link #allocate(int)}, which returns a handle
+ * for it, and is released with {@link #release(int)}. When a store is set on
+ * an {@link com.telsis.jocp.OCPLinkManager OCPLinkManager} (or on an
+ * {@link com.telsis.jocp.OCPSystemManager OCPSystemManager}), contexts are
+ * allocated when a task ID handler is registered and released when it is
+ * deregistered, and the application only needs {@link #lookup(int)}.
+ * <p/>
+ * A handle holds the slot and its generation, which changes each time the
+ * slot is released. The field accessors check the generation, so a handle
+ * kept after its call has been released cannot read or overwrite the context
+ * of a later call in the same slot; they throw an
+ * {@link IllegalStateException} instead.
+ * <p/>
+ * Allocation, release and lookup are thread-safe. The field accessors are
+ * not synchronised: each call's context should only be accessed by the thread
+ * handling that call, as with the rest of the call's state.
+ *
+ * @author Telsis
+ */
+public final class CallContextStore {
+    /** The handle returned when there is no context. */
+    public static final long NO_CONTEXT      = -1L;
+    /** The most contexts that a store can hold. */
+    public static final int  MAX_CAPACITY    = 1 << 24;
+
+    /** The offset of the task ID (or the next free slot) in a slot header. */
+    private static final int HDR_TID_OFFSET  = 0;
+    /** The offset of the generation in a slot header. */
+    private static final int HDR_GEN_OFFSET  = 4;
+    /** The length of a slot header. */
+    private static final int HEADER_LENGTH   = 8;
+    /** The length of an index entry: the task ID and the slot number + 1. */
+    private static final int INDEX_ENTRY     = 8;
+    /** The offset of the slot number in an index entry. */
+    private static final int INDEX_SLOT      = 4;
+    /** The number of bits to shift a generation by in a handle. */
+    private static final int GEN_SHIFT       = 32;
+    /** The mask for the slot number in a handle. */
+    private static final long SLOT_MASK      = 0xFFFFFFFFL;
+    /** The marker for the end of the free list. */
+    private static final int END_OF_LIST     = -1;
+
+    /** The layout of each context. */
+    private final CallContextSchema schema;
+    /** The number of slots. */
+    private final int               capacity;
+    /** The length of each slot, including its header. */
+    private final int               slotLength;
+    /** The slots. */
+    private final ByteBuffer        slots;
+    /** The index from task ID to slot. */
+    private final ByteBuffer        index;
+    /** The mask applied to a hash to select an index entry. */
+    private final int               indexMask;
+    /** The first free slot, or {@link #END_OF_LIST}. */
+    private int                     freeHead;
+    /** The number of allocated contexts. */
+    private int                     size;
+
+    /** The number of allocations that failed because the store was full. */
+    private final AtomicLong        overflows = new AtomicLong();
+
+    /**
+     * Creates an empty store.
+     *
+     * @param schema
+     *            the layout of each context; no fields can be added to it once
+     *            it is used by a store
+     * @param capacity
+     *            the most contexts to hold, up to {@value #MAX_CAPACITY}
+     */
+    // CSOFF: HiddenField
+    public CallContextStore(final CallContextSchema schema,
+            final int capacity) {
+        // CSON: HiddenField
+        if (schema == null) {
+            throw new IllegalArgumentException("The schema cannot be null");
+        }
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity is outside the "
+                    + "valid range of 1 to " + MAX_CAPACITY);
+        }
+        schema.freeze();
+        this.schema = schema;
+        this.capacity = capacity;
+        slotLength = HEADER_LENGTH + schema.getLength();
+        if ((long) slotLength * capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The store would be larger "
+                    + "than " + Integer.MAX_VALUE + " bytes");
+        }
+        slots = ByteBuffer.allocateDirect(slotLength * capacity)
+                .order(ByteOrder.nativeOrder());
+        int indexSize = Integer.highestOneBit(capacity) << 2;
+        index = ByteBuffer.allocateDirect(indexSize * INDEX_ENTRY)
+                .order(ByteOrder.nativeOrder());
+        indexMask = indexSize - 1;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            slots.putInt(slot * slotLength + HDR_TID_OFFSET,
+                    slot + 1 < capacity ? slot + 1 : END_OF_LIST);
+        }
+        freeHead = 0;
+    }
+
+    /**
+     * Allocates a context for a task ID, with all its fields cleared. If the
+     * task ID already has a context, that context is returned unchanged.
+     *
+     * @param tid
+     *            the task ID
+     * @return the handle of the context, or {@link #NO_CONTEXT} if the store
+     *         is full
+     */
+    public synchronized long allocate(final int tid) {
+        int entry = find(tid);
+        int slot = index.getInt(entry + INDEX_SLOT) - 1;
+        if (slot >= 0) {
+            return handle(slot);
+        }
+        if (freeHead == END_OF_LIST) {
+            overflows.incrementAndGet();
+            return NO_CONTEXT;
+        }
+
+        slot = freeHead;
+        int base = slot * slotLength;
+        freeHead = slots.getInt(base + HDR_TID_OFFSET);
+        slots.putInt(base + HDR_TID_OFFSET, tid);
+        clear(base + HEADER_LENGTH, slotLength - HEADER_LENGTH);
+
+        index.putInt(entry, tid);
+        index.putInt(entry + INDEX_SLOT, slot + 1);
+        size++;
+        return handle(slot);
+    }
+
+    /**
+     * Looks up the context of a task ID.
+     *
+     * @param tid
+     *            the task ID
+     * @return the handle of the context, or {@link #NO_CONTEXT} if the task
+     *         ID has none
+     */
+    public synchronized long lookup(final int tid) {
+        int slot = index.getInt(find(tid) + INDEX_SLOT) - 1;
+        return slot < 0 ? NO_CONTEXT : handle(slot);
+    }
+
+    /**
+     * Releases the context of a task ID. Any handles to it become invalid.
+     *
+     * @param tid
+     *            the task ID
+     * @return true if the task ID had a context
+     */
+    public synchronized boolean release(final int tid) {
+        int entry = find(tid);
+        int slot = index.getInt(entry + INDEX_SLOT) - 1;
+        if (slot < 0) {
+            return false;
+        }
+        removeEntry(entry);
+
+        int base = slot * slotLength;
+        slots.putInt(base + HDR_GEN_OFFSET,
+                slots.getInt(base + HDR_GEN_OFFSET) + 1);
+        slots.putInt(base + HDR_TID_OFFSET, freeHead);
+        freeHead = slot;
+        size--;
+        return true;
+    }
+
+    /**
+     * Checks whether a handle still refers to an allocated context.
+     *
+     * @param handle
+     *            the handle
+     * @return true if the context has not been released
+     */
+    public boolean isValid(final long handle) {
+        if (handle == NO_CONTEXT) {
+            return false;
+        }
+        int slot = (int) (handle & SLOT_MASK);
+        return slot >= 0 && slot < capacity && slots.getInt(slot * slotLength
+                + HDR_GEN_OFFSET) == (int) (handle >>> GEN_SHIFT);
+    }
+
+    /**
+     * Gets the task ID that a context belongs to.
+     *
+     * @param handle
+     *            the handle of the context
+     * @return the task ID
+     */
+    public int getTid(final long handle) {
+        return slots.getInt(base(handle) + HDR_TID_OFFSET);
+    }
+
+    /**
+     * Gets the value of an integer field.
+     *
+     * @param handle
+     *            the handle of the context
+     * @param field
+     *            the field
+     * @return the value
+     */
+    public int getInt(final long handle, final CallContextField field) {
+        return slots.getInt(offset(handle, field, CallContextField.Type.INT));
+    }
+
+    /**
+     * Sets the value of an integer field.
+     *
+     * @param handle
+     *            the handle of the context
+     * @param field
+     *            the field
+     * @param value
+     *            the value
+     */
+    public void putInt(final long handle, final CallContextField field,
+            final int value) {
+        slots.putInt(offset(handle, field, CallContextField.Type.INT), value);
+    }
+
+    /**
+     * Gets the value of a long field.
+     *
+     * @param handle
+     *            the handle of the context
+     * @param field
+     *            the field
+     * @return the value
+     */
+    public long getLong(final long handle, final CallContextField field) {
+        return slots.getLong(offset(handle, field,
+                CallContextField.Type.LONG));
+    }
+
+    /**
+     * Sets the value of a long field.
+     *
+     * @param handle
+     *            the handle of the context
+     * @param field
+     *            the field
+     * @param value
+     *            the value
+     */
+    public void putLong(final long handle, final CallContextField field,
+            final long value) {
+        slots.putLong(offset(handle, field, CallContextField.Type.LONG),
+                value);
+    }
+
+    /**
+     * Copies the value of a byte array field.
+     *
+     * @param handle
+     *            the handle of the context
+     * @param field
+     *            the field
+     * @param dst
+     *            the array to copy the value into, which must be at least as
+     *            long as the field
+     */
+    public void getBytes(final long handle, final CallContextField field,
+            final byte[] dst) {
+        int at = offset(handle, field, CallContextField.Type.BYTES);
+        for (int i = 0; i < field.getLength(); i++) {
+            dst[i] = slots.get(at + i);
+        }
+    }
+
+    /**
+     * Sets the value of a byte array field. If the value is shorter than the
+     * field, the rest of the field is cleared.
+     *
+     * @param handle
+     *            the handle of the context
+     * @param field
+     *            the field
+     * @param src
+     *            the array holding the value
+     * @param srcOffset
+     *            the offset of the value in the array
+     * @param srcLength
+     *            the length of the value, which cannot be longer than the
+     *            field
+     */
+    public void putBytes(final long handle, final CallContextField field,
+            final byte[] src, final int srcOffset, final int srcLength) {
+        if (srcLength > field.getLength()) {
+            throw new IllegalArgumentException("The value is longer than the "
+                    + field.getName() + " field");
+        }
+        int at = offset(handle, field, CallContextField.Type.BYTES);
+        for (int i = 0; i < srcLength; i++) {
+            slots.put(at + i, src[srcOffset + i]);
+        }
+        clear(at + srcLength, field.getLength() - srcLength);
+    }
+
+    /**
+     * Gets the schema that lays out each context.
+     *
+     * @return the schema
+     */
+    public CallContextSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the most contexts that the store can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of allocated contexts.
+     *
+     * @return the number of contexts
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of allocations that failed because the store was full.
+     *
+     * @return the number of failed allocations
+     */
+    public long getOverflows() {
+        return overflows.get();
+    }
+
+    /**
+     * Gets the number of bytes held outside the heap by the store.
+     *
+     * @return the number of bytes
+     */
+    public long getMemoryUsage() {
+        return (long) slots.capacity() + index.capacity();
+    }
+
+    /**
+     * Finds the index entry of a task ID, or the empty entry where it would
+     * be inserted.
+     *
+     * @param tid
+     *            the task ID
+     * @return the offset of the entry in the index
+     */
+    private int find(final int tid) {
+        int i = mix(tid) & indexMask;
+        while (true) {
+            int entry = i * INDEX_ENTRY;
+            if (index.getInt(entry + INDEX_SLOT) == 0
+                    || index.getInt(entry) == tid) {
+                return entry;
+            }
+            i = (i + 1) & indexMask;
+        }
+    }
+
+    /**
+     * Removes an entry from the index, moving any later entries in the same
+     * probe sequence back so that they can still be found.
+     *
+     * @param removed
+     *            the offset of the entry in the index
+     */
+    private void removeEntry(final int removed) {
+        int hole = removed / INDEX_ENTRY;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & indexMask;
+            int entry = i * INDEX_ENTRY;
+            int slot = index.getInt(entry + INDEX_SLOT);
+            if (slot == 0) {
+                break;
+            }
+            int tid = index.getInt(entry);
+            int home = mix(tid) & indexMask;
+            // Move the entry into the hole unless its home lies cyclically
+            // between the hole and the entry
+            if (((i - home) & indexMask) >= ((i - hole) & indexMask)) {
+                index.putInt(hole * INDEX_ENTRY, tid);
+                index.putInt(hole * INDEX_ENTRY + INDEX_SLOT, slot);
+                hole = i;
+            }
+        }
+        index.putInt(hole * INDEX_ENTRY, 0);
+        index.putInt(hole * INDEX_ENTRY + INDEX_SLOT, 0);
+    }
+
+    /**
+     * Makes the handle of a slot.
+     *
+     * @param slot
+     *            the slot number
+     * @return the handle
+     */
+    private long handle(final int slot) {
+        long generation = slots.getInt(slot * slotLength + HDR_GEN_OFFSET);
+        return (generation << GEN_SHIFT) | slot;
+    }
+
+    /**
+     * Gets the offset of a slot, checking that the handle is still valid.
+     *
+     * @param handle
+     *            the handle
+     * @return the offset of the slot header
+     */
+    private int base(final long handle) {
+        if (!isValid(handle)) {
+            throw new IllegalStateException(
+                    "The call context has been released");
+        }
+        return (int) (handle & SLOT_MASK) * slotLength;
+    }
+
+    /**
+     * Gets the offset of a field in a context, checking that the handle is
+     * still valid and that the field suits the accessor.
+     *
+     * @param handle
+     *            the handle
+     * @param field
+     *            the field
+     * @param type
+     *            the type of the accessor
+     * @return the offset of the field
+     */
+    private int offset(final long handle, final CallContextField field,
+            final CallContextField.Type type) {
+        if (field.getType() != type || !schema.owns(field)) {
+            throw new IllegalArgumentException("The " + field.getName()
+                    + " field is not a " + type + " field of this store");
+        }
+        return base(handle) + HEADER_LENGTH + field.getOffset();
+    }
+
+    /**
+     * Clears a range of the slots buffer. Absolute puts are used so that
+     * clearing does not need a buffer of zeroes or a view of the slots.
+     *
+     * @param at
+     *            the offset of the range
+     * @param length
+     *            the length of the range
+     */
+    private void clear(final int at, final int length) {
+        for (int i = 0; i < length; i++) {
+            slots.put(at + i, (byte) 0);
+        }
+    }
+
+    /**
+     * Spreads the bits of a task ID, since task IDs are often allocated
+     * sequentially.
+     *
+     * @param tid
+     *            the task ID
+     * @return the hash
+     */
+    // CSOFF: MagicNumber
+    private static int mix(final int tid) {
+        int h = tid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    // CSON: MagicNumber
+}
@@ -0,0 +1,131 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.flow;
+
+/**
+ * Interfaces for establishing flow-controlled streams of items, in which
+ * subscribers signal demand to publishers. These have the same shape and
+ * contract as <tt>java.util.concurrent.Flow</tt> (and the Reactive Streams
+ * specification) so that they can be adapted to either with a trivial
+ * wrapper, while allowing this library to keep to its current Java level.
+ *
+ * @author Telsis
+ */
+public final class Flow {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Flow() {
+    }
+
+    /**
+     * A producer of items that are received by a subscriber. Items are only
+     * delivered in response to demand signalled through the subscription.
+     *
+     * @param <T>
+     *            the type of item published
+     */
+    public interface Publisher<T> {
+        /**
+         * Add a subscriber. The publisher calls
+         * {@link Subscriber#onSubscribe(Subscription)} and then, as demand
+         * allows, {@link Subscriber#onNext(Object)}, followed by at most one
+         * of {@link Subscriber#onError(Throwable)} or
+         * {@link Subscriber#onComplete()}.
+         *
+         * @param subscriber
+         *            the subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items. Calls to a subscriber are never made concurrently.
+     *
+     * @param <T>
+     *            the type of item received
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method for a new subscription.
+         *
+         * @param subscription
+         *            the subscription, used to signal demand or cancel
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next item. This is only called when there is
+         * outstanding demand.
+         *
+         * @param item
+         *            the item
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the subscription has failed. No further calls are made.
+         *
+         * @param throwable
+         *            the cause of the failure
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when no more items will be published. No further calls are
+         * made.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and a subscriber.
+     */
+    public interface Subscription {
+        /**
+         * Add to the number of items the subscriber is prepared to receive.
+         * A non-positive count causes the subscription to fail with an
+         * {@link IllegalArgumentException}.
+         *
+         * @param n
+         *            the number of additional items
+         */
+        void request(long n);
+
+        /**
+         * Stop delivering items. Items already in flight may still arrive.
+         */
+        void cancel();
+    }
+
+    /**
+     * A component that is both a subscriber and a publisher.
+     *
+     * @param <T>
+     *            the type of item received
+     * @param <R>
+     *            the type of item published
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
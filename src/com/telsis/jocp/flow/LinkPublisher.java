@@ -0,0 +1,242 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.flow;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.telsis.jocp.LegacyOCPMessage;
+import com.telsis.jocp.OCPLink;
+import com.telsis.jocp.OCPLinkManager;
+import com.telsis.jocp.OCPMessage;
+import com.telsis.jocp.OCPMessageHandler;
+
+/**
+ * Publishes the inbound call control messages of an OCP link as a
+ * {@link Flow.Publisher}, with demand-based backpressure.
+ * <p/>
+ * The publisher is an {@link OCPMessageHandler}: register it with the link
+ * for each task ID (or as the management task ID handler) whose messages
+ * should be published. Messages are held in a bounded buffer until the
+ * subscriber requests them. When the buffer is full further messages are
+ * released and counted as {@link #getDropped() dropped}, so a slow subscriber
+ * never causes unbounded buffering. The link's receive thread is not blocked,
+ * as it also answers heartbeats and status requests and delivers the messages
+ * of every other task ID; size the buffer for the longest the subscriber may
+ * fall behind.
+ * <p/>
+ * Only one subscriber is supported. Ownership of each published message
+ * passes to the subscriber, which should {@link LegacyOCPMessage#release()
+ * release} it once finished with. The publisher never completes; after the
+ * subscription is cancelled any further messages are released unseen.
+ *
+ * @author Telsis
+ */
+public final class LinkPublisher implements Flow.Publisher<OCPMessage>,
+        OCPMessageHandler {
+    /** The link whose messages are published. */
+    private final OCPLinkManager                    link;
+    /** Messages waiting for demand. */
+    private final ArrayBlockingQueue<OCPMessage>    buffer;
+    /** The outstanding demand. */
+    private final AtomicLong                        requested = new AtomicLong();
+    /** Serialises delivery: non-zero while a thread is draining. */
+    private final AtomicInteger                     wip = new AtomicInteger();
+    /** The subscriber, or null if none has subscribed. */
+    private volatile Flow.Subscriber<? super OCPMessage> subscriber;
+    /** Whether or not the subscription has been cancelled. */
+    private volatile boolean                        cancelled;
+    /** The number of messages dropped because the buffer was full. */
+    private final AtomicLong                        dropped = new AtomicLong();
+
+    /** The logger for this class. */
+    private static Logger log = Logger.getLogger("ocpFlow");
+
+    /**
+     * Creates a publisher for a link.
+     *
+     * @param link
+     *            The link whose messages are published.
+     * @param bufferSize
+     *            The number of messages that may be held waiting for demand.
+     */
+    public LinkPublisher(final OCPLinkManager link, final int bufferSize) { // CSIGNORE: HiddenField
+        this.link = link;
+        this.buffer = new ArrayBlockingQueue<OCPMessage>(bufferSize);
+    }
+
+    /**
+     * Gets the link whose messages are published.
+     *
+     * @return the link
+     */
+    public OCPLinkManager getLink() {
+        return link;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super OCPMessage> newSubscriber) {
+        synchronized (this) {
+            if (subscriber == null && !cancelled) {
+                subscriber = newSubscriber;
+                newSubscriber.onSubscribe(new LinkSubscription());
+                drain();
+                return;
+            }
+        }
+        newSubscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) { // CSIGNORE: EmptyBlock
+            }
+
+            @Override
+            public void cancel() { // CSIGNORE: EmptyBlock
+            }
+        });
+        newSubscriber.onError(new IllegalStateException(this
+                + " only supports a single subscriber"));
+    }
+
+    /**
+     * Buffer a message for the subscriber. If the buffer is full the message
+     * is released and counted as dropped instead, so this never blocks.
+     *
+     * @param message
+     *            The OCP message to publish.
+     * @param callingLink
+     *            Not used.
+     */
+    @Override
+    public void queueMessage(final OCPMessage message,
+            final OCPLink callingLink) {
+        if (cancelled) {
+            ((LegacyOCPMessage) message).release();
+            return;
+        }
+        if (!buffer.offer(message)) {
+            ((LegacyOCPMessage) message).release();
+            if (dropped.getAndIncrement() == 0) {
+                log.warn(this + " buffer is full, dropping messages");
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Gets the number of messages dropped because the buffer was full.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Deliver as many buffered messages as demand allows. Only one thread
+     * delivers at a time; a thread that finds another already delivering
+     * leaves it to pick up the new messages or demand.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super OCPMessage> s = subscriber;
+            if (cancelled) {
+                discardBuffered();
+            } else if (s != null) {
+                long r = requested.get();
+                long emitted = 0;
+                while (emitted != r && !cancelled) {
+                    OCPMessage message = buffer.poll();
+                    if (message == null) {
+                        break;
+                    }
+                    try {
+                        s.onNext(message);
+                    } catch (RuntimeException e) {
+                        log.warn("Exception occurred in subscriber " + s, e);
+                    }
+                    emitted++;
+                }
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Release every message in the buffer.
+     */
+    private void discardBuffered() {
+        OCPMessage message;
+        while ((message = buffer.poll()) != null) {
+            ((LegacyOCPMessage) message).release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LinkPublisher(" + link + ")";
+    }
+
+    /**
+     * The subscription handed to the subscriber.
+     */
+    private final class LinkSubscription implements Flow.Subscription {
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                cancel();
+                Flow.Subscriber<? super OCPMessage> s = subscriber;
+                if (s != null) {
+                    s.onError(new IllegalArgumentException(
+                            "Non-positive request: " + n));
+                }
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.flow;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.telsis.jocp.FrameTap;
+import com.telsis.jocp.OCPLinkManager;
+import com.telsis.jocp.OCPMessage;
+
+/**
+ * Accepts outbound OCP messages for a link as a {@link Flow.Subscriber},
+ * signalling demand according to the free space in the link's transmit queue.
+ * <p/>
+ * On subscription the subscriber requests as many messages as the transmit
+ * queue can hold, and it tops the demand up after the link transmits frames.
+ * The transmit thread only notes that the queue has more space; the top-up,
+ * including the call to {@link Flow.Subscription#request(long)} and any
+ * messages the publisher delivers from it, runs on the subscriber's executor,
+ * so a slow or re-entrant publisher cannot stall transmission. Messages are
+ * queued with {@link OCPLinkManager#offerMessage}, so the subscriber never
+ * blocks. If other producers share the link and the queue fills before a
+ * message arrives, the message is held until the next top-up; because demand
+ * never exceeds the queue size, the number held is bounded.
+ * <p/>
+ * A subscriber may only be subscribed to one publisher at a time. When the
+ * publisher completes or fails, any held messages are still sent.
+ *
+ * @author Telsis
+ */
+public final class LinkSubscriber implements Flow.Subscriber<OCPMessage>,
+        FrameTap {
+    /** The link to transmit on. */
+    private final OCPLinkManager         link;
+    /** The executor that tops up demand. */
+    private final Executor               executor;
+    /** True while a top-up is waiting to run on the executor. */
+    private final AtomicBoolean          scheduled = new AtomicBoolean();
+    /** Tops up demand; run on the executor. */
+    private final Runnable               replenisher = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            replenish();
+        }
+    };
+    /** Messages that did not fit in the transmit queue. */
+    private final ArrayDeque<OCPMessage> held = new ArrayDeque<OCPMessage>();
+    /** The current subscription, or null if not subscribed. */
+    private Flow.Subscription            subscription;
+    /** Demand signalled but not yet satisfied. */
+    private long                         outstanding;
+
+    /** The logger for this class. */
+    private static Logger log = Logger.getLogger("ocpFlow");
+
+    /** The executor shared by subscribers that are not given one. */
+    private static ExecutorService sharedExecutor;
+
+    /**
+     * Creates a subscriber for a link that tops up demand on a daemon thread
+     * shared by all such subscribers.
+     *
+     * @param link
+     *            The link to transmit on.
+     */
+    public LinkSubscriber(final OCPLinkManager link) { // CSIGNORE: HiddenField
+        this(link, getSharedExecutor());
+    }
+
+    /**
+     * Creates a subscriber for a link.
+     *
+     * @param link
+     *            The link to transmit on.
+     * @param executor
+     *            The executor to top up demand on. The publisher may deliver
+     *            messages on this executor's threads.
+     */
+    // CSOFF: HiddenField
+    public LinkSubscriber(final OCPLinkManager link, final Executor executor) {
+        // CSON: HiddenField
+        this.link = link;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the executor shared by subscribers that are not given one,
+     * creating it if necessary.
+     *
+     * @return the shared executor
+     */
+    private static synchronized Executor getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newSingleThreadExecutor(
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            Thread thread = new Thread(r, "ocpFlowReplenisher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sharedExecutor;
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription newSubscription) {
+        synchronized (this) {
+            if (subscription != null) {
+                newSubscription.cancel();
+                return;
+            }
+            subscription = newSubscription;
+            outstanding = 0;
+        }
+        link.addFrameTap(this);
+        replenish();
+    }
+
+    @Override
+    public void onNext(final OCPMessage item) {
+        synchronized (this) {
+            outstanding--;
+            if (held.isEmpty() && link.offerMessage(item)) {
+                return;
+            }
+            held.add(item);
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        log.warn(this + ": publisher failed", throwable);
+        finish();
+    }
+
+    @Override
+    public void onComplete() {
+        finish();
+    }
+
+    /**
+     * Schedule a top-up of demand when the link transmits a frame, as the
+     * transmit queue now has more space. Only one top-up is scheduled at a
+     * time, so this does no more than a compare-and-set for most frames.
+     *
+     * @param direction
+     *            Whether the frame was received or transmitted.
+     * @param linkIndex
+     *            The index of the link that carried the frame.
+     * @param frame
+     *            The frame.
+     */
+    @Override
+    public void frame(final Direction direction, final int linkIndex,
+            final ByteBuffer frame) {
+        if (direction == Direction.TX && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(replenisher);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                log.warn(this + ": unable to schedule a demand top-up", e);
+            }
+        }
+    }
+
+    /**
+     * Move held messages to the transmit queue and then request enough
+     * messages to fill the remaining space.
+     */
+    private void replenish() {
+        Flow.Subscription s;
+        long want;
+        synchronized (this) {
+            while (!held.isEmpty() && link.offerMessage(held.peek())) {
+                held.poll();
+            }
+            s = subscription;
+            if (s == null) {
+                if (held.isEmpty()) {
+                    link.removeFrameTap(this);
+                }
+                return;
+            }
+            want = link.getTransmitQueueRemainingCapacity() - outstanding
+                    - held.size();
+            if (want <= 0) {
+                return;
+            }
+            outstanding += want;
+        }
+        // Request outside the lock as the publisher may deliver synchronously
+        s.request(want);
+    }
+
+    /**
+     * End the current subscription. The frame tap stays registered until the
+     * held messages have been sent.
+     */
+    private void finish() {
+        boolean drained;
+        synchronized (this) {
+            subscription = null;
+            drained = held.isEmpty();
+        }
+        if (drained) {
+            link.removeFrameTap(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LinkSubscriber(" + link + ")";
+    }
+}
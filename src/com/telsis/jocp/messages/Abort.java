@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to a remote platform if the task to which a message from
@@ -59,13 +60,11 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  *
  * @author Telsis
  */
+@OCPPayload
 public class Abort extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE =
             LegacyOCPMessageTypes.ABORT;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 2;
-
     /** Set invalidLegID to this if it's a Task ID that isn't valid. */
     public static final short           TASK_NOT_RUNNING = (short) 0xFFFF;
 
@@ -73,7 +72,8 @@ public class Abort extends CallControlMessage {
      * The leg ID that isn't valid, or TASK_NOT_RUNNING if it's a Task ID that
      * isn't valid.
      */
-    private short                       invalidLegID;
+    @OCPField(offset = 0)
+    short                               invalidLegID;
 
     /**
      * Decode the buffer into an Abort message.
@@ -85,18 +85,7 @@ public class Abort extends CallControlMessage {
      */
     public Abort(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.invalidLegID = buffer.getShort();
+        decodeBody(buffer);
     }
 
     /**
@@ -106,6 +95,24 @@ public class Abort extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Abort message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        AbortCodec.decode(this, buffer);
+    }
+
     /**
      * Instantiates a new Abort message for the specified leg.
      *
@@ -119,7 +126,7 @@ public class Abort extends CallControlMessage {
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(invalidLegID);
+        AbortCodec.encode(this, buffer);
     }
 
     /**
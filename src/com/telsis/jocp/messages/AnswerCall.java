@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to instruct a call-handling platform to answer a call and
@@ -76,19 +77,21 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  *
  * @author Telsis
  */
+@OCPPayload
 public class AnswerCall extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE =
             LegacyOCPMessageTypes.ANSWER_CALL;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 6;
 
     /** The Leg ID on call handling unit to act upon. */
-    private short                       destLegID;
+    @OCPField(offset = 0)
+    short                               destLegID;
     /** The answer mode. */
-    private short                       ansMode;
+    @OCPField(offset = 2)
+    short                               ansMode;
     /** The The index into the zip table on the SCP for this result. */
-    private byte                        zipNumber;
+    @OCPField(offset = 5)
+    byte                                zipNumber;
 
     /**
      * Decode the buffer into an Answer Call message.
@@ -100,21 +103,7 @@ public class AnswerCall extends CallControlMessage {
      */
     public AnswerCall(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        destLegID = buffer.getShort();
-        ansMode = buffer.getShort();
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
+        decodeBody(buffer);
     }
 
     /**
@@ -124,13 +113,36 @@ public class AnswerCall extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Answer Call message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        AnswerCallCodec.decode(this, buffer);
+    }
+
+    @Override
+    protected final void reset() {
+        super.reset();
+        destLegID = 0;
+        ansMode = 0;
+        zipNumber = 0;
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(destLegID);
-        buffer.putShort(ansMode);
-        buffer.put((byte) 0);
-        buffer.put(zipNumber);
+        AnswerCallCodec.encode(this, buffer);
     }
 
     /**
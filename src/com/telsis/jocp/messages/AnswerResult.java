@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to an {@link AnswerCall Answer Call} message.
@@ -53,14 +54,14 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see AnswerCall
  * @author Telsis
  */
+@OCPPayload
 public class AnswerResult extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.ANSWER_RESULT;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 2;
 
     /** The index into the zip table on the SCP for this result. */
-    private byte                        zipNumber;
+    @OCPField(offset = 1)
+    byte                                zipNumber;
 
     /**
      * Decode the buffer into an Answer Result message.
@@ -72,19 +73,7 @@ public class AnswerResult extends CallControlMessage {
      */
     public AnswerResult(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
+        decodeBody(buffer);
     }
 
     /**
@@ -94,11 +83,28 @@ public class AnswerResult extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Answer Result message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        AnswerResultCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.put((byte) 0); // for word alignment
-        buffer.put(zipNumber);
+        AnswerResultCodec.encode(this, buffer);
     }
 
     /**
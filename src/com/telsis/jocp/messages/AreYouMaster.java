@@ -54,6 +54,31 @@ public class AreYouMaster extends LinkMessage {
      */
     public AreYouMaster(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new Are You Master message.
+     */
+    public AreYouMaster() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Are You Master message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -64,13 +89,6 @@ public class AreYouMaster extends LinkMessage {
         }
     }
 
-    /**
-     * Instantiates a new Are You Master message.
-     */
-    public AreYouMaster() {
-        super(TYPE.getCommandCode());
-    }
-
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
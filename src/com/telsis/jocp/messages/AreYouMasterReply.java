@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.LinkMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to an {@link AreYouMaster Are You Master}
@@ -60,16 +61,22 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see AreYouMaster
  * @author Telsis
  */
+@OCPPayload
 public class AreYouMasterReply extends LinkMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.ARE_YOU_MASTER_REPLY;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 6;
+
+    /** The master flag value sent by a slave platform. */
+    public static final short           MASTER_FLAG_SLAVE  = 0;
+    /** The master flag value sent by a master platform. */
+    public static final short           MASTER_FLAG_MASTER = 1;
 
     /** The fastSCP ID number. */
-    private int                         scpID;
+    @OCPField(offset = 0)
+    int                                 scpID;
     /** The master flag. */
-    private short                       masterFlag;
+    @OCPField(offset = 4)
+    short                               masterFlag;
 
     /**
      * Decode the buffer into an Are You Master Reply message.
@@ -81,17 +88,7 @@ public class AreYouMasterReply extends LinkMessage {
      */
     public AreYouMasterReply(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new LinkMessageException(
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.scpID = buffer.getInt();
-        this.masterFlag = buffer.getShort();
+        decodeBody(buffer);
     }
 
     /**
@@ -101,11 +98,28 @@ public class AreYouMasterReply extends LinkMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Are You Master Reply message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        AreYouMasterReplyCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putInt(this.scpID);
-        buffer.putShort(this.masterFlag);
+        AreYouMasterReplyCodec.encode(this, buffer);
     }
 
     /**
@@ -76,6 +76,31 @@ public class BecomeMaster extends LinkMessage {
      */
     public BecomeMaster(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new Become Master message.
+     */
+    public BecomeMaster() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Become Master message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -86,13 +111,6 @@ public class BecomeMaster extends LinkMessage {
         }
     }
 
-    /**
-     * Instantiates a new Become Master message.
-     */
-    public BecomeMaster() {
-        super(TYPE.getCommandCode());
-    }
-
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
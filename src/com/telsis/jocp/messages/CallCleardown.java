@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to tell an SCP that a call has cleared down.
@@ -68,22 +69,26 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see RequestCleardown
  * @author Telsis
  */
+@OCPPayload
 public class CallCleardown extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.CALL_CLEARDOWN;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 12;
 
     /** The SCP's Leg ID for cleared party. */
-    private short                       destLegID;
+    @OCPField(offset = 0)
+    short                               destLegID;
     /** The signalling scheme's cause of cleardown, if available. */
-    private byte                        rawCause;
+    @OCPField(offset = 2)
+    byte                                rawCause;
     /** The Q850 reason for cleardown. */
-    private byte                        cause;
+    @OCPField(offset = 3)
+    byte                                cause;
     /** The time from A party arriving when this Leg answered (10ths second). */
-    private int                         answerTime;
+    @OCPField(offset = 4)
+    int                                 answerTime;
     /** The time from A party arriving when this Leg cleared (10ths second). */
-    private int                         clearTime;
+    @OCPField(offset = 8)
+    int                                 clearTime;
 
     /**
      * Decode the buffer into a Call Cleardown message.
@@ -95,22 +100,7 @@ public class CallCleardown extends CallControlMessage {
      */
     public CallCleardown(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        destLegID = buffer.getShort();
-        rawCause = buffer.get();
-        cause = buffer.get();
-        answerTime = buffer.getInt();
-        clearTime = buffer.getInt();
+        decodeBody(buffer);
     }
 
     /**
@@ -120,14 +110,38 @@ public class CallCleardown extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Call Cleardown message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        CallCleardownCodec.decode(this, buffer);
+    }
+
+    @Override
+    protected final void reset() {
+        super.reset();
+        destLegID = 0;
+        rawCause = 0;
+        cause = 0;
+        answerTime = 0;
+        clearTime = 0;
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(destLegID);
-        buffer.put(rawCause);
-        buffer.put(cause);
-        buffer.putInt(answerTime);
-        buffer.putInt(clearTime);
+        CallCleardownCodec.encode(this, buffer);
     }
 
     /**
@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to an OCP service layer message that is
@@ -78,11 +79,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  *
  * @author Telsis
  */
+@OCPPayload
 public class CallCommandUnsupported extends CallControlMessage {
     /** The mesage type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.CALL_COMMAND_UNSUPPORTED;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 8;
 
     /** Command code unsupported. */
     public static final short           REASON_COMMAND_CODE_UNSUPPORTED       = 0;
@@ -104,11 +104,14 @@ public class CallCommandUnsupported extends CallControlMessage {
     public static final short           REASON_CUSTOM_DATA_FIELD_OUT_OF_RANGE = 8;
 
     /** The Command Code of command with error. */
-    private short                       nestedCommandCode;
+    @OCPField(offset = 0)
+    short                               nestedCommandCode;
     /** The reason. */
-    private short                       reason;
+    @OCPField(offset = 2)
+    short                               reason;
     /** The additional information returned for some errors. */
-    private int                         value;
+    @OCPField(offset = 4)
+    int                                 value;
 
     /**
      * Decode the buffer into a Call Command Unsupported message.
@@ -120,20 +123,7 @@ public class CallCommandUnsupported extends CallControlMessage {
      */
     public CallCommandUnsupported(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.nestedCommandCode = buffer.getShort();
-        this.reason = buffer.getShort();
-        this.value = buffer.getInt();
+        decodeBody(buffer);
     }
 
     /**
@@ -143,13 +133,28 @@ public class CallCommandUnsupported extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Call Command Unsupported message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        CallCommandUnsupportedCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.putShort(nestedCommandCode);
-        buffer.putShort(reason);
-        buffer.putInt(value);
+        CallCommandUnsupportedCodec.encode(this, buffer);
     }
 
     /**
@@ -25,9 +25,10 @@ package com.telsis.jocp.messages;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import com.telsis.jocp.LinkMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to tell the remote platform to gap calls in accordance with
@@ -99,12 +100,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  *
  * @author Telsis
  */
+@OCPPayload
 public class CallGap extends LinkMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.CALL_GAP;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 30;
-
     /** The length of the criteria field. */
     private static final int            CRITERIA_LENGTH = 18;
 
@@ -119,19 +118,26 @@ public class CallGap extends LinkMessage {
     public static final short           DURATION_DISABLED         = 0;
 
     /** The duration. */
-    private short                       duration;
+    @OCPField(offset = 0)
+    short                               duration;
     /** The interval. */
-    private short                       interval;
+    @OCPField(offset = 2)
+    short                               interval;
     /** The file number to play. */
-    private int                         messageID;
+    @OCPField(offset = 4)
+    int                                 messageID;
     /** The release cause. */
-    private short                       releaseCause;
+    @OCPField(offset = 8)
+    short                               releaseCause;
     /** The control type. */
-    private byte                        controlType;
+    @OCPField(offset = 10)
+    byte                                controlType;
     /** The criteria type. */
-    private byte                        criteriaType;
+    @OCPField(offset = 11)
+    byte                                criteriaType;
     /** The criteria. */
-    private byte[]                      criteria = new byte[CRITERIA_LENGTH];
+    @OCPField(offset = 12, length = CRITERIA_LENGTH)
+    byte[]                              criteria = new byte[CRITERIA_LENGTH];
 
     /**
      * Decode the buffer into a Call Gap message.
@@ -143,22 +149,7 @@ public class CallGap extends LinkMessage {
      */
     public CallGap(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new LinkMessageException(
-                    TYPE.getCommandCode(),
-                    LinkCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.duration = buffer.getShort();
-        this.interval = buffer.getShort();
-        this.messageID = buffer.getInt();
-        this.releaseCause = buffer.getShort();
-        this.controlType = buffer.get();
-        this.criteriaType = buffer.get();
-        buffer.get(this.criteria);
+        decodeBody(buffer);
     }
 
     /**
@@ -168,16 +159,28 @@ public class CallGap extends LinkMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Call Gap message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        CallGapCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(this.duration);
-        buffer.putShort(this.interval);
-        buffer.putInt(this.messageID);
-        buffer.putShort(this.releaseCause);
-        buffer.put(this.controlType);
-        buffer.put(this.criteriaType);
-        buffer.put(this.criteria);
+        CallGapCodec.encode(this, buffer);
     }
 
     /**
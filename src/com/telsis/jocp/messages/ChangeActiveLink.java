@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.LinkMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message when the active link between the sending and remote
@@ -58,14 +59,14 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see ChangeActiveLinkAck
  * @author Telsis
  */
+@OCPPayload
 public class ChangeActiveLink extends LinkMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.CHANGE_ACTIVE_LINK;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 2;
 
     /** The this link field. */
-    private short                       thisLink;
+    @OCPField(offset = 0)
+    short                               thisLink;
 
     /**
      * Decode the buffer into a Change Active Link message.
@@ -77,16 +78,7 @@ public class ChangeActiveLink extends LinkMessage {
      */
     public ChangeActiveLink(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new LinkMessageException(
-                    TYPE.getCommandCode(),
-                    LinkCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.thisLink = buffer.getShort();
+        decodeBody(buffer);
     }
 
     /**
@@ -96,10 +88,28 @@ public class ChangeActiveLink extends LinkMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Change Active Link message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        ChangeActiveLinkCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(this.thisLink);
+        ChangeActiveLinkCodec.encode(this, buffer);
     }
 
     /**
@@ -25,9 +25,10 @@ package com.telsis.jocp.messages;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to instruct a call-handling platform to connect to an
@@ -91,11 +92,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see ConnectToResourceAck
  * @author Telsis
  */
+@OCPPayload
 public class ConnectToResource extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.CONNECT_TO_RESOURCE;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 30;
 
     /** The length of the routingPrefix field. */
     private static final int            ROUTING_PREFIX_LENGTH = 8;
@@ -107,21 +107,29 @@ public class ConnectToResource extends CallControlMessage {
     private static final int            POSTFIX_LENGTH = 4;
 
     /** The leg ID on call handling unit to act upon. */
-    private short                       destLegID;
+    @OCPField(offset = 0)
+    short                               destLegID;
     /** The party on the fastSCP being connected to the resource. */
-    private short                       origLegID;
+    @OCPField(offset = 2)
+    short                               origLegID;
     /** The flags. */
-    private byte                        flags;
+    @OCPField(offset = 4)
+    byte                                flags;
     /** The index into the zip table on the SCP for this result. */
-    private byte                        zipNumber;
+    @OCPField(offset = 5)
+    byte                                zipNumber;
     /** The prefix for the outdialled number. */
-    private byte[]                      routingPrefix = new byte[ROUTING_PREFIX_LENGTH];
+    @OCPField(offset = 6, length = ROUTING_PREFIX_LENGTH)
+    byte[]                              routingPrefix = new byte[ROUTING_PREFIX_LENGTH];
     /** The correlation ID. */
-    private byte[]                      correlationInfo = new byte[CORRELATION_INFO_LENGTH];
+    @OCPField(offset = 14, length = CORRELATION_INFO_LENGTH)
+    byte[]                              correlationInfo = new byte[CORRELATION_INFO_LENGTH];
     /** The cluster ID. */
-    private byte[]                      clusterID = new byte[CLUSTER_ID_LENGTH];
+    @OCPField(offset = 22, length = CLUSTER_ID_LENGTH)
+    byte[]                              clusterID = new byte[CLUSTER_ID_LENGTH];
     /** The postfix for outdialled number. */
-    private byte[]                      postFix = new byte[POSTFIX_LENGTH];
+    @OCPField(offset = 26, length = POSTFIX_LENGTH)
+    byte[]                              postFix = new byte[POSTFIX_LENGTH];
 
     /**
      * Decode the buffer into a Connect To Resource message.
@@ -133,25 +141,7 @@ public class ConnectToResource extends CallControlMessage {
      */
     public ConnectToResource(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        destLegID = buffer.getShort();
-        origLegID = buffer.getShort();
-        flags = buffer.get();
-        zipNumber = buffer.get();
-        buffer.get(routingPrefix);
-        buffer.get(correlationInfo);
-        buffer.get(clusterID);
-        buffer.get(postFix);
+        decodeBody(buffer);
     }
 
     /**
@@ -161,17 +151,28 @@ public class ConnectToResource extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Connect To Resource message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        ConnectToResourceCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(destLegID);
-        buffer.putShort(origLegID);
-        buffer.put(flags);
-        buffer.put(zipNumber);
-        buffer.put(routingPrefix);
-        buffer.put(correlationInfo);
-        buffer.put(clusterID);
-        buffer.put(postFix);
+        ConnectToResourceCodec.encode(this, buffer);
     }
 
     /**
@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to the {@link ConnectToResource Connect to
@@ -70,20 +71,23 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see ConnectToResource
  * @author Telsis
  */
+@OCPPayload
 public class ConnectToResourceAck extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.CONNECT_TO_RESOURCE_ACK;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 6;
 
     /** The leg ID that is being connected. */
-    private short                       destLegID;
+    @OCPField(offset = 0)
+    short                               destLegID;
     /** The index into the zip table on the SCP for this result. */
-    private byte                        zipNumber;
+    @OCPField(offset = 3)
+    byte                                zipNumber;
     /** The result. */
-    private byte                        result;
+    @OCPField(offset = 4)
+    byte                                result;
     /** The reason. */
-    private byte                        reason;
+    @OCPField(offset = 5)
+    byte                                reason;
 
     /**
      * Decode the buffer into a Connect To Resource Ack message.
@@ -95,22 +99,7 @@ public class ConnectToResourceAck extends CallControlMessage {
      */
     public ConnectToResourceAck(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        destLegID = buffer.getShort();
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
-        result = buffer.get();
-        reason = buffer.get();
+        decodeBody(buffer);
     }
 
     /**
@@ -120,14 +109,28 @@ public class ConnectToResourceAck extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Connect To Resource Ack message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        ConnectToResourceAckCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(destLegID);
-        buffer.put((byte) 0); // for word alignment
-        buffer.put(zipNumber);
-        buffer.put(result);
-        buffer.put(reason);
+        ConnectToResourceAckCodec.encode(this, buffer);
     }
 
     /**
@@ -170,34 +170,7 @@ public class DeliverTo extends CallControlMessage {
     protected DeliverTo(final ByteBuffer buffer, final int minLength,
             final int maxLength, final boolean decode) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() < minLength
-                || buffer.limit() > maxLength) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    this.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        if (!decode) {
-            return;
-        }
-
-        destLegID = buffer.getShort();
-        origLegID = buffer.getShort();
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
-        cliMode = buffer.getShort();
-        timeout = buffer.getShort();
-        buffer.get(); // for word alignment
-        outdialNoTypePlan = buffer.get();
-        buffer.get(outdialNo);
-        cliPresScreen = buffer.get();
-        cliTypePlan = buffer.get();
-        buffer.get(cliNo);
+        decodeBody(buffer, minLength, maxLength, decode);
     }
 
     /**
@@ -230,6 +203,84 @@ public class DeliverTo extends CallControlMessage {
         this(TYPE.getCommandCode());
     }
 
+    /**
+     * Decode the buffer into this Deliver To message. Subclasses that are
+     * decoded differently must override this.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    @Override // CSIGNORE: DesignForExtension
+    protected void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer, EXPECTED_LENGTH, EXPECTED_LENGTH, true);
+    }
+
+    /**
+     * Decode the payload of a DeliverTo message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @param minLength
+     *            the minimum length of the message
+     * @param maxLength
+     *            the maximum length of the message
+     * @param decode
+     *            true if the payload should be decoded; false to skip decoding
+     *            the payload
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    protected final void decodeBody(final ByteBuffer buffer,
+            final int minLength, final int maxLength, final boolean decode)
+            throws OCPException {
+        super.advance(buffer);
+
+        if (buffer.limit() < minLength
+                || buffer.limit() > maxLength) {
+            throw new CallMessageException(
+                    getDestTID(),
+                    getOrigTID(),
+                    this.getCommandCode(),
+                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
+                    (short) buffer.limit());
+        }
+
+        if (!decode) {
+            return;
+        }
+
+        destLegID = buffer.getShort();
+        origLegID = buffer.getShort();
+        buffer.get(); // for word alignment
+        zipNumber = buffer.get();
+        cliMode = buffer.getShort();
+        timeout = buffer.getShort();
+        buffer.get(); // for word alignment
+        outdialNoTypePlan = buffer.get();
+        buffer.get(outdialNo);
+        cliPresScreen = buffer.get();
+        cliTypePlan = buffer.get();
+        buffer.get(cliNo);
+    }
+
+    @Override // CSIGNORE: DesignForExtension
+    protected void reset() {
+        super.reset();
+        destLegID = 0;
+        origLegID = 0;
+        zipNumber = 0;
+        cliMode = 0;
+        timeout = 0;
+        outdialNoTypePlan = 0;
+        outdialNo = clearBytes(outdialNo, OUTDIAL_NO_LENGTH);
+        cliPresScreen = 0;
+        cliTypePlan = 0;
+        cliNo = clearBytes(cliNo, CLI_LENGTH);
+    }
+
     /**
      * Encode the header and payload into the buffer. This modifies the buffer
      * in-place and sets the buffer's position to the end of the payload.
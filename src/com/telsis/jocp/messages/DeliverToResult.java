@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to the {@link DeliverTo Deliver To} message.
@@ -73,27 +74,32 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see DeliverTo
  * @author Telsis
  */
+@OCPPayload
 public class DeliverToResult extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.DELIVER_TO_RESULT;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 10;
 
     /** Set this bit in flags to indicate that outdial succeeded. */
     public static final byte            FLAG_OUTDIAL_SUCCEEDED = (byte) 0x80;
 
     /** The leg ID for the new party on call handling unit. */
-    private short                       origLegID;
+    @OCPField(offset = 0)
+    short                               origLegID;
     /** The flags. */
-    private byte                        flags;
+    @OCPField(offset = 2)
+    byte                                flags;
     /** The index into the zip table on the SCP for this result. */
-    private byte                        zipNumber;
+    @OCPField(offset = 3)
+    byte                                zipNumber;
     /** The signalling scheme's reason for failure, if available. */
-    private byte                        rawFailureReason;
+    @OCPField(offset = 4)
+    byte                                rawFailureReason;
     /** The Q850 reason for outdial failing. */
-    private byte                        outdialFailureReason;
+    @OCPField(offset = 5)
+    byte                                outdialFailureReason;
     /** The time from A party arriving when outdial started (10ths second). */
-    private int                         time;
+    @OCPField(offset = 6)
+    int                                 time;
 
     /**
      * Decode the buffer into a Deliver To Result message.
@@ -105,23 +111,7 @@ public class DeliverToResult extends CallControlMessage {
      */
     public DeliverToResult(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        origLegID = buffer.getShort();
-        flags = buffer.get();
-        zipNumber = buffer.get();
-        rawFailureReason = buffer.get();
-        outdialFailureReason = buffer.get();
-        time = buffer.getInt();
+        decodeBody(buffer);
     }
 
     /**
@@ -131,15 +121,28 @@ public class DeliverToResult extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Deliver To Result message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        DeliverToResultCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(origLegID);
-        buffer.put(flags);
-        buffer.put(zipNumber);
-        buffer.put(rawFailureReason);
-        buffer.put(outdialFailureReason);
-        buffer.putInt(time);
+        DeliverToResultCodec.encode(this, buffer);
     }
 
     /**
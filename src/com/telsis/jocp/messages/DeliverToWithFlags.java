@@ -141,8 +141,7 @@ public class DeliverToWithFlags extends DeliverTo {
      */
     public DeliverToWithFlags(final ByteBuffer buffer) throws OCPException {
         super(buffer, EXPECTED_LENGTH, EXPECTED_LENGTH, true);
-
-        outdialFlags = buffer.getInt();
+        decodeBody(buffer);
     }
 
     /**
@@ -152,6 +151,26 @@ public class DeliverToWithFlags extends DeliverTo {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer, EXPECTED_LENGTH, EXPECTED_LENGTH, true);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the fields of a Deliver To With Flags message that follow those
+     * decoded by {@link DeliverTo}.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        outdialFlags = buffer.getInt();
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer, true);
@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to instruct the call-handling platform to disconnect from
@@ -71,20 +72,23 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see DisconnectFromResourceAck
  * @author Telsis
  */
+@OCPPayload
 public class DisconnectFromResource extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.DISCONNECT_FROM_RESOURCE;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 6;
 
     /** The leg ID on call handling unit to act upon. */
-    private short                       destLegID;
+    @OCPField(offset = 0)
+    short                               destLegID;
     /** The index into the zip table on the SCP for this result. */
-    private byte                        zipNumber;
+    @OCPField(offset = 3)
+    byte                                zipNumber;
     /** The flags. */
-    private byte                        flags;
+    @OCPField(offset = 4)
+    byte                                flags;
     /** The reason. */
-    private byte                        reason;
+    @OCPField(offset = 5)
+    byte                                reason;
 
     /**
      * Decode the buffer into a Disconnect From Resource message.
@@ -96,22 +100,7 @@ public class DisconnectFromResource extends CallControlMessage {
      */
     public DisconnectFromResource(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        destLegID = buffer.getShort();
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
-        flags = buffer.get();
-        reason = buffer.get();
+        decodeBody(buffer);
     }
 
     /**
@@ -121,14 +110,28 @@ public class DisconnectFromResource extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Disconnect From Resource message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        DisconnectFromResourceCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(destLegID);
-        buffer.put((byte) 0); // for word alignment
-        buffer.put(zipNumber);
-        buffer.put(flags);
-        buffer.put(reason);
+        DisconnectFromResourceCodec.encode(this, buffer);
     }
 
     /**
@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
 import com.telsis.jocp.OCPException;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to signify that the requested file play has completed.
@@ -54,30 +55,19 @@ import com.telsis.jocp.OCPException;
  * @see PlayFile
  * @author John Schofield
  */
+@OCPPayload
 public class DonePlay extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.DONE_PLAY;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 2;
 
 
     /** The index into the zip table on the SCP for this result. */
-    private byte zipNumber;
+    @OCPField(offset = 1)
+    byte zipNumber;
     
     protected DonePlay(ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
+        decodeBody(buffer);
     }
     
     /**
@@ -86,12 +76,29 @@ public class DonePlay extends CallControlMessage {
     public DonePlay() {
         super(TYPE.getCommandCode());
     }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Done Play message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        DonePlayCodec.decode(this, buffer);
+    }
     
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.put((byte) 0);
-        buffer.put(zipNumber);
+        DonePlayCodec.encode(this, buffer);
     }
 
     /**
@@ -57,6 +57,31 @@ public class Heartbeat extends LinkMessage {
      */
     public Heartbeat(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new Heartbeat message.
+     */
+    public Heartbeat() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Heartbeat message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -67,13 +92,6 @@ public class Heartbeat extends LinkMessage {
         }
     }
 
-    /**
-     * Instantiates a new Heartbeat message.
-     */
-    public Heartbeat() {
-        super(TYPE.getCommandCode());
-    }
-
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
@@ -67,6 +67,31 @@ public class INAPContinue extends CallControlMessage {
      */
     public INAPContinue(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new INAP Continue message.
+     */
+    public INAPContinue() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an INAP Continue message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -79,13 +104,6 @@ public class INAPContinue extends CallControlMessage {
         }
     }
 
-    /**
-     * Instantiates a new INAP Continue message.
-     */
-    public INAPContinue() {
-        super(TYPE.getCommandCode());
-    }
-
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
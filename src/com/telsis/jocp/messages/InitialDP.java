@@ -168,28 +168,7 @@ public class InitialDP extends CallControlMessage {
             final int maxLength, final int optLength, final boolean decode)
             throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        int limit = buffer.limit();
-        if (!((limit >= minLength && limit <= maxLength)
-                || (limit >= minLength + optLength
-                        && limit <= maxLength + optLength)
-                    )) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    this.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        if (!decode) {
-            return;
-        }
-
-        decodeMain(buffer);
-        time = buffer.getInt();
-        decodeRedir(buffer);
+        decodeBody(buffer, minLength, maxLength, optLength, decode);
     }
 
     /**
@@ -222,6 +201,81 @@ public class InitialDP extends CallControlMessage {
         this(TYPE.getCommandCode());
     }
 
+    /**
+     * Decode the buffer into this Initial DP message. Subclasses that are
+     * decoded differently must override this.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    @Override // CSIGNORE: DesignForExtension
+    protected void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer, MIN_LENGTH, MAX_LENGTH, OPT_LENGTH, true);
+    }
+
+    /**
+     * Decode the payload of an InitialDP message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @param minLength
+     *            the minimum length of the message
+     * @param maxLength
+     *            the maximum length of the message
+     * @param optLength
+     *            the length of the optional (redirecting) part of the message
+     * @param decode
+     *            true if the payload should be decoded; false to skip decoding
+     *            the payload
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    protected final void decodeBody(final ByteBuffer buffer,
+            final int minLength, final int maxLength, final int optLength,
+            final boolean decode) throws OCPException {
+        super.advance(buffer);
+
+        int limit = buffer.limit();
+        if (!((limit >= minLength && limit <= maxLength)
+                || (limit >= minLength + optLength
+                        && limit <= maxLength + optLength)
+                    )) {
+            throw new CallMessageException(
+                    getDestTID(),
+                    getOrigTID(),
+                    this.getCommandCode(),
+                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
+                    (short) buffer.limit());
+        }
+
+        if (!decode) {
+            return;
+        }
+
+        decodeMain(buffer);
+        time = buffer.getInt();
+        decodeRedir(buffer);
+    }
+
+    @Override // CSIGNORE: DesignForExtension
+    protected void reset() {
+        super.reset();
+        origLegID = 0;
+        cpc = 0;
+        finTypePlan = 0;
+        fin = clearBytes(fin, FIN_LENGTH);
+        cliPresScreen = 0;
+        cliTypePlan = 0;
+        cli = clearBytes(cli, CLI_LENGTH);
+        time = 0;
+        redirPresScreen = 0;
+        redirTypePlan = 0;
+        redir = null;
+    }
+
     /**
      * Create a copy of an existing InitialDP message.
      *
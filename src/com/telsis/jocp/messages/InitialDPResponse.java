@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message (if required) in response to See {@link InitialDP Initial
@@ -61,19 +62,20 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see InitialDPServiceKey
  * @author Telsis
  */
+@OCPPayload
 public class InitialDPResponse extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.INITIAL_DP_RESPONSE;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 4;
 
     /** Indicates that cleardown notification is required. */
     public static final short           FLAG_CLEARDOWN_NOTIFICATION = 1;
 
     /** The SCP's Leg ID for A party. */
-    private short                       origLegID;
+    @OCPField(offset = 0)
+    short                               origLegID;
     /** The flags. */
-    private short                       flags;
+    @OCPField(offset = 2)
+    short                               flags;
 
     /**
      * Decode the buffer into an Initial DP Response message.
@@ -85,19 +87,7 @@ public class InitialDPResponse extends CallControlMessage {
      */
     public InitialDPResponse(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        origLegID = buffer.getShort();
-        flags = buffer.getShort();
+        decodeBody(buffer);
     }
 
     /**
@@ -107,11 +97,28 @@ public class InitialDPResponse extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Initial DP Response message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        InitialDPResponseCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(origLegID);
-        buffer.putShort(flags);
+        InitialDPResponseCodec.encode(this, buffer);
     }
 
     /**
@@ -154,10 +154,7 @@ public class InitialDPServiceKey extends InitialDP {
      */
     public InitialDPServiceKey(final ByteBuffer buffer) throws OCPException {
         super(buffer, MIN_LENGTH, MAX_LENGTH, OPT_LENGTH, false); // Need custom decoding
-
-        decodeMain(buffer);
-        time = buffer.getInt();
-        decodeRedir(buffer);
+        decodeBody(buffer);
     }
 
     /**
@@ -167,6 +164,28 @@ public class InitialDPServiceKey extends InitialDP {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer, MIN_LENGTH, MAX_LENGTH, OPT_LENGTH, false); // Need custom decoding
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Initial DP Service Key message, once
+     * {@link InitialDP} has checked its length.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        decodeMain(buffer);
+        time = buffer.getInt();
+        decodeRedir(buffer);
+    }
+
     /**
      * Create a copy of an existing InitialDP message.
      *
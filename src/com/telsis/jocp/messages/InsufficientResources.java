@@ -54,6 +54,31 @@ public class InsufficientResources extends CallControlMessage {
      */
     public InsufficientResources(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new Insufficient Resources message.
+     */
+    public InsufficientResources() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of an Insufficient Resources message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -66,13 +91,6 @@ public class InsufficientResources extends CallControlMessage {
         }
     }
 
-    /**
-     * Instantiates a new Insufficient Resources message.
-     */
-    public InsufficientResources() {
-        super(TYPE.getCommandCode());
-    }
-
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
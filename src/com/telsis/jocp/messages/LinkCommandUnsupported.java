@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.LinkMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message when the platform receives a link management message it is
@@ -72,11 +73,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  *
  * @author Telsis
  */
+@OCPPayload
 public class LinkCommandUnsupported extends LinkMessage {
     /** The mesage type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.LINK_COMMAND_UNSUPPORTED;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 8;
 
     /** Command code unsupported. */
     public static final short           REASON_COMMAND_CODE_UNSUPPORTED       = 0;
@@ -94,11 +94,14 @@ public class LinkCommandUnsupported extends LinkMessage {
     public static final short           REASON_UNEXPECTED_COMMAND_RECEIVED    = 6;
 
     /** The command code which isn't supported. */
-    private short                       nestedCommandCode;
+    @OCPField(offset = 0)
+    short                               nestedCommandCode;
     /** The reason. */
-    private short                       reason;
+    @OCPField(offset = 2)
+    short                               reason;
     /** The unsupported value. */
-    private int                         value;
+    @OCPField(offset = 4)
+    int                                 value;
 
     /**
      * Decode the buffer into a Link Command Unsupported message.
@@ -110,18 +113,7 @@ public class LinkCommandUnsupported extends LinkMessage {
      */
     public LinkCommandUnsupported(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new LinkMessageException(
-                    TYPE.getCommandCode(),
-                    LinkCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.nestedCommandCode = buffer.getShort();
-        this.reason = buffer.getShort();
-        this.value = buffer.getInt();
+        decodeBody(buffer);
     }
 
     /**
@@ -131,6 +123,24 @@ public class LinkCommandUnsupported extends LinkMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Link Command Unsupported message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        LinkCommandUnsupportedCodec.decode(this, buffer);
+    }
+
     /**
      * Instantiates a new Link Command Unsupported message with the specified
      * values.
@@ -154,10 +164,7 @@ public class LinkCommandUnsupported extends LinkMessage {
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.putShort(nestedCommandCode);
-        buffer.putShort(reason);
-        buffer.putInt(value);
+        LinkCommandUnsupportedCodec.encode(this, buffer);
     }
 
     /**
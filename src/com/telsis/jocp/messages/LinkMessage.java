@@ -58,4 +58,13 @@ public abstract class LinkMessage extends LegacyOCPMessage {
         super.setDestTID(0xFFFFFFFF);
         super.setOrigTID(0xFFFFFFFF);
     }
+
+    @Override // CSIGNORE: DesignForExtension
+    protected void reset() {
+        super.reset();
+
+        // Link messages always have taskIDs of 0xFFFFFFFF
+        super.setDestTID(0xFFFFFFFF);
+        super.setOrigTID(0xFFFFFFFF);
+    }
 }
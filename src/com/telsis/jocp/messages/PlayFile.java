@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
 import com.telsis.jocp.OCPException;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message if you want to make a call handling unit play an audio prompt.
@@ -75,26 +76,30 @@ import com.telsis.jocp.OCPException;
  * @see DonePlay
  * @author John Schofield
  */
+@OCPPayload
 public class PlayFile extends CallControlMessage{
     
 
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE =
             LegacyOCPMessageTypes.PLAY_FILE;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 12;
 
 
     /** The ID of the leg of the call for which the CDR information is to be set. */
-    private short destLegID;
+    @OCPField(offset = 0)
+    short destLegID;
     /** The index into the zip table on the SCP for this result. */
-    private byte zipNumber;
+    @OCPField(offset = 3)
+    byte zipNumber;
     /** The number of the file to play**/
-    private int fileNo;
+    @OCPField(offset = 4)
+    int fileNo;
     /** Flags - just one bit to request a PlayDone response **/
-    private short flags;
+    @OCPField(offset = 8)
+    short flags;
     /** The number of times to play the file **/
-    private short numRepeats;
+    @OCPField(offset = 10)
+    short numRepeats;
     
     /**
      * Decode the buffer into an Set CDR Extended Field Data message.
@@ -106,23 +111,7 @@ public class PlayFile extends CallControlMessage{
      */
     public PlayFile(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        destLegID = buffer.getShort();
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
-        fileNo = buffer.getInt();
-        flags = buffer.getShort();
-        numRepeats = buffer.getShort();
+        decodeBody(buffer);
     }
 
     /**
@@ -132,16 +121,28 @@ public class PlayFile extends CallControlMessage{
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Play File message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        PlayFileCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.putShort(destLegID);
-        buffer.put((byte) 0);
-        buffer.put(zipNumber);
-        buffer.putInt(fileNo);
-        buffer.putShort(flags);
-        buffer.putShort(numRepeats);
+        PlayFileCodec.encode(this, buffer);
     }
     
     /**
@@ -25,9 +25,10 @@ package com.telsis.jocp.messages;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import com.telsis.jocp.LinkMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to indicate which load-sharing fastSCP should take
@@ -67,11 +68,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  *
  * @author Telsis
  */
+@OCPPayload
 public class PreferredUnit extends LinkMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.PREFERRED_UNIT;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 10;
 
     /** The length of the preferredSCP field. */
     private static final int            PREFERRED_SCP_LENGTH = 4;
@@ -79,11 +79,14 @@ public class PreferredUnit extends LinkMessage {
     private static final int            SECONDARY_SCP_LENGTH = 4;
 
     /** The flags. */
-    private short                       flags;
+    @OCPField(offset = 0)
+    short                               flags;
     /** The IP address of the preferred SCP. */
-    private byte[]                      preferredSCP = new byte[PREFERRED_SCP_LENGTH];
+    @OCPField(offset = 2, length = PREFERRED_SCP_LENGTH)
+    byte[]                              preferredSCP = new byte[PREFERRED_SCP_LENGTH];
     /** The IP address of the Secondary SCP. */
-    private byte[]                      secondarySCP = new byte[SECONDARY_SCP_LENGTH];
+    @OCPField(offset = 6, length = SECONDARY_SCP_LENGTH)
+    byte[]                              secondarySCP = new byte[SECONDARY_SCP_LENGTH];
 
     /**
      * Decode the buffer into a Preferred Unit message.
@@ -95,18 +98,7 @@ public class PreferredUnit extends LinkMessage {
      */
     public PreferredUnit(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new LinkMessageException(
-                    TYPE.getCommandCode(),
-                    LinkCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.flags = buffer.getShort();
-        buffer.get(this.preferredSCP);
-        buffer.get(this.secondarySCP);
+        decodeBody(buffer);
     }
 
     /**
@@ -116,13 +108,28 @@ public class PreferredUnit extends LinkMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Preferred Unit message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        PreferredUnitCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.putShort(this.flags);
-        buffer.put(preferredSCP);
-        buffer.put(secondarySCP);
+        PreferredUnitCodec.encode(this, buffer);
     }
 
     /**
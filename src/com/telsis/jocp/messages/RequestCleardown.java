@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to instruct the call-handling platform to clear a call.
@@ -58,11 +59,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see CallCleardown
  * @author Telsis
  */
+@OCPPayload
 public class RequestCleardown extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.REQUEST_CLEARDOWN;
-    /** The expected length of this messge. */
-    private static final int            EXPECTED_LENGTH = 4;
 
     /**
      * Indicates that the reason field contains the raw signalling scheme code.
@@ -72,11 +72,14 @@ public class RequestCleardown extends CallControlMessage {
     public static final short           LEG_ID_CLEAR_ALL   = (short) 0xFFFF;
 
     /** The leg ID on call handling unit to act upon. */
-    private short                       destLegID;
+    @OCPField(offset = 0)
+    short                               destLegID;
     /** The flags. */
-    private byte                        flags;
+    @OCPField(offset = 2)
+    byte                                flags;
     /** The reason. */
-    private byte                        reason;
+    @OCPField(offset = 3)
+    byte                                reason;
 
     /**
      * Decode the buffer into a Request Cleardown message.
@@ -88,20 +91,7 @@ public class RequestCleardown extends CallControlMessage {
      */
     public RequestCleardown(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        this.destLegID = buffer.getShort();
-        this.flags = buffer.get();
-        this.reason = buffer.get();
+        decodeBody(buffer);
     }
 
     /**
@@ -111,12 +101,28 @@ public class RequestCleardown extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Request Cleardown message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        RequestCleardownCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putShort(destLegID);
-        buffer.put(flags);
-        buffer.put(reason);
+        RequestCleardownCodec.encode(this, buffer);
     }
 
     /**
@@ -28,6 +28,8 @@ import java.util.Arrays;
 import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message if you want to include custom Call Detail Record (CDR)
@@ -72,24 +74,27 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see SetCDRExtendedFieldDataResult
  * @author Telsis
  */
+@OCPPayload
 public class SetCDRExtendedFieldData extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE =
             LegacyOCPMessageTypes.SET_CDR_EXTENDED_FIELD_DATA;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 46;
 
     /** The length of the data field. */
     public static final int            DATA_LENGTH = 40;
 
     /** The ID of the leg of the call for which the CDR information is to be set. */
-    private short destLegID;
+    @OCPField(offset = 0)
+    short destLegID;
     /** The index into the zip table on the SCP for this result. */
-    private byte zipNumber;
+    @OCPField(offset = 3)
+    byte zipNumber;
     /** The length of the data. */
-    private short dataLength;
+    @OCPField(offset = 4)
+    short dataLength;
     /** The data to be written to the CDR. */
-    private byte[] data;
+    @OCPField(offset = 6, length = DATA_LENGTH)
+    byte[] data;
 
     /**
      * Decode the buffer into an Set CDR Extended Field Data message.
@@ -101,21 +106,33 @@ public class SetCDRExtendedFieldData extends CallControlMessage {
      */
     public SetCDRExtendedFieldData(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
+        decodeBody(buffer);
+    }
 
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
+    /**
+     * Instantiates a new Set CDR Extended Field Data message.
+     */
+    public SetCDRExtendedFieldData() {
+        super(TYPE.getCommandCode());
+        data = new byte[DATA_LENGTH];
+    }
 
-        destLegID = buffer.getShort();
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
-        dataLength = buffer.getShort();
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Set CDR Extended Field Data message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        SetCDRExtendedFieldDataCodec.decode(this, buffer);
         if (dataLength > DATA_LENGTH) {
             throw new CallMessageException(
                     getDestTID(),
@@ -124,27 +141,12 @@ public class SetCDRExtendedFieldData extends CallControlMessage {
                     CallCommandUnsupported.REASON_INVALID_FIELD_VALUE,
                     dataLength);
         }
-        data = new byte[DATA_LENGTH];
-        buffer.get(data);
-    }
-
-    /**
-     * Instantiates a new Set CDR Extended Field Data message.
-     */
-    public SetCDRExtendedFieldData() {
-        super(TYPE.getCommandCode());
-        data = new byte[DATA_LENGTH];
     }
 
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.putShort(destLegID);
-        buffer.put((byte) 0);
-        buffer.put(zipNumber);
-        buffer.putShort(dataLength);
-        buffer.put(data);
+        SetCDRExtendedFieldDataCodec.encode(this, buffer);
     }
 
     /**
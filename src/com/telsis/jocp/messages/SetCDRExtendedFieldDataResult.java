@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to the {@link SetCDRExtendedFieldData} message.
@@ -60,17 +61,18 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see SetCDRExtendedFieldData
  * @author Telsis
  */
+@OCPPayload
 public class SetCDRExtendedFieldDataResult extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE =
             LegacyOCPMessageTypes.SET_CDR_EXTENDED_FIELD_DATA_RESULT;
-    /** The expected length of the message. */
-    private static final int            EXPECTED_LENGTH = 4;
 
     /** The index into the zip table on the SCP for this result. */
-    private byte zipNumber;
+    @OCPField(offset = 1)
+    byte zipNumber;
     /** A value of 1 indicates success. */
-    private short result;
+    @OCPField(offset = 2)
+    short result;
 
     /**
      * Decode the buffer into an Set CDR Extended Field Data Result message.
@@ -82,20 +84,7 @@ public class SetCDRExtendedFieldDataResult extends CallControlMessage {
      */
     public SetCDRExtendedFieldDataResult(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        buffer.get(); // for word alignment
-        zipNumber = buffer.get();
-        result = buffer.getShort();
+        decodeBody(buffer);
     }
 
     /**
@@ -105,13 +94,28 @@ public class SetCDRExtendedFieldDataResult extends CallControlMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Set CDR Extended Field Data Result message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        SetCDRExtendedFieldDataResultCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.put((byte) 0);
-        buffer.put(zipNumber);
-        buffer.putShort(result);
+        SetCDRExtendedFieldDataResultCodec.encode(this, buffer);
     }
 
     /**
@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.LinkMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to get the remote platform's status details. You should
@@ -98,11 +99,10 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see StatusResponse
  * @author Telsis
  */
+@OCPPayload
 public class StatusRequest extends LinkMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.STATUS_REQUEST;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 18;
 
     /** Indicates that this unit is enabled. */
     public static final byte            FLAG_UNIT_ENABLED     = 0x01;
@@ -115,23 +115,32 @@ public class StatusRequest extends LinkMessage {
     public static final byte            CLUSTERID_MASTERSLAVE = (byte) 0xff;
 
     /** The year. */
-    private short                       year;
+    @OCPField(offset = 0)
+    short                               year;
     /** The month. */
-    private short                       month;
+    @OCPField(offset = 2)
+    short                               month;
     /** The day. */
-    private short                       day;
+    @OCPField(offset = 4)
+    short                               day;
     /** The hour. */
-    private short                       hour;
+    @OCPField(offset = 6)
+    short                               hour;
     /** The minute. */
-    private short                       minute;
+    @OCPField(offset = 8)
+    short                               minute;
     /** The second. */
-    private short                       second;
+    @OCPField(offset = 10)
+    short                               second;
     /** The ID of the sending unit. */
-    private int                         unitID;
+    @OCPField(offset = 12)
+    int                                 unitID;
     /** The ClusterID of the fastSCP. */
-    private byte                        clusterID;
+    @OCPField(offset = 16)
+    byte                                clusterID;
     /** The flags. */
-    private byte                        flags;
+    @OCPField(offset = 17)
+    byte                                flags;
 
     /**
      * Decode the buffer into a Status Request message.
@@ -143,24 +152,7 @@ public class StatusRequest extends LinkMessage {
      */
     public StatusRequest(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
-
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new LinkMessageException(
-                    TYPE.getCommandCode(),
-                    LinkCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
-
-        year = buffer.getShort();
-        month = buffer.getShort();
-        day = buffer.getShort();
-        hour = buffer.getShort();
-        minute = buffer.getShort();
-        second = buffer.getShort();
-        this.unitID = buffer.getInt();
-        this.clusterID = buffer.get();
-        this.flags = buffer.get();
+        decodeBody(buffer);
     }
 
     /**
@@ -170,19 +162,28 @@ public class StatusRequest extends LinkMessage {
         super(TYPE.getCommandCode());
     }
 
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Status Request message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        StatusRequestCodec.decode(this, buffer);
+    }
+
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-
-        buffer.putShort(year);
-        buffer.putShort(month);
-        buffer.putShort(day);
-        buffer.putShort(hour);
-        buffer.putShort(minute);
-        buffer.putShort(second);
-        buffer.putInt(this.unitID);
-        buffer.put(this.clusterID);
-        buffer.put(this.flags);
+        StatusRequestCodec.encode(this, buffer);
     }
 
     /**
@@ -87,6 +87,32 @@ public class StatusResponse extends LinkMessage {
      */
     public StatusResponse(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new Status Response message.
+     */
+    public StatusResponse() {
+        super(TYPE.getCommandCode());
+        this.unitName = "";
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Status Response message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -113,12 +139,12 @@ public class StatusResponse extends LinkMessage {
         this.activeCalls = buffer.getShort();
     }
 
-    /**
-     * Instantiates a new Status Response message.
-     */
-    public StatusResponse() {
-        super(TYPE.getCommandCode());
-        this.unitName = "";
+    @Override
+    protected final void reset() {
+        super.reset();
+        unitName = "";
+        flags = 0;
+        activeCalls = 0;
     }
 
     @Override
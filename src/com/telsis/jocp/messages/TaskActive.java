@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message to determine whether a particular task on the remote
@@ -62,16 +63,17 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see TaskActiveResult
  * @author Telsis
  */
+@OCPPayload
 public class TaskActive extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.TASK_ACTIVE;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 8;
 
     /** The task id to check. */
-    private int                         taskIDToCheck;
+    @OCPField(offset = 0)
+    int                                 taskIDToCheck;
     /** The associated task id. */
-    private int                         associatedTaskID;
+    @OCPField(offset = 4)
+    int                                 associatedTaskID;
 
     /**
      * Decode the buffer into a Task Active message.
@@ -83,19 +85,32 @@ public class TaskActive extends CallControlMessage {
      */
     public TaskActive(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
+        decodeBody(buffer);
+    }
 
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
 
-        this.taskIDToCheck = buffer.getInt();
-        this.associatedTaskID = buffer.getInt();
+    /**
+     * Decode the payload of a Task Active message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        TaskActiveCodec.decode(this, buffer);
+    }
+
+    @Override
+    protected final void reset() {
+        super.reset();
+        taskIDToCheck = 0;
+        associatedTaskID = 0;
     }
 
     /**
@@ -108,8 +123,7 @@ public class TaskActive extends CallControlMessage {
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putInt(taskIDToCheck);
-        buffer.putInt(associatedTaskID);
+        TaskActiveCodec.encode(this, buffer);
     }
 
     /**
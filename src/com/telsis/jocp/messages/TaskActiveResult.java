@@ -24,9 +24,10 @@ package com.telsis.jocp.messages;
 
 import java.nio.ByteBuffer;
 
-import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
+import com.telsis.jocp.codec.OCPField;
+import com.telsis.jocp.codec.OCPPayload;
 
 /**
  * Send this message in response to a {@link TaskActive Task Active} message.
@@ -66,16 +67,21 @@ import com.telsis.jocp.LegacyOCPMessageTypes;
  * @see TaskActive
  * @author Telsis
  */
+@OCPPayload
 public class TaskActiveResult extends CallControlMessage {
     /** The message type. */
     public static final LegacyOCPMessageTypes TYPE = LegacyOCPMessageTypes.TASK_ACTIVE_RESULT;
-    /** The expected length of this message. */
-    private static final int            EXPECTED_LENGTH = 6;
+    /** Result value: the task is not active. */
+    public static final short RESULT_NOT_ACTIVE = 0;
+    /** Result value: the task is active. */
+    public static final short RESULT_ACTIVE = 1;
 
     /** The task id. */
-    private int                         taskID;
+    @OCPField(offset = 0)
+    int                                 taskID;
     /** The result. */
-    private short                       result;
+    @OCPField(offset = 4)
+    short                               result;
 
     /**
      * Decode the buffer into a Task Active Result message.
@@ -87,19 +93,32 @@ public class TaskActiveResult extends CallControlMessage {
      */
     public TaskActiveResult(final ByteBuffer buffer) throws OCPException {
         super(buffer);
-        super.advance(buffer);
+        decodeBody(buffer);
+    }
 
-        if (buffer.limit() != EXPECTED_LENGTH) {
-            throw new CallMessageException(
-                    getDestTID(),
-                    getOrigTID(),
-                    TYPE.getCommandCode(),
-                    CallCommandUnsupported.REASON_LENGTH_UNSUPPORTED,
-                    (short) buffer.limit());
-        }
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
 
-        this.taskID = buffer.getInt();
-        this.result = buffer.getShort();
+    /**
+     * Decode the payload of a Task Active Result message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
+        TaskActiveResultCodec.decode(this, buffer);
+    }
+
+    @Override
+    protected final void reset() {
+        super.reset();
+        taskID = 0;
+        result = 0;
     }
 
     /**
@@ -112,8 +131,7 @@ public class TaskActiveResult extends CallControlMessage {
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer);
-        buffer.putInt(taskID);
-        buffer.putShort(result);
+        TaskActiveResultCodec.encode(this, buffer);
     }
 
     /**
@@ -76,7 +76,7 @@ public class TelsisHandler extends CallControlMessage {
     /** The length of the sendData field. */
     private static final int            SEND_DATA_LENGTH = 64;
 
-    /** An empty payload used in the encode method. */
+    /** An empty payload used in the encode method, and to pad payloads. */
     private static final byte[]         EMPTY_PAYLOAD = new byte[SEND_DATA_LENGTH];
 
     /** The index into the zip table on the SCP for this result. */
@@ -85,6 +85,11 @@ public class TelsisHandler extends CallControlMessage {
     private TelsisHandlerNumber         handlerNumber;
     /** The payload. */
     private TelsisHandlerPayload        payload = null;
+    /**
+     * The payload of this message when it was last released, kept so that the
+     * next message decoded into this instance can re-use it.
+     */
+    private TelsisHandlerPayload        spare = null;
 
 
     /**
@@ -106,6 +111,72 @@ public class TelsisHandler extends CallControlMessage {
     protected TelsisHandler(final ByteBuffer buffer, final int minLength,
             final int maxLength, final boolean decode) throws OCPException {
         super(buffer);
+        decodeBody(buffer, minLength, maxLength, decode);
+    }
+
+    /**
+     * Decode the buffer into a Telsis Handler message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    public TelsisHandler(final ByteBuffer buffer) throws OCPException {
+        this(buffer, EXPECTED_LENGTH, EXPECTED_LENGTH, true);
+    }
+
+    /**
+     * Calls {@link CallControlMessage#CallControlMessage(short)} directly with
+     * the specified message type. For use by subclasses.
+     *
+     * @param commandCode
+     *            the command code
+     */
+    protected TelsisHandler(final short commandCode) {
+        super(commandCode);
+    }
+
+    /**
+     * Instantiates a new Telsis Handler message.
+     */
+    public TelsisHandler() {
+        this(TYPE.getCommandCode());
+    }
+
+    /**
+     * Decode the buffer into this Telsis Handler message. Subclasses that are
+     * decoded differently must override this.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    @Override // CSIGNORE: DesignForExtension
+    protected void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer, EXPECTED_LENGTH, EXPECTED_LENGTH, true);
+    }
+
+    /**
+     * Decode the payload of a Telsis Handler message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @param minLength
+     *            the minimum length of the message
+     * @param maxLength
+     *            the maximum length of the message
+     * @param decode
+     *            true if the payload should be decoded; false to skip decoding
+     *            the payload
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    protected final void decodeBody(final ByteBuffer buffer,
+            final int minLength, final int maxLength, final boolean decode)
+            throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() < minLength
@@ -138,38 +209,21 @@ public class TelsisHandler extends CallControlMessage {
         decodePayload(buffer);
     }
 
-    /**
-     * Decode the buffer into a Telsis Handler message.
-     *
-     * @param buffer
-     *            the message to decode
-     * @throws OCPException
-     *             if the buffer could not be decoded
-     */
-    public TelsisHandler(final ByteBuffer buffer) throws OCPException {
-        this(buffer, EXPECTED_LENGTH, EXPECTED_LENGTH, true);
-    }
-
-    /**
-     * Calls {@link CallControlMessage#CallControlMessage(short)} directly with
-     * the specified message type. For use by subclasses.
-     *
-     * @param commandCode
-     *            the command code
-     */
-    protected TelsisHandler(final short commandCode) {
-        super(commandCode);
-    }
-
-    /**
-     * Instantiates a new Telsis Handler message.
-     */
-    public TelsisHandler() {
-        this(TYPE.getCommandCode());
+    @Override // CSIGNORE: DesignForExtension
+    protected void reset() {
+        super.reset();
+        zipNumber = 0;
+        handlerNumber = null;
+        if (payload != null) {
+            spare = payload;
+            payload = null;
+        }
     }
 
     /**
-     * Decodes the payload of the message.
+     * Decodes the payload of the message. If this message was recycled and its
+     * previous payload has the right class, that payload is decoded into
+     * instead of creating a new one.
      * @param buffer
      *            the ByteBuffer with position set at the beginning
      *            of the payload
@@ -184,7 +238,12 @@ public class TelsisHandler extends CallControlMessage {
         }
 
         try {
-            TelsisHandlerPayload tmpPayload = handlerNumber.getPayloadClass().newInstance();
+            TelsisHandlerPayload tmpPayload = spare;
+            spare = null;
+            if (tmpPayload == null || tmpPayload.getClass()
+                    != handlerNumber.getPayloadClass()) {
+                tmpPayload = handlerNumber.newPayload();
+            }
             tmpPayload.decode(buffer);
             payload = tmpPayload;
         } catch (Exception e) {
@@ -221,7 +280,7 @@ public class TelsisHandler extends CallControlMessage {
         buffer.putShort(handlerNumber.getNumber());
         if (payload != null) {
             payload.encode(buffer);
-            buffer.put(new byte[SEND_DATA_LENGTH - payload.getLength()]);
+            buffer.put(EMPTY_PAYLOAD, 0, SEND_DATA_LENGTH - payload.getLength());
         } else {
             buffer.put(EMPTY_PAYLOAD);
         }
@@ -269,7 +328,9 @@ public class TelsisHandler extends CallControlMessage {
     }
 
     /**
-     * Gets the payload.
+     * Gets the payload. If this message is pooled, the payload belongs to the
+     * message and is re-used once the message is released, so do not keep a
+     * reference to it after releasing the message.
      *
      * @return the payload
      */
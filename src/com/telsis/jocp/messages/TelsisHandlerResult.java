@@ -29,6 +29,7 @@ import com.telsis.jocp.CallMessageException;
 import com.telsis.jocp.OCPException;
 import com.telsis.jocp.LegacyOCPMessageTypes;
 import com.telsis.jocp.messages.telsishandler.TelsisHandlerPayload;
+import com.telsis.jocp.messages.telsishandler.TelsisHandlerPayloadRegistry;
 
 /**
  * Send this message in response to a {@link TelsisHandler Telsis Handler} or
@@ -86,6 +87,31 @@ public class TelsisHandlerResult extends CallControlMessage {
      */
     public TelsisHandlerResult(final ByteBuffer buffer) throws OCPException {
         super(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Instantiates a new Telsis Handler Result message.
+     */
+    public TelsisHandlerResult() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Telsis Handler Result message.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         super.advance(buffer);
 
         if (buffer.limit() != EXPECTED_LENGTH) {
@@ -102,11 +128,11 @@ public class TelsisHandlerResult extends CallControlMessage {
         buffer.get(returnData);
     }
 
-    /**
-     * Instantiates a new Telsis Handler Result message.
-     */
-    public TelsisHandlerResult() {
-        super(TYPE.getCommandCode());
+    @Override
+    protected final void reset() {
+        super.reset();
+        zipNumber = 0;
+        Arrays.fill(returnData, (byte) 0);
     }
 
     @Override
@@ -146,14 +172,38 @@ public class TelsisHandlerResult extends CallControlMessage {
      */
     public final <T extends TelsisHandlerPayload> T getPayload(
             final Class<T> payloadClass) {
+        T payload;
+        try {
+            payload = TelsisHandlerPayloadRegistry.newPayload(payloadClass);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Failed to decode data as " + payloadClass.getSimpleName());
+        }
+        return getPayload(payload);
+    }
+
+    /**
+     * Decodes the return data into an existing TelsisHandlerPayload instance,
+     * replacing its contents. This allows a payload object to be re-used for
+     * every result, rather than creating a new one each time. Each call reads
+     * the return data through its own buffer, so several threads can decode
+     * the same result at once.
+     *
+     * @param <T>
+     *            Type parameter for the payload class
+     * @param payload
+     *            The payload to decode into
+     * @return the payload
+     */
+    public final <T extends TelsisHandlerPayload> T getPayload(
+            final T payload) {
         try {
-            T payload = payloadClass.newInstance();
             payload.decode(ByteBuffer.wrap(returnData));
             return payload;
         } catch (Exception e) {
             // Threw an exception decoding the buffer
-            throw new IllegalArgumentException(
-                    "Failed to decode data as " + payloadClass.getSimpleName());
+            throw new IllegalArgumentException("Failed to decode data as "
+                    + payload.getClass().getSimpleName());
         }
     }
 
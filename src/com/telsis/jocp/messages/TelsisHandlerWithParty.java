@@ -112,7 +112,33 @@ public class TelsisHandlerWithParty extends TelsisHandler {
      */
     public TelsisHandlerWithParty(final ByteBuffer buffer) throws OCPException {
         super(buffer, EXPECTED_LENGTH_MIN, EXPECTED_LENGTH_MAX, false); // Need custom decoding
+        decodeBody(buffer);
+    }
 
+    /**
+     * Instantiates a new Telsis Handler With Party message.
+     */
+    public TelsisHandlerWithParty() {
+        super(TYPE.getCommandCode());
+    }
+
+    @Override
+    protected final void decode(final ByteBuffer buffer) throws OCPException {
+        decodeHeader(buffer);
+        decodeBody(buffer, EXPECTED_LENGTH_MIN, EXPECTED_LENGTH_MAX, false); // Need custom decoding
+        decodeBody(buffer);
+    }
+
+    /**
+     * Decode the payload of a Telsis Handler With Party message, once
+     * {@link TelsisHandler} has checked its length.
+     *
+     * @param buffer
+     *            the message to decode
+     * @throws OCPException
+     *             if the buffer could not be decoded
+     */
+    private void decodeBody(final ByteBuffer buffer) throws OCPException {
         int dataLength;
 
         fwdLegID = buffer.getShort();
@@ -142,13 +168,6 @@ public class TelsisHandlerWithParty extends TelsisHandler {
         decodePayload(buffer);
     }
 
-    /**
-     * Instantiates a new Telsis Handler With Party message.
-     */
-    public TelsisHandlerWithParty() {
-        super(TYPE.getCommandCode());
-    }
-
     @Override
     protected final void encode(final ByteBuffer buffer) {
         super.encode(buffer, false); // Need custom encoding
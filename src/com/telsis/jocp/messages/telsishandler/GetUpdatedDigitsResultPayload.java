@@ -95,7 +95,9 @@ public class GetUpdatedDigitsResultPayload implements TelsisHandlerPayload {
 
         result = buffer.getInt();
         int length = buffer.getInt();
-        updatedDigits = new byte[length];
+        if (updatedDigits.length != length) {
+            updatedDigits = new byte[length];
+        }
         buffer.get(updatedDigits);
     }
 
@@ -95,6 +95,7 @@ public class NumberPortabilityPayload implements TelsisHandlerPayload {
         }
 
         short bits = buffer.getShort();
+        flags.clear();
         for (Flag f : ALL_FLAGS) {
             if ((bits & f.bit) != 0) {
                 flags.add(f);
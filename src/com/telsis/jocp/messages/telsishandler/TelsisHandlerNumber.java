@@ -71,6 +71,19 @@ public enum TelsisHandlerNumber {
         return payloadClass;
     }
 
+    /**
+     * Create a new, empty payload for this handler using the factory in
+     * {@link TelsisHandlerPayloadRegistry}.
+     *
+     * @return the new payload, or null if there is no payload
+     */
+    public TelsisHandlerPayload newPayload() {
+        if (payloadClass == null) {
+            return null;
+        }
+        return TelsisHandlerPayloadRegistry.newPayload(payloadClass);
+    }
+
     /**
      * A mapping of handler number to TelsisHandlerNumber instances.
      */
@@ -28,8 +28,10 @@ import java.nio.ByteBuffer;
  * Objects that are to be used as the payload of a Telsis Handler message
  * must implement this interface.
  *
- * TelsisHandlerPayload instances must provide a no-args constructor for
- * use when decoding a TelsisHandler message.
+ * TelsisHandlerPayload instances must provide a no-args constructor, or have
+ * a factory registered with {@link TelsisHandlerPayloadRegistry}, for use when
+ * decoding a TelsisHandler message. Decoding must replace every field, so
+ * that an instance can be decoded into more than once.
  */
 public interface TelsisHandlerPayload {
 
@@ -0,0 +1,156 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.messages.telsishandler;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of {@link TelsisHandlerPayloadFactory factories} for the
+ * {@link TelsisHandlerPayload} classes, used when decoding
+ * {@link com.telsis.jocp.messages.TelsisHandler TelsisHandler} and
+ * {@link com.telsis.jocp.messages.TelsisHandlerResult TelsisHandlerResult}
+ * messages.
+ * <p/>
+ * Factories for all of the payloads in this package are registered
+ * automatically. Applications that define their own payload classes may
+ * register a factory for them; payload classes without a factory are created
+ * using their no-argument constructor, as before.
+ *
+ * @author Telsis
+ */
+public final class TelsisHandlerPayloadRegistry {
+    /** The registered factories, keyed by payload class. */
+    private static final ConcurrentHashMap<Class<?>,
+            TelsisHandlerPayloadFactory<?>> FACTORIES =
+            new ConcurrentHashMap<Class<?>, TelsisHandlerPayloadFactory<?>>();
+
+    static {
+        register(GetUpdatedDigitsResultPayload.class,
+                new TelsisHandlerPayloadFactory<GetUpdatedDigitsResultPayload>() {
+                    @Override
+                    public GetUpdatedDigitsResultPayload newPayload() {
+                        return new GetUpdatedDigitsResultPayload();
+                    }
+                });
+        register(MakeINAPffCallPayload.class,
+                new TelsisHandlerPayloadFactory<MakeINAPffCallPayload>() {
+                    @Override
+                    public MakeINAPffCallPayload newPayload() {
+                        return new MakeINAPffCallPayload();
+                    }
+                });
+        register(NumberPortabilityPayload.class,
+                new TelsisHandlerPayloadFactory<NumberPortabilityPayload>() {
+                    @Override
+                    public NumberPortabilityPayload newPayload() {
+                        return new NumberPortabilityPayload();
+                    }
+                });
+        register(RunMapFromKeyPayload.class,
+                new TelsisHandlerPayloadFactory<RunMapFromKeyPayload>() {
+                    @Override
+                    public RunMapFromKeyPayload newPayload() {
+                        return new RunMapFromKeyPayload();
+                    }
+                });
+        register(SetNumberPortabilityResultPayload.class,
+                new TelsisHandlerPayloadFactory<
+                        SetNumberPortabilityResultPayload>() {
+                    @Override
+                    public SetNumberPortabilityResultPayload newPayload() {
+                        return new SetNumberPortabilityResultPayload();
+                    }
+                });
+        register(UpdateMatchedDigitsPayload.class,
+                new TelsisHandlerPayloadFactory<UpdateMatchedDigitsPayload>() {
+                    @Override
+                    public UpdateMatchedDigitsPayload newPayload() {
+                        return new UpdateMatchedDigitsPayload();
+                    }
+                });
+        register(UpdateMatchedDigitsResultPayload.class,
+                new TelsisHandlerPayloadFactory<
+                        UpdateMatchedDigitsResultPayload>() {
+                    @Override
+                    public UpdateMatchedDigitsResultPayload newPayload() {
+                        return new UpdateMatchedDigitsResultPayload();
+                    }
+                });
+    }
+
+    /**
+     * Private constructor for static utility class.
+     */
+    private TelsisHandlerPayloadRegistry() {
+    }
+
+    /**
+     * Register the factory for a payload class, replacing any existing
+     * factory for the class.
+     *
+     * @param <T>
+     *            the payload class
+     * @param payloadClass
+     *            the payload class
+     * @param factory
+     *            the factory that creates instances of the payload class
+     */
+    public static <T extends TelsisHandlerPayload> void register(
+            final Class<T> payloadClass,
+            final TelsisHandlerPayloadFactory<? extends T> factory) {
+        if (payloadClass == null || factory == null) {
+            throw new IllegalArgumentException(
+                    "The payload class and factory must not be null");
+        }
+        FACTORIES.put(payloadClass, factory);
+    }
+
+    /**
+     * Create a new payload of the given class. The registered factory is used
+     * if there is one; otherwise the class's no-argument constructor is
+     * called.
+     *
+     * @param <T>
+     *            the payload class
+     * @param payloadClass
+     *            the payload class
+     * @return the new payload
+     * @throws IllegalArgumentException
+     *             if there is no factory and the class cannot be instantiated
+     */
+    public static <T extends TelsisHandlerPayload> T newPayload(
+            final Class<T> payloadClass) {
+        TelsisHandlerPayloadFactory<?> factory = FACTORIES.get(payloadClass);
+        if (factory != null) {
+            return payloadClass.cast(factory.newPayload());
+        }
+
+        try {
+            return payloadClass.newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot create a "
+                    + payloadClass.getSimpleName() + " payload", e);
+        }
+    }
+
+}
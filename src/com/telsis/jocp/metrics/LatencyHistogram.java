@@ -0,0 +1,106 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with fixed bucket bounds from 50 microseconds to 5
+ * seconds. Recording a latency is lock-free and does not allocate, so it can
+ * be done on the call processing path.
+ * <p/>
+ * This class is thread-safe. A snapshot taken while latencies are being
+ * recorded may be out by the latencies that are recorded while it is taken.
+ *
+ * @author Telsis
+ */
+public final class LatencyHistogram {
+    /** The upper bounds of the buckets, in nanoseconds. */
+    // CSOFF: MagicNumber
+    private static final long[] BOUNDS = {
+        50000L, 100000L, 250000L, 500000L,
+        1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+        100000000L, 250000000L, 500000000L,
+        1000000000L, 2500000000L, 5000000000L,
+    };
+    // CSON: MagicNumber
+
+    /**
+     * The number of latencies in each bucket. The last bucket holds latencies
+     * above the highest bound.
+     */
+    private final AtomicLongArray counts =
+            new AtomicLongArray(BOUNDS.length + 1);
+    /** The sum of the latencies, in nanoseconds. */
+    private final AtomicLong      sum    = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos
+     *            the latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sum.addAndGet(Math.max(nanos, 0));
+    }
+
+    /**
+     * Gets the upper bounds of the buckets. The last bucket, which has no
+     * upper bound, is not included.
+     *
+     * @return a new array of the bounds in nanoseconds
+     */
+    public long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Gets the number of latencies in each bucket.
+     *
+     * @return a new array holding the count of each bucket, with one more
+     *         entry than {@link #getBounds()} for latencies above the highest
+     *         bound
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[BOUNDS.length + 1];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the sum of the latencies recorded.
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+}
@@ -0,0 +1,639 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.telsis.jocp.OCPLinkManager;
+import com.telsis.jocp.OCPLinkManager.LinkStates;
+import com.telsis.jocp.OCPSystemManager;
+import com.telsis.jocp.OCPSystemManager.SystemState;
+import com.telsis.jocp.TransmitLane;
+import com.telsis.jocp.TransmitLaneStats;
+import com.telsis.jutils.UtilitiesFactory;
+import com.telsis.jutils.interfaces.AlarmInterface;
+import com.telsis.jutils.interfaces.StatsInterface;
+
+/**
+ * Serves the state of an {@link OCPSystemManager} (or of a set of
+ * {@link OCPLinkManager}s) over HTTP in the OpenMetrics text format, for
+ * scraping by Prometheus or a compatible collector. The following metrics are
+ * served at {@value #PATH}:
+ * <table>
+ * <tr>
+ * <th>Metric</th>
+ * <th>Type</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>ocp_system_state</td>
+ * <td>stateset</td>
+ * <td>The {@link SystemState} of the system manager, if there is one.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_link_state</td>
+ * <td>stateset</td>
+ * <td>The {@link LinkStates state} of each link.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_link_calls</td>
+ * <td>gauge</td>
+ * <td>The number of calls in progress on each link.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_link_queue_depth</td>
+ * <td>gauge</td>
+ * <td>The number of messages waiting in each transmit lane.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_link_queue_dequeued</td>
+ * <td>counter</td>
+ * <td>The number of messages taken from each transmit lane.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_link_queue_wait_seconds</td>
+ * <td>histogram</td>
+ * <td>The time messages spent in the transmit queue.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_link_send_seconds</td>
+ * <td>histogram</td>
+ * <td>The time from queueing a message to writing it to the link.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_statistic</td>
+ * <td>counter</td>
+ * <td>Every statistic registered with the {@link StatsInterface} as extended,
+ * which are counts of events. These include the per-link counts of each
+ * message type sent and received, from which message rates can be derived.
+ * </td>
+ * </tr>
+ * <tr>
+ * <td>ocp_statistic_level</td>
+ * <td>gauge</td>
+ * <td>Every other registered statistic, such as the length of each link's
+ * transmit queue.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_alarm_raised</td>
+ * <td>gauge</td>
+ * <td>The number of sources currently raising each registered alarm.</td>
+ * </tr>
+ * <tr>
+ * <td>ocp_alarm_active</td>
+ * <td>gauge</td>
+ * <td>One series for each alarm that is currently raised, labelled with its
+ * source.</td>
+ * </tr>
+ * </table>
+ * <p/>
+ * The page is rendered by a background thread at a fixed interval and cached,
+ * and each scrape is answered with the cached page. Scraping, however often,
+ * therefore costs call processing no more than one render per interval.
+ *
+ * @author Telsis
+ */
+public final class MetricsExporter {
+    /** The path that the metrics are served at. */
+    public static final String PATH = "/metrics";
+    /** The content type of the metrics page. */
+    public static final String CONTENT_TYPE =
+            "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    /** HTTP status: OK. */
+    private static final int    HTTP_OK                 = 200;
+    /** HTTP status: method not allowed. */
+    private static final int    HTTP_METHOD_NOT_ALLOWED = 405;
+    /** The response length to send for a response with no body. */
+    private static final int    NO_BODY                 = -1;
+    /** The number of decimal places to move nanoseconds to get seconds. */
+    private static final int    NANOS_DIGITS            = 9;
+    /** Conversion between nanoseconds and seconds. */
+    private static final double NANOS_PER_SECOND        = 1e9;
+
+    /** The histogram bucket bounds, in seconds, formatted for the page. */
+    private static final String[] BOUNDS;
+
+    static {
+        long[] bounds = new LatencyHistogram().getBounds();
+        BOUNDS = new String[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            BOUNDS[i] = BigDecimal.valueOf(bounds[i])
+                    .movePointLeft(NANOS_DIGITS).stripTrailingZeros()
+                    .toPlainString();
+        }
+    }
+
+    /** The system manager, or null if the links were given directly. */
+    private final OCPSystemManager     system;
+    /** The links, if they were given directly. */
+    private final List<OCPLinkManager> links;
+    /** The interval between renders, in milliseconds. */
+    private final long                 interval;
+    /** The HTTP server. */
+    private final HttpServer           server;
+    /** The thread that renders the page. */
+    private final ScheduledExecutorService renderer;
+    /** The most recently rendered page. */
+    private volatile byte[]            page = new byte[0];
+
+    /** The logger for this class. */
+    private static Logger log = Logger.getLogger("ocpMetricsExporter");
+
+    /**
+     * Creates an exporter for a system manager and its links. The exporter
+     * does not serve anything until it is {@link #start() started}.
+     *
+     * @param system
+     *            the system manager
+     * @param address
+     *            the address to listen on
+     * @param interval
+     *            the interval between renders of the page
+     * @param unit
+     *            the unit of the interval
+     * @throws IOException
+     *             if the address could not be bound
+     */
+    // CSOFF: HiddenField
+    public MetricsExporter(final OCPSystemManager system,
+            final InetSocketAddress address, final long interval,
+            final TimeUnit unit) throws IOException {
+        // CSON: HiddenField
+        this(system, null, address, interval, unit);
+    }
+
+    /**
+     * Creates an exporter for a set of links that are not managed by an
+     * {@link OCPSystemManager}. The exporter does not serve anything until it
+     * is {@link #start() started}.
+     *
+     * @param links
+     *            the links
+     * @param address
+     *            the address to listen on
+     * @param interval
+     *            the interval between renders of the page
+     * @param unit
+     *            the unit of the interval
+     * @throws IOException
+     *             if the address could not be bound
+     */
+    // CSOFF: HiddenField
+    public MetricsExporter(final List<OCPLinkManager> links,
+            final InetSocketAddress address, final long interval,
+            final TimeUnit unit) throws IOException {
+        // CSON: HiddenField
+        this(null, new ArrayList<OCPLinkManager>(links), address, interval,
+                unit);
+    }
+
+    /**
+     * Creates an exporter.
+     *
+     * @param system
+     *            the system manager, or null
+     * @param links
+     *            the links if there is no system manager
+     * @param address
+     *            the address to listen on
+     * @param interval
+     *            the interval between renders of the page
+     * @param unit
+     *            the unit of the interval
+     * @throws IOException
+     *             if the address could not be bound
+     */
+    // CSOFF: HiddenField
+    private MetricsExporter(final OCPSystemManager system,
+            final List<OCPLinkManager> links, final InetSocketAddress address,
+            final long interval, final TimeUnit unit) throws IOException {
+        // CSON: HiddenField
+        if (interval <= 0) {
+            throw new IllegalArgumentException(
+                    "The render interval must be positive");
+        }
+        this.system = system;
+        this.links = links;
+        this.interval = unit.toMillis(interval);
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                    throws IOException {
+                serve(exchange);
+            }
+        });
+        renderer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, "ocpMetricsRenderer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Start rendering the page and serving scrapes.
+     */
+    public void start() {
+        renderer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+        server.start();
+        log.info("Serving OCP metrics at http://"
+                + server.getAddress().getHostName() + ":"
+                + server.getAddress().getPort() + PATH);
+    }
+
+    /**
+     * Stop serving scrapes and release the address.
+     */
+    public void close() {
+        server.stop(0);
+        renderer.shutdownNow();
+    }
+
+    /**
+     * Gets the address that the exporter is listening on.
+     *
+     * @return the address
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Gets the interval between renders of the page.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Render the page and replace the cached copy.
+     */
+    void refresh() {
+        try {
+            page = render().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (RuntimeException e) {
+            // Keep serving the previous page rather than stopping the renderer
+            log.warn("Unable to render the OCP metrics", e);
+        }
+    }
+
+    /**
+     * Answer a scrape with the cached page.
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @throws IOException
+     *             if the response could not be sent
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.sendResponseHeaders(HTTP_METHOD_NOT_ALLOWED,
+                        NO_BODY);
+                return;
+            }
+            byte[] body = page;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(HTTP_OK, NO_BODY);
+                return;
+            }
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render the page.
+     *
+     * @return the page in the OpenMetrics text format
+     */
+    String render() {
+        StringBuilder sb = new StringBuilder();
+        List<OCPLinkManager> linkManagers;
+        if (system != null) {
+            linkManagers = system.getLinkManagers();
+            renderSystem(sb, system.getState());
+        } else {
+            linkManagers = links;
+        }
+
+        // A link that is draining has the same index as its replacement;
+        // only the first (configured) one is shown
+        List<OCPLinkManager> shown = new ArrayList<OCPLinkManager>();
+        Set<Integer> indexes = new HashSet<Integer>();
+        for (OCPLinkManager link : linkManagers) {
+            if (indexes.add(link.getLinkIndex())) {
+                shown.add(link);
+            }
+        }
+        renderLinks(sb, shown);
+        renderStats(sb, UtilitiesFactory.getUtilInterface()
+                .getStatsInterface());
+        renderAlarms(sb, UtilitiesFactory.getUtilInterface()
+                .getAlarmInterface());
+        sb.append("# EOF\n");
+        return sb.toString();
+    }
+
+    /**
+     * Render the system state.
+     *
+     * @param sb
+     *            the page
+     * @param state
+     *            the system state
+     */
+    private static void renderSystem(final StringBuilder sb,
+            final SystemState state) {
+        header(sb, "ocp_system_state", "stateset",
+                "The state of the OCP system manager.");
+        for (SystemState value : SystemState.values()) {
+            sb.append("ocp_system_state{ocp_system_state=\"")
+                    .append(value.name()).append("\"} ")
+                    .append(value == state ? 1 : 0).append('\n');
+        }
+    }
+
+    /**
+     * Render the link metrics.
+     *
+     * @param sb
+     *            the page
+     * @param linkManagers
+     *            the links
+     */
+    private static void renderLinks(final StringBuilder sb,
+            final List<OCPLinkManager> linkManagers) {
+        header(sb, "ocp_link_state", "stateset", "The state of each link.");
+        for (OCPLinkManager link : linkManagers) {
+            LinkStates state = link.getLinkState();
+            for (LinkStates value : LinkStates.values()) {
+                sb.append("ocp_link_state{link=\"")
+                        .append(link.getLinkIndex())
+                        .append("\",ocp_link_state=\"").append(value.name())
+                        .append("\"} ").append(value == state ? 1 : 0)
+                        .append('\n');
+            }
+        }
+
+        header(sb, "ocp_link_calls", "gauge",
+                "The number of calls in progress on each link.");
+        for (OCPLinkManager link : linkManagers) {
+            sb.append("ocp_link_calls{link=\"").append(link.getLinkIndex())
+                    .append("\"} ").append(link.getNumCalls()).append('\n');
+        }
+
+        List<TransmitLaneStats[]> laneStats =
+                new ArrayList<TransmitLaneStats[]>();
+        for (OCPLinkManager link : linkManagers) {
+            TransmitLane[] lanes = TransmitLane.values();
+            TransmitLaneStats[] stats = new TransmitLaneStats[lanes.length];
+            for (int i = 0; i < lanes.length; i++) {
+                stats[i] = link.getTransmitLaneStats(lanes[i]);
+            }
+            laneStats.add(stats);
+        }
+        header(sb, "ocp_link_queue_depth", "gauge",
+                "The number of messages waiting in each transmit lane.");
+        for (int i = 0; i < linkManagers.size(); i++) {
+            for (TransmitLaneStats stats : laneStats.get(i)) {
+                sb.append("ocp_link_queue_depth{link=\"")
+                        .append(linkManagers.get(i).getLinkIndex())
+                        .append("\",lane=\"").append(stats.getLane().name())
+                        .append("\"} ").append(stats.getDepth())
+                        .append('\n');
+            }
+        }
+        header(sb, "ocp_link_queue_dequeued", "counter",
+                "The number of messages taken from each transmit lane.");
+        for (int i = 0; i < linkManagers.size(); i++) {
+            for (TransmitLaneStats stats : laneStats.get(i)) {
+                sb.append("ocp_link_queue_dequeued_total{link=\"")
+                        .append(linkManagers.get(i).getLinkIndex())
+                        .append("\",lane=\"").append(stats.getLane().name())
+                        .append("\"} ").append(stats.getDequeued())
+                        .append('\n');
+            }
+        }
+
+        header(sb, "ocp_link_queue_wait_seconds", "histogram",
+                "The time messages spent in the transmit queue.");
+        for (OCPLinkManager link : linkManagers) {
+            histogram(sb, "ocp_link_queue_wait_seconds",
+                    link.getLinkIndex(), link.getQueueWaitHistogram());
+        }
+        header(sb, "ocp_link_send_seconds", "histogram",
+                "The time from queueing a message to writing it to the link.");
+        for (OCPLinkManager link : linkManagers) {
+            histogram(sb, "ocp_link_send_seconds", link.getLinkIndex(),
+                    link.getSendLatencyHistogram());
+        }
+    }
+
+    /**
+     * Render a histogram for one link.
+     *
+     * @param sb
+     *            the page
+     * @param name
+     *            the metric name
+     * @param linkIndex
+     *            the link index
+     * @param histogram
+     *            the histogram
+     */
+    private static void histogram(final StringBuilder sb, final String name,
+            final int linkIndex, final LatencyHistogram histogram) {
+        long[] counts = histogram.getCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            sb.append(name).append("_bucket{link=\"").append(linkIndex)
+                    .append("\",le=\"")
+                    .append(i < BOUNDS.length ? BOUNDS[i] : "+Inf")
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        sb.append(name).append("_count{link=\"").append(linkIndex)
+                .append("\"} ").append(cumulative).append('\n');
+        sb.append(name).append("_sum{link=\"").append(linkIndex)
+                .append("\"} ").append(histogram.getSum() / NANOS_PER_SECOND)
+                .append('\n');
+    }
+
+    /**
+     * Render the registered statistics.
+     *
+     * @param sb
+     *            the page
+     * @param stats
+     *            the statistics interface
+     */
+    private static void renderStats(final StringBuilder sb,
+            final StatsInterface stats) {
+        header(sb, "ocp_statistic", "counter",
+                "The count of each registered statistic that counts events.");
+        for (Map.Entry<String, Long> stat
+                : stats.getStats(true).entrySet()) {
+            sb.append("ocp_statistic_total{name=\"");
+            escape(sb, stat.getKey());
+            sb.append("\"} ").append(stat.getValue()).append('\n');
+        }
+
+        header(sb, "ocp_statistic_level", "gauge",
+                "The value of each other registered statistic.");
+        for (Map.Entry<String, Long> stat
+                : stats.getStats(false).entrySet()) {
+            sb.append("ocp_statistic_level{name=\"");
+            escape(sb, stat.getKey());
+            sb.append("\"} ").append(stat.getValue()).append('\n');
+        }
+    }
+
+    /**
+     * Render the alarm states.
+     *
+     * @param sb
+     *            the page
+     * @param alarms
+     *            the alarm interface
+     */
+    private static void renderAlarms(final StringBuilder sb,
+            final AlarmInterface alarms) {
+        List<AlarmInterface.Alarm> raised = alarms.getRaisedAlarms();
+        header(sb, "ocp_alarm_raised", "gauge",
+                "The number of sources raising each registered alarm.");
+        for (Map.Entry<String, Integer> alarm
+                : alarms.getRegisteredAlarms().entrySet()) {
+            int count = 0;
+            for (AlarmInterface.Alarm active : raised) {
+                if (active.getName().equals(alarm.getKey())) {
+                    count++;
+                }
+            }
+            sb.append("ocp_alarm_raised{alarm=\"");
+            escape(sb, alarm.getKey());
+            sb.append("\",severity=\"").append(alarm.getValue())
+                    .append("\"} ").append(count).append('\n');
+        }
+
+        header(sb, "ocp_alarm_active", "gauge",
+                "Each alarm that is currently raised.");
+        Set<String> seen = new HashSet<String>();
+        for (AlarmInterface.Alarm active : raised) {
+            StringBuilder series = new StringBuilder("ocp_alarm_active{alarm=\"");
+            escape(series, active.getName());
+            series.append("\",source=\"");
+            escape(series, String.valueOf(active.getSource()));
+            series.append("\"}");
+            if (seen.add(series.toString())) {
+                sb.append(series).append(" 1\n");
+            }
+        }
+    }
+
+    /**
+     * Render the metadata of a metric family.
+     *
+     * @param sb
+     *            the page
+     * @param name
+     *            the family name
+     * @param type
+     *            the family type
+     * @param help
+     *            the description of the family
+     */
+    private static void header(final StringBuilder sb, final String name,
+            final String type, final String help) {
+        sb.append("# TYPE ").append(name).append(' ').append(type)
+                .append('\n');
+        sb.append("# HELP ").append(name).append(' ').append(help)
+                .append('\n');
+    }
+
+    /**
+     * Append a label value, escaping it as OpenMetrics requires.
+     *
+     * @param sb
+     *            the page
+     * @param value
+     *            the label value
+     */
+    private static void escape(final StringBuilder sb, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            default:
+                sb.append(c);
+                break;
+            }
+        }
+    }
+}
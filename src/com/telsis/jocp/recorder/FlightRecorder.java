@@ -0,0 +1,511 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.telsis.jocp.FrameTap;
+import com.telsis.jocp.LegacyOCPMessage;
+
+/**
+ * An always-on recorder of the raw frames passing over one or more OCP links.
+ * Frames are copied into a fixed-size ring held in a memory-mapped file, so
+ * recording costs little more than a memory copy and the most recent traffic
+ * survives a crash of the JVM. The ring can be rendered offline with
+ * {@link FlightRecorderDump}.
+ * <p/>
+ * The file consists of a header followed by the ring. The header holds:
+ * <ul>
+ * <li>the file magic and format version;</li>
+ * <li>the size of the ring in bytes;</li>
+ * <li>the wall-clock time and {@link System#nanoTime()} at which the file was
+ * opened, so that record timestamps can be converted to wall-clock time;</li>
+ * <li>the sequence number of the next record and the ring offset it will be
+ * written at.</li>
+ * </ul>
+ * Each record in the ring is aligned to {@link #RECORD_ALIGNMENT} bytes and
+ * holds a record magic, the frame length, the direction, the link index, a
+ * sequence number, the {@link System#nanoTime()} at which the frame was seen
+ * and the frame itself. When a record will not fit before the end of the ring
+ * a wrap marker is written and recording continues from the start of the
+ * ring, overwriting the oldest records.
+ * <p/>
+ * A single recorder may be added to any number of links. It is thread-safe.
+ *
+ * @author Telsis
+ */
+public final class FlightRecorder implements FrameTap {
+    /** The file magic ("OCFR"). */
+    static final int  FILE_MAGIC           = 0x4F434652;
+    /** The file format version. */
+    static final int  FILE_VERSION         = 1;
+    /** The record magic ("OCPR"). */
+    static final int  RECORD_MAGIC         = 0x4F435052;
+    /** The wrap marker ("WRAP"). */
+    static final int  WRAP_MAGIC           = 0x57524150;
+
+    /** The offset of the file magic in the header. */
+    static final int  HDR_MAGIC_OFFSET     = 0;
+    /** The offset of the format version in the header. */
+    static final int  HDR_VERSION_OFFSET   = 4;
+    /** The offset of the ring capacity in the header. */
+    static final int  HDR_CAPACITY_OFFSET  = 8;
+    /** The offset of the base wall-clock time in the header. */
+    static final int  HDR_BASE_MILLIS_OFFSET = 16;
+    /** The offset of the base {@link System#nanoTime()} in the header. */
+    static final int  HDR_BASE_NANOS_OFFSET = 24;
+    /** The offset of the next sequence number in the header. */
+    static final int  HDR_SEQUENCE_OFFSET  = 32;
+    /** The offset of the next write offset in the header. */
+    static final int  HDR_WRITE_OFFSET     = 40;
+    /** The length of the file header. */
+    static final int  HEADER_LENGTH        = 64;
+
+    /** The offset of the record magic within a record. */
+    static final int  REC_MAGIC_OFFSET     = 0;
+    /** The offset of the frame length within a record. */
+    static final int  REC_LENGTH_OFFSET    = 4;
+    /** The offset of the direction within a record. */
+    static final int  REC_DIRECTION_OFFSET = 6;
+    /** The offset of the link index within a record. */
+    static final int  REC_LINK_OFFSET      = 7;
+    /** The offset of the sequence number within a record. */
+    static final int  REC_SEQUENCE_OFFSET  = 8;
+    /** The offset of the timestamp within a record. */
+    static final int  REC_NANOS_OFFSET     = 16;
+    /** The length of a record header. */
+    static final int  RECORD_HEADER_LENGTH = 24;
+    /** The alignment of records within the ring. */
+    public static final int RECORD_ALIGNMENT = 8;
+    /** The longest frame that can be recorded; longer frames are truncated. */
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+    /** The smallest permitted ring. */
+    public static final int MIN_CAPACITY     = 64 * 1024;
+    /** Conversion between nanoseconds and milliseconds. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** The file being recorded to. */
+    private final File             file;
+    /** The open file. */
+    private final RandomAccessFile raf;
+    /** The mapped file, covering the header and the ring. */
+    private final MappedByteBuffer map;
+    /** The size of the ring in bytes. */
+    private final int              capacity;
+    /** The sequence number of the next record. */
+    private long                   sequence;
+    /** The ring offset of the next record. */
+    private int                    writeOffset;
+    /** Whether or not the recorder has been closed. */
+    private boolean                closed;
+
+    /**
+     * Creates a flight recorder, creating or truncating the file and mapping
+     * it into memory.
+     *
+     * @param file
+     *            The file to record to.
+     * @param capacity
+     *            The size of the ring in bytes. This is rounded down to a
+     *            multiple of {@link #RECORD_ALIGNMENT}.
+     * @throws IOException
+     *             if the file cannot be created or mapped
+     */
+    public FlightRecorder(final File file, final int capacity) // CSIGNORE: HiddenField
+            throws IOException {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Flight recorder capacity "
+                    + capacity + " is less than the minimum of "
+                    + MIN_CAPACITY);
+        }
+        this.file = file;
+        this.capacity = capacity - capacity % RECORD_ALIGNMENT;
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(HEADER_LENGTH + this.capacity);
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_LENGTH + this.capacity);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        map.putInt(HDR_MAGIC_OFFSET, FILE_MAGIC);
+        map.putInt(HDR_VERSION_OFFSET, FILE_VERSION);
+        map.putInt(HDR_CAPACITY_OFFSET, this.capacity);
+        map.putLong(HDR_BASE_MILLIS_OFFSET, System.currentTimeMillis());
+        map.putLong(HDR_BASE_NANOS_OFFSET, System.nanoTime());
+        map.putLong(HDR_SEQUENCE_OFFSET, 0);
+        map.putInt(HDR_WRITE_OFFSET, 0);
+    }
+
+    /**
+     * Gets the file being recorded to.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the size of the ring.
+     *
+     * @return the size of the ring in bytes
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Record a frame. Frames passed after the recorder has been closed are
+     * ignored.
+     *
+     * @param direction
+     *            Whether the frame was received or transmitted.
+     * @param linkIndex
+     *            The index of the link that carried the frame.
+     * @param frame
+     *            The buffer holding the frame between its position and limit.
+     */
+    @Override
+    public void frame(final Direction direction, final int linkIndex,
+            final ByteBuffer frame) {
+        final long now = System.nanoTime();
+        final int start = frame.position();
+        final int length = Math.min(frame.remaining(), MAX_FRAME_LENGTH);
+        final int recordLength = align(RECORD_HEADER_LENGTH + length);
+
+        synchronized (this) {
+            if (closed || recordLength > capacity) {
+                return;
+            }
+            if (writeOffset + recordLength > capacity) {
+                if (writeOffset + RECORD_HEADER_LENGTH <= capacity) {
+                    map.putInt(HEADER_LENGTH + writeOffset, WRAP_MAGIC);
+                }
+                writeOffset = 0;
+            }
+
+            // Write the body before the magic so that a torn record is never
+            // mistaken for a valid one
+            final int base = HEADER_LENGTH + writeOffset;
+            map.putShort(base + REC_LENGTH_OFFSET, (short) length);
+            map.put(base + REC_DIRECTION_OFFSET, (byte) direction.ordinal());
+            map.put(base + REC_LINK_OFFSET, (byte) linkIndex);
+            map.putLong(base + REC_SEQUENCE_OFFSET, sequence);
+            map.putLong(base + REC_NANOS_OFFSET, now);
+            if (frame.hasArray()) {
+                map.position(base + RECORD_HEADER_LENGTH);
+                map.put(frame.array(), frame.arrayOffset() + start, length);
+            } else {
+                // Frames from a link are held in direct buffers, so copy
+                // through a view rather than byte by byte
+                ByteBuffer view = frame.duplicate();
+                view.limit(start + length);
+                map.position(base + RECORD_HEADER_LENGTH);
+                map.put(view);
+            }
+            map.putInt(base + REC_MAGIC_OFFSET, RECORD_MAGIC);
+
+            sequence++;
+            writeOffset += recordLength;
+            if (writeOffset == capacity) {
+                writeOffset = 0;
+            }
+            map.putLong(HDR_SEQUENCE_OFFSET, sequence);
+            map.putInt(HDR_WRITE_OFFSET, writeOffset);
+        }
+    }
+
+    /**
+     * Flush the recording to disk and close the file. The mapping itself is
+     * released when the recorder is garbage collected.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        map.force();
+        try {
+            raf.close();
+        } catch (IOException e) { // CSIGNORE: EmptyBlock
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FlightRecorder(" + file + ", " + capacity + " bytes)";
+    }
+
+    /**
+     * Round a record length up to the record alignment.
+     *
+     * @param length
+     *            the unaligned length
+     * @return the aligned length
+     */
+    private static int align(final int length) {
+        return (length + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+
+    /**
+     * Read all of the records that remain in a flight recorder file. The file
+     * may be read while it is still being recorded to, in which case the
+     * newest records may be missing.
+     *
+     * @param file
+     *            The file to read.
+     * @return the records, oldest first
+     * @throws IOException
+     *             if the file cannot be read or is not a flight recorder file
+     */
+    public static List<Record> read(final File file) throws IOException {
+        final ByteBuffer buffer;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            buffer = ByteBuffer.allocate((int) in.length());
+            in.readFully(buffer.array());
+        } finally {
+            in.close();
+        }
+
+        if (buffer.capacity() < HEADER_LENGTH
+                || buffer.getInt(HDR_MAGIC_OFFSET) != FILE_MAGIC) {
+            throw new IOException(file + " is not a flight recorder file");
+        }
+        if (buffer.getInt(HDR_VERSION_OFFSET) != FILE_VERSION) {
+            throw new IOException(file + " has unsupported version "
+                    + buffer.getInt(HDR_VERSION_OFFSET));
+        }
+        final int ringCapacity = buffer.getInt(HDR_CAPACITY_OFFSET);
+        if (ringCapacity <= 0
+                || buffer.capacity() < HEADER_LENGTH + ringCapacity) {
+            throw new IOException(file + " is truncated");
+        }
+        final long baseMillis = buffer.getLong(HDR_BASE_MILLIS_OFFSET);
+        final long baseNanos = buffer.getLong(HDR_BASE_NANOS_OFFSET);
+        final long nextSequence = buffer.getLong(HDR_SEQUENCE_OFFSET);
+        final int nextOffset = buffer.getInt(HDR_WRITE_OFFSET);
+
+        // The oldest records follow the write offset up to the wrap marker
+        // (or the end of the ring), and the newest run from the start of the
+        // ring up to the write offset.
+        List<Record> records = new ArrayList<Record>();
+        scan(buffer, ringCapacity, nextOffset, ringCapacity, nextSequence,
+                baseMillis, baseNanos, records);
+        scan(buffer, ringCapacity, 0, nextOffset, nextSequence, baseMillis,
+                baseNanos, records);
+
+        Collections.sort(records, new Comparator<Record>() {
+            @Override
+            public int compare(final Record a, final Record b) {
+                return a.sequence < b.sequence ? -1
+                        : (a.sequence == b.sequence ? 0 : 1);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * Collect the valid records from one contiguous section of the ring.
+     * Anything that does not look like a complete record is skipped.
+     *
+     * @param buffer
+     *            the contents of the file
+     * @param ringCapacity
+     *            the size of the ring
+     * @param from
+     *            the ring offset to start at
+     * @param to
+     *            the ring offset to stop at
+     * @param nextSequence
+     *            the sequence number of the next record to be written
+     * @param baseMillis
+     *            the wall-clock time the file was opened
+     * @param baseNanos
+     *            the {@link System#nanoTime()} the file was opened
+     * @param records
+     *            the list to add records to
+     */
+    private static void scan(final ByteBuffer buffer, final int ringCapacity,
+            final int from, final int to, final long nextSequence,
+            final long baseMillis, final long baseNanos,
+            final List<Record> records) {
+        int offset = from;
+        while (offset + RECORD_HEADER_LENGTH <= to) {
+            final int base = HEADER_LENGTH + offset;
+            final int magic = buffer.getInt(base + REC_MAGIC_OFFSET);
+            if (magic == WRAP_MAGIC) {
+                return;
+            }
+            final int length = buffer.getShort(base + REC_LENGTH_OFFSET)
+                    & MAX_FRAME_LENGTH;
+            final int direction = buffer.get(base + REC_DIRECTION_OFFSET);
+            final long seq = buffer.getLong(base + REC_SEQUENCE_OFFSET);
+            if (magic != RECORD_MAGIC
+                    || length < LegacyOCPMessage.OCP_HEADER_LENGTH
+                    || offset + RECORD_HEADER_LENGTH + length > to
+                    || direction < 0
+                    || direction >= Direction.values().length
+                    || seq < 0 || seq >= nextSequence
+                    || (buffer.getShort(base + RECORD_HEADER_LENGTH
+                            + LegacyOCPMessage.OCP_LEN_OFFSET) & 0xFFFF) // CSIGNORE: MagicNumber
+                            + LegacyOCPMessage.OCP_HEADER_LENGTH != length) {
+                offset += RECORD_ALIGNMENT;
+                continue;
+            }
+
+            byte[] frame = new byte[length];
+            for (int i = 0; i < length; i++) {
+                frame[i] = buffer.get(base + RECORD_HEADER_LENGTH + i);
+            }
+            final long nanos = buffer.getLong(base + REC_NANOS_OFFSET);
+            records.add(new Record(seq, Direction.values()[direction],
+                    buffer.get(base + REC_LINK_OFFSET) & 0xFF, nanos, // CSIGNORE: MagicNumber
+                    baseMillis + (nanos - baseNanos) / NANOS_PER_MILLI,
+                    frame));
+            offset += align(RECORD_HEADER_LENGTH + length);
+        }
+    }
+
+    /**
+     * A frame read back from a flight recorder file.
+     *
+     * @author Telsis
+     */
+    public static final class Record {
+        /** The sequence number. */
+        private final long      sequence;
+        /** The direction. */
+        private final Direction direction;
+        /** The link index. */
+        private final int       linkIndex;
+        /** The {@link System#nanoTime()} the frame was seen. */
+        private final long      nanoTime;
+        /** The wall-clock time the frame was seen. */
+        private final long      timestamp;
+        /** The frame. */
+        private final byte[]    frame;
+
+        /**
+         * Creates a record.
+         *
+         * @param sequence
+         *            the sequence number
+         * @param direction
+         *            the direction
+         * @param linkIndex
+         *            the link index
+         * @param nanoTime
+         *            the {@link System#nanoTime()} the frame was seen
+         * @param timestamp
+         *            the wall-clock time the frame was seen
+         * @param frame
+         *            the frame
+         */
+        Record(final long sequence, final Direction direction, // CSIGNORE: HiddenField
+                final int linkIndex, final long nanoTime, // CSIGNORE: HiddenField
+                final long timestamp, final byte[] frame) { // CSIGNORE: HiddenField
+            this.sequence = sequence;
+            this.direction = direction;
+            this.linkIndex = linkIndex;
+            this.nanoTime = nanoTime;
+            this.timestamp = timestamp;
+            this.frame = frame;
+        }
+
+        /**
+         * Gets the sequence number. Sequence numbers are allocated in the
+         * order frames were recorded, across all links.
+         *
+         * @return the sequence number
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Gets the direction of the frame.
+         *
+         * @return the direction
+         */
+        public Direction getDirection() {
+            return direction;
+        }
+
+        /**
+         * Gets the index of the link that carried the frame.
+         *
+         * @return the link index
+         */
+        public int getLinkIndex() {
+            return linkIndex;
+        }
+
+        /**
+         * Gets the {@link System#nanoTime()} at which the frame was recorded.
+         * This is only meaningful relative to other records in the same file.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        /**
+         * Gets the wall-clock time at which the frame was recorded.
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Gets the frame. A new buffer is returned on each call, so it may
+         * safely be passed to {@link LegacyOCPMessage#decodeBuffer}.
+         *
+         * @return a buffer holding a copy of the frame
+         */
+        public ByteBuffer getFrame() {
+            return ByteBuffer.wrap(frame.clone());
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " link" + linkIndex + " " + direction
+                    + " " + frame.length + " bytes";
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import com.telsis.jocp.DecodeResult;
+import com.telsis.jocp.LegacyOCPMessage;
+
+/**
+ * Command line tool that renders the contents of a {@link FlightRecorder} file.
+ * Each recorded frame is decoded and printed using the message's
+ * <tt>toString()</tt>, oldest first, one frame per line:
+ *
+ * <pre>
+ * 2013-06-04 10:15:02.117 #1042 link0 RX InitialDP ...
+ * </pre>
+ *
+ * Frames that cannot be decoded are printed with the reason, and may
+ * optionally be followed by a hex dump.
+ *
+ * @author Telsis
+ */
+public final class FlightRecorderDump {
+    /** The number of bytes to show on each line of a hex dump. */
+    private static final int HEX_BYTES_PER_LINE = 16;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FlightRecorderDump() {
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args
+     *            Command line arguments
+     */
+    public static void main(final String[] args) {
+        CommandLineParser parser = new GnuParser();
+        Options options = new Options();
+        options.addOption("x", "hex", false, "hex dump every frame");
+        options.addOption("l", "link", true, "only show frames for this link");
+        options.addOption("h", "help", false, "prints this help");
+        HelpFormatter formatter = new HelpFormatter();
+
+        boolean hex;
+        int link = -1;
+        String fileName;
+        try {
+            CommandLine line = parser.parse(options, args);
+            if (line.hasOption("help") || line.getArgs().length != 1) {
+                formatter.printHelp("FlightRecorderDump [options] file",
+                        options);
+                System.exit(1);
+                return;
+            }
+            hex = line.hasOption("hex");
+            if (line.hasOption("link")) {
+                link = Integer.parseInt(line.getOptionValue("link"));
+            }
+            fileName = line.getArgs()[0];
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            formatter.printHelp("FlightRecorderDump [options] file", options);
+            System.exit(1);
+            return;
+        }
+
+        List<FlightRecorder.Record> records;
+        try {
+            records = FlightRecorder.read(new File(fileName));
+        } catch (IOException e) {
+            System.err.println("Unable to read " + fileName + ": "
+                    + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        SimpleDateFormat dateFormat =
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        DecodeResult result = new DecodeResult();
+        StringBuilder sb = new StringBuilder();
+        for (FlightRecorder.Record record : records) {
+            if (link >= 0 && record.getLinkIndex() != link) {
+                continue;
+            }
+            sb.setLength(0);
+            sb.append(dateFormat.format(new Date(record.getTimestamp())))
+                    .append(" #").append(record.getSequence())
+                    .append(" link").append(record.getLinkIndex())
+                    .append(' ').append(record.getDirection()).append(' ');
+            render(record.getFrame(), result, sb);
+            if (hex || result.getStatus() != DecodeResult.Status.OK) {
+                hexDump(record.getFrame(), sb);
+            }
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * Decode a frame and append its description.
+     *
+     * @param frame
+     *            the frame, which is consumed by decoding
+     * @param result
+     *            the decode result to use
+     * @param sb
+     *            the builder to append to
+     */
+    static void render(final ByteBuffer frame, final DecodeResult result,
+            final StringBuilder sb) {
+        switch (LegacyOCPMessage.decodeBuffer(frame, result)) {
+        case OK:
+            sb.append(result.getMessage().getClass().getSimpleName())
+                    .append(' ').append(result.getMessage());
+            break;
+
+        case REJECTED:
+            sb.append("unsupported or invalid command 0x")
+                    .append(Integer.toHexString(result.getCommandCode()
+                            & 0xFFFF)); // CSIGNORE: MagicNumber
+            break;
+
+        default:
+            sb.append(result);
+            break;
+        }
+    }
+
+    /**
+     * Append a hex dump of a frame.
+     *
+     * @param frame
+     *            the frame
+     * @param sb
+     *            the builder to append to
+     */
+    static void hexDump(final ByteBuffer frame, final StringBuilder sb) {
+        for (int i = frame.position(); i < frame.limit(); i++) {
+            if ((i - frame.position()) % HEX_BYTES_PER_LINE == 0) {
+                sb.append("\n    ");
+            } else {
+                sb.append(' ');
+            }
+            int b = frame.get(i) & 0xFF; // CSIGNORE: MagicNumber
+            sb.append(Character.forDigit(b >> 4, 16)) // CSIGNORE: MagicNumber
+                    .append(Character.forDigit(b & 0xF, 16)); // CSIGNORE: MagicNumber
+        }
+    }
+}
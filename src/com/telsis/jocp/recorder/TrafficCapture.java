@@ -0,0 +1,360 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.recorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import com.telsis.jocp.FrameTap;
+
+/**
+ * Captures the exact frame stream of one or more OCP links, with its timing,
+ * to a compact append-only file. Unlike the {@link FlightRecorder}, which
+ * keeps only the most recent traffic, a capture grows for as long as it is
+ * enabled and is intended to be replayed with {@link TrafficReplay} in order
+ * to reproduce real traffic shapes.
+ * <p/>
+ * The file starts with a header holding the file magic, the format version
+ * and the wall-clock time and {@link System#nanoTime()} at which the capture
+ * started. Each frame is then written as:
+ * <ul>
+ * <li>one byte holding the direction in the top bit and the link index in the
+ * remaining bits;</li>
+ * <li>the time in nanoseconds since the previous frame, as a variable-length
+ * integer of seven bits per byte;</li>
+ * <li>the frame length, as an unsigned short;</li>
+ * <li>the frame itself.</li>
+ * </ul>
+ * Writes are buffered, so the last few frames are only guaranteed to be in
+ * the file once the capture has been {@link #close() closed}. If a write
+ * fails the capture is closed and further frames are ignored.
+ * <p/>
+ * A single capture may be added to any number of links. It is thread-safe.
+ *
+ * @author Telsis
+ */
+public final class TrafficCapture implements FrameTap {
+    /** The file magic ("OCTC"). */
+    static final int  FILE_MAGIC        = 0x4F435443;
+    /** The file format version. */
+    static final int  FILE_VERSION      = 1;
+    /** The size of the write buffer. */
+    private static final int  BUFFER_SIZE       = 64 * 1024;
+    /** The direction bit in the flags byte. */
+    private static final int  FLAG_TX           = 0x80;
+    /** The link index bits in the flags byte. */
+    private static final int  LINK_MASK         = 0x7F;
+    /** The payload bits in each byte of a variable-length integer. */
+    private static final int  VARINT_MASK       = 0x7F;
+    /** The continuation bit in each byte of a variable-length integer. */
+    private static final int  VARINT_MORE       = 0x80;
+    /** The number of payload bits in each byte of a variable-length integer. */
+    private static final int  VARINT_SHIFT      = 7;
+    /** The longest frame that can be captured; longer frames are truncated. */
+    public static final int   MAX_FRAME_LENGTH  = 0xFFFF;
+    /** Conversion between nanoseconds and milliseconds. */
+    private static final long NANOS_PER_MILLI   = 1000000L;
+
+    /** The file being captured to. */
+    private final File             file;
+    /** The output stream. */
+    private final DataOutputStream out;
+    /** The {@link System#nanoTime()} of the previous frame. */
+    private long                   lastNanos;
+    /** The number of frames captured. */
+    private long                   frames;
+    /** Whether or not the capture has been closed. */
+    private boolean                closed;
+    /** Holds a frame that is not backed by an array while it is written. */
+    private final byte[]           scratch = new byte[MAX_FRAME_LENGTH];
+
+    /** The logger for this class. */
+    private static Logger log = Logger.getLogger("ocpTrafficCapture");
+
+    /**
+     * Creates a traffic capture, creating or truncating the file.
+     *
+     * @param file
+     *            The file to capture to.
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    public TrafficCapture(final File file) throws IOException { // CSIGNORE: HiddenField
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE));
+        lastNanos = System.nanoTime();
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(lastNanos);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the file being captured to.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the number of frames captured so far.
+     *
+     * @return the number of frames
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Capture a frame. Frames passed after the capture has been closed are
+     * ignored.
+     *
+     * @param direction
+     *            Whether the frame was received or transmitted.
+     * @param linkIndex
+     *            The index of the link that carried the frame.
+     * @param frame
+     *            The buffer holding the frame between its position and limit.
+     */
+    @Override
+    public void frame(final Direction direction, final int linkIndex,
+            final ByteBuffer frame) {
+        final int start = frame.position();
+        final int length = Math.min(frame.remaining(), MAX_FRAME_LENGTH);
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            // Take the timestamp under the lock so that deltas are never
+            // negative when several links share the capture
+            final long now = System.nanoTime();
+            try {
+                out.writeByte((direction == Direction.TX ? FLAG_TX : 0)
+                        | (linkIndex & LINK_MASK));
+                writeVarLong(now - lastNanos);
+                out.writeShort(length);
+                if (frame.hasArray()) {
+                    out.write(frame.array(), frame.arrayOffset() + start,
+                            length);
+                } else {
+                    // Frames from a link are held in direct buffers
+                    frame.duplicate().get(scratch, 0, length);
+                    out.write(scratch, 0, length);
+                }
+            } catch (IOException e) {
+                log.error("Unable to write to traffic capture " + file
+                        + ", stopping capture", e);
+                close();
+                return;
+            }
+            lastNanos = now;
+            frames++;
+        }
+    }
+
+    /**
+     * Write a non-negative variable-length integer.
+     *
+     * @param value
+     *            the value to write
+     * @throws IOException
+     *             if the write fails
+     */
+    private void writeVarLong(final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~VARINT_MASK) != 0) {
+            out.writeByte((int) (remaining & VARINT_MASK) | VARINT_MORE);
+            remaining >>>= VARINT_SHIFT;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    /**
+     * Flush any buffered frames to the file.
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.error("Unable to flush traffic capture " + file, e);
+        }
+    }
+
+    /**
+     * Flush any buffered frames and close the file.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.error("Unable to close traffic capture " + file, e);
+        }
+        log.info("Closed " + this + " after " + frames + " frames");
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficCapture(" + file + ")";
+    }
+
+    /**
+     * Reads back the frames in a traffic capture file, in the order they were
+     * captured.
+     *
+     * @author Telsis
+     */
+    public static final class Reader {
+        /** The input stream. */
+        private final DataInputStream in;
+        /** The wall-clock time at which the capture started. */
+        private final long            baseMillis;
+        /** The {@link System#nanoTime()} at which the capture started. */
+        private final long            baseNanos;
+        /** The {@link System#nanoTime()} of the previous frame. */
+        private long                  lastNanos;
+        /** The sequence number of the next frame. */
+        private long                  sequence;
+
+        /**
+         * Opens a traffic capture file for reading.
+         *
+         * @param file
+         *            The file to read.
+         * @throws IOException
+         *             if the file cannot be read or is not a traffic capture
+         */
+        public Reader(final File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), BUFFER_SIZE));
+            try {
+                if (in.readInt() != FILE_MAGIC) {
+                    throw new IOException(file
+                            + " is not a traffic capture file");
+                }
+                int version = in.readInt();
+                if (version != FILE_VERSION) {
+                    throw new IOException(file + " has unsupported version "
+                            + version);
+                }
+                baseMillis = in.readLong();
+                baseNanos = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            lastNanos = baseNanos;
+        }
+
+        /**
+         * Gets the wall-clock time at which the capture started.
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getStartTime() {
+            return baseMillis;
+        }
+
+        /**
+         * Read the next frame. The sequence number of each frame is its
+         * position in the capture, starting from zero.
+         *
+         * @return the frame, or null at the end of the capture
+         * @throws IOException
+         *             if the capture cannot be read or is corrupt
+         */
+        public FlightRecorder.Record next() throws IOException {
+            final int flags = in.read();
+            if (flags < 0) {
+                return null;
+            }
+            try {
+                lastNanos += readVarLong();
+                byte[] frame = new byte[in.readUnsignedShort()];
+                in.readFully(frame);
+                return new FlightRecorder.Record(sequence++,
+                        (flags & FLAG_TX) != 0 ? Direction.TX : Direction.RX,
+                        flags & LINK_MASK, lastNanos,
+                        baseMillis + (lastNanos - baseNanos) / NANOS_PER_MILLI,
+                        frame);
+            } catch (EOFException e) {
+                // The capture was not closed cleanly; ignore the torn frame
+                return null;
+            }
+        }
+
+        /**
+         * Read a variable-length integer.
+         *
+         * @return the value
+         * @throws IOException
+         *             if the value cannot be read or is corrupt
+         */
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += VARINT_SHIFT) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & VARINT_MASK) << shift;
+                if ((b & VARINT_MORE) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt frame timestamp");
+        }
+
+        /**
+         * Close the file.
+         *
+         * @throws IOException
+         *             if the file cannot be closed
+         */
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
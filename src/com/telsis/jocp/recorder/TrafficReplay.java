@@ -0,0 +1,267 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.recorder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import com.telsis.jocp.FrameTap;
+
+/**
+ * Replays a {@link TrafficCapture} against an OCP client. The tool takes the
+ * place of the SCP: it listens for a connection from an
+ * {@link com.telsis.jocp.OCPLinkManager} (or any other OCP client) and sends
+ * it the frames that the captured link received, with the captured
+ * inter-arrival timing scaled by a speed factor, or as fast as possible.
+ * Anything the client sends is read and discarded.
+ * <p/>
+ * The replayed frames carry the task IDs of the original calls, so the client
+ * will answer most call control messages with an Abort; the intent is to
+ * reproduce the captured traffic shape (for example InitialDP bursts or
+ * cleardown storms) when qualifying changes to decoding and dispatch, not to
+ * recreate the original calls.
+ *
+ * @author Telsis
+ */
+public final class TrafficReplay {
+    /** Conversion between nanoseconds and milliseconds. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+    /** Conversion between seconds and milliseconds. */
+    private static final long MILLIS_PER_SECOND = 1000L;
+    /** The size of the socket buffers. */
+    private static final int  BUFFER_SIZE     = 64 * 1024;
+
+    /** The capture to replay. */
+    private final File    file;
+    /** The link whose received frames are replayed. */
+    private final int     linkIndex;
+    /** The speed factor; zero or less replays as fast as possible. */
+    private final double  speed;
+
+    /** The number of frames sent. */
+    private long          framesSent;
+    /** The number of bytes sent. */
+    private long          bytesSent;
+    /** The number of bytes received from the client. */
+    private volatile long bytesReceived;
+
+    /**
+     * Creates a replay.
+     *
+     * @param file
+     *            The capture to replay.
+     * @param linkIndex
+     *            The link whose received frames are replayed.
+     * @param speed
+     *            The speed factor, where 1 is the captured speed and zero or
+     *            less means as fast as possible.
+     */
+    public TrafficReplay(final File file, final int linkIndex, // CSIGNORE: HiddenField
+            final double speed) { // CSIGNORE: HiddenField
+        this.file = file;
+        this.linkIndex = linkIndex;
+        this.speed = speed;
+    }
+
+    /**
+     * Replay the capture over a connected socket. This returns once every
+     * frame has been sent.
+     *
+     * @param socket
+     *            The connection to the client.
+     * @return the time taken in nanoseconds
+     * @throws IOException
+     *             if the capture cannot be read or the connection fails
+     */
+    public long replay(final Socket socket) throws IOException {
+        final InputStream in = socket.getInputStream();
+        Thread drain = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] discard = new byte[BUFFER_SIZE];
+                try {
+                    int n;
+                    while ((n = in.read(discard)) >= 0) {
+                        bytesReceived += n;
+                    }
+                } catch (IOException e) { // CSIGNORE: EmptyBlock
+                    // Connection closed
+                }
+            }
+        }, "TrafficReplay drain");
+        drain.setDaemon(true);
+        drain.start();
+
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(),
+                BUFFER_SIZE);
+        TrafficCapture.Reader reader = new TrafficCapture.Reader(file);
+        final long start = System.nanoTime();
+        try {
+            long firstNanos = 0;
+            boolean first = true;
+            FlightRecorder.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.getDirection() != FrameTap.Direction.RX
+                        || record.getLinkIndex() != linkIndex) {
+                    continue;
+                }
+                if (first) {
+                    firstNanos = record.getNanoTime();
+                    first = false;
+                }
+                if (speed > 0) {
+                    long due = start + (long) ((record.getNanoTime()
+                            - firstNanos) / speed);
+                    long delay = due - System.nanoTime();
+                    if (delay > 0) {
+                        out.flush();
+                        while (delay > 0) {
+                            LockSupport.parkNanos(delay);
+                            delay = due - System.nanoTime();
+                        }
+                    }
+                }
+                byte[] frame = record.getFrame().array();
+                out.write(frame);
+                framesSent++;
+                bytesSent += frame.length;
+            }
+            out.flush();
+        } finally {
+            reader.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the number of frames sent.
+     *
+     * @return the number of frames
+     */
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * Gets the number of bytes sent.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Gets the number of bytes received from the client so far.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args
+     *            Command line arguments
+     */
+    public static void main(final String[] args) {
+        CommandLineParser parser = new GnuParser();
+        Options options = new Options();
+        options.addOption("p", "port", true, "port to listen on");
+        options.getOption("p").setRequired(true);
+        options.addOption("b", "bind", true,
+                "address to listen on (default is any)");
+        options.addOption("l", "link", true,
+                "replay the frames received on this link (default 0)");
+        options.addOption("s", "speed", true,
+                "speed factor, e.g. 1 or 10; 0 is as fast as possible "
+                + "(default 1)");
+        options.addOption("h", "help", false, "prints this help");
+        HelpFormatter formatter = new HelpFormatter();
+
+        TrafficReplay replay;
+        int port;
+        InetAddress bind = null;
+        try {
+            CommandLine line = parser.parse(options, args);
+            if (line.hasOption("help") || line.getArgs().length != 1) {
+                formatter.printHelp("TrafficReplay [options] file", options);
+                System.exit(1);
+                return;
+            }
+            port = Integer.parseInt(line.getOptionValue("port"));
+            if (line.hasOption("bind")) {
+                bind = InetAddress.getByName(line.getOptionValue("bind"));
+            }
+            replay = new TrafficReplay(new File(line.getArgs()[0]),
+                    Integer.parseInt(line.getOptionValue("link", "0")),
+                    Double.parseDouble(line.getOptionValue("speed", "1")));
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            formatter.printHelp("TrafficReplay [options] file", options);
+            System.exit(1);
+            return;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        try {
+            ServerSocket server = new ServerSocket(port, 1, bind);
+            System.out.println("Waiting for connection on port " + port);
+            Socket socket = server.accept();
+            server.close();
+            socket.setTcpNoDelay(true);
+            System.out.println("Replaying to " + socket.getRemoteSocketAddress());
+
+            long elapsed = replay.replay(socket);
+            long millis = Math.max(1, elapsed / NANOS_PER_MILLI);
+            System.out.println("Sent " + replay.getFramesSent() + " frames ("
+                    + replay.getBytesSent() + " bytes) in " + millis
+                    + "ms, " + replay.getFramesSent() * MILLIS_PER_SECOND
+                    / millis + " frames/s; received "
+                    + replay.getBytesReceived() + " bytes");
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Replay failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
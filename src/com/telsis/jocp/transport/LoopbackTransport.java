@@ -0,0 +1,319 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-JVM {@link Transport}. Loopback transports are created in connected
+ * pairs; bytes written to one end of a pair can be read from the other. This
+ * allows the whole protocol stack to be exercised, for example against a
+ * simulated SCP, without any kernel networking.
+ * <p/>
+ * To run an OCP link over loopback, give the link a {@link #factory(Acceptor)
+ * factory}: each time the link connects, a new pair is created, one end is
+ * passed to the acceptor (playing the part of the SCP) and the link uses the
+ * other.
+ *
+ * @author Telsis
+ */
+public final class LoopbackTransport implements Transport {
+    /**
+     * Interface for receiving the remote end of each new loopback connection.
+     */
+    public interface Acceptor {
+        /**
+         * Called when a link connects. This is called from the link's receive
+         * thread, so implementations should hand the transport to another
+         * thread rather than serving it directly.
+         *
+         * @param peer
+         *            the remote end of the connection
+         */
+        void accept(LoopbackTransport peer);
+    }
+
+    /** The default buffer size in each direction. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The pipe this end reads from. */
+    private final Pipe   in;
+    /** The pipe this end writes to. */
+    private final Pipe   out;
+    /** A name for this end, for logging. */
+    private final String name;
+
+    /**
+     * Creates one end of a pair.
+     *
+     * @param in
+     *            the pipe to read from
+     * @param out
+     *            the pipe to write to
+     * @param name
+     *            a name for this end
+     */
+    private LoopbackTransport(final Pipe in, final Pipe out, // CSIGNORE: HiddenField
+            final String name) { // CSIGNORE: HiddenField
+        this.in = in;
+        this.out = out;
+        this.name = name;
+    }
+
+    /**
+     * Create a connected pair of transports.
+     *
+     * @param bufferSize
+     *            the number of bytes that can be buffered in each direction
+     * @return an array of the two ends
+     */
+    public static LoopbackTransport[] createPair(final int bufferSize) {
+        Pipe aToB = new Pipe(bufferSize);
+        Pipe bToA = new Pipe(bufferSize);
+        return new LoopbackTransport[] {
+            new LoopbackTransport(bToA, aToB, "local"),
+            new LoopbackTransport(aToB, bToA, "remote")
+        };
+    }
+
+    /**
+     * Create a factory that connects each new transport to a peer passed to
+     * the acceptor.
+     *
+     * @param acceptor
+     *            the acceptor for the remote ends
+     * @return the factory
+     */
+    public static TransportFactory factory(final Acceptor acceptor) {
+        return new TransportFactory() {
+            @Override
+            public Transport createTransport(
+                    final InetSocketAddress localAddress,
+                    final InetSocketAddress remoteAddress, final int timeout) {
+                LoopbackTransport[] pair = createPair(DEFAULT_BUFFER_SIZE);
+                acceptor.accept(pair[1]);
+                return pair[0];
+            }
+
+            @Override
+            public String toString() {
+                return "Loopback";
+            }
+        };
+    }
+
+    @Override
+    public boolean connect() {
+        return true;
+    }
+
+    @Override
+    public boolean finishConnect() {
+        return true;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) {
+        return in.read(dst);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        return out.write(src);
+    }
+
+    @Override
+    public void awaitReadable(final long timeout) throws IOException {
+        in.awaitReadable(timeout);
+    }
+
+    @Override
+    public void awaitWritable(final long timeout) throws IOException {
+        out.awaitWritable(timeout);
+    }
+
+    /**
+     * Close this end. The other end will read end-of-stream once it has
+     * consumed any data already written, and its writes will fail.
+     */
+    @Override
+    public void close() {
+        out.close();
+        in.close();
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackTransport(" + name + ")";
+    }
+
+    /**
+     * A bounded, one-way byte buffer between the two ends of a pair.
+     */
+    private static final class Pipe {
+        /** The buffered bytes, as a ring. */
+        private final byte[]        data;
+        /** The lock guarding all state. */
+        private final ReentrantLock lock = new ReentrantLock();
+        /** Signalled when data is written or the pipe is closed. */
+        private final Condition     readable = lock.newCondition();
+        /** Signalled when data is read or the pipe is closed. */
+        private final Condition     writable = lock.newCondition();
+        /** The index of the first buffered byte. */
+        private int                 head;
+        /** The number of buffered bytes. */
+        private int                 count;
+        /** Whether or not either end has closed the pipe. */
+        private boolean             closed;
+
+        /**
+         * Creates an empty pipe.
+         *
+         * @param size
+         *            the capacity in bytes
+         */
+        Pipe(final int size) {
+            data = new byte[size];
+        }
+
+        /**
+         * Read as many bytes as are buffered.
+         *
+         * @param dst
+         *            the buffer to read into
+         * @return the number of bytes read, or -1 if the pipe is closed and
+         *         empty
+         */
+        int read(final ByteBuffer dst) {
+            lock.lock();
+            try {
+                if (count == 0) {
+                    return closed ? -1 : 0;
+                }
+                int n = Math.min(count, dst.remaining());
+                int first = Math.min(n, data.length - head);
+                dst.put(data, head, first);
+                dst.put(data, 0, n - first);
+                head = (head + n) % data.length;
+                count -= n;
+                if (n > 0) {
+                    writable.signalAll();
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Write as many bytes as there is space for.
+         *
+         * @param src
+         *            the buffer to write from
+         * @return the number of bytes written
+         * @throws IOException
+         *             if the pipe has been closed
+         */
+        int write(final ByteBuffer src) throws IOException {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+                int n = Math.min(data.length - count, src.remaining());
+                int tail = (head + count) % data.length;
+                int first = Math.min(n, data.length - tail);
+                src.get(data, tail, first);
+                src.get(data, 0, n - first);
+                count += n;
+                if (n > 0) {
+                    readable.signalAll();
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait until there is data to read or the pipe is closed.
+         *
+         * @param timeout
+         *            the longest time to wait, in milliseconds
+         * @throws IOException
+         *             if interrupted while waiting
+         */
+        void awaitReadable(final long timeout) throws IOException {
+            lock.lock();
+            try {
+                if (count == 0 && !closed) {
+                    readable.await(timeout, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait until there is space to write or the pipe is closed.
+         *
+         * @param timeout
+         *            the longest time to wait, in milliseconds
+         * @throws IOException
+         *             if interrupted while waiting
+         */
+        void awaitWritable(final long timeout) throws IOException {
+            lock.lock();
+            try {
+                if (count == data.length && !closed) {
+                    writable.await(timeout, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Close the pipe, waking any waiting threads.
+         */
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                readable.signalAll();
+                writable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
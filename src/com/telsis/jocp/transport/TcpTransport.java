@@ -0,0 +1,185 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A {@link Transport} over a non-blocking NIO TCP/IP socket. This is the
+ * transport used by OCP links unless another is configured.
+ *
+ * @author Telsis
+ */
+public final class TcpTransport implements Transport {
+    /** A factory for TCP/IP transports. */
+    public static final TransportFactory FACTORY = new TransportFactory() {
+        @Override
+        public Transport createTransport(final InetSocketAddress localAddress,
+                final InetSocketAddress remoteAddress, final int timeout) {
+            return new TcpTransport(localAddress, remoteAddress, timeout);
+        }
+
+        @Override
+        public String toString() {
+            return "TCP";
+        }
+    };
+
+    /** The local address to bind to. */
+    private final InetSocketAddress localAddress;
+    /** The remote address to connect to. */
+    private final InetSocketAddress remoteAddress;
+    /** The socket timeout in milliseconds. */
+    private final int               timeout;
+    /** The socket channel. */
+    private SocketChannel           channel;
+    /** The selector used by the receive thread. */
+    private Selector                readSelector;
+    /** The key registering the channel with the read selector. */
+    private SelectionKey            readKey;
+    /** The selector used by the transmit thread. */
+    private Selector                writeSelector;
+
+    /**
+     * Creates an unconnected TCP/IP transport.
+     *
+     * @param localAddress
+     *            The local address to bind to.
+     * @param remoteAddress
+     *            The remote address to connect to.
+     * @param timeout
+     *            The socket timeout in milliseconds.
+     */
+    public TcpTransport(final InetSocketAddress localAddress, // CSIGNORE: HiddenField
+            final InetSocketAddress remoteAddress, // CSIGNORE: HiddenField
+            final int timeout) { // CSIGNORE: HiddenField
+        this.localAddress = localAddress;
+        this.remoteAddress = remoteAddress;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public boolean connect() throws IOException {
+        channel = SocketChannel.open();
+        Socket socket = channel.socket();
+        socket.bind(localAddress);
+        socket.setSoTimeout(timeout);
+        channel.configureBlocking(false);
+        while (readSelector == null) {
+            // Workaround for Java bug 6427854: "(se)
+            // NullPointerException in Selector.open()" (fixed in
+            // 7 b08).
+            // http://bugs.sun.com/view_bug.do?bug_id=6427854
+            try {
+                readSelector = Selector.open();
+            } catch (NullPointerException e) { // CSIGNORE: EmptyBlock
+            }
+        }
+        readKey = channel.register(readSelector, SelectionKey.OP_CONNECT);
+
+        if (channel.connect(remoteAddress)) {
+            readKey.interestOps(SelectionKey.OP_READ);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            // Change our selector to watch for reads
+            readKey.interestOps(SelectionKey.OP_READ);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        return channel.read(dst);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        return channel.write(src);
+    }
+
+    @Override
+    public void awaitReadable(final long timeoutMillis) throws IOException {
+        readSelector.select(timeoutMillis);
+        readSelector.selectedKeys().clear();
+    }
+
+    @Override
+    public void awaitWritable(final long timeoutMillis) throws IOException {
+        if (writeSelector == null) {
+            writeSelector = Selector.open();
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+        writeSelector.select(timeoutMillis);
+        writeSelector.selectedKeys().clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        if (writeSelector != null) {
+            try {
+                writeSelector.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            writeSelector = null;
+        }
+        if (readSelector != null) {
+            try {
+                readSelector.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            readSelector = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            channel = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TcpTransport(" + remoteAddress + ")";
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A non-blocking byte stream connection that an OCP link runs over. A new
+ * transport is created by a {@link TransportFactory} for each connection
+ * attempt and is discarded when the link resets.
+ * <p/>
+ * The link's receive thread calls {@link #connect()},
+ * {@link #finishConnect()}, {@link #read(ByteBuffer)} and
+ * {@link #awaitReadable(long)}; its transmit thread calls
+ * {@link #write(ByteBuffer)} and {@link #awaitWritable(long)}. Implementations
+ * must allow those two threads to run concurrently. {@link #close()} is only
+ * called once the transmit thread has stopped.
+ *
+ * @author Telsis
+ */
+public interface Transport {
+    /**
+     * Start connecting to the remote unit.
+     *
+     * @return true if the connection was established immediately, false if
+     *         {@link #finishConnect()} must be polled until it is
+     * @throws IOException
+     *             if the connection attempt failed
+     */
+    boolean connect() throws IOException;
+
+    /**
+     * Check whether a pending connection attempt has completed.
+     *
+     * @return true if the connection is established
+     * @throws IOException
+     *             if the connection attempt failed
+     */
+    boolean finishConnect() throws IOException;
+
+    /**
+     * Read as many bytes as are available, without blocking.
+     *
+     * @param dst
+     *            the buffer to read into
+     * @return the number of bytes read, possibly zero, or -1 if the remote
+     *         unit has closed the connection
+     * @throws IOException
+     *             if the connection has failed
+     */
+    int read(ByteBuffer dst) throws IOException;
+
+    /**
+     * Write as many bytes as can be accepted, without blocking.
+     *
+     * @param src
+     *            the buffer to write from
+     * @return the number of bytes written, possibly zero
+     * @throws IOException
+     *             if the connection has failed
+     */
+    int write(ByteBuffer src) throws IOException;
+
+    /**
+     * Wait until data may be available to read or, while connecting, until
+     * the connection attempt may have completed. This may return early.
+     *
+     * @param timeout
+     *            the longest time to wait, in milliseconds
+     * @throws IOException
+     *             if waiting failed
+     */
+    void awaitReadable(long timeout) throws IOException;
+
+    /**
+     * Wait until more data may be written. This may return early.
+     *
+     * @param timeout
+     *            the longest time to wait, in milliseconds
+     * @throws IOException
+     *             if waiting failed
+     */
+    void awaitWritable(long timeout) throws IOException;
+
+    /**
+     * Close the connection and release all resources.
+     *
+     * @throws IOException
+     *             if the connection could not be closed cleanly; the
+     *             resources are released regardless
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,47 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jocp.transport;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Creates the {@link Transport} for each connection attempt made by an OCP
+ * link. Transports that are not IP based may ignore the addresses.
+ *
+ * @author Telsis
+ */
+public interface TransportFactory {
+    /**
+     * Create an unconnected transport.
+     *
+     * @param localAddress
+     *            the configured local address and port
+     * @param remoteAddress
+     *            the configured remote address and port
+     * @param timeout
+     *            the configured link timeout, in milliseconds
+     * @return the transport
+     */
+    Transport createTransport(InetSocketAddress localAddress,
+            InetSocketAddress remoteAddress, int timeout);
+}
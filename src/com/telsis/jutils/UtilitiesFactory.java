@@ -22,6 +22,8 @@
  */
 package com.telsis.jutils;
 
+import com.telsis.jutils.clock.Clock;
+import com.telsis.jutils.clock.SystemClock;
 import com.telsis.jutils.interfaces.UtilInterface;
 
 /**
@@ -30,6 +32,8 @@ import com.telsis.jutils.interfaces.UtilInterface;
 public final class UtilitiesFactory {
     /** Utilities interface. */
     private static UtilInterface utilInterface = new UtilInterface();
+    /** Default clock. */
+    private static volatile Clock clock = SystemClock.INSTANCE;
 
     /**
      * Utility class constructor.
@@ -44,4 +48,27 @@ public final class UtilitiesFactory {
         return utilInterface;
     }
 
+    /**
+     * @return the clock that new components use by default
+     */
+    public static Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock that new components use by default. Components that
+     * already exist keep the clock they were created with.
+     *
+     * @param newClock
+     *            the clock to use, or null to restore the
+     *            {@link SystemClock}
+     */
+    public static void setClock(final Clock newClock) {
+        if (newClock == null) {
+            clock = SystemClock.INSTANCE;
+        } else {
+            clock = newClock;
+        }
+    }
+
 }
@@ -0,0 +1,52 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jutils.clock;
+
+/**
+ * A source of time for measuring timeouts and intervals.
+ * <p/>
+ * Readings from a clock are only meaningful relative to other readings from
+ * the same clock: they must never go backwards, but need not bear any relation
+ * to the time of day. Code that needs to know how long something took, or
+ * whether a timeout has expired, should take its readings from a clock rather
+ * than from {@link System#currentTimeMillis()}, which jumps whenever the
+ * system time is stepped (for example by NTP).
+ *
+ * @author Telsis
+ */
+public interface Clock {
+    /**
+     * Gets the current time in nanoseconds.
+     *
+     * @return the current time, in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Gets the current time in milliseconds. This is the same time as
+     * {@link #nanoTime()}, at a lower resolution.
+     *
+     * @return the current time, in milliseconds
+     */
+    long millis();
+}
@@ -0,0 +1,66 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jutils.clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The production {@link Clock}, based on {@link System#nanoTime()}.
+ * <p/>
+ * The readings are offset so that they match {@link System#currentTimeMillis()}
+ * at the time this class was loaded. This keeps logged timestamps readable and
+ * means that a reading of 0 is always long in the past, but the clock does not
+ * follow any later changes to the system time.
+ *
+ * @author Telsis
+ */
+public final class SystemClock implements Clock {
+    /** The single instance of this class. */
+    public static final SystemClock INSTANCE = new SystemClock();
+
+    /** The offset added to {@link System#nanoTime()}. */
+    private final long offset;
+
+    /**
+     * Creates the system clock.
+     */
+    private SystemClock() {
+        offset = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+                - System.nanoTime();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime() + offset;
+    }
+
+    @Override
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        return "SystemClock";
+    }
+}
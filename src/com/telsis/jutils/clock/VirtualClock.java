@@ -0,0 +1,119 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jutils.clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Clock} whose time only changes when it is explicitly advanced.
+ * <p/>
+ * This allows timeout and interval handling to be exercised deterministically
+ * and far faster than real time: a test can advance the clock past a link
+ * timeout or a gapping window in a single call instead of waiting for it. The
+ * clock may be shared between threads.
+ * <p/>
+ * Only the readings are virtual. Threads that wait for work, such as the OCP
+ * link and system threads, still wait in real time, for at most about a
+ * second, and compare the clock with their deadlines when they wake. Advancing
+ * the clock does not wake them, so its effect on such a thread is seen up to a
+ * second of real time later. A test should wait for the expected outcome
+ * rather than check for it as soon as {@link #advance} returns, unless the
+ * code under test offers a way to wake its threads.
+ *
+ * @author Telsis
+ */
+public class VirtualClock implements Clock {
+    /**
+     * The default starting time, in milliseconds. This is well clear of 0 so
+     * that a reading of 0 looks long in the past, as it does with the
+     * {@link SystemClock}.
+     */
+    public static final long DEFAULT_START = 1356998400000L; // CSIGNORE: MagicNumber
+
+    /** The current time, in nanoseconds. */
+    private final AtomicLong now;
+
+    /**
+     * Creates a virtual clock starting at {@link #DEFAULT_START}.
+     */
+    public VirtualClock() {
+        this(DEFAULT_START);
+    }
+
+    /**
+     * Creates a virtual clock starting at the specified time.
+     *
+     * @param startMillis
+     *            the starting time, in milliseconds
+     */
+    public VirtualClock(final long startMillis) {
+        now = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(startMillis));
+    }
+
+    @Override
+    public final long nanoTime() {
+        return now.get();
+    }
+
+    @Override
+    public final long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(now.get());
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param duration
+     *            the amount to move the clock forward by
+     * @param unit
+     *            the unit of <code>duration</code>
+     * @return the new time, in nanoseconds
+     * @throws IllegalArgumentException
+     *             if <code>duration</code> is negative
+     */
+    public final long advance(final long duration, final TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("A clock cannot go backwards");
+        }
+        return now.addAndGet(unit.toNanos(duration));
+    }
+
+    /**
+     * Moves the clock forward by a number of milliseconds.
+     *
+     * @param millis
+     *            the number of milliseconds to move the clock forward by
+     * @return the new time, in nanoseconds
+     * @throws IllegalArgumentException
+     *             if <code>millis</code> is negative
+     */
+    public final long advanceMillis(final long millis) {
+        return advance(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualClock(" + millis() + ")";
+    }
+}
@@ -22,12 +22,120 @@
  */
 package com.telsis.jutils.interfaces;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * Alarm interface.
+ * Alarm interface. Registered alarms and the alarms that are currently raised
+ * are held in memory so that they can be read back, for example by an
+ * exporter.
  * @author Telsis Ltd.
  */
 public final class AlarmInterface {
 
+    /**
+     * An alarm that is currently raised.
+     */
+    public static final class Alarm {
+        /** The alarm name. */
+        private final String   name;
+        /** The source that raised the alarm. */
+        private final Object   source;
+        /** The link ID, or -1 if none was given. */
+        private final int      linkID;
+        /** The alarm parameters. */
+        private final String[] params;
+
+        /**
+         * Create an alarm.
+         * @param name Alarm name
+         * @param source Source
+         * @param linkID Link ID, or -1
+         * @param params Alarm parameters
+         */
+        // CSOFF: HiddenField
+        private Alarm(final String name, final Object source, final int linkID,
+                final String[] params) {
+            // CSON: HiddenField
+            this.name = name;
+            this.source = source;
+            this.linkID = linkID;
+            this.params = params == null ? new String[0] : params.clone();
+        }
+
+        /**
+         * @return the alarm name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the source that raised the alarm
+         */
+        public Object getSource() {
+            return source;
+        }
+
+        /**
+         * @return the link ID, or -1 if none was given
+         */
+        public int getLinkID() {
+            return linkID;
+        }
+
+        /**
+         * @return a copy of the alarm parameters
+         */
+        public String[] getParams() {
+            return params.clone();
+        }
+    }
+
+    /**
+     * The key of a raised alarm: its name and the identity of its source.
+     */
+    private static final class Key {
+        /** The alarm name. */
+        private final String name;
+        /** The source. */
+        private final Object source;
+
+        /**
+         * Create a key.
+         * @param name Alarm name
+         * @param source Source
+         */
+        // CSOFF: HiddenField
+        private Key(final String name, final Object source) {
+            // CSON: HiddenField
+            this.name = name;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Key && ((Key) other).name.equals(name)
+                    && ((Key) other).source == source;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() ^ System.identityHashCode(source);
+        }
+    }
+
+    /** The severity of each registered alarm, by name. */
+    private final ConcurrentHashMap<String, Integer> severities =
+            new ConcurrentHashMap<String, Integer>();
+    /** The alarms that are currently raised. */
+    private final ConcurrentHashMap<Key, Alarm> raised =
+            new ConcurrentHashMap<Key, Alarm>();
+
     /**
      * Register alarm.
      * @param text text
@@ -37,6 +145,7 @@ public final class AlarmInterface {
      */
     public void registerAlarm(final String text, final Class<?> alarmSource,
             final int id, final int severity) {
+        severities.put(text, severity);
     }
 
     /**
@@ -44,6 +153,11 @@ public final class AlarmInterface {
      * @param s The related event notifier.
      */
     public void clearAllAlarms(final ServerEventNotifier s) {
+        for (Iterator<Key> i = raised.keySet().iterator(); i.hasNext();) {
+            if (i.next().source == s) {
+                i.remove();
+            }
+        }
     }
 
     /**
@@ -55,6 +169,8 @@ public final class AlarmInterface {
      */
     public void raiseAlarm(final String name, final Object source, final int linkID,
             final String[] params) {
+        raised.put(new Key(name, source),
+                new Alarm(name, source, linkID, params));
     }
 
     /**
@@ -63,6 +179,7 @@ public final class AlarmInterface {
      * @param source source
      */
     public void clearAlarm(final String name, final Object source) {
+        raised.remove(new Key(name, source));
     }
 
     /**
@@ -73,6 +190,23 @@ public final class AlarmInterface {
      */
     public void raiseAlarm(final String name,
             final ServerEventNotifier s, final String[] params) {
+        raiseAlarm(name, s, -1, params);
+    }
+
+    /**
+     * Get registered alarms.
+     * @return a new map of the severity of each registered alarm, sorted by name
+     */
+    public SortedMap<String, Integer> getRegisteredAlarms() {
+        return new TreeMap<String, Integer>(severities);
+    }
+
+    /**
+     * Get raised alarms.
+     * @return a new list of the alarms that are currently raised
+     */
+    public List<Alarm> getRaisedAlarms() {
+        return new ArrayList<Alarm>(raised.values());
     }
 
 }
@@ -22,25 +22,68 @@
  */
 package com.telsis.jutils.interfaces;
 
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Stats interface.
+ * Stats interface. Registered statistics are held in memory so that they can
+ * be read back, for example by an exporter. Changes to statistics that are
+ * not registered are ignored.
  * @author Philip.Whitehouse
  *
  */
 public final class StatsInterface {
     /**
-     * Unregister stat.
+     * A registered statistic.
+     */
+    private static final class Stat {
+        /** The value. */
+        private final AtomicLong value = new AtomicLong();
+        /** The number of times the statistic is registered. */
+        private int              registrations;
+        /** Whether the statistic was registered as extended. */
+        private volatile boolean extended;
+    }
+
+    /** The registered statistics, by name. */
+    private final ConcurrentHashMap<String, Stat> stats =
+            new ConcurrentHashMap<String, Stat>();
+
+    /**
+     * Unregister stat. A statistic that has been registered more than once
+     * (for example, by a link and its replacement) is kept until it has been
+     * unregistered as many times.
      * @param name Statistic name
      */
     public void unregisterStat(final String name) {
+        synchronized (stats) {
+            Stat stat = stats.get(name);
+            if (stat != null && --stat.registrations <= 0) {
+                stats.remove(name);
+            }
+        }
     }
 
     /**
      * Register stat.
      * @param name Statistic name
      * @param extended Whether statistics on how the stat changes over time should be kept.
+     * Extended statistics are counts of events, which only go up; the others
+     * are levels, such as the length of a queue.
      */
     public void registerStat(final String name, final boolean extended) {
+        synchronized (stats) {
+            Stat stat = stats.get(name);
+            if (stat == null) {
+                stat = new Stat();
+                stats.put(name, stat);
+            }
+            stat.registrations++;
+            stat.extended |= extended;
+        }
     }
 
     /**
@@ -48,6 +91,10 @@ public final class StatsInterface {
      * @param name Statistic name
      */
     public void incrementStat(final String name) {
+        Stat stat = stats.get(name);
+        if (stat != null) {
+            stat.value.incrementAndGet();
+        }
     }
 
     /**
@@ -55,6 +102,47 @@ public final class StatsInterface {
      * @param name Statistic name
      */
     public void decrementStat(final String name) {
+        Stat stat = stats.get(name);
+        if (stat != null) {
+            stat.value.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get stat.
+     * @param name Statistic name
+     * @return the value, or 0 if the statistic is not registered
+     */
+    public long getStat(final String name) {
+        Stat stat = stats.get(name);
+        return stat == null ? 0 : stat.value.get();
+    }
+
+    /**
+     * Get all stats.
+     * @return a new map of the registered statistics' values, sorted by name
+     */
+    public SortedMap<String, Long> getStats() {
+        SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().value.get());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the stats that were, or were not, registered as extended.
+     * @param extended true for the extended stats; false for the others
+     * @return a new map of the matching statistics' values, sorted by name
+     */
+    public SortedMap<String, Long> getStats(final boolean extended) {
+        SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            if (entry.getValue().extended == extended) {
+                snapshot.put(entry.getKey(), entry.getValue().value.get());
+            }
+        }
+        return snapshot;
     }
 
 }
@@ -55,6 +55,24 @@ public class GenericTelno {
         this.digits = newDigits.clone();
     }
 
+    /**
+     * Creates a generic telno that takes ownership of the given digits array
+     * rather than copying it. For use by conversion routines in this package
+     * that have just allocated the array.
+     *
+     * @param newType
+     *            the type of the telephone number
+     * @param newDigits
+     *            the digits of the telephone number
+     * @return the generic telno
+     */
+    static GenericTelno adopt(final TelnoType newType, final byte[] newDigits) {
+        GenericTelno telno = new GenericTelno();
+        telno.type = newType;
+        telno.digits = newDigits;
+        return telno;
+    }
+
     /**
      * Gets the type of the telephone number.
      *
@@ -82,6 +100,16 @@ public class GenericTelno {
         return digits.clone();
     }
 
+    /**
+     * Gets the digits of the telephone number without copying them. For use by
+     * conversion routines in this package, which must not modify the array.
+     *
+     * @return the digits
+     */
+    final byte[] digitsNoCopy() {
+        return digits;
+    }
+
     /**
      * Sets the digits of the telephone number.
      *
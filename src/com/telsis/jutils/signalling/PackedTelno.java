@@ -0,0 +1,621 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jutils.signalling;
+
+/**
+ * An immutable, compact representation of a telephone number. Up to
+ * {@value #MAX_DIGITS} digits from 0x00 to 0x0F are packed into two
+ * <tt>long</tt>s with the left-most digit in the most significant nibble, and
+ * are stored together with the number of digits and a Q.931 type and plan
+ * (the number format used by OCP).
+ * <p/>
+ * Unused nibbles are always zero, so two packed telnos can be hashed, compared
+ * for equality and ordered without looking at individual digits. Packed telnos
+ * are ordered by their digits, then by their length (so that a telno sorts
+ * before any longer telno it is a prefix of), then by their type and plan.
+ *
+ * @author Telsis
+ */
+public final class PackedTelno implements Comparable<PackedTelno> {
+    /** The maximum number of digits in a packed telno. */
+    public static final int MAX_DIGITS = 32;
+
+    /** An empty telno of type UNKNOWN. */
+    public static final PackedTelno EMPTY = new PackedTelno(
+            SignallingUtil.Q931_NUM_TYPE_UNKNOWN, 0, 0L, 0L);
+
+    // CSOFF: MagicNumber Lots of bit twiddling in this class
+    /** The number of digits held in each long. */
+    private static final int DIGITS_PER_LONG = 16;
+    /** The number of packed bytes held in each long. */
+    private static final int BYTES_PER_LONG = 8;
+
+    /**
+     * Lookup table to unpack a byte into two digits. The digits for the packed
+     * byte <tt>b</tt> are at index <tt>2b</tt> (most significant nibble) and
+     * <tt>2b + 1</tt> (least significant nibble).
+     */
+    private static final byte[] UNPACKED_PAIRS = new byte[512];
+
+    /**
+     * Lookup table to format a packed byte as two hex characters, laid out as
+     * for {@link #UNPACKED_PAIRS}.
+     */
+    private static final char[] HEX_PAIRS = new char[512];
+
+    /**
+     * Lookup table to format a packed byte as two characters using '*#ABCD' for
+     * the digits 'ABCDEF', laid out as for {@link #UNPACKED_PAIRS}.
+     */
+    private static final char[] STAR_HASH_PAIRS = new char[512];
+
+    static {
+        final char[] hex = "0123456789ABCDEF".toCharArray();
+        final char[] starHash = "0123456789*#ABCD".toCharArray();
+        for (int b = 0; b < 256; b++) {
+            UNPACKED_PAIRS[2 * b] = (byte) (b >>> 4);
+            UNPACKED_PAIRS[2 * b + 1] = (byte) (b & 0x0F);
+            HEX_PAIRS[2 * b] = hex[b >>> 4];
+            HEX_PAIRS[2 * b + 1] = hex[b & 0x0F];
+            STAR_HASH_PAIRS[2 * b] = starHash[b >>> 4];
+            STAR_HASH_PAIRS[2 * b + 1] = starHash[b & 0x0F];
+        }
+    }
+
+    /** Digits 0-15. */
+    private final long high;
+    /** Digits 16-31. */
+    private final long low;
+    /** The number of digits. */
+    private final byte length;
+    /** The Q.931 type and plan. */
+    private final byte typePlan;
+
+    /**
+     * Instantiates a new packed telno. The digits must already be masked to
+     * the given length.
+     *
+     * @param newTypePlan
+     *            the Q.931 type and plan
+     * @param newLength
+     *            the number of digits
+     * @param newHigh
+     *            digits 0-15
+     * @param newLow
+     *            digits 16-31
+     */
+    private PackedTelno(final byte newTypePlan, final int newLength,
+            final long newHigh, final long newLow) {
+        this.typePlan = newTypePlan;
+        this.length = (byte) newLength;
+        this.high = newHigh;
+        this.low = newLow;
+    }
+
+    /**
+     * Instantiates a new packed telno from unpacked digits. Only the least
+     * significant nibble of each digit is used.
+     *
+     * @param newTypePlan
+     *            the Q.931 type and plan
+     * @param digits
+     *            the unpacked digits
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_DIGITS} digits
+     */
+    public PackedTelno(final byte newTypePlan, final byte[] digits) {
+        this(newTypePlan, digits, 0, digits.length);
+    }
+
+    /**
+     * Instantiates a new packed telno from a range of unpacked digits. Only
+     * the least significant nibble of each digit is used.
+     *
+     * @param newTypePlan
+     *            the Q.931 type and plan
+     * @param digits
+     *            the array holding the unpacked digits
+     * @param offset
+     *            the index of the first digit
+     * @param numDigits
+     *            the number of digits
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_DIGITS} digits
+     */
+    public PackedTelno(final byte newTypePlan, final byte[] digits,
+            final int offset, final int numDigits) {
+        checkLength(numDigits);
+        this.typePlan = newTypePlan;
+        this.length = (byte) numDigits;
+        this.high = packLong(digits, offset, numDigits);
+        this.low = packLong(digits, offset + DIGITS_PER_LONG,
+                numDigits - DIGITS_PER_LONG);
+    }
+
+    /**
+     * Instantiates a new packed telno from a generic telno.
+     *
+     * @param telno
+     *            the generic telno
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_DIGITS} digits
+     */
+    public PackedTelno(final GenericTelno telno) {
+        this(SignallingUtil.convertTelnoTypeToQ931(telno.getType()),
+                telno.digitsNoCopy());
+    }
+
+    /**
+     * Creates a packed telno from digits that are already packed into bytes
+     * with the left-most digit in the most significant nibble, as used by OCP.
+     * Bytes beyond the end of the array are treated as zero, and nibbles
+     * beyond the given number of digits are ignored.
+     *
+     * @param typePlan
+     *            the Q.931 type and plan
+     * @param numDigits
+     *            the number of digits
+     * @param packed
+     *            the array holding the packed digits
+     * @param offset
+     *            the index of the first packed byte
+     * @return the packed telno
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_DIGITS} digits
+     */
+    public static PackedTelno valueOfPacked(final byte typePlan,
+            final int numDigits, final byte[] packed, final int offset) {
+        checkLength(numDigits);
+        if (numDigits == 0 && typePlan == EMPTY.typePlan) {
+            return EMPTY;
+        }
+        long newHigh = readLong(packed, offset) & highMask(numDigits);
+        long newLow = readLong(packed, offset + BYTES_PER_LONG)
+                & highMask(numDigits - DIGITS_PER_LONG);
+        return new PackedTelno(typePlan, numDigits, newHigh, newLow);
+    }
+
+    /**
+     * Creates a packed telno from its raw components, as returned by
+     * {@link #getHigh()} and {@link #getLow()}. Nibbles beyond the given number
+     * of digits are ignored.
+     *
+     * @param typePlan
+     *            the Q.931 type and plan
+     * @param numDigits
+     *            the number of digits
+     * @param newHigh
+     *            digits 0-15
+     * @param newLow
+     *            digits 16-31
+     * @return the packed telno
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_DIGITS} digits
+     */
+    public static PackedTelno valueOf(final byte typePlan, final int numDigits,
+            final long newHigh, final long newLow) {
+        checkLength(numDigits);
+        return new PackedTelno(typePlan, numDigits,
+                newHigh & highMask(numDigits),
+                newLow & highMask(numDigits - DIGITS_PER_LONG));
+    }
+
+    /**
+     * Gets the number of digits.
+     *
+     * @return the number of digits
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the Q.931 type and plan.
+     *
+     * @return the type and plan
+     */
+    public byte getTypePlan() {
+        return typePlan;
+    }
+
+    /**
+     * Gets the generic type of the telno.
+     *
+     * @return the type
+     */
+    public TelnoType getType() {
+        return SignallingUtil.convertQ931ToTelnoType(typePlan);
+    }
+
+    /**
+     * Gets digits 0-15, packed with the left-most digit in the most
+     * significant nibble.
+     *
+     * @return digits 0-15
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Gets digits 16-31, packed with the left-most digit in the most
+     * significant nibble.
+     *
+     * @return digits 16-31
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Gets a single digit.
+     *
+     * @param index
+     *            the index of the digit, starting from the left-most digit
+     * @return the digit
+     * @throws IndexOutOfBoundsException
+     *             if the index is not less than the length
+     */
+    public byte getDigit(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Digit " + index
+                    + " requested from a telno of length " + length);
+        }
+        long word = (index < DIGITS_PER_LONG) ? high : low;
+        return (byte) ((word >>> (60 - 4 * (index % DIGITS_PER_LONG)))
+                & 0x0F);
+    }
+
+    /**
+     * Gets the unpacked digits.
+     *
+     * @return a new array containing the unpacked digits
+     */
+    public byte[] getDigits() {
+        byte[] digits = new byte[length];
+        getDigits(digits, 0);
+        return digits;
+    }
+
+    /**
+     * Unpacks the digits into a caller-supplied array.
+     *
+     * @param dest
+     *            the array to unpack the digits into
+     * @param offset
+     *            the index in <tt>dest</tt> of the first digit
+     * @return the number of digits written
+     */
+    public int getDigits(final byte[] dest, final int offset) {
+        int out = offset;
+        int remaining = length;
+        long word = high;
+        for (int i = 0; remaining > 0; i++) {
+            if (i == BYTES_PER_LONG) {
+                word = low;
+            }
+            int pair = ((int) (word >>> (56 - 8 * (i % BYTES_PER_LONG)))
+                    & 0xFF) << 1;
+            dest[out++] = UNPACKED_PAIRS[pair];
+            if (remaining > 1) {
+                dest[out++] = UNPACKED_PAIRS[pair + 1];
+            }
+            remaining -= 2;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the digits into a caller-supplied array, packed into bytes with
+     * the left-most digit in the most significant nibble as used by OCP. Only
+     * the bytes that hold digits are written.
+     *
+     * @param dest
+     *            the array to write the packed digits into
+     * @param offset
+     *            the index in <tt>dest</tt> of the first packed byte
+     * @return the number of bytes written
+     */
+    public int getPackedDigits(final byte[] dest, final int offset) {
+        int numBytes = (length + 1) / 2;
+        for (int i = 0; i < numBytes; i++) {
+            long word = (i < BYTES_PER_LONG) ? high : low;
+            dest[offset + i] = (byte) (word >>> (56 - 8 * (i % BYTES_PER_LONG)));
+        }
+        return numBytes;
+    }
+
+    /**
+     * Converts this telno into a generic telno.
+     *
+     * @return the generic telno
+     */
+    public GenericTelno toGenericTelno() {
+        return GenericTelno.adopt(getType(), getDigits());
+    }
+
+    /**
+     * Appends the digits to a StringBuilder. The digits A-F are converted
+     * according to the <code>permitStarHash</code> setting.
+     *
+     * @param sb
+     *            the StringBuilder to append to
+     * @param permitStarHash
+     *            True if the digits 'ABCDEF' should be converted to the
+     *            characters '*#ABCD'; false if the digits should be converted
+     *            to the characters 'ABCDEF'
+     * @return the StringBuilder
+     */
+    public StringBuilder appendTo(final StringBuilder sb,
+            final boolean permitStarHash) {
+        final char[] table = permitStarHash ? STAR_HASH_PAIRS : HEX_PAIRS;
+        int remaining = length;
+        long word = high;
+        for (int i = 0; remaining > 0; i++) {
+            if (i == BYTES_PER_LONG) {
+                word = low;
+            }
+            int pair = ((int) (word >>> (56 - 8 * (i % BYTES_PER_LONG)))
+                    & 0xFF) << 1;
+            sb.append(table[pair]);
+            if (remaining > 1) {
+                sb.append(table[pair + 1]);
+            }
+            remaining -= 2;
+        }
+        return sb;
+    }
+
+    /**
+     * Converts the digits into a String. The digits A-F are converted
+     * according to the <code>permitStarHash</code> setting.
+     *
+     * @param permitStarHash
+     *            True if the digits 'ABCDEF' should be converted to the
+     *            characters '*#ABCD'; false if the digits should be converted
+     *            to the characters 'ABCDEF'
+     * @return A String containing the digits in the telno
+     */
+    public String toString(final boolean permitStarHash) {
+        return appendTo(new StringBuilder(length), permitStarHash).toString();
+    }
+
+    /**
+     * Checks whether this telno starts with the digits of another telno. The
+     * type and plan are not compared.
+     *
+     * @param prefix
+     *            the prefix to check for
+     * @return true if the digits of <tt>prefix</tt> match the first digits of
+     *         this telno
+     */
+    public boolean startsWith(final PackedTelno prefix) {
+        if (prefix.length > length) {
+            return false;
+        }
+        return (high & highMask(prefix.length)) == prefix.high
+                && (low & highMask(prefix.length - DIGITS_PER_LONG))
+                        == prefix.low;
+    }
+
+    @Override
+    public int compareTo(final PackedTelno other) {
+        // Flip the sign bits so that the digits compare as unsigned values
+        if (high != other.high) {
+            return (high ^ Long.MIN_VALUE) < (other.high ^ Long.MIN_VALUE)
+                    ? -1 : 1;
+        }
+        if (low != other.low) {
+            return (low ^ Long.MIN_VALUE) < (other.low ^ Long.MIN_VALUE)
+                    ? -1 : 1;
+        }
+        if (length != other.length) {
+            return length - other.length;
+        }
+        return typePlan - other.typePlan;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h ^= (h >>> 32) ^ (length << 8) ^ (typePlan & 0xFF);
+        return (int) h;
+    }
+
+    /**
+     * Compare two PackedTelnos. <tt>obj</tt> is considered equal to this
+     * object if it is a PackedTelno with the same digits, length and type and
+     * plan as this object.
+     *
+     * @param obj
+     *            the object to compare this one to
+     * @return true if obj is equal to this object
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PackedTelno)) {
+            return false;
+        }
+        PackedTelno other = (PackedTelno) obj;
+        return high == other.high && low == other.low
+                && length == other.length && typePlan == other.typePlan;
+    }
+
+    /**
+     * Returns the digits, using the characters 'ABCDEF' for the hex digits.
+     *
+     * @return A String containing the digits in the telno
+     */
+    @Override
+    public String toString() {
+        return toString(false);
+    }
+
+    /**
+     * Unpacks digits that are packed into bytes with the left-most digit in
+     * the most significant nibble, as used by OCP. This is not limited to
+     * {@value #MAX_DIGITS} digits.
+     *
+     * @param packed
+     *            the array holding the packed digits
+     * @param packedOffset
+     *            the index of the first packed byte
+     * @param dest
+     *            the array to unpack the digits into
+     * @param destOffset
+     *            the index in <tt>dest</tt> of the first digit
+     * @param numDigits
+     *            the number of digits to unpack
+     */
+    public static void unpack(final byte[] packed, final int packedOffset,
+            final byte[] dest, final int destOffset, final int numDigits) {
+        int in = packedOffset;
+        int out = destOffset;
+        final int end = destOffset + numDigits;
+        for (; out + 1 < end; out += 2) {
+            int pair = (packed[in++] & 0xFF) << 1;
+            dest[out] = UNPACKED_PAIRS[pair];
+            dest[out + 1] = UNPACKED_PAIRS[pair + 1];
+        }
+        if (out < end) {
+            dest[out] = UNPACKED_PAIRS[(packed[in] & 0xFF) << 1];
+        }
+    }
+
+    /**
+     * Packs digits into bytes with the left-most digit in the most significant
+     * nibble, as used by OCP. Only the least significant nibble of each digit
+     * is used. If there are an odd number of digits, the least significant
+     * nibble of the last byte is set to zero. This is not limited to
+     * {@value #MAX_DIGITS} digits.
+     *
+     * @param digits
+     *            the array holding the unpacked digits
+     * @param digitsOffset
+     *            the index of the first digit
+     * @param dest
+     *            the array to pack the digits into
+     * @param destOffset
+     *            the index in <tt>dest</tt> of the first packed byte
+     * @param numDigits
+     *            the number of digits to pack
+     */
+    public static void pack(final byte[] digits, final int digitsOffset,
+            final byte[] dest, final int destOffset, final int numDigits) {
+        int in = digitsOffset;
+        int out = destOffset;
+        final int end = digitsOffset + numDigits;
+        for (; in + 1 < end; in += 2) {
+            dest[out++] = (byte) (((digits[in] & 0x0F) << 4)
+                    | (digits[in + 1] & 0x0F));
+        }
+        if (in < end) {
+            dest[out] = (byte) ((digits[in] & 0x0F) << 4);
+        }
+    }
+
+    /**
+     * Checks that a number of digits can be held in a packed telno.
+     *
+     * @param numDigits
+     *            the number of digits
+     * @throws IllegalArgumentException
+     *             if the number of digits is out of range
+     */
+    private static void checkLength(final int numDigits) {
+        if (numDigits < 0 || numDigits > MAX_DIGITS) {
+            throw new IllegalArgumentException("A packed telno cannot hold "
+                    + numDigits + " digits");
+        }
+    }
+
+    /**
+     * Gets the mask for the nibbles of a long that hold digits.
+     *
+     * @param numDigits
+     *            the number of digits held in the long; values outside of 0-16
+     *            are clamped
+     * @return the mask
+     */
+    private static long highMask(final int numDigits) {
+        if (numDigits <= 0) {
+            return 0L;
+        } else if (numDigits >= DIGITS_PER_LONG) {
+            return -1L;
+        }
+        return -1L << (64 - 4 * numDigits);
+    }
+
+    /**
+     * Packs up to 16 unpacked digits into a long, two digits at a time.
+     *
+     * @param digits
+     *            the array holding the unpacked digits
+     * @param offset
+     *            the index of the first digit
+     * @param numDigits
+     *            the number of digits; values outside of 0-16 are clamped
+     * @return the packed digits
+     */
+    private static long packLong(final byte[] digits, final int offset,
+            final int numDigits) {
+        int count = Math.min(numDigits, DIGITS_PER_LONG);
+        long word = 0L;
+        int i = 0;
+        for (; i + 1 < count; i += 2) {
+            word = (word << 8) | ((digits[offset + i] & 0x0F) << 4)
+                    | (digits[offset + i + 1] & 0x0F);
+        }
+        if (i < count) {
+            word = (word << 8) | ((digits[offset + i] & 0x0F) << 4);
+            i += 2;
+        }
+        return (i >= 64 / 4) ? word : word << (4 * (DIGITS_PER_LONG - i));
+    }
+
+    /**
+     * Reads 8 packed bytes into a long, treating bytes beyond the end of the
+     * array as zero.
+     *
+     * @param packed
+     *            the array holding the packed bytes
+     * @param offset
+     *            the index of the first byte
+     * @return the long
+     */
+    private static long readLong(final byte[] packed, final int offset) {
+        long word = 0L;
+        for (int i = 0; i < BYTES_PER_LONG; i++) {
+            int index = offset + i;
+            word <<= 8;
+            if (index < packed.length) {
+                word |= packed[index] & 0xFF;
+            }
+        }
+        return word;
+    }
+    // CSON: MagicNumber
+}
@@ -323,6 +323,57 @@ public final class SignallingUtil {
     /** Regex pattern to accept only digits. */
     private static final Pattern DIGITS = Pattern.compile("\\d+");
 
+    /** Result of {@link #parseDigits} if the digits are not valid. */
+    public static final int INVALID_DIGITS = -1;
+
+    /** Character lookup table value for separators, which are ignored. */
+    private static final byte CHAR_SEPARATOR = -1;
+    /** Character lookup table value for characters that are not permitted. */
+    private static final byte CHAR_INVALID = -2;
+
+    /**
+     * Lookup table from ASCII characters to digits when <tt>permitStarHash</tt>
+     * is false.
+     */
+    private static final byte[] HEX_CHAR_TO_DIGIT = new byte[128];
+    /**
+     * Lookup table from ASCII characters to digits when <tt>permitStarHash</tt>
+     * is true.
+     */
+    private static final byte[] STAR_HASH_CHAR_TO_DIGIT = new byte[128];
+
+    /** Lookup table from digits to characters when permitStarHash is false. */
+    private static final char[] HEX_DIGIT_TO_CHAR =
+            "0123456789ABCDEF".toCharArray();
+    /** Lookup table from digits to characters when permitStarHash is true. */
+    private static final char[] STAR_HASH_DIGIT_TO_CHAR =
+            "0123456789*#ABCD".toCharArray();
+
+    static {
+        // CSOFF: MagicNumber
+        Arrays.fill(HEX_CHAR_TO_DIGIT, CHAR_INVALID);
+        Arrays.fill(STAR_HASH_CHAR_TO_DIGIT, CHAR_INVALID);
+        for (byte digit = 0; digit < 10; digit++) {
+            HEX_CHAR_TO_DIGIT['0' + digit] = digit;
+            STAR_HASH_CHAR_TO_DIGIT['0' + digit] = digit;
+        }
+        for (byte digit = 0; digit < 6; digit++) {
+            HEX_CHAR_TO_DIGIT['A' + digit] = (byte) (0xA + digit);
+            HEX_CHAR_TO_DIGIT['a' + digit] = (byte) (0xA + digit);
+        }
+        STAR_HASH_CHAR_TO_DIGIT['*'] = 0xA;
+        STAR_HASH_CHAR_TO_DIGIT['#'] = 0xB;
+        for (byte digit = 0; digit < 4; digit++) {
+            STAR_HASH_CHAR_TO_DIGIT['A' + digit] = (byte) (0xC + digit);
+            STAR_HASH_CHAR_TO_DIGIT['a' + digit] = (byte) (0xC + digit);
+        }
+        for (char separator : "-.()".toCharArray()) {
+            HEX_CHAR_TO_DIGIT[separator] = CHAR_SEPARATOR;
+            STAR_HASH_CHAR_TO_DIGIT[separator] = CHAR_SEPARATOR;
+        }
+        // CSON: MagicNumber
+    }
+
     /**
      * Creating this class is not currently supported, so this constructor
      * throws an UnsupportedOperationException when called.
@@ -351,127 +402,180 @@ public final class SignallingUtil {
      */
     public static GenericTelno convertStringToGenericTelno(final String digits,
             final TelnoType typePlan, final boolean permitStarHash) {
-        final GenericTelno telno = new GenericTelno();
         byte[] unpackedDigits = new byte[digits.length()];
+        int validDigits = parseDigits(digits, permitStarHash, unpackedDigits,
+                0);
+
+        if (validDigits == INVALID_DIGITS) {
+            return new GenericTelno();
+        }
+        if (validDigits < unpackedDigits.length) {
+            unpackedDigits = Arrays.copyOf(unpackedDigits, validDigits);
+        }
+        return GenericTelno.adopt(typePlan, unpackedDigits);
+    }
+
+    /**
+     * Converts a string of digits into a {@link PackedTelno}, without creating
+     * any intermediate arrays. The characters are converted as for
+     * {@link #convertStringToGenericTelno}.
+     *
+     * @param digits
+     *            The digits to convert
+     * @param typePlan
+     *            The type/plan to use if the conversion is successful
+     * @param permitStarHash
+     *            True if the characters '*#ABCD' should be converted to the
+     *            digits 'ABCDEF' and the characters 'EF' rejected; false if the
+     *            characters 'ABCDEF' should be converted to the digits 'ABCDEF'
+     *            and the characters '*#' rejected
+     * @return The telephone number, or {@link PackedTelno#EMPTY} if the digits
+     *         are not valid
+     * @throws IllegalArgumentException
+     *             if the string contains more than
+     *             {@value com.telsis.jutils.signalling.PackedTelno#MAX_DIGITS}
+     *             digits
+     */
+    public static PackedTelno convertStringToPackedTelno(
+            final CharSequence digits, final TelnoType typePlan,
+            final boolean permitStarHash) {
+        // CSOFF: MagicNumber
+        final byte[] table = permitStarHash
+                ? STAR_HASH_CHAR_TO_DIGIT : HEX_CHAR_TO_DIGIT;
+        long high = 0L;
+        long low = 0L;
         int validDigits = 0;
-        boolean valid = true;
-
-        for (int inIndex = 0; inIndex < digits.length() && valid; inIndex++) {
-            // CSOFF: MagicNumber
-            switch (digits.charAt(inIndex)) {
-            case '0':
-                unpackedDigits[validDigits++] = 0;
-                break;
-            case '1':
-                unpackedDigits[validDigits++] = 1;
-                break;
-            case '2':
-                unpackedDigits[validDigits++] = 2;
-                break;
-            case '3':
-                unpackedDigits[validDigits++] = 3;
-                break;
-            case '4':
-                unpackedDigits[validDigits++] = 4;
-                break;
-            case '5':
-                unpackedDigits[validDigits++] = 5;
-                break;
-            case '6':
-                unpackedDigits[validDigits++] = 6;
-                break;
-            case '7':
-                unpackedDigits[validDigits++] = 7;
-                break;
-            case '8':
-                unpackedDigits[validDigits++] = 8;
-                break;
-            case '9':
-                unpackedDigits[validDigits++] = 9;
-                break;
-            case 'a':
-            case 'A':
-                if (permitStarHash) {
-                    unpackedDigits[validDigits++] = 0xC;
-                } else {
-                    unpackedDigits[validDigits++] = 0xA;
-                }
-                break;
-            case 'b':
-            case 'B':
-                if (permitStarHash) {
-                    unpackedDigits[validDigits++] = 0xD;
-                } else {
-                    unpackedDigits[validDigits++] = 0xB;
-                }
-                break;
-            case 'c':
-            case 'C':
-                if (permitStarHash) {
-                    unpackedDigits[validDigits++] = 0xE;
-                } else {
-                    unpackedDigits[validDigits++] = 0xC;
-                }
-                break;
-            case 'd':
-            case 'D':
-                if (permitStarHash) {
-                    unpackedDigits[validDigits++] = 0xF;
-                } else {
-                    unpackedDigits[validDigits++] = 0xD;
-                }
-                break;
-            case 'e':
-            case 'E':
-                if (permitStarHash) {
-                    valid = false;
-                } else {
-                    unpackedDigits[validDigits++] = 0xE;
-                }
-                break;
-            case 'f':
-            case 'F':
-                if (permitStarHash) {
-                    valid = false;
-                } else {
-                    unpackedDigits[validDigits++] = 0xF;
-                }
-                break;
-            case '*':
-                if (permitStarHash) {
-                    unpackedDigits[validDigits++] = 0xA;
-                } else {
-                    valid = false;
-                }
-                break;
-            case '#':
-                if (permitStarHash) {
-                    unpackedDigits[validDigits++] = 0xB;
-                } else {
-                    valid = false;
-                }
-                break;
-            case '-':
-            case '.':
-            case '(':
-            case ')':
-                // Separators
-                break;
-            default:
-                valid = false;
-                break;
+
+        for (int inIndex = 0; inIndex < digits.length(); inIndex++) {
+            char c = digits.charAt(inIndex);
+            byte digit = (c < table.length) ? table[c] : CHAR_INVALID;
+            if (digit == CHAR_SEPARATOR) {
+                continue;
+            } else if (digit == CHAR_INVALID) {
+                return PackedTelno.EMPTY;
+            }
+
+            if (validDigits < 16) {
+                high |= ((long) digit) << (60 - 4 * validDigits);
+            } else if (validDigits < PackedTelno.MAX_DIGITS) {
+                low |= ((long) digit) << (60 - 4 * (validDigits - 16));
+            } else {
+                throw new IllegalArgumentException("Too many digits in "
+                        + digits);
             }
-            // CSON: MagicNumber
+            validDigits++;
         }
 
-        if (valid) {
-            telno.setType(typePlan);
-            telno.setDigits(Arrays.copyOf(unpackedDigits, validDigits));
-        } else {
-            telno.setType(TelnoType.UNKNOWN);
-            telno.setDigits(new byte[]{});
+        return PackedTelno.valueOf(convertTelnoTypeToQ931(typePlan),
+                validDigits, high, low);
+        // CSON: MagicNumber
+    }
+
+    /**
+     * Converts a sequence of characters into unpacked digits, writing them
+     * into a caller-supplied array. This converts the characters 0-9 as-is,
+     * the characters '*#ABCDEF' (case-insensitively) according to the value
+     * of <code>permitStarHash</code>, and ignores the separators '-.()'. The
+     * presence of any other characters aborts the conversion.
+     * <p/>
+     * The array must have room for at least as many digits as there are
+     * characters in <code>digits</code>.
+     *
+     * @param digits
+     *            The characters to convert
+     * @param permitStarHash
+     *            True if the characters '*#ABCD' should be converted to the
+     *            digits 'ABCDEF' and the characters 'EF' rejected; false if the
+     *            characters 'ABCDEF' should be converted to the digits 'ABCDEF'
+     *            and the characters '*#' rejected
+     * @param dest
+     *            The array to write the unpacked digits into
+     * @param offset
+     *            The index in <code>dest</code> of the first digit
+     * @return The number of digits written, or {@link #INVALID_DIGITS} if the
+     *         conversion was aborted
+     */
+    public static int parseDigits(final CharSequence digits,
+            final boolean permitStarHash, final byte[] dest, final int offset) {
+        final byte[] table = permitStarHash
+                ? STAR_HASH_CHAR_TO_DIGIT : HEX_CHAR_TO_DIGIT;
+        int outIndex = offset;
+
+        for (int inIndex = 0; inIndex < digits.length(); inIndex++) {
+            char c = digits.charAt(inIndex);
+            byte digit = (c < table.length) ? table[c] : CHAR_INVALID;
+            if (digit >= 0) {
+                dest[outIndex++] = digit;
+            } else if (digit == CHAR_INVALID) {
+                return INVALID_DIGITS;
+            }
         }
-        return telno;
+        return outIndex - offset;
+    }
+
+    /**
+     * Converts unpacked digits into characters, appending them to a
+     * caller-supplied StringBuilder. Only the least significant nibble of each
+     * digit is used, and the hex digits A-F are converted according to the
+     * <code>permitStarHash</code> setting.
+     *
+     * @param digits
+     *            The array holding the unpacked digits
+     * @param offset
+     *            The index of the first digit
+     * @param numDigits
+     *            The number of digits to convert
+     * @param permitStarHash
+     *            True if the digits 'ABCDEF' should be converted to the
+     *            characters '*#ABCD'; false if the digits should be converted
+     *            to the characters 'ABCDEF'
+     * @param dest
+     *            The StringBuilder to append the characters to
+     * @return <code>dest</code>
+     */
+    public static StringBuilder formatDigits(final byte[] digits,
+            final int offset, final int numDigits,
+            final boolean permitStarHash, final StringBuilder dest) {
+        final char[] table = permitStarHash
+                ? STAR_HASH_DIGIT_TO_CHAR : HEX_DIGIT_TO_CHAR;
+        for (int i = offset; i < offset + numDigits; i++) {
+            dest.append(table[digits[i] & 0x0F]); // CSIGNORE: MagicNumber
+        }
+        return dest;
+    }
+
+    /**
+     * Converts unpacked digits into characters, writing them into a
+     * caller-supplied array. Only the least significant nibble of each digit is
+     * used, and the hex digits A-F are converted according to the
+     * <code>permitStarHash</code> setting.
+     *
+     * @param digits
+     *            The array holding the unpacked digits
+     * @param offset
+     *            The index of the first digit
+     * @param numDigits
+     *            The number of digits to convert
+     * @param permitStarHash
+     *            True if the digits 'ABCDEF' should be converted to the
+     *            characters '*#ABCD'; false if the digits should be converted
+     *            to the characters 'ABCDEF'
+     * @param dest
+     *            The array to write the characters into
+     * @param destOffset
+     *            The index in <code>dest</code> of the first character
+     * @return The number of characters written
+     */
+    public static int formatDigits(final byte[] digits, final int offset,
+            final int numDigits, final boolean permitStarHash,
+            final char[] dest, final int destOffset) {
+        final char[] table = permitStarHash
+                ? STAR_HASH_DIGIT_TO_CHAR : HEX_DIGIT_TO_CHAR;
+        for (int i = 0; i < numDigits; i++) {
+            dest[destOffset + i] =
+                    table[digits[offset + i] & 0x0F]; // CSIGNORE: MagicNumber
+        }
+        return numDigits;
     }
 
     /**
@@ -605,94 +709,26 @@ public final class SignallingUtil {
      */
     public static String convertGenericTelnoToString(final GenericTelno telno,
             final boolean permitStarHash) {
-        // CSOFF: MagicNumber
-
-        StringBuilder digits = new StringBuilder(telno.getDigits().length);
-
-        for (byte digit : telno.getDigits()) {
-            digit &= 0x0F;
-
-            switch (digit) {
-            case 0x0:
-                digits.append('0');
-                break;
-            case 0x1:
-                digits.append('1');
-                break;
-            case 0x2:
-                digits.append('2');
-                break;
-            case 0x3:
-                digits.append('3');
-                break;
-            case 0x4:
-                digits.append('4');
-                break;
-            case 0x5:
-                digits.append('5');
-                break;
-            case 0x6:
-                digits.append('6');
-                break;
-            case 0x7:
-                digits.append('7');
-                break;
-            case 0x8:
-                digits.append('8');
-                break;
-            case 0x9:
-                digits.append('9');
-                break;
-            case 0xA:
-                if (permitStarHash) {
-                    digits.append('*');
-                } else {
-                    digits.append('A');
-                }
-                break;
-            case 0xB:
-                if (permitStarHash) {
-                    digits.append('#');
-                } else {
-                    digits.append('B');
-                }
-                break;
-            case 0xC:
-                if (permitStarHash) {
-                    digits.append('A');
-                } else {
-                    digits.append('C');
-                }
-                break;
-            case 0xD:
-                if (permitStarHash) {
-                    digits.append('B');
-                } else {
-                    digits.append('D');
-                }
-                break;
-            case 0xE:
-                if (permitStarHash) {
-                    digits.append('C');
-                } else {
-                    digits.append('E');
-                }
-                break;
-            case 0xF:
-                if (permitStarHash) {
-                    digits.append('D');
-                } else {
-                    digits.append('F');
-                }
-                break;
-            default:
-                //Ignore any other digit
-                break;
-            }
-        }
+        final byte[] digits = telno.digitsNoCopy();
+        return formatDigits(digits, 0, digits.length, permitStarHash,
+                new StringBuilder(digits.length)).toString();
+    }
 
-        return digits.toString();
-        // CSON: MagicNumber
+    /**
+     * Converts a packed telno into a String of digits. The hex digits A-F will
+     * be converted according to the <code>permitStarHash</code> setting.
+     *
+     * @param telno
+     *            The telno to convert into a string of digits
+     * @param permitStarHash
+     *            True if the telno digits 'ABCDEF' should be converted to the
+     *            characters '*#ABCD'; false if the digits should be converted
+     *            to the characters 'ABCDEF'
+     * @return A String containing the digits in the telno
+     */
+    public static String convertPackedTelnoToString(final PackedTelno telno,
+            final boolean permitStarHash) {
+        return telno.toString(permitStarHash);
     }
 
     /**
@@ -0,0 +1,54 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2012-2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jutils.watchdog;
+
+/**
+ * Listener for threads watched by a {@link ThreadWatchdog} that stop patting
+ * it. Listeners are called from the watchdog's monitor thread, so they may
+ * take their time, but must be thread-safe.
+ */
+public interface StallListener {
+    /**
+     * A watched thread has not patted the watchdog within the timeout.
+     *
+     * @param thread
+     *            The stalled thread.
+     * @param stalledMillis
+     *            How long it is since the thread last patted the watchdog.
+     * @param stack
+     *            The stack of the thread when the stall was detected.
+     */
+    void threadStalled(Thread thread, long stalledMillis,
+            StackTraceElement[] stack);
+
+    /**
+     * A thread that had stalled has patted the watchdog again, or has stopped
+     * being watched.
+     *
+     * @param thread
+     *            The thread that has recovered.
+     * @param stalledMillis
+     *            How long the thread was stalled for.
+     */
+    void threadRecovered(Thread thread, long stalledMillis);
+}
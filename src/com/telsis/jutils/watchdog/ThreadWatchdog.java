@@ -0,0 +1,256 @@
+/*
+ * Telsis Limited jOCP library
+ *
+ * Copyright (C) Telsis Ltd. 2012-2013.
+ *
+ * This Program is free software: you can copy, redistribute and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License or (at your option) any later version.
+ *
+ * If you modify this Program you must mark it as changed by you and give a relevant date.
+ *
+ * This Program is published in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You should
+ * receive a copy of the GNU General Public License along with this program. If not,
+ * see <http//www.gnu.org/licenses/>.
+ *
+ * In making commercial use of this Program you indemnify Telsis Limited and all of its related
+ * Companies for any contractual assumptions of liability that may be imposed on Telsis Limited
+ * or any of its related Companies.
+ *
+ */
+package com.telsis.jutils.watchdog;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GenericWatchdog} that detects threads which stop patting it. Each
+ * thread that calls {@link #start()} is watched until it calls {@link #stop()};
+ * patting only writes a volatile timestamp. A monitor thread checks the
+ * watched threads several times per timeout, and the registered
+ * {@link StallListener}s are told, with a snapshot of its stack, when a thread
+ * has not patted the watchdog for longer than the timeout and again when it
+ * recovers.
+ * <p/>
+ * One watchdog can be shared by any number of threads.
+ */
+public class ThreadWatchdog implements GenericWatchdog {
+    /** The number of times the watched threads are checked per timeout. */
+    private static final int CHECKS_PER_TIMEOUT = 4;
+
+    /** The state of one watched thread. */
+    private static final class Watch {
+        /** The watched thread. */
+        private final Thread  thread;
+        /** The time of the last pat, from {@link System#nanoTime()}. */
+        private volatile long lastPat;
+        /** True if the thread has been reported as stalled. */
+        private boolean       stalled;
+        /** The time of the last pat before the stall was reported. */
+        private long          stalledFrom;
+
+        /**
+         * Creates a watch for a thread.
+         *
+         * @param thread
+         *            the thread to watch
+         */
+        private Watch(final Thread thread) { // CSIGNORE: HiddenField
+            this.thread = thread;
+            lastPat = System.nanoTime();
+        }
+    }
+
+    /** The longest time between pats, in nanoseconds. */
+    private final long timeout;
+    /** The watch for the current thread, if it is watched. */
+    private final ThreadLocal<Watch> current = new ThreadLocal<Watch>();
+    /** The watched threads. */
+    private final List<Watch> watches = new CopyOnWriteArrayList<Watch>();
+    /** The listeners to tell about stalls. */
+    private final List<StallListener> listeners =
+            new CopyOnWriteArrayList<StallListener>();
+    /** The thread that checks the watched threads. */
+    private final Thread monitor;
+    /** True once the watchdog has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates a watchdog and starts its monitor thread.
+     *
+     * @param name
+     *            the name of the watchdog, used to name the monitor thread
+     * @param timeout
+     *            the longest time a watched thread may go without patting
+     * @param unit
+     *            the unit of the timeout
+     */
+    // CSOFF: HiddenField
+    public ThreadWatchdog(final String name, final long timeout,
+            final TimeUnit unit) {
+        // CSON: HiddenField
+        if (timeout <= 0) {
+            throw new IllegalArgumentException(
+                    "The watchdog timeout must be positive");
+        }
+        this.timeout = unit.toNanos(timeout);
+        monitor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                monitor();
+            }
+        }, name + ".Watchdog");
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+
+    @Override
+    public void start() {
+        if (current.get() != null) {
+            return;
+        }
+        Watch watch = new Watch(Thread.currentThread());
+        current.set(watch);
+        watches.add(watch);
+    }
+
+    @Override
+    public void stop() {
+        Watch watch = current.get();
+        if (watch == null) {
+            return;
+        }
+        current.remove();
+        watches.remove(watch);
+        synchronized (watch) {
+            if (watch.stalled) {
+                watch.stalled = false;
+                recovered(watch, System.nanoTime());
+            }
+        }
+    }
+
+    @Override
+    public void pat() {
+        Watch watch = current.get();
+        if (watch != null) {
+            watch.lastPat = System.nanoTime();
+        }
+    }
+
+    /**
+     * Add a listener to be told about stalled threads.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addStallListener(final StallListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a stall listener.
+     *
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeStallListener(final StallListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the timeout.
+     *
+     * @return the longest time a watched thread may go without patting, in
+     *         milliseconds
+     */
+    public long getTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(timeout);
+    }
+
+    /**
+     * Stop the monitor thread. Threads may continue to call the watchdog, but
+     * stalls are no longer detected.
+     */
+    public void close() {
+        closed = true;
+        monitor.interrupt();
+    }
+
+    /**
+     * Check the watched threads until the watchdog is closed.
+     */
+    private void monitor() {
+        long interval = Math.max(1,
+                TimeUnit.NANOSECONDS.toMillis(timeout) / CHECKS_PER_TIMEOUT);
+        while (!closed) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            long now = System.nanoTime();
+            for (Watch watch : watches) {
+                synchronized (watch) {
+                    check(watch, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check one watched thread, and tell the listeners if it has stalled or
+     * recovered. The caller must hold the watch's lock.
+     *
+     * @param watch
+     *            the watch to check
+     * @param now
+     *            the current time, from {@link System#nanoTime()}
+     */
+    private void check(final Watch watch, final long now) {
+        long elapsed = now - watch.lastPat;
+        if (elapsed > timeout) {
+            if (watch.stalled) {
+                return;
+            }
+            watch.stalled = true;
+            watch.stalledFrom = watch.lastPat;
+            StackTraceElement[] stack = watch.thread.getStackTrace();
+            for (StallListener listener : listeners) {
+                try {
+                    listener.threadStalled(watch.thread,
+                            TimeUnit.NANOSECONDS.toMillis(elapsed), stack);
+                } catch (RuntimeException e) { // CSIGNORE: EmptyBlock
+                    // A failing listener must not stop the monitor
+                }
+            }
+        } else if (watch.stalled) {
+            watch.stalled = false;
+            recovered(watch, watch.lastPat);
+        }
+    }
+
+    /**
+     * Tell the listeners that a stalled thread has recovered. The caller must
+     * hold the watch's lock.
+     *
+     * @param watch
+     *            the watch of the thread that has recovered
+     * @param end
+     *            the time that the stall ended, from {@link System#nanoTime()}
+     */
+    private void recovered(final Watch watch, final long end) {
+        long stalledMillis = TimeUnit.NANOSECONDS.toMillis(
+                end - watch.stalledFrom);
+        for (StallListener listener : listeners) {
+            try {
+                listener.threadRecovered(watch.thread, stalledMillis);
+            } catch (RuntimeException e) { // CSIGNORE: EmptyBlock
+                // A failing listener must not stop the monitor
+            }
+        }
+    }
+}